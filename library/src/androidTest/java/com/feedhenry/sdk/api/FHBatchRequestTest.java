@@ -0,0 +1,159 @@
+/**
+ * Copyright Red Hat, Inc, and individual contributors.
+ * <p>
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * <p>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.feedhenry.sdk.api;
+
+import android.support.test.runner.AndroidJUnit4;
+
+import com.feedhenry.sdk.FH;
+import com.feedhenry.sdk.FHActCallback;
+import com.feedhenry.sdk.FHResponse;
+import com.squareup.okhttp.mockwebserver.MockResponse;
+import com.squareup.okhttp.mockwebserver.MockWebServer;
+import com.squareup.okhttp.mockwebserver.RecordedRequest;
+
+import org.json.fh.JSONArray;
+import org.json.fh.JSONObject;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import static android.support.test.InstrumentationRegistry.getContext;
+import static junit.framework.Assert.assertEquals;
+import static junit.framework.Assert.assertFalse;
+import static junit.framework.Assert.assertNotNull;
+import static junit.framework.Assert.assertTrue;
+
+@RunWith(AndroidJUnit4.class)
+public class FHBatchRequestTest {
+
+    private MockWebServer mockWebServer;
+    private FHResponse actResponse;
+    private FHResponse cloudResponse;
+    private boolean cloudFailed;
+
+    @Before
+    public void setUp() throws Exception {
+        mockWebServer = new MockWebServer();
+        mockWebServer.start(9000);
+        FH.init(getContext(), null);
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        FHBatchRequest.setBatchSupported(true);
+        mockWebServer.shutdown();
+        FH.stop();
+        Thread.sleep(100);
+    }
+
+    @Test
+    public void testRequestsAreSentInOneRoundTrip() throws Exception {
+        mockWebServer.enqueue(jsonResponse(
+            "{'responses': [{'status': 200, 'body': {'type': 'act'}}, {'status': 500, 'body': {'error': 'boom'}}]}"));
+
+        FHBatchRequest batch = FH.batch();
+        batch.add(FH.buildActRequest("test", new JSONObject()), actCallback());
+        batch.add(FH.buildCloudRequest("/v1/cloud/test", "PUT", null, new JSONObject().put("a", 1)), cloudCallback());
+        batch.execute();
+
+        assertEquals(1, mockWebServer.getRequestCount());
+        RecordedRequest request = mockWebServer.takeRequest();
+        assertEquals(FHBatchRequest.BATCH_PATH, request.getPath());
+        JSONArray requests = new JSONObject(request.getBody().readUtf8()).getJSONArray("requests");
+        assertEquals(2, requests.length());
+        assertEquals("/cloud/test", requests.getJSONObject(0).getString("path"));
+        assertEquals("PUT", requests.getJSONObject(1).getString("method"));
+        assertEquals(1, requests.getJSONObject(1).getJSONObject("body").getInt("a"));
+
+        assertEquals("act", actResponse.getJson().getString("type"));
+        assertEquals("boom", cloudResponse.getJson().getString("error"));
+        assertNotNull(cloudResponse.getError());
+        assertEquals(0, batch.size());
+    }
+
+    @Test
+    public void testFallsBackToIndividualRequestsWhenUnsupported() throws Exception {
+        mockWebServer.enqueue(new MockResponse().setResponseCode(404));
+        mockWebServer.enqueue(jsonResponse("{'type': 'act'}"));
+        mockWebServer.enqueue(jsonResponse("{'type': 'cloud'}"));
+
+        FHBatchRequest batch = FH.batch();
+        batch.add(FH.buildActRequest("test", new JSONObject()), actCallback());
+        batch.add(FH.buildCloudRequest("/v1/cloud/test", "POST", null, new JSONObject()), cloudCallback());
+        batch.execute();
+
+        assertEquals(3, mockWebServer.getRequestCount());
+        assertEquals(FHBatchRequest.BATCH_PATH, mockWebServer.takeRequest().getPath());
+        assertEquals("/cloud/test", mockWebServer.takeRequest().getPath());
+        assertEquals("/v1/cloud/test", mockWebServer.takeRequest().getPath());
+        assertEquals("act", actResponse.getJson().getString("type"));
+        assertEquals("cloud", cloudResponse.getJson().getString("type"));
+        assertFalse(cloudFailed);
+        assertFalse(FHBatchRequest.isBatchSupported());
+    }
+
+    @Test
+    public void testMalformedBatchResponseFailsTheRequests() throws Exception {
+        mockWebServer.enqueue(jsonResponse("{'responses': [{'status': 200, 'body': {'type': 'act'}}]}"));
+
+        FHBatchRequest batch = FH.batch();
+        batch.add(FH.buildActRequest("test", new JSONObject()), actCallback());
+        batch.add(FH.buildCloudRequest("/v1/cloud/test", "POST", null, new JSONObject()), cloudCallback());
+        batch.execute();
+
+        assertEquals(1, mockWebServer.getRequestCount());
+        assertNotNull(actResponse.getError());
+        assertTrue(cloudFailed);
+        assertTrue(FHBatchRequest.isBatchSupported());
+    }
+
+    private FHActCallback actCallback() {
+        return new FHActCallback() {
+            @Override
+            public void success(FHResponse pResponse) {
+                actResponse = pResponse;
+            }
+
+            @Override
+            public void fail(FHResponse pResponse) {
+                actResponse = pResponse;
+            }
+        };
+    }
+
+    private FHActCallback cloudCallback() {
+        return new FHActCallback() {
+            @Override
+            public void success(FHResponse pResponse) {
+                cloudResponse = pResponse;
+            }
+
+            @Override
+            public void fail(FHResponse pResponse) {
+                cloudResponse = pResponse;
+                cloudFailed = true;
+            }
+        };
+    }
+
+    private static MockResponse jsonResponse(String pBody) {
+        MockResponse response = new MockResponse();
+        response.addHeader("Content-Type", "application/json");
+        response.setBody(pBody);
+        return response;
+    }
+}
@@ -39,7 +39,9 @@ import cz.msebera.android.httpclient.message.BasicHeader;
 
 import static android.support.test.InstrumentationRegistry.getContext;
 import static junit.framework.Assert.assertEquals;
+import static junit.framework.Assert.assertFalse;
 import static junit.framework.Assert.assertNotNull;
+import static junit.framework.Assert.assertSame;
 import static junit.framework.Assert.assertTrue;
 
 @RunWith(AndroidJUnit4.class)
@@ -211,6 +213,35 @@ public class FHSDKTest {
         verifyCloudRequest("/v1/cloud/test", "PUT", headers, p);
     }
 
+    @Test
+    public void testDefaultParamsAreCachedUntilSessionChanges() throws Exception {
+        com.feedhenry.sdk.api2.FHAuthSession session = new com.feedhenry.sdk.api2.FHAuthSession(
+                DataManager.getInstance(), new com.feedhenry.sdk2.FHHttpClient());
+        session.save("firsttoken");
+
+        Header[] headers = FH.getDefaultParamsAsHeaders(null);
+        assertSame(headers, FH.getDefaultParamsAsHeaders(null));
+        assertEquals("firsttoken", FH.getDefaultParams().getString(FHAuthSession.SESSION_TOKEN_KEY));
+
+        // callers get their own copy of the params
+        FH.getDefaultParams().put("appid", "changed");
+        assertFalse("changed".equals(FH.getDefaultParams().getString("appid")));
+
+        session.save("secondtoken");
+
+        Header[] updated = FH.getDefaultParamsAsHeaders(new Header[]{new BasicHeader("testHeader", "testValue")});
+        assertEquals(headers.length + 1, updated.length);
+        assertEquals("secondtoken", FH.getDefaultParams().getString(FHAuthSession.SESSION_TOKEN_KEY));
+        boolean found = false;
+        for (Header header : updated) {
+            if (("X-FH-" + FHAuthSession.SESSION_TOKEN_KEY).equals(header.getName())) {
+                assertEquals("secondtoken", header.getValue());
+                found = true;
+            }
+        }
+        assertTrue(found);
+    }
+
     private void shutdownServer() throws Exception {
         mockWebServer.shutdown();
         // Git a little bit time to allow mockWebServer shutdown properly
@@ -0,0 +1,233 @@
+/**
+ * Copyright Red Hat, Inc, and individual contributors.
+ * <p>
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * <p>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.feedhenry.sdk.api2;
+
+import android.support.test.runner.AndroidJUnit4;
+
+import com.feedhenry.sdk.FH;
+import com.feedhenry.sdk.FHActCallback;
+import com.feedhenry.sdk.FHResponse;
+import com.feedhenry.sdk.FHStreamCallback;
+import com.feedhenry.sdk2.FHHttpClient;
+import com.squareup.okhttp.mockwebserver.MockResponse;
+import com.squareup.okhttp.mockwebserver.MockWebServer;
+import com.squareup.okhttp.mockwebserver.RecordedRequest;
+
+import cz.msebera.android.httpclient.Header;
+import cz.msebera.android.httpclient.client.HttpResponseException;
+
+import org.json.fh.JSONArray;
+import org.json.fh.JSONObject;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+import java.util.zip.InflaterInputStream;
+
+import okio.Buffer;
+
+import static android.support.test.InstrumentationRegistry.getContext;
+import static junit.framework.Assert.assertEquals;
+import static junit.framework.Assert.assertNull;
+
+@RunWith(AndroidJUnit4.class)
+public class FHHttpClientTest {
+
+    private static final String URL = "http://localhost:9000/mbaas/sync/test";
+
+    private MockWebServer mockWebServer;
+    private FHHttpClient httpClient;
+    private JSONObject resJson;
+
+    @Before
+    public void setUp() throws Exception {
+        mockWebServer = new MockWebServer();
+        mockWebServer.start(9000);
+        FH.init(getContext(), null);
+        httpClient = new FHHttpClient();
+        resJson = null;
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        mockWebServer.shutdown();
+        FH.stop();
+    }
+
+    @Test
+    public void testPostGzipCompressesLargeBodies() throws Exception {
+        mockWebServer.enqueue(jsonResponse("{'status':'ok'}"));
+        JSONObject params = largeSyncParams();
+
+        httpClient.post(URL, null, params, recordingCallback(), true, FHHttpClient.CONTENT_ENCODING_GZIP);
+
+        RecordedRequest request = mockWebServer.takeRequest();
+        assertEquals("gzip", request.getHeader("Content-Encoding"));
+        String body = readFully(new GZIPInputStream(request.getBody().inputStream()));
+        assertEquals(params.toString(), new JSONObject(body).toString());
+        assertEquals("ok", resJson.getString("status"));
+    }
+
+    @Test
+    public void testPostDeflateCompressesLargeBodies() throws Exception {
+        mockWebServer.enqueue(jsonResponse("{'status':'ok'}"));
+        JSONObject params = largeSyncParams();
+
+        httpClient.post(URL, null, params, recordingCallback(), true, FHHttpClient.CONTENT_ENCODING_DEFLATE);
+
+        RecordedRequest request = mockWebServer.takeRequest();
+        assertEquals("deflate", request.getHeader("Content-Encoding"));
+        String body = readFully(new InflaterInputStream(request.getBody().inputStream()));
+        assertEquals(params.toString(), new JSONObject(body).toString());
+    }
+
+    @Test
+    public void testSmallBodiesAreNotCompressed() throws Exception {
+        mockWebServer.enqueue(jsonResponse("{'status':'ok'}"));
+        JSONObject params = new JSONObject().put("fn", "sync");
+
+        httpClient.post(URL, null, params, recordingCallback(), true, FHHttpClient.CONTENT_ENCODING_GZIP);
+
+        RecordedRequest request = mockWebServer.takeRequest();
+        assertNull(request.getHeader("Content-Encoding"));
+        assertEquals(params.toString(), request.getBody().readUtf8());
+    }
+
+    @Test
+    public void testGzipResponsesAreNegotiatedAndInflated() throws Exception {
+        MockResponse response = new MockResponse();
+        response.addHeader("Content-Type", "application/json");
+        response.addHeader("Content-Encoding", "gzip");
+        response.setBody(gzip("{'status':'ok', 'hash':'abc'}"));
+        mockWebServer.enqueue(response);
+
+        httpClient.post(URL, null, new JSONObject(), recordingCallback(), true);
+
+        RecordedRequest request = mockWebServer.takeRequest();
+        assertEquals("gzip", request.getHeader("Accept-Encoding"));
+        assertNull(request.getHeader("Content-Encoding"));
+        assertEquals("abc", resJson.getString("hash"));
+    }
+
+    @Test
+    public void testStreamHandsTheBodyOverUnparsed() throws Exception {
+        StringBuilder body = new StringBuilder("[");
+        for (int i = 0; i < 5000; i++) {
+            body.append(i == 0 ? "" : ",").append("{\"id\":").append(i).append('}');
+        }
+        body.append(']');
+        mockWebServer.enqueue(jsonResponse(body.toString()));
+        final StringBuilder streamed = new StringBuilder();
+        final int[] status = new int[1];
+
+        httpClient.stream("GET", URL, null, new JSONObject().put("format", "full"), new FHStreamCallback() {
+            @Override
+            public void onResponse(int pStatusCode, Header[] pHeaders, InputStream pBody) throws IOException {
+                status[0] = pStatusCode;
+                streamed.append(readFully(pBody));
+            }
+
+            @Override
+            public void fail(FHResponse pResponse) {
+                status[0] = -1;
+            }
+        }, true);
+
+        assertEquals("/mbaas/sync/test?format=full", mockWebServer.takeRequest().getPath());
+        assertEquals(200, status[0]);
+        assertEquals(5000, new JSONArray(streamed.toString()).length());
+    }
+
+    @Test
+    public void testStreamReportsErrorStatuses() throws Exception {
+        mockWebServer.enqueue(new MockResponse().setResponseCode(500).setBody("{'error':'boom'}"));
+        final FHResponse[] failure = new FHResponse[1];
+
+        httpClient.stream("POST", URL, null, new JSONObject(), new FHStreamCallback() {
+            @Override
+            public void onResponse(int pStatusCode, Header[] pHeaders, InputStream pBody) throws IOException {
+                throw new AssertionError("error statuses must not be streamed");
+            }
+
+            @Override
+            public void fail(FHResponse pResponse) {
+                failure[0] = pResponse;
+            }
+        }, true);
+
+        assertEquals(500, ((HttpResponseException) failure[0].getError()).getStatusCode());
+        assertEquals("{'error':'boom'}", failure[0].getRawResponse());
+    }
+
+    private FHActCallback recordingCallback() {
+        return new FHActCallback() {
+            @Override
+            public void success(FHResponse pResponse) {
+                resJson = pResponse.getJson();
+            }
+
+            @Override
+            public void fail(FHResponse pResponse) {
+                resJson = null;
+            }
+        };
+    }
+
+    private static MockResponse jsonResponse(String pBody) {
+        MockResponse response = new MockResponse();
+        response.addHeader("Content-Type", "application/json");
+        response.setBody(pBody);
+        return response;
+    }
+
+    private static JSONObject largeSyncParams() {
+        JSONArray pending = new JSONArray();
+        for (int i = 0; i < 50; i++) {
+            JSONObject record = new JSONObject();
+            record.put("uid", "4a9e1a0c0b5e3c1f0c2b6f2f1d6a1d2f0c4e3a5" + (i % 10));
+            record.put("hash", "0e3f1b2a5d4c6b7a8f9e0d1c2b3a4f5e6d7c8b9" + (i % 10));
+            record.put("action", "update");
+            record.put("post", new JSONObject().put("name", "record " + i).put("status", "open"));
+            pending.put(record);
+        }
+        return new JSONObject().put("fn", "sync").put("dataset_id", "test").put("pending", pending);
+    }
+
+    private static Buffer gzip(String pBody) throws IOException {
+        ByteArrayOutputStream bos = new ByteArrayOutputStream();
+        GZIPOutputStream out = new GZIPOutputStream(bos);
+        out.write(pBody.getBytes("UTF-8"));
+        out.close();
+        return new Buffer().write(bos.toByteArray());
+    }
+
+    private static String readFully(InputStream pInput) throws IOException {
+        ByteArrayOutputStream bos = new ByteArrayOutputStream();
+        byte[] buffer = new byte[1024];
+        int read;
+        while ((read = pInput.read(buffer)) != -1) {
+            bos.write(buffer, 0, read);
+        }
+        pInput.close();
+        return bos.toString("UTF-8");
+    }
+}
@@ -0,0 +1,215 @@
+/**
+ * Copyright Red Hat, Inc, and individual contributors.
+ * <p>
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * <p>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.feedhenry.sdk.outbox;
+
+import android.support.test.runner.AndroidJUnit4;
+
+import com.feedhenry.sdk.FH;
+import com.feedhenry.sdk.FHResponse;
+import com.feedhenry.sdk.api.FHActRequest;
+import com.feedhenry.sdk.api.FHCloudRequest;
+import com.squareup.okhttp.mockwebserver.MockResponse;
+import com.squareup.okhttp.mockwebserver.MockWebServer;
+import com.squareup.okhttp.mockwebserver.RecordedRequest;
+
+import cz.msebera.android.httpclient.Header;
+import cz.msebera.android.httpclient.message.BasicHeader;
+
+import org.json.fh.JSONObject;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static android.support.test.InstrumentationRegistry.getContext;
+import static junit.framework.Assert.assertEquals;
+import static junit.framework.Assert.assertFalse;
+import static junit.framework.Assert.assertTrue;
+import static junit.framework.Assert.fail;
+
+@RunWith(AndroidJUnit4.class)
+public class FHOutboxTest {
+
+    private static final String URL = "http://localhost:9000/cloud/orders";
+
+    private MockWebServer mockWebServer;
+    private FHOutbox outbox;
+
+    @Before
+    public void setUp() throws Exception {
+        mockWebServer = new MockWebServer();
+        mockWebServer.start(9000);
+        FH.init(getContext(), null);
+        outbox = new FHOutbox(getContext());
+        outbox.clear();
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        outbox.setEnabled(false);
+        outbox.clear();
+        mockWebServer.shutdown();
+        FH.stop();
+    }
+
+    @Test
+    public void testRequestsAreDeduplicatedByIdempotencyKey() throws Exception {
+        JSONObject order = new JSONObject().put("item", "apple");
+
+        outbox.enqueue("POST", URL, null, order, "order-1", null);
+        outbox.enqueue("POST", URL, null, order, "order-1", null);
+        outbox.enqueue("POST", URL, null, new JSONObject().put("item", "pear"), null, null);
+        outbox.enqueue("post", URL, null, new JSONObject().put("item", "pear"), null, null);
+
+        // requests without a key are never merged, even when they are identical
+        assertEquals(3, outbox.size());
+        assertEquals("order-1", outbox.getRequests().get(0).getIdempotencyKey());
+        assertTrue(!outbox.getRequests().get(1).getIdempotencyKey().equals(outbox.getRequests().get(2).getIdempotencyKey()));
+    }
+
+    @Test
+    public void testOnlyRequestsChangingDataAreQueuedByDefault() throws Exception {
+        assertFalse(new FHActRequest(getContext()).isQueueWhenOffline());
+        assertTrue(new FHCloudRequest(getContext()).isQueueWhenOffline());
+    }
+
+    @Test
+    public void testQueueIsRestoredFromStorage() throws Exception {
+        JSONObject order = new JSONObject().put("item", "apple");
+        Header[] headers = FH.getDefaultParamsAsHeaders(new Header[] {
+            new BasicHeader("X-Trace", "abc"), new BasicHeader("X-FH-Custom", "def")});
+        outbox.enqueue("PUT", URL, headers, order, "order-1", null);
+
+        FHOutbox restored = new FHOutbox(getContext());
+
+        assertEquals(1, restored.size());
+        FHOutboxRequest request = restored.getRequests().get(0);
+        assertEquals("order-1", request.getIdempotencyKey());
+        assertEquals("PUT", request.getMethod());
+        assertEquals(URL, request.getUrl());
+        assertEquals(order.toString(), request.getParams().toString());
+        // the default params, with the session token, are not stored, other X-FH- headers are
+        assertEquals(2, request.getHeaders().length);
+        assertEquals("X-Trace", request.getHeaders()[0].getName());
+        assertEquals("X-FH-Custom", request.getHeaders()[1].getName());
+    }
+
+    @Test
+    public void testRequestsMustBeTriedAtLeastOnce() throws Exception {
+        try {
+            outbox.setMaxAttempts(0);
+            fail("A request can not be tried less than once");
+        } catch (IllegalArgumentException e) {
+            // expected
+        }
+    }
+
+    @Test
+    public void testSentRequestsCarryTheCurrentDefaultHeaders() throws Exception {
+        mockWebServer.enqueue(new MockResponse().setBody("{'status':'ok'}"));
+        outbox.enqueue("POST", URL, null, new JSONObject().put("item", "apple"), "order-1", null);
+
+        outbox.setEnabled(true);
+
+        RecordedRequest request = mockWebServer.takeRequest();
+        for (Header header : FH.getDefaultParamsAsHeaders(null)) {
+            assertEquals(header.getValue(), request.getHeader(header.getName()));
+        }
+    }
+
+    @Test
+    public void testFailedRequestsAreRetriedWhileOnline() throws Exception {
+        mockWebServer.enqueue(new MockResponse().setResponseCode(503).setBody("{'error':'busy'}"));
+        mockWebServer.enqueue(new MockResponse().setBody("{'status':'ok'}"));
+        outbox.enqueue("POST", URL, null, new JSONObject().put("item", "apple"), "order-1", null);
+        RecordingListener listener = new RecordingListener(1);
+        outbox.setListener(listener);
+
+        outbox.setEnabled(true);
+
+        assertTrue(listener.latch.await(5, TimeUnit.SECONDS));
+        assertEquals(1, listener.sent);
+        assertEquals(2, mockWebServer.getRequestCount());
+        assertEquals(0, outbox.size());
+    }
+
+    @Test
+    public void testFlushDeliversQueuedRequestsWithIdempotencyKey() throws Exception {
+        mockWebServer.enqueue(new MockResponse().setBody("{'status':'ok'}"));
+        mockWebServer.enqueue(new MockResponse().setBody("{'status':'ok'}"));
+        outbox.enqueue("POST", URL, null, new JSONObject().put("item", "apple"), "order-1", null);
+        outbox.enqueue("POST", URL, null, new JSONObject().put("item", "pear"), "order-2", null);
+        RecordingListener listener = new RecordingListener(2);
+        outbox.setListener(listener);
+        outbox.setMaxConcurrentRequests(1);
+
+        outbox.setEnabled(true);
+
+        RecordedRequest first = mockWebServer.takeRequest();
+        RecordedRequest second = mockWebServer.takeRequest();
+        assertEquals("order-1", first.getHeader(FHOutbox.IDEMPOTENCY_KEY_HEADER));
+        assertEquals("order-2", second.getHeader(FHOutbox.IDEMPOTENCY_KEY_HEADER));
+        assertTrue(listener.latch.await(5, TimeUnit.SECONDS));
+        assertEquals(2, listener.sent);
+        assertEquals(0, outbox.size());
+        assertEquals(0, new FHOutbox(getContext()).size());
+    }
+
+    @Test
+    public void testRejectedRequestsAreDropped() throws Exception {
+        mockWebServer.enqueue(new MockResponse().setResponseCode(400).setBody("{'error':'bad order'}"));
+        outbox.enqueue("POST", URL, null, new JSONObject().put("item", "apple"), "order-1", null);
+        RecordingListener listener = new RecordingListener(1);
+        outbox.setListener(listener);
+
+        outbox.setEnabled(true);
+
+        assertTrue(listener.latch.await(5, TimeUnit.SECONDS));
+        assertEquals(1, listener.failed);
+        assertEquals(1, mockWebServer.getRequestCount());
+        assertEquals(0, outbox.size());
+    }
+
+    private static class RecordingListener implements FHOutboxListener {
+
+        private final CountDownLatch latch;
+        private volatile int sent;
+        private volatile int failed;
+
+        RecordingListener(int pExpected) {
+            latch = new CountDownLatch(pExpected);
+        }
+
+        @Override
+        public void onRequestQueued(FHOutboxRequest pRequest) {
+        }
+
+        @Override
+        public void onRequestSent(FHOutboxRequest pRequest, FHResponse pResponse) {
+            sent++;
+            latch.countDown();
+        }
+
+        @Override
+        public void onRequestFailed(FHOutboxRequest pRequest, FHResponse pResponse) {
+            failed++;
+            latch.countDown();
+        }
+    }
+}
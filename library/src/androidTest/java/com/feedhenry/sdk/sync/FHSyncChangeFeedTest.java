@@ -0,0 +1,114 @@
+/**
+ * Copyright Red Hat, Inc, and individual contributors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.feedhenry.sdk.sync;
+
+import android.support.test.runner.AndroidJUnit4;
+
+import org.json.fh.JSONObject;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Executor;
+
+import static junit.framework.Assert.assertEquals;
+import static junit.framework.Assert.assertNull;
+import static junit.framework.Assert.assertTrue;
+
+@RunWith(AndroidJUnit4.class)
+public class FHSyncChangeFeedTest {
+
+    private static final Executor DIRECT = new Executor() {
+        @Override
+        public void execute(Runnable pCommand) {
+            pCommand.run();
+        }
+    };
+
+    @Test
+    public void testChangesToARecordAreMergedWithinABatch() throws Exception {
+        FHSyncChangeFeed feed = new FHSyncChangeFeed("feed");
+        List<List<FHSyncChange>> batches = recordBatches(feed, null, null);
+        FHSyncDataRecord first = record(1);
+        FHSyncDataRecord second = record(2);
+
+        feed.recordChange("created", null, first);
+        feed.recordChange("created", first, second);
+        feed.recordChange("cancelled", null, first);
+        feed.recordChange("cancelled", first, null);
+        feed.recordChange("reverted", first, second);
+        feed.recordChange("reverted", second, record(1));
+        feed.recordChange("updated", first, second);
+        feed.recordChange("deleted", first, second);
+        feed.recordChange("deleted", second, null);
+        feed.flush();
+        feed.flush();
+
+        assertEquals(1, batches.size());
+        List<FHSyncChange> changes = batches.get(0);
+        assertEquals(3, changes.size());
+        assertEquals(FHSyncChange.Type.CREATED, changes.get(0).getType());
+        assertEquals(2, changes.get(0).getAfter().optInt("value", -1));
+        assertEquals(FHSyncChange.Type.UPDATED, changes.get(1).getType());
+        assertEquals(1, changes.get(1).getBefore().optInt("value", -1));
+        assertEquals(FHSyncChange.Type.DELETED, changes.get(2).getType());
+        assertEquals(1, changes.get(2).getBefore().optInt("value", -1));
+        assertNull(changes.get(2).getAfter());
+    }
+
+    @Test
+    public void testSubscriptionsOnlyGetTheChangesTheyWatch() throws Exception {
+        FHSyncChangeFeed feed = new FHSyncChangeFeed("feed");
+        List<List<FHSyncChange>> byUid = recordBatches(feed, "watched", null);
+        List<List<FHSyncChange>> byRange = recordBatches(feed, null, new FHSyncQuery().whereBetween("value", 10, 20));
+        List<List<FHSyncChange>> cancelled = new ArrayList<>();
+        recordBatches(feed, null, null, cancelled).cancel();
+
+        feed.recordChange("watched", record(1), record(2));
+        feed.recordChange("entering", record(5), record(15));
+        feed.recordChange("leaving", record(15), record(25));
+        feed.recordChange("outside", record(25), record(30));
+        feed.flush();
+
+        assertEquals(1, byUid.get(0).size());
+        assertEquals("watched", byUid.get(0).get(0).getUid());
+        assertEquals(2, byRange.get(0).size());
+        assertEquals("entering", byRange.get(0).get(0).getUid());
+        assertEquals("leaving", byRange.get(0).get(1).getUid());
+        assertTrue(cancelled.isEmpty());
+    }
+
+    private static List<List<FHSyncChange>> recordBatches(FHSyncChangeFeed pFeed, String pUid, FHSyncQuery pQuery) {
+        List<List<FHSyncChange>> batches = new ArrayList<>();
+        recordBatches(pFeed, pUid, pQuery, batches);
+        return batches;
+    }
+
+    private static FHSyncSubscription recordBatches(
+        FHSyncChangeFeed pFeed, String pUid, FHSyncQuery pQuery, final List<List<FHSyncChange>> pBatches) {
+        return pFeed.subscribe(pUid, pQuery, DIRECT, new FHSyncChangeListener() {
+            @Override
+            public void onChanges(List<FHSyncChange> pChanges) {
+                pBatches.add(pChanges);
+            }
+        });
+    }
+
+    private static FHSyncDataRecord record(int pValue) {
+        return new FHSyncDataRecord(new JSONObject().put("value", pValue));
+    }
+}
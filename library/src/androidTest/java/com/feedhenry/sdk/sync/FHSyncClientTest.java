@@ -20,15 +20,22 @@ import android.support.test.runner.AndroidJUnit4;
 import com.feedhenry.sdk.FH;
 import com.squareup.okhttp.mockwebserver.MockWebServer;
 
+import org.json.fh.JSONObject;
 import org.junit.After;
 import org.junit.Before;
 import org.junit.Test;
 import org.junit.runner.RunWith;
 
 import java.io.IOException;
+import java.util.Arrays;
+import java.util.Map;
 import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
 
 import static android.support.test.InstrumentationRegistry.getContext;
+import static junit.framework.Assert.assertEquals;
+import static junit.framework.Assert.assertTrue;
 
 @RunWith(AndroidJUnit4.class)
 public class FHSyncClientTest {
@@ -67,6 +74,58 @@ public class FHSyncClientTest {
 
     }
 
+    @Test
+    public void testManageLoadsTheDatasetOffTheCallingThread() throws Exception {
+        getContext().deleteFile("loadedDataSet.sync.json");
+        FHSyncDataset stored = FHSyncContextStorage.newDataset(
+            getContext(), null, "loadedDataSet", new FHSyncConfig(), new JSONObject(), new JSONObject());
+        String uid = stored.createData(new JSONObject().put("name", "stored")).getString("uid");
+
+        FHSyncClient client = new FHSyncClient();
+        client.init(getContext(), new FHSyncConfig(), null);
+        try {
+            client.manage("loadedDataSet", null, new JSONObject());
+            // reads made while the dataset is loading wait for it
+            assertEquals("stored", client.read("loadedDataSet", uid).getJSONObject("data").getString("name"));
+            client.whenLoaded("loadedDataSet").get(5, TimeUnit.SECONDS);
+        } finally {
+            client.destroy();
+            getContext().deleteFile("loadedDataSet.sync.json");
+        }
+    }
+
+    @Test
+    public void testWarmUpLoadsStoredDatasetsForManage() throws Exception {
+        String[] dataIds = {"warmDataSet1", "warmDataSet2"};
+        String[] uids = new String[dataIds.length];
+        for (int i = 0; i < dataIds.length; i++) {
+            getContext().deleteFile(dataIds[i] + ".sync.json");
+            FHSyncDataset stored = FHSyncContextStorage.newDataset(
+                getContext(), null, dataIds[i], new FHSyncConfig(), new JSONObject(), new JSONObject());
+            uids[i] = stored.createData(new JSONObject().put("name", dataIds[i])).getString("uid");
+        }
+
+        FHSyncClient client = new FHSyncClient();
+        client.init(getContext(), new FHSyncConfig(), null);
+        try {
+            Map<String, Future<Long>> times = client.warmUp(Arrays.asList("warmDataSet1", "warmDataSet2", "unknown"));
+            assertEquals(2, times.size());
+            for (String dataId : dataIds) {
+                assertTrue(times.get(dataId).get(5, TimeUnit.SECONDS) >= 0);
+            }
+            assertTrue(client.warmUp(Arrays.asList(dataIds)).isEmpty());
+
+            client.manage("warmDataSet1", null, new JSONObject());
+            client.whenLoaded("warmDataSet1").get(5, TimeUnit.SECONDS);
+            assertEquals("warmDataSet1", client.read("warmDataSet1", uids[0]).getJSONObject("data").getString("name"));
+        } finally {
+            client.destroy();
+            for (String dataId : dataIds) {
+                getContext().deleteFile(dataId + ".sync.json");
+            }
+        }
+    }
+
     private static class LockingSyncListener implements FHSyncListener {
 
         final CountDownLatch latch;
@@ -15,6 +15,7 @@
  */
 package com.feedhenry.sdk.sync;
 
+import android.os.HandlerThread;
 import android.support.test.runner.AndroidJUnit4;
 
 import com.feedhenry.sdk.FH;
@@ -26,6 +27,7 @@ import org.junit.After;
 import org.junit.Before;
 import org.junit.Test;
 import org.junit.runner.RunWith;
+import org.mockito.ArgumentCaptor;
 import org.mockito.Mockito;
 import org.mockito.internal.invocation.InvocationMatcher;
 import org.mockito.internal.invocation.InvocationsFinder;
@@ -33,11 +35,22 @@ import org.mockito.internal.verification.api.VerificationData;
 import org.mockito.invocation.Invocation;
 import org.mockito.verification.VerificationMode;
 
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Executor;
 import java.util.concurrent.atomic.AtomicInteger;
 
 import static android.support.test.InstrumentationRegistry.getContext;
+import static junit.framework.Assert.assertEquals;
+import static junit.framework.Assert.assertFalse;
+import static junit.framework.Assert.assertNull;
+import static junit.framework.Assert.assertTrue;
+import static junit.framework.Assert.fail;
 
 @RunWith(AndroidJUnit4.class)
 public class FHSyncDatasetTest {
@@ -74,10 +87,12 @@ public class FHSyncDatasetTest {
         FHSyncClient client = new FHSyncClient();
         client.init(getContext(), config, listener);
         client.manage(DATASET_ID, null, new JSONObject());
+        client.whenLoaded(DATASET_ID).get();
         Map<String, FHSyncDataset> datasets = (Map<String, FHSyncDataset>) FHTestUtils.getPrivateField(client, "mDataSets");
         FHSyncDataset dataset = datasets.get(DATASET_ID);
         FHSyncDataset spy = Mockito.spy(dataset);
-        Mockito.doNothing().when(spy).startSyncLoop();
+        // no sync loop is started, so each sync frees its slot for the next one
+        Mockito.doReturn(false).when(spy).startSyncLoop();
         Mockito.doReturn(false).when(spy).isSyncRunning();
         Mockito.doReturn(true).when(spy).isSyncPending();
         Mockito.doReturn(null).when(spy).getSyncStart();
@@ -98,6 +113,306 @@ public class FHSyncDatasetTest {
         Mockito.verify(spy, countAtleast(invocations, runningInvocations + 1)).startSyncLoop();
     }
 
+    @Test
+    public void testSyncSlotIsFreedWhenNoSyncLoopStarts() throws Exception {
+        FHSyncConfig config = new FHSyncConfig();
+        config.setSyncFrequency(1);
+        config.setMaxConcurrentSyncs(1);
+        FHSyncClient client = new FHSyncClient();
+        client.init(getContext(), config, Mockito.mock(FHSyncListener.class));
+        client.manage(DATASET_ID, null, new JSONObject());
+        client.whenLoaded(DATASET_ID).get();
+        Map<String, FHSyncDataset> datasets = (Map<String, FHSyncDataset>) FHTestUtils.getPrivateField(client, "mDataSets");
+        FHSyncDataset spy = Mockito.spy(datasets.get(DATASET_ID));
+        Mockito.doReturn(false).when(spy).startSyncLoop();
+        Mockito.doReturn(false).when(spy).isSyncRunning();
+        Mockito.doReturn(true).when(spy).isSyncPending();
+        datasets.put(DATASET_ID, spy);
+        FHSyncExecutor executor = (FHSyncExecutor) FHTestUtils.getPrivateField(client, "mExecutor");
+
+        Thread.sleep(1500);
+        Mockito.verify(spy, Mockito.atLeastOnce()).startSyncLoop();
+        // a sync may be between its submission and its run, but none keeps the slot
+        long deadline = System.currentTimeMillis() + 2000;
+        while (executor.getActiveSyncCount() > 0 && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+        }
+        assertEquals(0, executor.getActiveSyncCount());
+        client.destroy();
+    }
+
+    @Test
+    public void testAdaptiveSyncFrequencyFollowsChanges() throws Exception {
+        getContext().deleteFile("adaptiveDataSet.sync.json");
+        FHSyncConfig config = new FHSyncConfig();
+        config.setSyncFrequency(10);
+        config.setAdaptiveSyncFrequency(true);
+        config.setMinSyncFrequency(5);
+        config.setMaxSyncFrequency(40);
+        FHSyncDataset dataset = FHSyncContextStorage.newDataset(
+            getContext(), null, "adaptiveDataSet", config, new JSONObject(), new JSONObject());
+        assertEquals(10, dataset.getEffectiveSyncFrequency());
+
+        dataset.handleSyncResponse(new JSONObject());
+        assertEquals(20, dataset.getEffectiveSyncFrequency());
+        dataset.handleSyncResponse(new JSONObject());
+        dataset.handleSyncResponse(new JSONObject());
+        assertEquals(40, dataset.getEffectiveSyncFrequency());
+
+        dataset.createData(new JSONObject().put("name", "local edit"));
+        assertEquals(5, dataset.getEffectiveSyncFrequency());
+
+        config.setAdaptiveSyncFrequency(false);
+        assertEquals(10, dataset.getEffectiveSyncFrequency());
+        getContext().deleteFile("adaptiveDataSet.sync.json");
+    }
+
+    @Test
+    public void testPendingRecordsAreSentInBoundedRounds() throws Exception {
+        getContext().deleteFile("batchedDataSet.sync.json");
+        FHSyncConfig config = new FHSyncConfig();
+        config.setMaxSyncBatchRecords(2);
+        FHSyncDataset dataset = FHSyncContextStorage.newDataset(
+            getContext(), null, "batchedDataSet", config, new JSONObject(), new JSONObject());
+        for (int i = 0; i < 5; i++) {
+            dataset.createData(new JSONObject().put("index", i));
+        }
+
+        assertEquals(2, dataset.prepareSyncLoop().getJSONArray("pending").length());
+        dataset.handleSyncResponse(new JSONObject());
+        assertTrue(dataset.isSyncPending());
+        assertEquals(2, dataset.prepareSyncLoop().getJSONArray("pending").length());
+        dataset.handleSyncResponse(new JSONObject());
+        assertTrue(dataset.isSyncPending());
+        assertEquals(1, dataset.prepareSyncLoop().getJSONArray("pending").length());
+        dataset.handleSyncResponse(new JSONObject());
+        assertFalse(dataset.isSyncPending());
+        getContext().deleteFile("batchedDataSet.sync.json");
+    }
+
+    @Test
+    public void testBulkChangesPersistAndNotifyOnce() throws Exception {
+        getContext().deleteFile("bulkDataSet.sync.json");
+        FHSyncListener listener = Mockito.mock(FHSyncListener.class);
+        HandlerThread notificationThread = new HandlerThread("bulkNotifications");
+        notificationThread.start();
+        FHSyncConfig config = new FHSyncConfig();
+        config.setNotifyLocalUpdateApplied(true);
+        FHSyncDataset dataset = FHSyncContextStorage.newDataset(
+            getContext(), new FHSyncNotificationHandler(notificationThread.getLooper(), listener),
+            "bulkDataSet", config, new JSONObject(), new JSONObject());
+
+        List<JSONObject> rows = new ArrayList<JSONObject>();
+        for (int i = 0; i < 50; i++) {
+            rows.add(new JSONObject().put("row", i % 10));
+        }
+        List<JSONObject> created = dataset.bulkCreateData(rows);
+
+        assertEquals(50, created.size());
+        assertEquals(50, dataset.listData().length());
+        assertEquals(7, created.get(17).getJSONObject("data").getInt("row"));
+        Map<String, JSONObject> updates = new LinkedHashMap<String, JSONObject>();
+        updates.put(created.get(0).getString("uid"), new JSONObject().put("row", 100));
+        updates.put("missing", new JSONObject().put("row", 101));
+        List<JSONObject> updated = dataset.bulkUpdateData(updates);
+        assertEquals(100, updated.get(0).getJSONObject("data").getInt("row"));
+        assertFalse(updated.get(1).has("uid"));
+        List<JSONObject> deleted = dataset.bulkDeleteData(Arrays.asList(created.get(1).getString("uid")));
+        assertEquals(1, deleted.get(0).getJSONObject("data").getInt("row"));
+        assertEquals(49, dataset.listData().length());
+
+        Thread.sleep(200);
+        ArgumentCaptor<NotificationMessage> notifications = ArgumentCaptor.forClass(NotificationMessage.class);
+        Mockito.verify(listener, Mockito.times(3)).onLocalUpdateApplied(notifications.capture());
+        JSONObject bulkCreate = new JSONObject(notifications.getAllValues().get(0).getMessage());
+        assertEquals("create", bulkCreate.getString("action"));
+        assertEquals(50, bulkCreate.getJSONArray("uids").length());
+        notificationThread.quit();
+        getContext().deleteFile("bulkDataSet.sync.json");
+    }
+
+    @Test
+    public void testQueriesUseIndexesKeptUpToDate() throws Exception {
+        getContext().deleteFile("indexedDataSet.sync.json");
+        FHSyncConfig config = new FHSyncConfig();
+        config.setIndexedFields(Arrays.asList("status", "customer.city"));
+        FHSyncDataset dataset = FHSyncContextStorage.newDataset(
+            getContext(), null, "indexedDataSet", config, new JSONObject(), new JSONObject());
+
+        List<JSONObject> rows = new ArrayList<JSONObject>();
+        for (int i = 0; i < 20; i++) {
+            rows.add(new JSONObject()
+                .put("status", i % 2 == 0 ? "open" : "closed")
+                .put("total", i)
+                .put("customer", new JSONObject().put("city", "city" + (i % 4))));
+        }
+        List<JSONObject> created = dataset.bulkCreateData(rows);
+        dataset.updateData(created.get(0).getString("uid"), rows.get(1));
+        dataset.deleteData(created.get(2).getString("uid"));
+
+        List<JSONObject> open = dataset.query(new FHSyncQuery()
+            .whereEquals("status", "open")
+            .whereBetween("customer.city", "city2", null)
+            .orderBy("total", false));
+        assertEquals(Arrays.asList(18, 14, 10, 6), totals(open));
+
+        List<JSONObject> limited = dataset.query(new FHSyncQuery()
+            .whereBetween("total", 5, 15)
+            .filter(new FHSyncQuery.Predicate() {
+                @Override
+                public boolean matches(String pUid, JSONObject pData) {
+                    return pData.getInt("total") % 5 != 0;
+                }
+            })
+            .orderBy("customer.city", true)
+            .limit(3));
+        // records with the same city come in uid order
+        assertEquals(new HashSet<Integer>(Arrays.asList(8, 12)), new HashSet<Integer>(totals(limited).subList(0, 2)));
+        assertEquals(9, (int) totals(limited).get(2));
+
+        dataset.setSyncConfig(new FHSyncConfig());
+        assertEquals(8, dataset.query(new FHSyncQuery().whereEquals("status", "open")).size());
+        getContext().deleteFile("indexedDataSet.sync.json");
+    }
+
+    @Test
+    public void testCursorPagesThroughLiveRecords() throws Exception {
+        getContext().deleteFile("cursorDataSet.sync.json");
+        FHSyncConfig config = new FHSyncConfig();
+        config.setIndexedFields(Arrays.asList("total", "customer.rank"));
+        FHSyncDataset dataset = FHSyncContextStorage.newDataset(
+            getContext(), null, "cursorDataSet", config, new JSONObject(), new JSONObject());
+        List<JSONObject> rows = new ArrayList<JSONObject>();
+        for (int i = 0; i < 25; i++) {
+            rows.add(new JSONObject().put("total", i).put("customer", new JSONObject().put("rank", 24 - i)));
+        }
+        List<JSONObject> created = dataset.bulkCreateData(rows);
+
+        FHSyncCursor byTotal = dataset.listCursor(10, "total", true);
+        List<FHSyncRecordView> page = byTotal.nextPage();
+        assertEquals(10, page.size());
+        assertEquals(9, page.get(9).optInt("total", -1));
+        dataset.deleteData(created.get(10).getString("uid"));
+        dataset.updateData(created.get(3).getString("uid"), new JSONObject().put("total", 30));
+        assertEquals(11, byTotal.nextPage().get(0).optInt("total", -1));
+        List<FHSyncRecordView> last = byTotal.nextPage();
+        assertEquals(5, last.size());
+        assertEquals(30, last.get(4).optInt("total", -1));
+        assertTrue(byTotal.nextPage().isEmpty());
+
+        FHSyncCursor byRank = dataset.listCursor(7, "customer.rank", false);
+        List<Integer> totals = new ArrayList<Integer>();
+        while (byRank.hasNext()) {
+            totals.add(byRank.next().optInt("total", -1));
+        }
+        assertEquals(24, totals.size());
+        assertEquals(30, (int) totals.get(23));
+        assertEquals(Arrays.asList(0, 1, 2, 4), totals.subList(0, 4));
+
+        Set<String> uids = new HashSet<String>();
+        FHSyncCursor byUid = dataset.listCursor(5, null, true);
+        String previous = "";
+        while (byUid.hasNext()) {
+            FHSyncRecordView view = byUid.next();
+            assertTrue(view.getUid().compareTo(previous) > 0);
+            previous = view.getUid();
+            uids.add(view.getUid());
+        }
+        assertEquals(24, uids.size());
+
+        try {
+            dataset.listCursor(5, "customer.name", true);
+            fail("Ordering by a field that is not indexed");
+        } catch (IllegalArgumentException e) {
+            assertTrue(e.getMessage().contains("customer.name"));
+        }
+        getContext().deleteFile("cursorDataSet.sync.json");
+    }
+
+    @Test
+    public void testLocalChangesAreFedToSubscriptions() throws Exception {
+        getContext().deleteFile("feedDataSet.sync.json");
+        FHSyncDataset dataset = FHSyncContextStorage.newDataset(
+            getContext(), null, "feedDataSet", new FHSyncConfig(), new JSONObject(), new JSONObject());
+        final List<List<FHSyncChange>> batches = new ArrayList<List<FHSyncChange>>();
+        dataset.subscribe(null, null, new Executor() {
+            @Override
+            public void execute(Runnable pCommand) {
+                pCommand.run();
+            }
+        }, new FHSyncChangeListener() {
+            @Override
+            public void onChanges(List<FHSyncChange> pChanges) {
+                batches.add(pChanges);
+            }
+        });
+
+        List<JSONObject> rows = new ArrayList<JSONObject>();
+        for (int i = 0; i < 5; i++) {
+            rows.add(new JSONObject().put("total", i));
+        }
+        List<JSONObject> created = dataset.bulkCreateData(rows);
+        String uid = created.get(0).getString("uid");
+        dataset.updateData(uid, new JSONObject().put("total", 10));
+        dataset.deleteData(uid);
+
+        assertEquals(3, batches.size());
+        assertEquals(5, batches.get(0).size());
+        assertEquals(FHSyncChange.Type.CREATED, batches.get(0).get(0).getType());
+        FHSyncChange update = batches.get(1).get(0);
+        assertEquals(FHSyncChange.Type.UPDATED, update.getType());
+        assertEquals(0, update.getBefore().optInt("total", -1));
+        assertEquals(10, update.getAfter().optInt("total", -1));
+        assertEquals(FHSyncChange.Type.DELETED, batches.get(2).get(0).getType());
+        assertEquals(uid, batches.get(2).get(0).getUid());
+        getContext().deleteFile("feedDataSet.sync.json");
+    }
+
+    @Test
+    public void testReceivedRecordsAreNotifiedAtOnce() throws Exception {
+        getContext().deleteFile("deltaDataSet.sync.json");
+        FHSyncListener listener = Mockito.mock(FHSyncListener.class);
+        HandlerThread notificationThread = new HandlerThread("deltaNotifications");
+        notificationThread.start();
+        FHSyncConfig config = new FHSyncConfig();
+        config.setNotifyDeltaReceived(true);
+        config.setCoalesceDeltaNotifications(true);
+        FHSyncDataset dataset = FHSyncContextStorage.newDataset(
+            getContext(), new FHSyncNotificationHandler(notificationThread.getLooper(), listener),
+            "deltaDataSet", config, new JSONObject(), new JSONObject());
+
+        JSONObject created = new JSONObject();
+        for (int i = 0; i < 1000; i++) {
+            created.put("uid" + i, new JSONObject().put("hash", "hash" + i).put("data", new JSONObject().put("row", i)));
+        }
+        dataset.handleSyncRecordsResponse(new JSONObject().put("create", created).put("hash", "created"));
+        JSONObject updated = new JSONObject()
+            .put("uid1", new JSONObject().put("hash", "changed").put("data", new JSONObject().put("row", -1)));
+        JSONObject deleted = new JSONObject().put("uid2", new JSONObject());
+        dataset.handleSyncRecordsResponse(new JSONObject().put("update", updated).put("delete", deleted));
+
+        Thread.sleep(200);
+        ArgumentCaptor<NotificationMessage> notifications = ArgumentCaptor.forClass(NotificationMessage.class);
+        Mockito.verify(listener, Mockito.times(2)).onDeltaReceived(notifications.capture());
+        assertNull(notifications.getAllValues().get(0).getUID());
+        JSONObject first = new JSONObject(notifications.getAllValues().get(0).getMessage());
+        assertEquals(1000, first.getJSONArray("create").length());
+        JSONObject second = new JSONObject(notifications.getAllValues().get(1).getMessage());
+        assertEquals("uid1", second.getJSONArray("update").getString(0));
+        assertEquals("uid2", second.getJSONArray("delete").getString(0));
+        assertFalse(second.has("create"));
+        notificationThread.quit();
+        getContext().deleteFile("deltaDataSet.sync.json");
+    }
+
+    private static List<Integer> totals(List<JSONObject> pRecords) {
+        List<Integer> totals = new ArrayList<Integer>();
+        for (JSONObject record : pRecords) {
+            totals.add(record.getJSONObject("data").getInt("total"));
+        }
+        return totals;
+    }
+
     private VerificationMode countAtleast(final AtomicInteger invocationsOut, final int numberOfInvocations) {
         return new VerificationMode() {
 
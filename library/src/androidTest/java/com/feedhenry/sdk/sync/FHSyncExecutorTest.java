@@ -0,0 +1,193 @@
+/**
+ * Copyright Red Hat, Inc, and individual contributors.
+ * <p>
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * <p>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.feedhenry.sdk.sync;
+
+import android.support.test.runner.AndroidJUnit4;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static junit.framework.Assert.assertEquals;
+import static junit.framework.Assert.assertFalse;
+import static junit.framework.Assert.assertTrue;
+
+@RunWith(AndroidJUnit4.class)
+public class FHSyncExecutorTest {
+
+    private FHSyncExecutor executor;
+
+    @Before
+    public void setUp() throws Exception {
+        executor = new FHSyncExecutor(4, 2);
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        executor.shutdown();
+    }
+
+    @Test
+    public void testTasksOfOneDatasetRunInOrderAndNeverOverlap() throws Exception {
+        final List<Integer> order = Collections.synchronizedList(new ArrayList<Integer>());
+        final AtomicInteger running = new AtomicInteger();
+        final AtomicInteger maxRunning = new AtomicInteger();
+        final CountDownLatch done = new CountDownLatch(20);
+        Executor lane = executor.getLane("dataset");
+
+        for (int i = 0; i < 20; i++) {
+            final int task = i;
+            lane.execute(new Runnable() {
+                @Override
+                public void run() {
+                    maxRunning.set(Math.max(maxRunning.get(), running.incrementAndGet()));
+                    order.add(task);
+                    sleep(5);
+                    running.decrementAndGet();
+                    done.countDown();
+                }
+            });
+        }
+
+        assertTrue(done.await(5, TimeUnit.SECONDS));
+        assertEquals(1, maxRunning.get());
+        for (int i = 0; i < 20; i++) {
+            assertEquals(i, order.get(i).intValue());
+        }
+    }
+
+    @Test
+    public void testDifferentDatasetsRunInParallel() throws Exception {
+        final CountDownLatch bothStarted = new CountDownLatch(2);
+        final CountDownLatch release = new CountDownLatch(1);
+        Runnable blocking = new Runnable() {
+            @Override
+            public void run() {
+                bothStarted.countDown();
+                await(release);
+            }
+        };
+
+        executor.getLane("first").execute(blocking);
+        executor.getLane("second").execute(blocking);
+
+        assertTrue(bothStarted.await(2, TimeUnit.SECONDS));
+        release.countDown();
+    }
+
+    @Test
+    public void testConcurrentSyncsAreCapped() throws Exception {
+        final CountDownLatch started = new CountDownLatch(3);
+        Runnable sync = new Runnable() {
+            @Override
+            public void run() {
+                started.countDown();
+            }
+        };
+
+        executor.submitSync("first", sync);
+        executor.submitSync("second", sync);
+        executor.submitSync("third", sync);
+
+        assertFalse(started.await(300, TimeUnit.MILLISECONDS));
+        assertEquals(1, started.getCount());
+        assertEquals(2, executor.getActiveSyncCount());
+
+        executor.syncFinished("first");
+
+        assertTrue(started.await(2, TimeUnit.SECONDS));
+        assertEquals(2, executor.getActiveSyncCount());
+    }
+
+    @Test
+    public void testSecondSyncOfADatasetWaitsForItsSlot() throws Exception {
+        final CountDownLatch second = new CountDownLatch(1);
+        executor.submitSync("first", new Runnable() {
+            @Override
+            public void run() {
+            }
+        });
+        executor.submitSync("first", new Runnable() {
+            @Override
+            public void run() {
+                second.countDown();
+            }
+        });
+
+        assertFalse(second.await(300, TimeUnit.MILLISECONDS));
+        assertEquals(1, executor.getActiveSyncCount());
+
+        executor.syncFinished("first");
+
+        assertTrue(second.await(2, TimeUnit.SECONDS));
+        assertEquals(1, executor.getActiveSyncCount());
+    }
+
+    @Test
+    public void testKeptSyncIsNotReplacedWhileWaiting() throws Exception {
+        final CountDownLatch kept = new CountDownLatch(1);
+        final CountDownLatch replaced = new CountDownLatch(1);
+        Runnable noop = new Runnable() {
+            @Override
+            public void run() {
+            }
+        };
+        executor.submitSync("first", noop);
+        executor.submitSync("second", noop);
+
+        executor.submitSync("third", new Runnable() {
+            @Override
+            public void run() {
+                kept.countDown();
+            }
+        }, true);
+        executor.submitSync("third", new Runnable() {
+            @Override
+            public void run() {
+                replaced.countDown();
+            }
+        });
+        executor.syncFinished("first");
+
+        assertTrue(kept.await(2, TimeUnit.SECONDS));
+        assertFalse(replaced.await(300, TimeUnit.MILLISECONDS));
+    }
+
+    private static void sleep(long pMillis) {
+        try {
+            Thread.sleep(pMillis);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private static void await(CountDownLatch pLatch) {
+        try {
+            pLatch.await(2, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
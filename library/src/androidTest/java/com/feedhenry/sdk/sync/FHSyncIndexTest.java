@@ -0,0 +1,72 @@
+/**
+ * Copyright Red Hat, Inc, and individual contributors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.feedhenry.sdk.sync;
+
+import android.support.test.runner.AndroidJUnit4;
+
+import org.json.fh.JSONObject;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashSet;
+
+import static junit.framework.Assert.assertEquals;
+import static junit.framework.Assert.assertTrue;
+
+@RunWith(AndroidJUnit4.class)
+public class FHSyncIndexTest {
+
+    @Test
+    public void testValuesAreOrderedByType() throws Exception {
+        FHSyncIndex index = new FHSyncIndex("customer.rank");
+        index.put("string", record("b"));
+        index.put("double", record(2.5));
+        index.put("int", record(2));
+        index.put("long", record(10L));
+        index.put("bool", record(true));
+        index.put("missing", new JSONObject().put("customer", new JSONObject()));
+
+        assertEquals(Arrays.asList("missing", "bool", "int", "double", "long", "string"), index.getOrderedUids(true));
+        assertEquals(Arrays.asList("string", "long", "double", "int", "bool", "missing"), index.getOrderedUids(false));
+    }
+
+    @Test
+    public void testEqualityAndRangesFollowUpdates() throws Exception {
+        FHSyncIndex index = new FHSyncIndex("customer.rank");
+        for (int i = 0; i < 10; i++) {
+            index.put("uid" + i, record(i));
+        }
+
+        assertEquals(Collections.singleton("uid3"), index.getEqual(3L));
+        assertEquals(new LinkedHashSet<>(Arrays.asList("uid2", "uid3", "uid4")), index.getRange(2, 4.0));
+        assertEquals(new LinkedHashSet<>(Arrays.asList("uid8", "uid9")), index.getRange(8, null));
+
+        index.put("uid3", record(42));
+        index.remove("uid8");
+        index.put("uid9", null);
+
+        assertTrue(index.getEqual(3).isEmpty());
+        assertEquals(Collections.singleton("uid3"), index.getRange(8, null));
+        assertEquals(8, index.size());
+        assertTrue(index.getEqual(null).isEmpty());
+    }
+
+    private static JSONObject record(Object pRank) {
+        return new JSONObject().put("customer", new JSONObject().put("rank", pRank));
+    }
+}
@@ -0,0 +1,98 @@
+/**
+ * Copyright Red Hat, Inc, and individual contributors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.feedhenry.sdk.sync;
+
+import android.support.test.runner.AndroidJUnit4;
+
+import com.feedhenry.sdk.FH;
+
+import org.json.fh.JSONObject;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Mockito;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Executor;
+
+import static android.support.test.InstrumentationRegistry.getContext;
+import static junit.framework.Assert.assertEquals;
+import static junit.framework.Assert.assertFalse;
+import static junit.framework.Assert.assertTrue;
+
+@RunWith(AndroidJUnit4.class)
+public class FHSyncListenerRegistryTest {
+
+    @Test
+    public void testEventsAreFilteredBeforeDispatch() throws Exception {
+        FHSyncListenerRegistry registry = new FHSyncListenerRegistry();
+        FHSyncListener all = Mockito.mock(FHSyncListener.class);
+        FHSyncListener ordersOnly = Mockito.mock(FHSyncListener.class);
+        RecordingExecutor executor = new RecordingExecutor();
+        registry.add(all, NotificationMessage.maskOf(NotificationMessage.SYNC_COMPLETE_CODE), null, null);
+        registry.add(ordersOnly, NotificationMessage.ALL_EVENTS_MASK, "orders", executor);
+
+        assertFalse(registry.wants("customers", NotificationMessage.DELTA_RECEIVED_CODE));
+        assertTrue(registry.wants("orders", NotificationMessage.DELTA_RECEIVED_CODE));
+        assertTrue(registry.wants("customers", NotificationMessage.SYNC_COMPLETE_CODE));
+
+        registry.dispatch("customers", NotificationMessage.SYNC_COMPLETE_CODE,
+            NotificationMessage.getMessage("customers", null, NotificationMessage.SYNC_COMPLETE_CODE, "online"));
+        registry.dispatch("orders", NotificationMessage.DELTA_RECEIVED_CODE,
+            NotificationMessage.getMessage("orders", "uid", NotificationMessage.DELTA_RECEIVED_CODE, "create"));
+
+        Mockito.verify(all).onSyncCompleted(Mockito.any(NotificationMessage.class));
+        Mockito.verifyNoMoreInteractions(all);
+        Mockito.verifyZeroInteractions(ordersOnly);
+        assertEquals(1, executor.mTasks.size());
+        executor.mTasks.get(0).run();
+        Mockito.verify(ordersOnly).onDeltaReceived(Mockito.any(NotificationMessage.class));
+
+        registry.remove(ordersOnly);
+        assertFalse(registry.wants("orders", NotificationMessage.DELTA_RECEIVED_CODE));
+    }
+
+    @Test
+    public void testDatasetNotifiesRegisteredListenersRegardlessOfConfig() throws Exception {
+        FH.init(getContext(), null);
+        getContext().deleteFile("registryDataSet.sync.json");
+        FHSyncListenerRegistry registry = new FHSyncListenerRegistry();
+        FHSyncListener listener = Mockito.mock(FHSyncListener.class);
+        registry.add(listener, NotificationMessage.maskOf(NotificationMessage.LOCAL_UPDATE_APPLIED_CODE), null, null);
+        FHSyncDataset dataset = FHSyncContextStorage.newDataset(
+            getContext(), null, "registryDataSet", new FHSyncConfig(), new JSONObject(), new JSONObject());
+        dataset.setListenerRegistry(registry);
+
+        dataset.createData(new JSONObject().put("name", "registered"));
+
+        ArgumentCaptor<NotificationMessage> notification = ArgumentCaptor.forClass(NotificationMessage.class);
+        Mockito.verify(listener).onLocalUpdateApplied(notification.capture());
+        assertEquals("registryDataSet", notification.getValue().getDataId());
+        assertEquals("create", notification.getValue().getMessage());
+        getContext().deleteFile("registryDataSet.sync.json");
+    }
+
+    private static class RecordingExecutor implements Executor {
+
+        final List<Runnable> mTasks = new ArrayList<>();
+
+        @Override
+        public void execute(Runnable pCommand) {
+            mTasks.add(pCommand);
+        }
+    }
+}
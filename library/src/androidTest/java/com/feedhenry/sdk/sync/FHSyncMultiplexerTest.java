@@ -0,0 +1,164 @@
+/**
+ * Copyright Red Hat, Inc, and individual contributors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.feedhenry.sdk.sync;
+
+import android.support.test.runner.AndroidJUnit4;
+
+import com.feedhenry.sdk.FH;
+import com.squareup.okhttp.mockwebserver.MockResponse;
+import com.squareup.okhttp.mockwebserver.MockWebServer;
+import com.squareup.okhttp.mockwebserver.RecordedRequest;
+
+import org.json.fh.JSONObject;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+import static android.support.test.InstrumentationRegistry.getContext;
+import static junit.framework.Assert.assertEquals;
+import static junit.framework.Assert.assertFalse;
+import static junit.framework.Assert.assertNotNull;
+import static junit.framework.Assert.assertNull;
+import static junit.framework.Assert.assertTrue;
+
+@RunWith(AndroidJUnit4.class)
+public class FHSyncMultiplexerTest {
+
+    private MockWebServer mockWebServer;
+    private FHSyncExecutor executor;
+    private FHSyncDataset datasetA;
+    private FHSyncDataset datasetB;
+
+    @Before
+    public void setUp() throws Exception {
+        mockWebServer = new MockWebServer();
+        mockWebServer.start(9000);
+        FH.init(getContext(), null);
+        executor = new FHSyncExecutor(2, 4);
+        datasetA = createDataset("multiplexedA");
+        datasetB = createDataset("multiplexedB");
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        executor.shutdown();
+        mockWebServer.shutdown();
+        FH.stop();
+        getContext().deleteFile("multiplexedA.sync.json");
+        getContext().deleteFile("multiplexedB.sync.json");
+    }
+
+    @Test
+    public void testDueDatasetsShareOneRequest() throws Exception {
+        JSONObject responses = new JSONObject()
+            .put("multiplexedA", new JSONObject())
+            .put("multiplexedB", new JSONObject());
+        mockWebServer.enqueue(jsonResponse(new JSONObject().put("datasets", responses)));
+        FHSyncMultiplexer multiplexer = new FHSyncMultiplexer(executor, null);
+
+        multiplexer.sync(Arrays.asList(datasetA, datasetB));
+
+        RecordedRequest request = mockWebServer.takeRequest(5, TimeUnit.SECONDS);
+        assertEquals("/mbaas/sync", request.getPath());
+        JSONObject datasets = new JSONObject(request.getBody().readUtf8()).getJSONObject("datasets");
+        assertEquals("sync", datasets.getJSONObject("multiplexedA").getString("fn"));
+        assertEquals("multiplexedB", datasets.getJSONObject("multiplexedB").getString("dataset_id"));
+        awaitSyncEnd(datasetA);
+        awaitSyncEnd(datasetB);
+        assertFalse(datasetA.isSyncRunning());
+        assertFalse(datasetB.isSyncRunning());
+        assertNull(mockWebServer.takeRequest(200, TimeUnit.MILLISECONDS));
+        assertEquals(0, executor.getActiveSyncCount());
+    }
+
+    @Test
+    public void testUnsupportedCloudFallsBackToRequestsPerDataset() throws Exception {
+        mockWebServer.enqueue(new MockResponse().setResponseCode(404));
+        mockWebServer.enqueue(jsonResponse(new JSONObject()));
+        mockWebServer.enqueue(jsonResponse(new JSONObject()));
+        FHSyncMultiplexer multiplexer = new FHSyncMultiplexer(executor, null);
+
+        multiplexer.sync(Arrays.asList(datasetA, datasetB));
+
+        assertEquals("/mbaas/sync", mockWebServer.takeRequest(5, TimeUnit.SECONDS).getPath());
+        Set<String> paths = new HashSet<String>();
+        paths.add(mockWebServer.takeRequest(5, TimeUnit.SECONDS).getPath());
+        paths.add(mockWebServer.takeRequest(5, TimeUnit.SECONDS).getPath());
+        assertTrue(paths.contains("/mbaas/sync/multiplexedA"));
+        assertTrue(paths.contains("/mbaas/sync/multiplexedB"));
+        assertFalse(multiplexer.isSupported());
+        awaitSyncEnd(datasetA);
+        awaitSyncEnd(datasetB);
+        awaitNoActiveSyncs();
+    }
+
+    @Test
+    public void testDatasetMissingFromTheResponseSyncsOnItsOwn() throws Exception {
+        JSONObject responses = new JSONObject().put("multiplexedA", new JSONObject());
+        mockWebServer.enqueue(jsonResponse(new JSONObject().put("datasets", responses)));
+        mockWebServer.enqueue(jsonResponse(new JSONObject()));
+        FHSyncMultiplexer multiplexer = new FHSyncMultiplexer(executor, null);
+
+        multiplexer.sync(Arrays.asList(datasetA, datasetB));
+
+        assertEquals("/mbaas/sync", mockWebServer.takeRequest(5, TimeUnit.SECONDS).getPath());
+        assertEquals("/mbaas/sync/multiplexedB", mockWebServer.takeRequest(5, TimeUnit.SECONDS).getPath());
+        awaitSyncEnd(datasetA);
+        awaitSyncEnd(datasetB);
+        assertTrue(multiplexer.isSupported());
+        awaitNoActiveSyncs();
+    }
+
+    private FHSyncDataset createDataset(String pDataId) {
+        getContext().deleteFile(pDataId + ".sync.json");
+        FHSyncConfig config = new FHSyncConfig();
+        config.setNotifySyncStarted(false);
+        config.setNotifySyncComplete(false);
+        FHSyncDataset dataset = FHSyncContextStorage.newDataset(
+            getContext(), null, pDataId, config, new JSONObject(), new JSONObject());
+        dataset.setExecutor(executor);
+        return dataset;
+    }
+
+    private static void awaitSyncEnd(FHSyncDataset pDataset) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + 5000;
+        while (pDataset.getSyncEnd() == null && System.currentTimeMillis() < deadline) {
+            Thread.sleep(20);
+        }
+        assertNotNull(pDataset.getSyncEnd());
+    }
+
+    private void awaitNoActiveSyncs() throws InterruptedException {
+        long deadline = System.currentTimeMillis() + 5000;
+        while (executor.getActiveSyncCount() > 0 && System.currentTimeMillis() < deadline) {
+            Thread.sleep(20);
+        }
+        assertEquals(0, executor.getActiveSyncCount());
+    }
+
+    private static MockResponse jsonResponse(JSONObject pBody) {
+        MockResponse response = new MockResponse();
+        response.addHeader("Content-Type", "application/json");
+        response.setBody(pBody.toString());
+        return response;
+    }
+}
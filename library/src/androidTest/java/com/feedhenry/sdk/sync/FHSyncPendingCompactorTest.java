@@ -0,0 +1,177 @@
+/**
+ * Copyright Red Hat, Inc, and individual contributors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.feedhenry.sdk.sync;
+
+import android.support.test.runner.AndroidJUnit4;
+
+import org.json.fh.JSONObject;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static junit.framework.Assert.assertEquals;
+import static junit.framework.Assert.assertNull;
+import static junit.framework.Assert.assertTrue;
+
+@RunWith(AndroidJUnit4.class)
+public class FHSyncPendingCompactorTest {
+
+    private static final String UID = "record1";
+
+    @Test
+    public void testCreateThenUpdatesBecomesOneCreate() throws Exception {
+        String[][] edits = {{"create", null, "v1"}, {"update", "v1", "v2"}, {"update", "v2", "v3"}};
+        FHSyncPendingQueue queue = compactedQueue(edits);
+
+        assertEquals(1, queue.size());
+        FHSyncPendingRecord create = queue.get("h0");
+        assertEquals("create", create.getAction());
+        assertEquals("v3", create.getPostData().getData().getString("value"));
+        assertEquivalent(edits, queue);
+    }
+
+    @Test
+    public void testUpdatesBecomeOneUpdateFromTheFirstPreData() throws Exception {
+        String[][] edits = {{"update", "v0", "v1"}, {"update", "v1", "v2"}, {"update", "v2", "v3"}};
+        FHSyncPendingQueue queue = compactedQueue(edits);
+
+        assertEquals(1, queue.size());
+        FHSyncPendingRecord update = queue.get("h0");
+        assertEquals("update", update.getAction());
+        assertEquals("v0", update.getPreData().getData().getString("value"));
+        assertEquals("v3", update.getPostData().getData().getString("value"));
+        assertEquivalent(edits, queue);
+    }
+
+    @Test
+    public void testUpdatesThenDeleteBecomeOneDeleteOfTheFirstPreData() throws Exception {
+        String[][] edits = {{"update", "v0", "v1"}, {"update", "v1", "v2"}, {"delete", "v2", null}};
+        FHSyncPendingQueue queue = compactedQueue(edits);
+
+        assertEquals(1, queue.size());
+        FHSyncPendingRecord delete = queue.get("h0");
+        assertEquals("delete", delete.getAction());
+        assertEquals("v0", delete.getPreData().getData().getString("value"));
+        assertNull(delete.getPostData());
+        assertEquivalent(edits, queue);
+    }
+
+    @Test
+    public void testCreateThenDeleteCancelsOut() throws Exception {
+        String[][] edits = {{"create", null, "v1"}, {"update", "v1", "v2"}, {"delete", "v2", null}};
+        FHSyncPendingQueue queue = new FHSyncPendingQueue();
+        addEdits(queue, edits);
+
+        Map<String, String> removed = FHSyncPendingCompactor.compact(queue);
+
+        assertTrue(queue.isEmpty());
+        assertEquals(3, removed.size());
+        assertNull(removed.get("h0"));
+        assertNull(removed.get("h1"));
+        assertEquivalent(edits, queue);
+    }
+
+    @Test
+    public void testInFlightRecordsAreLeftAlone() throws Exception {
+        String[][] edits = {{"update", "v0", "v1"}, {"update", "v1", "v2"}, {"update", "v2", "v3"}};
+        FHSyncPendingQueue queue = new FHSyncPendingQueue();
+        addEdits(queue, edits);
+        queue.setInFlight("h0", true);
+        queue.setWaitingFor("h1", "h0");
+        queue.setWaitingFor("h2", "h1");
+
+        Map<String, String> removed = FHSyncPendingCompactor.compact(queue);
+
+        assertEquals(2, queue.size());
+        assertEquals("h1", removed.get("h2"));
+        assertEquals("v1", queue.get("h0").getPostData().getData().getString("value"));
+        assertEquals("v1", queue.get("h1").getPreData().getData().getString("value"));
+        assertEquals("v3", queue.get("h1").getPostData().getData().getString("value"));
+        assertEquals("h0", queue.get("h1").getWaitingFor());
+        assertEquivalent(edits, queue);
+    }
+
+    /**
+     * Applies the edits one by one, then the compacted pending records, to the same server state and
+     * expects the same outcome.
+     */
+    private static void assertEquivalent(String[][] pEdits, FHSyncPendingQueue pCompacted) throws Exception {
+        FHSyncPendingQueue original = new FHSyncPendingQueue();
+        addEdits(original, pEdits);
+        boolean created = "create".equals(pEdits[0][0]);
+        assertEquals(apply(created, inOrder(original)), apply(created, inOrder(pCompacted)));
+    }
+
+    private static FHSyncPendingQueue compactedQueue(String[][] pEdits) throws Exception {
+        FHSyncPendingQueue queue = new FHSyncPendingQueue();
+        addEdits(queue, pEdits);
+        FHSyncPendingCompactor.compact(queue);
+        return queue;
+    }
+
+    private static void addEdits(FHSyncPendingQueue pQueue, String[][] pEdits) throws Exception {
+        for (int i = 0; i < pEdits.length; i++) {
+            FHSyncPendingRecord record = new FHSyncPendingRecord();
+            record.setUid(UID);
+            record.setAction(pEdits[i][0]);
+            record.setTimestamp(1000 + i);
+            if (pEdits[i][1] != null) {
+                record.setPreData(data(pEdits[i][1]));
+            }
+            if (pEdits[i][2] != null) {
+                record.setPostData(data(pEdits[i][2]));
+            }
+            pQueue.put("h" + i, record);
+        }
+    }
+
+    private static List<FHSyncPendingRecord> inOrder(FHSyncPendingQueue pQueue) {
+        List<FHSyncPendingRecord> records = new ArrayList<FHSyncPendingRecord>();
+        for (int i = 0; i < 10; i++) {
+            FHSyncPendingRecord record = pQueue.get("h" + i);
+            if (record != null) {
+                records.add(record);
+            }
+        }
+        return records;
+    }
+
+    private static Map<String, String> apply(boolean pCreated, List<FHSyncPendingRecord> pRecords) {
+        Map<String, String> server = new HashMap<String, String>();
+        if (!pCreated) {
+            server.put(UID, "v0");
+        }
+        for (FHSyncPendingRecord record : pRecords) {
+            if ("delete".equals(record.getAction())) {
+                assertEquals(record.getPreData().getData().getString("value"), server.remove(UID));
+            } else {
+                if ("update".equals(record.getAction())) {
+                    assertEquals(record.getPreData().getData().getString("value"), server.get(UID));
+                }
+                server.put(UID, record.getPostData().getData().getString("value"));
+            }
+        }
+        return server;
+    }
+
+    private static FHSyncDataRecord data(String pValue) {
+        return new FHSyncDataRecord(new JSONObject().put("value", pValue));
+    }
+}
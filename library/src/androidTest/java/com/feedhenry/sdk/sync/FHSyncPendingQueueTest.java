@@ -0,0 +1,101 @@
+/**
+ * Copyright Red Hat, Inc, and individual contributors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.feedhenry.sdk.sync;
+
+import android.support.test.runner.AndroidJUnit4;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.util.Arrays;
+import java.util.Collections;
+
+import static junit.framework.Assert.assertEquals;
+import static junit.framework.Assert.assertFalse;
+import static junit.framework.Assert.assertNull;
+import static junit.framework.Assert.assertTrue;
+
+@RunWith(AndroidJUnit4.class)
+public class FHSyncPendingQueueTest {
+
+    @Test
+    public void testStateIndexesFollowStateChanges() throws Exception {
+        FHSyncPendingQueue queue = new FHSyncPendingQueue();
+        queue.put("h1", pending("uid1"));
+        queue.put("h2", pending("uid2"));
+        queue.put("h3", pending("uid3"));
+
+        queue.setInFlight("h1", true);
+        queue.setInFlight("h2", true);
+        queue.setCrashed("h2", true);
+        queue.setWaitingFor("h3", "h1");
+
+        assertEquals(Arrays.asList("h1", "h2"), queue.getInFlightHashes());
+        assertEquals(Collections.singletonList("h2"), queue.getCrashedHashes());
+        assertEquals(Collections.singletonList("h3"), queue.getDelayedHashes());
+        assertTrue(queue.getReadyHashes().isEmpty());
+        assertTrue(queue.get("h3").isDelayed());
+        assertEquals(Collections.singletonList("h3"), queue.getDependentHashes("h1"));
+
+        queue.setWaitingFor("h3", null);
+        assertEquals(Collections.singletonList("h3"), queue.getReadyHashes());
+        assertFalse(queue.get("h3").isDelayed());
+        assertTrue(queue.getDependentHashes("h1").isEmpty());
+    }
+
+    @Test
+    public void testRemovedSlotsAreReusedWithCleanState() throws Exception {
+        FHSyncPendingQueue queue = new FHSyncPendingQueue();
+        queue.put("h1", pending("uid1"));
+        queue.setInFlight("h1", true);
+        queue.setWaitingFor("h1", "h0");
+
+        assertEquals("uid1", queue.remove("h1").getUid());
+        queue.put("h2", pending("uid2"));
+
+        assertNull(queue.get("h1"));
+        assertEquals(1, queue.size());
+        assertEquals(Collections.singletonList("h2"), queue.getReadyHashes());
+        assertTrue(queue.getInFlightHashes().isEmpty());
+        assertTrue(queue.getDependentHashes("h0").isEmpty());
+        assertFalse(queue.hasUid("uid1"));
+    }
+
+    @Test
+    public void testUidChangesMoveThePendingChain() throws Exception {
+        FHSyncPendingQueue queue = new FHSyncPendingQueue();
+        queue.put("create", pending("localUid"));
+        queue.put("update", pending("localUid"));
+        queue.put("other", pending("otherUid"));
+
+        assertEquals(Arrays.asList("create", "update"), queue.getHashesForUid("localUid"));
+        queue.changeUid("localUid", "serverUid");
+
+        assertFalse(queue.hasUid("localUid"));
+        assertEquals(Arrays.asList("create", "update"), queue.getHashesForUid("serverUid"));
+        assertEquals("serverUid", queue.get("update").getUid());
+        assertTrue(queue.isPending("serverUid"));
+        assertTrue(queue.isPending("other"));
+        assertFalse(queue.isPending("localUid"));
+    }
+
+    private static FHSyncPendingRecord pending(String pUid) {
+        FHSyncPendingRecord record = new FHSyncPendingRecord();
+        record.setUid(pUid);
+        record.setAction("update");
+        return record;
+    }
+}
@@ -22,6 +22,7 @@ import org.junit.Test;
 import org.junit.runner.RunWith;
 
 import static junit.framework.Assert.assertEquals;
+import static junit.framework.Assert.assertFalse;
 
 @RunWith(AndroidJUnit4.class)
 public class FHSyncPendingRecordTest {
@@ -37,4 +38,27 @@ public class FHSyncPendingRecordTest {
         assertEquals(pending, another);
     }
 
+    @Test
+    public void testUpdatesAreStoredAndSentAsPatches() throws Exception {
+        JSONObject pre = new JSONObject().put("name", "record").put("description", "a long description").put("count", 1);
+        JSONObject post = new JSONObject(pre.toString()).put("count", 2);
+        FHSyncPendingRecord pending = new FHSyncPendingRecord();
+        pending.setAction("update");
+        pending.setUid("uid");
+        pending.setPreData(new FHSyncDataRecord(pre));
+        pending.setPostData(new FHSyncDataRecord(post));
+
+        JSONObject stored = pending.getStorageJSON();
+        assertFalse(stored.has("post"));
+        assertEquals(new JSONObject().put("count", 2).toString(), stored.getJSONObject("postPatch").toString());
+        FHSyncPendingRecord restored = FHSyncPendingRecord.fromJSON(stored);
+        assertEquals(pending, restored);
+        assertEquals(post.toString(), restored.getPostData().getData().toString());
+
+        JSONObject sent = pending.getPatchJSON();
+        assertFalse(sent.has("post"));
+        assertEquals(pending.getPreData().getHashValue(), sent.getString("preHash"));
+        assertEquals(2, sent.getJSONObject("patch").getInt("count"));
+    }
+
 }
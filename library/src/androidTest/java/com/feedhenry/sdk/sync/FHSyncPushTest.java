@@ -0,0 +1,122 @@
+/**
+ * Copyright Red Hat, Inc, and individual contributors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.feedhenry.sdk.sync;
+
+import android.support.test.runner.AndroidJUnit4;
+
+import com.feedhenry.sdk.FH;
+
+import org.json.fh.JSONObject;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.Mockito;
+
+import java.util.Map;
+
+import static android.support.test.InstrumentationRegistry.getContext;
+import static junit.framework.Assert.assertEquals;
+
+@RunWith(AndroidJUnit4.class)
+public class FHSyncPushTest {
+
+    private static final String DATASET_ID = "pushDataSet";
+
+    private FHSyncClient client;
+    private FHSyncLocalPushDispatcher dispatcher;
+
+    @Before
+    public void setUp() throws Exception {
+        System.setProperty("dexmaker.dexcache", getContext().getCacheDir().getPath());
+        FH.init(getContext(), null);
+        FHSyncConfig config = new FHSyncConfig();
+        config.setSyncFrequency(10);
+        config.setPushSafetySyncFrequency(900);
+        client = new FHSyncClient();
+        client.init(getContext(), config, null);
+        client.manage(DATASET_ID, null, new JSONObject());
+        client.whenLoaded(DATASET_ID).get();
+        client.stop(DATASET_ID);
+        dispatcher = new FHSyncLocalPushDispatcher();
+        client.setPushDispatcher(dispatcher);
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        client.destroy();
+        getContext().deleteFile(DATASET_ID + ".sync.json");
+    }
+
+    @Test
+    public void testRegisteredDatasetPollsAtTheSafetyInterval() throws Exception {
+        assertEquals(10, client.getEffectiveSyncFrequencies().get(DATASET_ID).intValue());
+
+        client.registerPushSync(DATASET_ID);
+        assertEquals(900, client.getEffectiveSyncFrequencies().get(DATASET_ID).intValue());
+
+        client.unregisterPushSync(DATASET_ID);
+        assertEquals(10, client.getEffectiveSyncFrequencies().get(DATASET_ID).intValue());
+    }
+
+    @Test
+    public void testPushForcesSyncOfChangedRegisteredDatasetOnly() throws Exception {
+        FHSyncDataset mock = swapInMock();
+
+        dispatcher.push(DATASET_ID, "newHash");
+        Mockito.verify(mock, Mockito.never()).setSyncPending(true);
+
+        client.registerPushSync(DATASET_ID);
+        dispatcher.push(DATASET_ID, "currentHash");
+        dispatcher.push("otherDataSet", "newHash");
+        Mockito.verify(mock, Mockito.never()).setSyncPending(true);
+
+        dispatcher.push(DATASET_ID, "newHash");
+        dispatcher.push(DATASET_ID, null);
+        Mockito.verify(mock, Mockito.times(2)).setSyncPending(true);
+    }
+
+    @Test
+    public void testClearingTheDispatcherStopsListening() throws Exception {
+        client.registerPushSync(DATASET_ID);
+        FHSyncDataset mock = swapInMock();
+        client.setPushDispatcher(null);
+
+        dispatcher.push(DATASET_ID, "newHash");
+
+        Mockito.verify(mock, Mockito.never()).setSyncPending(true);
+    }
+
+    @Test
+    public void testInitKeepsTheDispatcher() throws Exception {
+        client.registerPushSync(DATASET_ID);
+        client.init(getContext(), new FHSyncConfig(), null);
+        FHSyncDataset mock = swapInMock();
+
+        dispatcher.push(DATASET_ID, "newHash");
+
+        Mockito.verify(mock).setSyncPending(true);
+    }
+
+    private FHSyncDataset swapInMock() throws Exception {
+        Map<String, FHSyncDataset> datasets =
+            (Map<String, FHSyncDataset>) FHTestUtils.getPrivateField(client, "mDataSets");
+        FHSyncDataset mock = Mockito.mock(FHSyncDataset.class);
+        Mockito.doReturn("currentHash").when(mock).getHashValue();
+        datasets.put(DATASET_ID, mock);
+        return mock;
+    }
+}
@@ -0,0 +1,106 @@
+/**
+ * Copyright Red Hat, Inc, and individual contributors.
+ * <p>
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * <p>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.feedhenry.sdk.sync;
+
+import android.support.test.runner.AndroidJUnit4;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import static junit.framework.Assert.assertEquals;
+import static junit.framework.Assert.assertFalse;
+import static junit.framework.Assert.assertNull;
+import static junit.framework.Assert.assertTrue;
+
+@RunWith(AndroidJUnit4.class)
+public class FHSyncSchedulerTest {
+
+    private final BlockingQueue<String> dispatched = new LinkedBlockingQueue<>();
+    private FHSyncScheduler scheduler;
+
+    @Before
+    public void setUp() throws Exception {
+        scheduler = new FHSyncScheduler(new FHSyncScheduler.Dispatcher() {
+            @Override
+            public void dispatch(String pDataId) {
+                dispatched.add(pDataId);
+            }
+        });
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        scheduler.shutdown();
+    }
+
+    @Test
+    public void testDatasetsAreDispatchedInDueOrder() throws Exception {
+        scheduler.schedule("later", 300);
+        scheduler.schedule("sooner", 100);
+        scheduler.scheduleNow("now");
+
+        List<String> order = new ArrayList<>();
+        for (int i = 0; i < 3; i++) {
+            order.add(dispatched.poll(2, TimeUnit.SECONDS));
+        }
+
+        assertEquals("now", order.get(0));
+        assertEquals("sooner", order.get(1));
+        assertEquals("later", order.get(2));
+        assertFalse(scheduler.isScheduled("later"));
+    }
+
+    @Test
+    public void testScheduleNowPreemptsTheCurrentWait() throws Exception {
+        scheduler.schedule("dataset", 60000);
+        long start = System.currentTimeMillis();
+
+        scheduler.scheduleNow("dataset");
+
+        assertEquals("dataset", dispatched.poll(2, TimeUnit.SECONDS));
+        assertTrue(System.currentTimeMillis() - start < 1000);
+        // rescheduling replaces the old due time instead of adding a second one
+        assertNull(dispatched.poll(300, TimeUnit.MILLISECONDS));
+    }
+
+    @Test
+    public void testCancelledDatasetsAreNotDispatched() throws Exception {
+        scheduler.schedule("dataset", 200);
+        scheduler.cancel("dataset");
+
+        assertNull(dispatched.poll(500, TimeUnit.MILLISECONDS));
+        assertFalse(scheduler.isScheduled("dataset"));
+    }
+
+    @Test
+    public void testNothingIsDispatchedAfterShutdown() throws Exception {
+        scheduler.schedule("dataset", 100);
+        scheduler.shutdown();
+        scheduler.scheduleNow("other");
+
+        assertNull(dispatched.poll(500, TimeUnit.MILLISECONDS));
+        assertEquals(Collections.<String>emptyList(), new ArrayList<>(dispatched));
+    }
+}
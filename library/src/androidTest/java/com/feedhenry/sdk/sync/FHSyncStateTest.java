@@ -0,0 +1,121 @@
+/**
+ * Copyright Red Hat, Inc, and individual contributors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.feedhenry.sdk.sync;
+
+import android.support.test.runner.AndroidJUnit4;
+
+import com.feedhenry.sdk.FH;
+
+import org.json.fh.JSONObject;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static android.support.test.InstrumentationRegistry.getContext;
+import static junit.framework.Assert.assertEquals;
+import static junit.framework.Assert.assertFalse;
+import static junit.framework.Assert.assertNotNull;
+import static junit.framework.Assert.assertNull;
+import static junit.framework.Assert.assertTrue;
+
+@RunWith(AndroidJUnit4.class)
+public class FHSyncStateTest {
+
+    @Test
+    public void testLifecycleTransitions() throws Exception {
+        FHSyncState state = new FHSyncState();
+        assertEquals(FHSyncState.State.IDLE, state.get());
+
+        state.setPending(true);
+        assertEquals(FHSyncState.State.PENDING, state.get());
+        assertTrue(state.tryClaim());
+        assertEquals(FHSyncState.State.RUNNING, state.get());
+        assertFalse(state.isPending());
+        assertFalse(state.tryClaim());
+
+        state.setPending(true);
+        state.setStopped(true);
+        assertTrue(state.beginApplying());
+        assertEquals(FHSyncState.State.APPLYING, state.get());
+        assertFalse(state.beginApplying());
+        assertTrue(state.complete());
+        assertEquals(FHSyncState.State.STOPPED, state.get());
+        assertFalse(state.complete());
+        assertFalse(state.tryClaim());
+
+        state.setStopped(false);
+        assertEquals(FHSyncState.State.PENDING, state.get());
+        assertTrue(state.tryClaim());
+        assertTrue(state.complete());
+        assertEquals(FHSyncState.State.IDLE, state.get());
+        assertFalse(state.complete());
+        assertFalse(state.beginApplying());
+        assertEquals(FHSyncState.State.IDLE, state.get());
+    }
+
+    @Test
+    public void testOnlyOneConcurrentClaimWins() throws Exception {
+        for (int round = 0; round < 50; round++) {
+            final FHSyncState state = new FHSyncState();
+            final CountDownLatch start = new CountDownLatch(1);
+            final CountDownLatch done = new CountDownLatch(8);
+            final AtomicInteger claims = new AtomicInteger();
+            for (int i = 0; i < 8; i++) {
+                new Thread(new Runnable() {
+                    @Override
+                    public void run() {
+                        try {
+                            start.await();
+                            state.setPending(true);
+                            if (state.tryClaim()) {
+                                claims.incrementAndGet();
+                            }
+                        } catch (InterruptedException e) {
+                            Thread.currentThread().interrupt();
+                        } finally {
+                            done.countDown();
+                        }
+                    }
+                }).start();
+            }
+            start.countDown();
+            done.await();
+            assertEquals(1, claims.get());
+            assertEquals(FHSyncState.State.RUNNING, state.get());
+        }
+    }
+
+    @Test
+    public void testDatasetSyncLoopIsClaimedOnce() throws Exception {
+        FH.init(getContext(), null);
+        getContext().deleteFile("stateDataSet.sync.json");
+        FHSyncDataset dataset = FHSyncContextStorage.newDataset(
+            getContext(), null, "stateDataSet", new FHSyncConfig(), new JSONObject(), new JSONObject());
+
+        assertNotNull(dataset.prepareSyncLoop());
+        assertNull(dataset.prepareSyncLoop());
+        assertEquals(FHSyncState.State.RUNNING, dataset.getSyncState());
+        dataset.stopSync(true);
+        dataset.handleSyncResponse(new JSONObject());
+        assertEquals(FHSyncState.State.STOPPED, dataset.getSyncState());
+        assertNull(dataset.prepareSyncLoop());
+        dataset.stopSync(false);
+        assertNotNull(dataset.prepareSyncLoop());
+        getContext().deleteFile("stateDataSet.sync.json");
+    }
+}
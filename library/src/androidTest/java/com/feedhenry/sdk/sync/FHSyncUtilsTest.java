@@ -22,7 +22,10 @@ import org.json.fh.JSONObject;
 import org.junit.Test;
 import org.junit.runner.RunWith;
 
+import java.util.Arrays;
+
 import static junit.framework.Assert.assertEquals;
+import static junit.framework.Assert.assertNull;
 
 @RunWith(AndroidJUnit4.class)
 public class FHSyncUtilsTest {
@@ -56,4 +59,48 @@ public class FHSyncUtilsTest {
         assertEquals(expected, hash);
     }
 
+    @Test
+    public void testMergePatchOnlyCarriesTheChanges() throws Exception {
+        JSONObject source = new JSONObject("{'name':'a','count':1,'tags':['x'],'address':{'city':'Waterford','zip':'X91'},'old':true}");
+        JSONObject target = new JSONObject("{'name':'a','count':2,'tags':['x'],'address':{'city':'Cork','zip':'X91'},'new':'yes'}");
+
+        JSONObject patch = FHSyncUtils.createMergePatch(source, target);
+
+        assertEquals(
+            FHSyncUtils.generateObjectHash(new JSONObject("{'count':2,'address':{'city':'Cork'},'old':null,'new':'yes'}")),
+            FHSyncUtils.generateObjectHash(patch));
+        assertEquals(FHSyncUtils.generateObjectHash(target),
+            FHSyncUtils.generateObjectHash(FHSyncUtils.applyMergePatch(source, patch)));
+        assertEquals(1, source.getInt("count"));
+    }
+
+    @Test
+    public void testMergePatchCannotExpressNullValues() throws Exception {
+        JSONObject source = new JSONObject("{'name':'a'}");
+        JSONObject target = new JSONObject().put("name", JSONObject.NULL);
+
+        assertNull(FHSyncUtils.createMergePatch(source, target));
+    }
+
+    @Test
+    public void testProjectionCopiesOnlyTheGivenFields() throws Exception {
+        JSONObject source = new JSONObject("{'name':'a','count':1,'tags':['x'],'address':{'city':'Cork','zip':'X91','geo':{'lat':1}}}");
+
+        JSONObject projected = FHSyncUtils.projectFields(source, Arrays.asList("name", "tags", "address.geo.lat", "missing.field"));
+
+        assertEquals(
+            FHSyncUtils.generateObjectHash(new JSONObject("{'name':'a','tags':['x'],'address':{'geo':{'lat':1}}}")),
+            FHSyncUtils.generateObjectHash(projected));
+        projected.getJSONArray("tags").put("y");
+        assertEquals(1, source.getJSONArray("tags").length());
+    }
+
+    @Test
+    public void testUtf8LengthCountsEncodedBytes() throws Exception {
+        String[] texts = {"", "plain", "caf\u00e9", "\u20ac10", "\ud83d\ude00 smile", "lone \ud83d"};
+        for (String text : texts) {
+            assertEquals(text, text.getBytes("UTF-8").length, FHSyncUtils.utf8Length(text));
+        }
+    }
+
 }
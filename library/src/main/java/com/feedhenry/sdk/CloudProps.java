@@ -120,6 +120,7 @@ public class CloudProps {
                 try {
                     mInitValue = mCloudProps.getString(INIT_KEY);
                     DataManager.getInstance().save(INIT_KEY, mInitValue);
+                    FH.invalidateDefaultParams();
                 } catch (JSONException e) {
                     FHLog.w(LOG_TAG, e.getMessage());
                 }
@@ -148,6 +149,7 @@ public class CloudProps {
     public static CloudProps init(JSONObject pCloudProps) {
         if (mInstance == null) {
             mInstance = new CloudProps(pCloudProps);
+            FH.invalidateDefaultParams();
         }
         return mInstance;
     }
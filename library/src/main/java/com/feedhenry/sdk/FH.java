@@ -20,6 +20,7 @@ import android.content.Context;
 import com.feedhenry.sdk.api.FHActRequest;
 import com.feedhenry.sdk.api.FHAuthRequest;
 import com.feedhenry.sdk.api.FHAuthSession;
+import com.feedhenry.sdk.api.FHBatchRequest;
 import com.feedhenry.sdk.api.FHCloudRequest;
 import com.feedhenry.sdk.api.FHCloudRequest.Methods;
 import com.feedhenry.sdk.api.FHInitializeRequest;
@@ -34,8 +35,8 @@ import cz.msebera.android.httpclient.message.BasicHeader;
 import java.io.IOException;
 import java.net.URI;
 import java.util.ArrayList;
-import java.util.Collections;
 import java.util.Iterator;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import org.jboss.aerogear.android.core.Callback;
 import org.jboss.aerogear.android.unifiedpush.PushRegistrar;
@@ -76,6 +77,9 @@ public class FH {
 
     private static Context mContext;
 
+    private static final AtomicInteger mDefaultParamsVersion = new AtomicInteger();
+    private static volatile DefaultParams mDefaultParams;
+
     private FH() {
         throw new UnsupportedOperationException("Not Supported");
     }
@@ -119,6 +123,7 @@ public class FH {
     public static void init(Context pContext, final FHActCallback pCallback) {
         // Be sure we are store the safety application context
         mContext = pContext.getApplicationContext();
+        invalidateDefaultParams();
 
         // -- Load properties
         if (!mInitCalled) {
@@ -335,6 +340,32 @@ public class FH {
         return request;
     }
 
+    /**
+     * Creates a batch to send several act and cloud requests in a single round trip. The requests are sent
+     * when {@link FHBatchRequest#executeAsync()} is called.
+     *
+     * @return a new batch
+     * @throws FHNotReadyException if init has not been called
+     */
+    public static FHBatchRequest batch() throws FHNotReadyException {
+        return batch(0);
+    }
+
+    /**
+     * Creates a batch that collects the requests added within pWindowMillis milliseconds of the first one
+     * and then sends them in a single round trip.
+     *
+     * @param pWindowMillis how long to wait for more requests before sending the batch
+     * @return a new batch
+     * @throws FHNotReadyException if init has not been called
+     */
+    public static FHBatchRequest batch(long pWindowMillis) throws FHNotReadyException {
+        if (!isReady()) {
+            throw new FHNotReadyException();
+        }
+        return new FHBatchRequest(pWindowMillis);
+    }
+
     /**
      * Gets the cloud host.
      *
@@ -358,10 +389,56 @@ public class FH {
      * {@link #getDefaultParamsAsHeaders(Header[]) getDefaultParamsAsHeaders} method to add them as HTTP request
      * headers.
      *
+     * The params are built once and cached until one of their inputs changes, see
+     * {@link #invalidateDefaultParams()}. The returned object is a deep copy that can be changed freely.
+     *
      * @return a JSONObject contains the default params
      * @throws IllegalStateException if the app property file is not loaded
      */
     public static JSONObject getDefaultParams() {
+        // a deep copy, so changing the nested "init" object does not change the cached params either
+        return new JSONObject(getDefaultParamsSnapshot().mParams.toString());
+    }
+
+    /**
+     * Similar to {@link #getDefaultParams() getDefaultParams}, but returns HTTP headers instead.
+     *
+     * The default headers are built once and shared between requests, do not modify the returned array.
+     *
+     * @param pHeaders existing headers
+     * @return new headers by combining existing headers and default headers
+     * @throws IllegalStateException if the app property file is not loaded
+     */
+    public static Header[] getDefaultParamsAsHeaders(Header[] pHeaders) {
+        Header[] defaultHeaders = getDefaultParamsSnapshot().mHeaders;
+        if (pHeaders == null || pHeaders.length == 0) {
+            return defaultHeaders;
+        }
+        Header[] headers = new Header[defaultHeaders.length + pHeaders.length];
+        System.arraycopy(defaultHeaders, 0, headers, 0, defaultHeaders.length);
+        System.arraycopy(pHeaders, 0, headers, defaultHeaders.length, pHeaders.length);
+        return headers;
+    }
+
+    /**
+     * Discards the cached default params so they are rebuilt on the next request. This is called by the SDK
+     * when the session token is saved or cleared and when the cloud app details change.
+     */
+    public static void invalidateDefaultParams() {
+        mDefaultParamsVersion.incrementAndGet();
+    }
+
+    private static DefaultParams getDefaultParamsSnapshot() {
+        int version = mDefaultParamsVersion.get();
+        DefaultParams snapshot = mDefaultParams;
+        if (snapshot == null || snapshot.mVersion != version) {
+            snapshot = new DefaultParams(version, buildDefaultParams());
+            mDefaultParams = snapshot;
+        }
+        return snapshot;
+    }
+
+    private static JSONObject buildDefaultParams() {
         AppProps appProps = AppProps.getInstance();
         JSONObject defaultParams = new JSONObject();
         defaultParams.put("appid", appProps.getAppId());
@@ -384,33 +461,32 @@ public class FH {
             defaultParams.put("init", initObj);
         }
 
-        if (FHAuthSession.exists()) {
-            defaultParams.put(FHAuthSession.SESSION_TOKEN_KEY, FHAuthSession.getToken());
+        String sessionToken = FHAuthSession.getToken();
+        if (sessionToken != null) {
+            defaultParams.put(FHAuthSession.SESSION_TOKEN_KEY, sessionToken);
         }
 
         return defaultParams;
     }
 
     /**
-     * Similar to {@link #getDefaultParams() getDefaultParams}, but returns HTTP headers instead.
-     *
-     * @param pHeaders existing headers
-     * @return new headers by combining existing headers and default headers
-     * @throws IllegalStateException if the app property file is not loaded
+     * An immutable snapshot of the default params and the matching headers.
      */
-    public static Header[] getDefaultParamsAsHeaders(Header[] pHeaders) {
-        JSONObject defaultParams = FH.getDefaultParams();
-        ArrayList<Header> headers = new ArrayList<Header>(defaultParams.length());
-
-        for (Iterator<String> it = defaultParams.keys(); it.hasNext(); ) {
-            String key = it.next();
-            headers.add(new BasicHeader("X-FH-" + key, defaultParams.getString(key)));
-        }
-        if (pHeaders != null) {
-            headers.ensureCapacity(pHeaders.length + 1);
-            Collections.addAll(headers, pHeaders);
+    private static final class DefaultParams {
+        private final int mVersion;
+        private final JSONObject mParams;
+        private final Header[] mHeaders;
+
+        DefaultParams(int pVersion, JSONObject pParams) {
+            mVersion = pVersion;
+            mParams = pParams;
+            ArrayList<Header> headers = new ArrayList<Header>(pParams.length());
+            for (Iterator<String> it = pParams.keys(); it.hasNext(); ) {
+                String key = it.next();
+                headers.add(new BasicHeader("X-FH-" + key, pParams.getString(key)));
+            }
+            mHeaders = headers.toArray(new Header[headers.size()]);
         }
-        return headers.toArray(new Header[headers.size()]);
     }
 
     /**
@@ -435,6 +511,29 @@ public class FH {
         cloudRequest.executeAsync(pCallback);
     }
 
+    /**
+     * Calls cloud APIs asynchronously and streams the response body to the callback. Use this for large
+     * responses that should be processed or written to disk as they arrive.
+     *
+     * @param pPath     the path to the cloud API
+     * @param pMethod   currently supports GET, POST, PUT and DELETE
+     * @param pHeaders  headers need to be set, can be null
+     * @param pParams   the request params, can be null. Will be converted to query strings depending
+     *                  on the HTTP method
+     * @param pCallback the callback to be handed the response stream
+     * @throws FHNotReadyException if init has not been called
+     * @throws IllegalArgumentException if pMethod is not one of GET, POST, PUT and DELETE
+     */
+    public static void cloud(
+            String pPath,
+            String pMethod,
+            Header[] pHeaders,
+            JSONObject pParams,
+            FHStreamCallback pCallback) throws FHNotReadyException {
+        FHCloudRequest cloudRequest = buildCloudRequest(pPath, pMethod, pHeaders, pParams);
+        cloudRequest.executeStreamingAsync(pCallback);
+    }
+
     /**
      * Sets the log level for the library.
      * The default level is {@link #LOG_LEVEL_ERROR}. Please make sure this is set to {@link #LOG_LEVEL_ERROR}
@@ -57,6 +57,30 @@ public class FHHttpClient {
         instance.put(pUrl, pHeaders, pParams, pCallback, pUseSync);
     }
 
+    /**
+     * 
+     * This method executes an HTTP PUT Command with a compressed body
+     * 
+     * @param pUrl url to PUT to
+     * @param pHeaders HTTP headers for the request
+     * @param pParams The Body of the Request
+     * @param pCallback A callback to be handed the responses of the call
+     * @param pUseSync whether or not to make the call synchronously
+     * @param pContentEncoding gzip, deflate or null to send the body uncompressed
+     * 
+     * @deprecated please use com.feedhenry.sdk2.FHHttpClient.put instead
+     */
+    @Deprecated
+    public static void put(
+        String pUrl,
+        Header[] pHeaders,
+        JSONObject pParams,
+        FHActCallback pCallback,
+        boolean pUseSync,
+        String pContentEncoding) {
+        instance.put(pUrl, pHeaders, pParams, pCallback, pUseSync, pContentEncoding);
+    }
+
     /**
      * 
      * This method executes an HTTP GET Command
@@ -101,6 +125,30 @@ public class FHHttpClient {
         instance.post(pUrl, pHeaders, pParams, pCallback, pUseSync);
     }
 
+    /**
+     * 
+     * This method executes an HTTP POST Command with a compressed body
+     * 
+     * @param pUrl url to POST to
+     * @param pHeaders HTTP headers for the request
+     * @param pParams The Body of the Request
+     * @param pCallback A callback to be handed the responses of the call
+     * @param pUseSync whether or not to make the call synchronously
+     * @param pContentEncoding gzip, deflate or null to send the body uncompressed
+     * 
+     * @deprecated please use com.feedhenry.sdk2.FHHttpClient.post instead
+     */
+    @Deprecated
+    public static void post(
+        String pUrl,
+        Header[] pHeaders,
+        JSONObject pParams,
+        FHActCallback pCallback,
+        boolean pUseSync,
+        String pContentEncoding) {
+        instance.post(pUrl, pHeaders, pParams, pCallback, pUseSync, pContentEncoding);
+    }
+
     /**
      * 
      * This method executes an HTTP DELETE Command
@@ -123,6 +171,30 @@ public class FHHttpClient {
         instance.delete(pUrl, pHeaders, pParams, pCallback, pUseSync);
     }
 
+    /**
+     * 
+     * This method executes an HTTP request and streams the response body to the callback
+     * 
+     * @param pMethod GET, POST, PUT or DELETE
+     * @param pUrl url of the request
+     * @param pHeaders HTTP headers for the request
+     * @param pParams The Body of the Request, or its query string for GET and DELETE
+     * @param pCallback A callback to be handed the response stream
+     * @param pUseSync whether or not to make the call synchronously
+     * 
+     * @deprecated please use com.feedhenry.sdk2.FHHttpClient.stream instead
+     */
+    @Deprecated
+    public static void stream(
+        String pMethod,
+        String pUrl,
+        Header[] pHeaders,
+        JSONObject pParams,
+        FHStreamCallback pCallback,
+        boolean pUseSync) {
+        instance.stream(pMethod, pUrl, pHeaders, pParams, pCallback, pUseSync);
+    }
+
     static class FHJsonHttpResponseHandler extends JsonHttpResponseHandler {
 
         private FHActCallback callback = null;
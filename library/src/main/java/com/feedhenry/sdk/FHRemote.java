@@ -16,6 +16,7 @@
 package com.feedhenry.sdk;
 
 import android.content.Context;
+import com.feedhenry.sdk.outbox.FHOutbox;
 import com.feedhenry.sdk.utils.FHLog;
 import com.feedhenry.sdk.utils.StringUtils;
 import cz.msebera.android.httpclient.Header;
@@ -35,6 +36,9 @@ public abstract class FHRemote implements FHAct {
     protected FHActCallback mCallback;
     protected Context mContext;
 
+    private boolean mQueueWhenOffline = false;
+    private String mIdempotencyKey;
+
     public FHRemote(Context context) {
         mContext = context;
     }
@@ -58,6 +62,55 @@ public abstract class FHRemote implements FHAct {
         mCallback = pCallback;
     }
 
+    /**
+     * Sets whether this request is queued in the {@link FHOutbox} if the device is offline when it is
+     * executed, and only once the outbox is enabled. Only set it on requests that change data: act requests
+     * are not queued unless this is set, while cloud requests changing data (POST, PUT and DELETE) are
+     * queued by default and GET requests never are.
+     *
+     * @param pQueueWhenOffline true to queue the request when offline, false to fail straight away
+     */
+    public void setQueueWhenOffline(boolean pQueueWhenOffline) {
+        mQueueWhenOffline = pQueueWhenOffline;
+    }
+
+    public boolean isQueueWhenOffline() {
+        return mQueueWhenOffline;
+    }
+
+    /**
+     * Sets the key used to deduplicate this request if it is queued in the {@link FHOutbox}. It is sent
+     * to the cloud app in the {@link FHOutbox#IDEMPOTENCY_KEY_HEADER} header when the queued request is
+     * delivered. If not set, the queued request gets a random key and is never deduplicated.
+     *
+     * @param pIdempotencyKey the idempotency key
+     */
+    public void setIdempotencyKey(String pIdempotencyKey) {
+        mIdempotencyKey = pIdempotencyKey;
+    }
+
+    public String getIdempotencyKey() {
+        return mIdempotencyKey;
+    }
+
+    /**
+     * Checks if the request should go to the outbox instead of the network.
+     *
+     * @return true if the device is offline and the request can be queued
+     */
+    protected boolean shouldQueue() {
+        if (!mQueueWhenOffline || FH.isOnline()) {
+            return false;
+        }
+        FHOutbox outbox = FHOutbox.getInstance();
+        return outbox != null && outbox.isEnabled();
+    }
+
+    protected void queue(String pMethod, String pUrl, Header[] pHeaders, JSONObject pParams, FHActCallback pCallback) {
+        FHLog.d(LOG_TAG, "Device is offline, queueing request to " + pUrl);
+        FHOutbox.getInstance().enqueue(pMethod, pUrl, pHeaders, pParams, mIdempotencyKey, pCallback);
+    }
+
     protected String getApiURl() {
         String apiUrl = StringUtils.removeTrailingSlash(AppProps.getInstance().getHost());
         return apiUrl + PATH_PREFIX + getPath();
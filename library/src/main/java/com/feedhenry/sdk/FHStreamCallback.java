@@ -0,0 +1,71 @@
+/**
+ * Copyright Red Hat, Inc, and individual contributors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.feedhenry.sdk;
+
+import cz.msebera.android.httpclient.Header;
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * An FHStreamCallback receives the body of a cloud response as a stream instead of a parsed JSON object, so
+ * large responses can be processed or written to disk without holding them in memory.
+ *
+ * Unlike {@link FHActCallback}, {@link #onResponse} runs on the background thread that reads the response.
+ * The body is read from the network as the stream is consumed, so a slow reader simply slows the download
+ * down. The stream is closed once {@link #onResponse} returns. For event-based JSON parsing, wrap it in an
+ * {@link android.util.JsonReader}. For example:
+ *
+ * <pre>
+ * {@code
+ * FH.cloud("/export", "GET", null, null, new FHStreamCallback() {
+ *   {@literal @}Override
+ *   public void onResponse(int pStatusCode, Header[] pHeaders, InputStream pBody) throws IOException {
+ *     JsonReader reader = new JsonReader(new InputStreamReader(pBody, "UTF-8"));
+ *     reader.beginArray();
+ *     while (reader.hasNext()) {
+ *       //process one record at a time
+ *     }
+ *     reader.endArray();
+ *   }
+ *
+ *   {@literal @}Override
+ *   public void fail(FHResponse pResponse) {
+ *     //process error data
+ *   }
+ * });
+ * }
+ * </pre>
+ */
+public interface FHStreamCallback {
+
+    /**
+     * Invoked on a background thread with the body of a successful response.
+     *
+     * @param pStatusCode the HTTP status code
+     * @param pHeaders the response headers
+     * @param pBody the response body, inflated if the server compressed it
+     * @throws IOException if reading the body fails, {@link #fail} is then invoked with the exception
+     */
+    void onResponse(int pStatusCode, Header[] pHeaders, InputStream pBody) throws IOException;
+
+    /**
+     * Invoked if the request could not be made, the server responded with an error status or the body could
+     * not be read. Runs on the UI thread like {@link FHActCallback#fail}.
+     *
+     * @param pResponse the error response, its raw response holds the body of error statuses
+     */
+    void fail(FHResponse pResponse);
+}
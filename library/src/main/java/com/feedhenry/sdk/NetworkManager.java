@@ -22,12 +22,15 @@ import android.content.IntentFilter;
 import android.net.ConnectivityManager;
 import android.net.NetworkInfo;
 import com.feedhenry.sdk.utils.FHLog;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
 
 public class NetworkManager {
     private Context mContext;
-    private boolean mIsOnline;
+    private volatile boolean mIsOnline;
     private boolean mIsListenerRegistered;
     private NetworkReceiver mReceiver;
+    private final List<NetworkStatusListener> mStatusListeners = new CopyOnWriteArrayList<>();
 
     private static final String LOG_TAG = "com.feedhenry.sdk.NetworkManager";
 
@@ -60,6 +63,7 @@ public class NetworkManager {
     public void checkNetworkStatus() {
         ConnectivityManager connMgr = (ConnectivityManager) mContext.getSystemService(Context.CONNECTIVITY_SERVICE);
         NetworkInfo networkInfo = connMgr.getActiveNetworkInfo();
+        boolean wasOnline = mIsOnline;
         mIsOnline = networkInfo != null && networkInfo.isConnected();
         if (mIsOnline) {
             String type = networkInfo.getTypeName();
@@ -67,12 +71,49 @@ public class NetworkManager {
         } else {
             FHLog.i(LOG_TAG, "Device is offline.");
         }
+        if (wasOnline != mIsOnline) {
+            for (NetworkStatusListener listener : mStatusListeners) {
+                listener.onNetworkStatusChanged(mIsOnline);
+            }
+        }
     }
 
     public boolean isOnline() {
         return mIsOnline;
     }
 
+    /**
+     * Adds a listener to be told when the device goes online or offline.
+     *
+     * @param pListener the listener
+     */
+    public void addNetworkStatusListener(NetworkStatusListener pListener) {
+        if (!mStatusListeners.contains(pListener)) {
+            mStatusListeners.add(pListener);
+        }
+    }
+
+    /**
+     * Removes a listener added with {@link #addNetworkStatusListener(NetworkStatusListener)}.
+     *
+     * @param pListener the listener
+     */
+    public void removeNetworkStatusListener(NetworkStatusListener pListener) {
+        mStatusListeners.remove(pListener);
+    }
+
+    /**
+     * Implement this interface to be notified of connectivity changes.
+     */
+    public interface NetworkStatusListener {
+        /**
+         * Invoked when the device goes online or offline.
+         *
+         * @param pIsOnline whether the device is now online
+         */
+        void onNetworkStatusChanged(boolean pIsOnline);
+    }
+
     private class NetworkReceiver extends BroadcastReceiver {
         @Override
         public void onReceive(Context context, Intent intent) {
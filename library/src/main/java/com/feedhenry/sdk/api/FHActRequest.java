@@ -18,6 +18,7 @@ package com.feedhenry.sdk.api;
 import android.content.Context;
 import com.feedhenry.sdk.CloudProps;
 import com.feedhenry.sdk.FH;
+import com.feedhenry.sdk.FHActCallback;
 import com.feedhenry.sdk.FHRemote;
 import cz.msebera.android.httpclient.Header;
 import org.json.fh.JSONObject;
@@ -60,6 +61,32 @@ public class FHActRequest extends FHRemote {
         super(context);
     }
 
+    /**
+     * Executes the request asynchronously. If the request changes data and was marked with
+     * {@link #setQueueWhenOffline(boolean)}, and the device is offline with the outbox enabled, the request
+     * is queued and the callback is invoked once it has been delivered. Otherwise it fails straight away
+     * when offline.
+     *
+     * @param pCallback the callback to be executed when the request is finished
+     */
+    @Override
+    public void executeAsync(FHActCallback pCallback) {
+        if (shouldQueue()) {
+            queue("POST", getApiURl(), null, getRequestArgs(), pCallback);
+        } else {
+            super.executeAsync(pCallback);
+        }
+    }
+
+    @Override
+    public void execute(FHActCallback pCallback) {
+        if (shouldQueue()) {
+            queue("POST", getApiURl(), null, getRequestArgs(), pCallback);
+        } else {
+            super.execute(pCallback);
+        }
+    }
+
     protected String getApiURl() {
         String host = CloudProps.getInstance().getCloudHost();
         String path = getPath();
@@ -0,0 +1,304 @@
+/**
+ * Copyright Red Hat, Inc, and individual contributors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.feedhenry.sdk.api;
+
+import android.os.Handler;
+import android.os.Looper;
+import com.feedhenry.sdk.CloudProps;
+import com.feedhenry.sdk.FH;
+import com.feedhenry.sdk.FHActCallback;
+import com.feedhenry.sdk.FHRemote;
+import com.feedhenry.sdk.FHResponse;
+import com.feedhenry.sdk.utils.FHLog;
+import com.feedhenry.sdk2.FHHttpClient;
+import cz.msebera.android.httpclient.Header;
+import cz.msebera.android.httpclient.client.HttpResponseException;
+import java.util.ArrayList;
+import java.util.List;
+import org.json.fh.JSONArray;
+import org.json.fh.JSONObject;
+
+/**
+ * Sends several act and cloud requests to the cloud app in a single HTTP round trip. Example:
+ *
+ * <pre>
+ * {@code
+ *   FHBatchRequest batch = FH.batch();
+ *   batch.add(FH.buildActRequest("getProfile", new JSONObject()), profileCallback);
+ *   batch.add(FH.buildCloudRequest("/orders", "GET", null, null), ordersCallback);
+ *   batch.executeAsync();
+ * }
+ * </pre>
+ *
+ * The requests are posted as a JSON array to {@link #BATCH_PATH} on the cloud host, which replies with one
+ * response per request, in the same order:
+ *
+ * <pre>
+ * {@code
+ *   {"requests": [{"method": "POST", "path": "/cloud/getProfile", "headers": {}, "body": {}}, ...]}
+ *   {"responses": [{"status": 200, "body": {}}, ...]}
+ * }
+ * </pre>
+ *
+ * Each response is handed to the callback of its request. If the cloud app does not support batching, the
+ * requests are sent one by one instead and batching is skipped for the rest of the session. A successful
+ * reply without one response per request fails every request of the batch, as they may have run already.
+ *
+ * A batch created with a window collects the requests added within that many milliseconds of the first one
+ * and then sends them on its own, so requests fired together at screen load share a round trip without an
+ * explicit call to {@link #executeAsync()}.
+ */
+public class FHBatchRequest {
+
+    public static final String BATCH_PATH = "/mbaas/batch";
+
+    protected static final String LOG_TAG = "com.feedhenry.sdk.api.FHBatchRequest";
+
+    private static final String KEY_REQUESTS = "requests";
+    private static final String KEY_RESPONSES = "responses";
+    private static final String KEY_METHOD = "method";
+    private static final String KEY_PATH = "path";
+    private static final String KEY_HEADERS = "headers";
+    private static final String KEY_BODY = "body";
+    private static final String KEY_STATUS = "status";
+
+    private static volatile boolean mBatchSupported = true;
+
+    private final FHHttpClient mHttpClient = new FHHttpClient();
+    private final List<Entry> mEntries = new ArrayList<>();
+    private final long mWindowMillis;
+    private final Handler mHandler;
+
+    private final Runnable mFlushTask = new Runnable() {
+        @Override
+        public void run() {
+            executeAsync();
+        }
+    };
+
+    /**
+     * Creates a batch that is sent when {@link #executeAsync()} or {@link #execute()} is called.
+     */
+    public FHBatchRequest() {
+        this(0);
+    }
+
+    /**
+     * Creates a batch that sends itself pWindowMillis milliseconds after the first request is added.
+     *
+     * @param pWindowMillis how long to wait for more requests, 0 to only send the batch explicitly
+     */
+    public FHBatchRequest(long pWindowMillis) {
+        mWindowMillis = pWindowMillis;
+        mHandler = (pWindowMillis > 0) ? new Handler(Looper.getMainLooper()) : null;
+    }
+
+    /**
+     * Adds an act request to the batch.
+     *
+     * @param pRequest the request
+     * @param pCallback the callback to hand the response of the request to
+     */
+    public void add(FHActRequest pRequest, FHActCallback pCallback) {
+        JSONObject json = new JSONObject();
+        json.put(KEY_METHOD, "POST");
+        json.put(KEY_PATH, normalisePath(pRequest.getPath()));
+        json.put(KEY_HEADERS, new JSONObject());
+        json.put(KEY_BODY, pRequest.getRequestArgs());
+        addEntry(new Entry(pRequest, json, pCallback));
+    }
+
+    /**
+     * Adds a cloud request to the batch.
+     *
+     * @param pRequest the request
+     * @param pCallback the callback to hand the response of the request to
+     */
+    public void add(FHCloudRequest pRequest, FHActCallback pCallback) {
+        JSONObject headers = new JSONObject();
+        if (pRequest.getHeaders() != null) {
+            for (Header header : pRequest.getHeaders()) {
+                headers.put(header.getName(), header.getValue());
+            }
+        }
+        JSONObject json = new JSONObject();
+        json.put(KEY_METHOD, pRequest.getMethod().name());
+        json.put(KEY_PATH, normalisePath(pRequest.getPath()));
+        json.put(KEY_HEADERS, headers);
+        json.put(KEY_BODY, (pRequest.getRequestArgs() != null) ? pRequest.getRequestArgs() : new JSONObject());
+        addEntry(new Entry(pRequest, json, pCallback));
+    }
+
+    /**
+     * @return the number of requests waiting to be sent
+     */
+    public synchronized int size() {
+        return mEntries.size();
+    }
+
+    /**
+     * Sends the requests added so far asynchronously.
+     */
+    public void executeAsync() {
+        send(takeEntries(), false);
+    }
+
+    /**
+     * Sends the requests added so far synchronously.
+     */
+    public void execute() {
+        send(takeEntries(), true);
+    }
+
+    /**
+     * Checks whether the cloud app supports batching. This is only known after the first batch has been
+     * sent, until then batching is assumed to be supported.
+     *
+     * @return false if a batch was rejected by the cloud app
+     */
+    public static boolean isBatchSupported() {
+        return mBatchSupported;
+    }
+
+    static void setBatchSupported(boolean pBatchSupported) {
+        mBatchSupported = pBatchSupported;
+    }
+
+    private synchronized void addEntry(Entry pEntry) {
+        mEntries.add(pEntry);
+        if (mHandler != null && mEntries.size() == 1) {
+            mHandler.postDelayed(mFlushTask, mWindowMillis);
+        }
+    }
+
+    private synchronized List<Entry> takeEntries() {
+        if (mHandler != null) {
+            mHandler.removeCallbacks(mFlushTask);
+        }
+        List<Entry> entries = new ArrayList<>(mEntries);
+        mEntries.clear();
+        return entries;
+    }
+
+    private void send(final List<Entry> pEntries, final boolean pUseSync) {
+        if (pEntries.isEmpty()) {
+            return;
+        }
+        if (pEntries.size() == 1 || !mBatchSupported || !FH.isOnline()) {
+            // nothing to gain from a batch, and offline requests may need to go to the outbox
+            sendIndividually(pEntries, pUseSync);
+            return;
+        }
+        JSONArray requests = new JSONArray();
+        for (Entry entry : pEntries) {
+            requests.put(entry.json);
+        }
+        JSONObject body = new JSONObject().put(KEY_REQUESTS, requests);
+        String url = CloudProps.getInstance().getCloudHost() + BATCH_PATH;
+        FHLog.d(LOG_TAG, "Sending " + pEntries.size() + " requests in one batch");
+        mHttpClient.post(url, FH.getDefaultParamsAsHeaders(null), body, new FHActCallback() {
+            @Override
+            public void success(FHResponse pResponse) {
+                JSONArray responses = (pResponse.getJson() != null)
+                    ? pResponse.getJson().optJSONArray(KEY_RESPONSES)
+                    : pResponse.getArray();
+                if (responses == null || responses.length() != pEntries.size()) {
+                    // the requests may have run already, so they are not sent again
+                    FHLog.w(LOG_TAG, "Unexpected batch response, failing the batched requests");
+                    String rawResponse = pResponse.getRawResponse();
+                    FHResponse error =
+                        new FHResponse(null, null, new Exception("Unexpected batch response"), rawResponse);
+                    for (Entry entry : pEntries) {
+                        if (entry.callback != null) {
+                            entry.callback.fail(error);
+                        }
+                    }
+                    return;
+                }
+                for (int i = 0; i < pEntries.size(); i++) {
+                    dispatch(pEntries.get(i), responses.optJSONObject(i));
+                }
+            }
+
+            @Override
+            public void fail(FHResponse pResponse) {
+                if (isUnsupported(pResponse)) {
+                    FHLog.i(LOG_TAG, "Batching is not supported by the cloud app, sending requests individually");
+                    mBatchSupported = false;
+                    sendIndividually(pEntries, pUseSync);
+                    return;
+                }
+                for (Entry entry : pEntries) {
+                    if (entry.callback != null) {
+                        entry.callback.fail(pResponse);
+                    }
+                }
+            }
+        }, pUseSync);
+    }
+
+    private static void sendIndividually(List<Entry> pEntries, boolean pUseSync) {
+        for (Entry entry : pEntries) {
+            if (pUseSync) {
+                entry.request.execute(entry.callback);
+            } else {
+                entry.request.executeAsync(entry.callback);
+            }
+        }
+    }
+
+    private static void dispatch(Entry pEntry, JSONObject pResponse) {
+        if (pEntry.callback == null) {
+            return;
+        }
+        JSONObject response = (pResponse != null) ? pResponse : new JSONObject();
+        int status = response.optInt(KEY_STATUS, 200);
+        Object body = response.opt(KEY_BODY);
+        JSONObject bodyObject = (body instanceof JSONObject) ? (JSONObject) body : null;
+        JSONArray bodyArray = (body instanceof JSONArray) ? (JSONArray) body : null;
+        if (status >= 200 && status < 300) {
+            pEntry.callback.success(new FHResponse(bodyObject, bodyArray, null, null));
+        } else {
+            String rawBody = (body != null) ? body.toString() : null;
+            HttpResponseException error = new HttpResponseException(status, "Batched request failed with status " + status);
+            pEntry.callback.fail(new FHResponse(bodyObject, bodyArray, error, rawBody));
+        }
+    }
+
+    private static boolean isUnsupported(FHResponse pResponse) {
+        if (pResponse.getError() instanceof HttpResponseException) {
+            int status = ((HttpResponseException) pResponse.getError()).getStatusCode();
+            return status == 404 || status == 405 || status == 501;
+        }
+        return false;
+    }
+
+    private static String normalisePath(String pPath) {
+        return pPath.startsWith("/") ? pPath : '/' + pPath;
+    }
+
+    private static class Entry {
+        private final FHRemote request;
+        private final JSONObject json;
+        private final FHActCallback callback;
+
+        Entry(FHRemote pRequest, JSONObject pJson, FHActCallback pCallback) {
+            request = pRequest;
+            json = pJson;
+            callback = pCallback;
+        }
+    }
+}
@@ -21,6 +21,7 @@ import com.feedhenry.sdk.FH;
 import com.feedhenry.sdk.FHActCallback;
 import com.feedhenry.sdk.FHHttpClient;
 import com.feedhenry.sdk.FHRemote;
+import com.feedhenry.sdk.FHStreamCallback;
 import com.feedhenry.sdk.utils.FHLog;
 import cz.msebera.android.httpclient.Header;
 import org.json.fh.JSONObject;
@@ -52,9 +53,12 @@ public class FHCloudRequest extends FHRemote {
     private Methods mMethod = Methods.GET;
     private Header[] mHeaders = null;
     private JSONObject mArgs = new JSONObject();
+    private String mContentEncoding = null;
 
     public FHCloudRequest(Context context) {
         super(context);
+        // only the methods changing data are queued, see executeAsync
+        setQueueWhenOffline(true);
     }
 
     public void setPath(String pPath) {
@@ -73,6 +77,24 @@ public class FHCloudRequest extends FHRemote {
         mArgs = pArgs;
     }
 
+    /**
+     * Sets the encoding used to compress the body of PUT and POST requests.
+     * Only set this if the cloud app accepts compressed request bodies.
+     *
+     * @param pContentEncoding "gzip", "deflate" or null to send the body uncompressed
+     */
+    public void setRequestContentEncoding(String pContentEncoding) {
+        mContentEncoding = pContentEncoding;
+    }
+
+    Methods getMethod() {
+        return mMethod;
+    }
+
+    Header[] getHeaders() {
+        return mHeaders;
+    }
+
     @Override
     protected String getPath() {
         return mPath;
@@ -85,15 +107,19 @@ public class FHCloudRequest extends FHRemote {
 
     @Override
     public void executeAsync(FHActCallback pCallback)  {
+            if (mMethod != Methods.GET && shouldQueue()) {
+                queue(mMethod.name(), getURL(), mHeaders, mArgs, pCallback);
+                return;
+            }
             switch (mMethod) {
                 case GET:
                     FHHttpClient.get(getURL(), buildHeaders(mHeaders), mArgs, pCallback, false);
                     break;
                 case PUT:
-                    FHHttpClient.put(getURL(), buildHeaders(mHeaders), mArgs, pCallback, false);
+                    FHHttpClient.put(getURL(), buildHeaders(mHeaders), mArgs, pCallback, false, mContentEncoding);
                     break;
                 case POST:
-                    FHHttpClient.post(getURL(), buildHeaders(mHeaders), mArgs, pCallback, false);
+                    FHHttpClient.post(getURL(), buildHeaders(mHeaders), mArgs, pCallback, false, mContentEncoding);
                     break;
                 case DELETE:
                     FHHttpClient.delete(getURL(), buildHeaders(mHeaders), mArgs, pCallback, false);
@@ -106,15 +132,19 @@ public class FHCloudRequest extends FHRemote {
 
     @Override
     public void execute(FHActCallback pCallback) {
+        if (mMethod != Methods.GET && shouldQueue()) {
+            queue(mMethod.name(), getURL(), mHeaders, mArgs, pCallback);
+            return;
+        }
         switch (mMethod) {
             case GET:
                 FHHttpClient.get(getURL(), buildHeaders(mHeaders), mArgs, pCallback, true);
                 break;
             case PUT:
-                FHHttpClient.put(getURL(), buildHeaders(mHeaders), mArgs, pCallback, true);
+                FHHttpClient.put(getURL(), buildHeaders(mHeaders), mArgs, pCallback, true, mContentEncoding);
                 break;
             case POST:
-                FHHttpClient.post(getURL(), buildHeaders(mHeaders), mArgs, pCallback, true);
+                FHHttpClient.post(getURL(), buildHeaders(mHeaders), mArgs, pCallback, true, mContentEncoding);
                 break;
             case DELETE:
                 FHHttpClient.delete(getURL(), buildHeaders(mHeaders), mArgs, pCallback, true);
@@ -123,6 +153,26 @@ public class FHCloudRequest extends FHRemote {
 
     }
 
+    /**
+     * Executes the request asynchronously and streams the response body to the callback instead of parsing
+     * it, so large responses do not have to fit in memory. Requests are never queued in the outbox.
+     *
+     * @param pCallback the callback to be handed the response stream
+     */
+    public void executeStreamingAsync(FHStreamCallback pCallback) {
+        FHHttpClient.stream(mMethod.name(), getURL(), buildHeaders(mHeaders), mArgs, pCallback, false);
+    }
+
+    /**
+     * Executes the request synchronously and streams the response body to the callback on the calling
+     * thread.
+     *
+     * @param pCallback the callback to be handed the response stream
+     */
+    public void executeStreaming(FHStreamCallback pCallback) {
+        FHHttpClient.stream(mMethod.name(), getURL(), buildHeaders(mHeaders), mArgs, pCallback, true);
+    }
+
     private String getURL() {
         String host = CloudProps.getInstance().getCloudHost();
         return host + (getPath().startsWith("/") ? getPath() : '/' + getPath());
@@ -17,6 +17,7 @@ package com.feedhenry.sdk.api2;
 
 
 import com.feedhenry.sdk.AppProps;
+import com.feedhenry.sdk.FH;
 import com.feedhenry.sdk.FHActCallback;
 import com.feedhenry.sdk2.FHHttpClient;
 import com.feedhenry.sdk.FHRemote;
@@ -73,6 +74,7 @@ public class FHAuthSession {
      */
     public void save(String sessionToken) {
         mDataManager.save(SESSION_TOKEN_KEY, sessionToken);
+        FH.invalidateDefaultParams();
     }
 
     /**
@@ -99,6 +101,7 @@ public class FHAuthSession {
         String sessionToken = mDataManager.read(SESSION_TOKEN_KEY);
         if (sessionToken != null) {
             mDataManager.remove(SESSION_TOKEN_KEY);
+            FH.invalidateDefaultParams();
             callRemote(REVOKE_SESSION_ENDPOINT, sessionToken, null, pSync);
         }
     }
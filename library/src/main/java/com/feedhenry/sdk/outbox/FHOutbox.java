@@ -0,0 +1,541 @@
+/**
+ * Copyright Red Hat, Inc, and individual contributors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.feedhenry.sdk.outbox;
+
+import android.content.Context;
+import com.feedhenry.sdk.FH;
+import com.feedhenry.sdk.FHActCallback;
+import com.feedhenry.sdk.FHResponse;
+import com.feedhenry.sdk.NetworkManager;
+import com.feedhenry.sdk.api.FHAuthSession;
+import com.feedhenry.sdk.utils.FHLog;
+import com.feedhenry.sdk2.FHHttpClient;
+import cz.msebera.android.httpclient.Header;
+import cz.msebera.android.httpclient.client.HttpResponseException;
+import cz.msebera.android.httpclient.message.BasicHeader;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileNotFoundException;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import org.json.fh.JSONArray;
+import org.json.fh.JSONException;
+import org.json.fh.JSONObject;
+
+/**
+ * A persistent queue for cloud requests that change data (POST, PUT and DELETE) made while the device is offline.
+ *
+ * The outbox is disabled by default. Once enabled, {@link com.feedhenry.sdk.api.FHCloudRequest} calls that
+ * change data, and {@link com.feedhenry.sdk.api.FHActRequest} calls marked with
+ * {@link com.feedhenry.sdk.FHRemote#setQueueWhenOffline(boolean)}, made while offline are written to the
+ * outbox instead of failing, and are sent in order when the device comes back online. For example:
+ *
+ * <pre>
+ * {@code
+ *   FH.init(context, callback);
+ *   FHOutbox outbox = FHOutbox.init(context);
+ *   outbox.setListener(listener);
+ *   outbox.setEnabled(true);
+ * }
+ * </pre>
+ *
+ * Every request has an idempotency key, which is sent to the cloud app as the
+ * {@link #IDEMPOTENCY_KEY_HEADER} header so it can discard requests it has already processed. Set it with
+ * {@link com.feedhenry.sdk.FHRemote#setIdempotencyKey(String)} to deduplicate requests in the outbox too;
+ * requests without one get a random key, so identical requests made on purpose are all delivered.
+ *
+ * The headers and default params the SDK adds to every request, such as the session token, are not stored
+ * in the outbox; they are built again each time a queued request is sent.
+ *
+ * The callback passed to the request is invoked once the queued request is delivered or dropped, as long as
+ * the app is still running. Use a {@link FHOutboxListener} to follow requests restored from storage.
+ */
+public class FHOutbox implements NetworkManager.NetworkStatusListener {
+
+    public static final String IDEMPOTENCY_KEY_HEADER = "X-FH-Idempotency-Key";
+
+    private static final String LOG_TAG = "com.feedhenry.sdk.outbox.FHOutbox";
+
+    private static final String STORAGE_FILE = "fh.outbox.json";
+    private static final String TEMP_FILE_EXT = ".tmp";
+    private static final String KEY_REQUESTS = "requests";
+
+    private static final int DEFAULT_MAX_CONCURRENT_REQUESTS = 2;
+    private static final int DEFAULT_MAX_ATTEMPTS = 5;
+    private static final long RETRY_BASE_DELAY_MILLIS = 1000;
+    private static final long RETRY_MAX_DELAY_MILLIS = 60000;
+
+    /**
+     * The prefix of the headers built by the SDK from the default params.
+     */
+    private static final String DEFAULT_HEADER_PREFIX = "X-FH-";
+    private static final String KEY_DEFAULT_PARAMS = "__fh";
+
+    private static FHOutbox mInstance;
+
+    private final Context mContext;
+    private final FHHttpClient mHttpClient = new FHHttpClient();
+    private final LinkedHashMap<String, FHOutboxRequest> mRequests = new LinkedHashMap<>();
+    private final Map<String, List<FHActCallback>> mCallbacks = new HashMap<>();
+    private final Set<String> mInFlight = new HashSet<>();
+    private final Set<String> mDeferred = new HashSet<>();
+    private final ScheduledExecutorService mRetryTimer = Executors.newSingleThreadScheduledExecutor(
+        new ThreadFactory() {
+            @Override
+            public Thread newThread(Runnable pRunnable) {
+                Thread thread = new Thread(pRunnable, "FHOutboxRetry");
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+
+    private FHOutboxListener mListener;
+    private boolean mEnabled = false;
+    private int mMaxConcurrentRequests = DEFAULT_MAX_CONCURRENT_REQUESTS;
+    private int mMaxAttempts = DEFAULT_MAX_ATTEMPTS;
+
+    public FHOutbox(Context pContext) {
+        mContext = pContext;
+        readFromFile();
+    }
+
+    /**
+     * Creates the outbox if needed and loads any requests queued by a previous run of the app.
+     *
+     * @param pContext the application context
+     * @return the outbox instance
+     */
+    public static synchronized FHOutbox init(Context pContext) {
+        if (mInstance == null) {
+            mInstance = new FHOutbox(pContext);
+        }
+        return mInstance;
+    }
+
+    /**
+     * Gets the outbox instance.
+     *
+     * @return the outbox or null if {@link #init(Context)} has not been called
+     */
+    public static synchronized FHOutbox getInstance() {
+        return mInstance;
+    }
+
+    /**
+     * Turns queueing of offline requests on or off. When enabled, queued requests are sent straight away if
+     * the device is online.
+     *
+     * @param pEnabled whether requests made offline should be queued
+     */
+    public void setEnabled(boolean pEnabled) {
+        NetworkManager networkManager = NetworkManager.init(mContext);
+        synchronized (this) {
+            mEnabled = pEnabled;
+        }
+        if (pEnabled) {
+            networkManager.addNetworkStatusListener(this);
+            flush();
+        } else {
+            networkManager.removeNetworkStatusListener(this);
+        }
+    }
+
+    public synchronized boolean isEnabled() {
+        return mEnabled;
+    }
+
+    public synchronized void setListener(FHOutboxListener pListener) {
+        mListener = pListener;
+    }
+
+    /**
+     * Sets how many queued requests are sent at the same time. Use 1 to deliver requests strictly in the
+     * order they were queued. Defaults to 2.
+     *
+     * @param pMaxConcurrentRequests the maximum number of requests in flight
+     */
+    public synchronized void setMaxConcurrentRequests(int pMaxConcurrentRequests) {
+        if (pMaxConcurrentRequests < 1) {
+            throw new IllegalArgumentException("At least one request must be allowed in flight");
+        }
+        mMaxConcurrentRequests = pMaxConcurrentRequests;
+    }
+
+    /**
+     * Sets how many times a request is tried before it is dropped. Attempts made while offline and
+     * requests rejected with a 4xx status are not retried. Failed requests are retried after a delay that
+     * doubles with every attempt, from one second up to a minute, or straight away when the device comes
+     * back online. Defaults to 5.
+     *
+     * @param pMaxAttempts the maximum number of attempts, at least 1
+     */
+    public synchronized void setMaxAttempts(int pMaxAttempts) {
+        if (pMaxAttempts < 1) {
+            throw new IllegalArgumentException("A request must be tried at least once");
+        }
+        mMaxAttempts = pMaxAttempts;
+    }
+
+    /**
+     * @return the number of requests waiting to be delivered
+     */
+    public synchronized int size() {
+        return mRequests.size();
+    }
+
+    /**
+     * @return a copy of the requests waiting to be delivered, oldest first
+     */
+    public synchronized List<FHOutboxRequest> getRequests() {
+        return new ArrayList<>(mRequests.values());
+    }
+
+    /**
+     * Drops all the queued requests without sending them.
+     */
+    public synchronized void clear() {
+        mRequests.clear();
+        mCallbacks.clear();
+        mDeferred.clear();
+        writeToFile();
+    }
+
+    /**
+     * Adds a request to the outbox. If a request with the same explicit idempotency key is already queued,
+     * the callback is attached to it and no new request is added.
+     *
+     * @param pMethod POST, PUT or DELETE
+     * @param pUrl the url of the request
+     * @param pHeaders the headers of the request. The headers built from the default params are not kept,
+     * they are built again when the request is sent
+     * @param pParams the body of the request
+     * @param pIdempotencyKey the key used to deduplicate the request, null for a random key that is never
+     * deduplicated
+     * @param pCallback the callback to invoke once the request is delivered or dropped, can be null
+     * @return the queued request
+     */
+    public FHOutboxRequest enqueue(
+        String pMethod,
+        String pUrl,
+        Header[] pHeaders,
+        JSONObject pParams,
+        String pIdempotencyKey,
+        FHActCallback pCallback) {
+        String key = (pIdempotencyKey != null) ? pIdempotencyKey : UUID.randomUUID().toString();
+        FHOutboxRequest request;
+        FHOutboxListener listener = null;
+        synchronized (this) {
+            request = mRequests.get(key);
+            if (request == null) {
+                // the SDK headers and default params hold the session token, they are added again when sending
+                JSONObject params = pParams;
+                boolean defaultParams = pParams != null && pParams.has(KEY_DEFAULT_PARAMS);
+                if (defaultParams) {
+                    params = new JSONObject(pParams.toString());
+                    params.remove(KEY_DEFAULT_PARAMS);
+                }
+                request = new FHOutboxRequest(
+                    key, pMethod.toUpperCase(), pUrl, customHeaders(pHeaders), params, defaultParams);
+                mRequests.put(key, request);
+                writeToFile();
+                listener = mListener;
+                FHLog.d(LOG_TAG, "Queued " + request.getMethod() + " " + pUrl + " with key " + key);
+            } else {
+                FHLog.d(LOG_TAG, "Request with key " + key + " is already queued");
+            }
+            if (pCallback != null) {
+                List<FHActCallback> callbacks = mCallbacks.get(key);
+                if (callbacks == null) {
+                    callbacks = new ArrayList<>();
+                    mCallbacks.put(key, callbacks);
+                }
+                callbacks.add(pCallback);
+            }
+        }
+        if (listener != null) {
+            listener.onRequestQueued(request);
+        }
+        return request;
+    }
+
+    /**
+     * Sends the queued requests if the device is online, including the ones that failed earlier.
+     */
+    public void flush() {
+        synchronized (this) {
+            mDeferred.clear();
+        }
+        drain();
+    }
+
+    @Override
+    public void onNetworkStatusChanged(boolean pIsOnline) {
+        if (pIsOnline) {
+            flush();
+        }
+    }
+
+    private void drain() {
+        List<FHOutboxRequest> toSend = new ArrayList<>();
+        synchronized (this) {
+            if (!mEnabled || !FH.isOnline()) {
+                return;
+            }
+            for (FHOutboxRequest request : mRequests.values()) {
+                if (mInFlight.size() >= mMaxConcurrentRequests) {
+                    break;
+                }
+                String key = request.getIdempotencyKey();
+                if (!mInFlight.contains(key) && !mDeferred.contains(key)) {
+                    mInFlight.add(key);
+                    request.incrementAttempts();
+                    toSend.add(request);
+                }
+            }
+            if (!toSend.isEmpty()) {
+                writeToFile();
+            }
+        }
+        for (FHOutboxRequest request : toSend) {
+            send(request);
+        }
+    }
+
+    private void send(final FHOutboxRequest pRequest) {
+        Header[] headers = buildHeaders(pRequest);
+        JSONObject params = buildParams(pRequest);
+        FHActCallback callback = new FHActCallback() {
+            @Override
+            public void success(FHResponse pResponse) {
+                requestSent(pRequest, pResponse);
+            }
+
+            @Override
+            public void fail(FHResponse pResponse) {
+                requestFailed(pRequest, pResponse);
+            }
+        };
+        String method = pRequest.getMethod();
+        if ("PUT".equals(method)) {
+            mHttpClient.put(pRequest.getUrl(), headers, params, callback, false);
+        } else if ("DELETE".equals(method)) {
+            mHttpClient.delete(pRequest.getUrl(), headers, params, callback, false);
+        } else {
+            mHttpClient.post(pRequest.getUrl(), headers, params, callback, false);
+        }
+    }
+
+    private void requestSent(FHOutboxRequest pRequest, FHResponse pResponse) {
+        List<FHActCallback> callbacks;
+        FHOutboxListener listener;
+        synchronized (this) {
+            String key = pRequest.getIdempotencyKey();
+            mInFlight.remove(key);
+            mRequests.remove(key);
+            callbacks = mCallbacks.remove(key);
+            listener = mListener;
+            writeToFile();
+        }
+        FHLog.d(LOG_TAG, "Delivered queued request " + pRequest.getIdempotencyKey());
+        if (callbacks != null) {
+            for (FHActCallback callback : callbacks) {
+                callback.success(pResponse);
+            }
+        }
+        if (listener != null) {
+            listener.onRequestSent(pRequest, pResponse);
+        }
+        drain();
+    }
+
+    private void requestFailed(FHOutboxRequest pRequest, FHResponse pResponse) {
+        List<FHActCallback> callbacks = null;
+        FHOutboxListener listener = null;
+        boolean dropped = false;
+        long retryDelay = 0;
+        synchronized (this) {
+            String key = pRequest.getIdempotencyKey();
+            mInFlight.remove(key);
+            if ("offline".equals(pResponse.getErrorMessage())) {
+                // the request never left the device, it will be sent when the network comes back
+                pRequest.decrementAttempts();
+            } else if (isRejected(pResponse) || pRequest.getAttempts() >= mMaxAttempts) {
+                mRequests.remove(key);
+                callbacks = mCallbacks.remove(key);
+                listener = mListener;
+                dropped = true;
+            } else {
+                mDeferred.add(key);
+                retryDelay = Math.min(
+                    RETRY_MAX_DELAY_MILLIS, RETRY_BASE_DELAY_MILLIS << Math.min(pRequest.getAttempts() - 1, 16));
+            }
+            writeToFile();
+        }
+        if (!dropped) {
+            if (retryDelay > 0) {
+                FHLog.w(LOG_TAG, "Failed to deliver queued request " + pRequest.getIdempotencyKey()
+                    + ", will retry in " + retryDelay + "ms");
+                scheduleRetry(pRequest.getIdempotencyKey(), retryDelay);
+            }
+            drain();
+            return;
+        }
+        FHLog.w(LOG_TAG, "Dropped queued request " + pRequest.getIdempotencyKey() + " after "
+            + pRequest.getAttempts() + " attempts");
+        if (callbacks != null) {
+            for (FHActCallback callback : callbacks) {
+                callback.fail(pResponse);
+            }
+        }
+        if (listener != null) {
+            listener.onRequestFailed(pRequest, pResponse);
+        }
+        drain();
+    }
+
+    private void scheduleRetry(final String pKey, long pDelay) {
+        mRetryTimer.schedule(new Runnable() {
+            @Override
+            public void run() {
+                synchronized (FHOutbox.this) {
+                    mDeferred.remove(pKey);
+                }
+                drain();
+            }
+        }, pDelay, TimeUnit.MILLISECONDS);
+    }
+
+    private static boolean isRejected(FHResponse pResponse) {
+        if (pResponse.getError() instanceof HttpResponseException) {
+            int status = ((HttpResponseException) pResponse.getError()).getStatusCode();
+            return status >= 400 && status < 500 && status != 408 && status != 429;
+        }
+        return false;
+    }
+
+    /**
+     * @return the headers set by the caller, without the ones the SDK builds from the default params. The
+     * session token header is always left out, as the session may have ended since the request was queued.
+     */
+    private static Header[] customHeaders(Header[] pHeaders) {
+        List<Header> headers = new ArrayList<>();
+        if (pHeaders == null) {
+            return new Header[0];
+        }
+        Set<String> defaultHeaders = new HashSet<>();
+        defaultHeaders.add((DEFAULT_HEADER_PREFIX + FHAuthSession.SESSION_TOKEN_KEY).toLowerCase(Locale.US));
+        for (Iterator<String> it = FH.getDefaultParams().keys(); it.hasNext(); ) {
+            defaultHeaders.add((DEFAULT_HEADER_PREFIX + it.next()).toLowerCase(Locale.US));
+        }
+        for (Header header : pHeaders) {
+            if (!defaultHeaders.contains(header.getName().toLowerCase(Locale.US))) {
+                headers.add(header);
+            }
+        }
+        return headers.toArray(new Header[headers.size()]);
+    }
+
+    /**
+     * Builds the headers of a queued request from the current default params, so a session token saved
+     * after the request was queued is used.
+     */
+    private static Header[] buildHeaders(FHOutboxRequest pRequest) {
+        Header[] custom = customHeaders(pRequest.getHeaders());
+        Header[] headers = FH.getDefaultParamsAsHeaders(custom);
+        Header[] ret = new Header[headers.length + 1];
+        System.arraycopy(headers, 0, ret, 0, headers.length);
+        ret[headers.length] = new BasicHeader(IDEMPOTENCY_KEY_HEADER, pRequest.getIdempotencyKey());
+        return ret;
+    }
+
+    private static JSONObject buildParams(FHOutboxRequest pRequest) {
+        JSONObject params = pRequest.getParams();
+        if (!pRequest.hasDefaultParams()) {
+            return params;
+        }
+        JSONObject ret = (params != null) ? new JSONObject(params.toString()) : new JSONObject();
+        ret.put(KEY_DEFAULT_PARAMS, FH.getDefaultParams());
+        return ret;
+    }
+
+    private void readFromFile() {
+        try {
+            FileInputStream fis = mContext.openFileInput(STORAGE_FILE);
+            ByteArrayOutputStream bos = new ByteArrayOutputStream();
+            byte[] buffer = new byte[1024];
+            int bytesRead;
+            while ((bytesRead = fis.read(buffer)) != -1) {
+                bos.write(buffer, 0, bytesRead);
+            }
+            fis.close();
+            JSONArray requests = new JSONObject(bos.toString("UTF-8")).getJSONArray(KEY_REQUESTS);
+            for (int i = 0; i < requests.length(); i++) {
+                FHOutboxRequest request = FHOutboxRequest.fromJSON(requests.getJSONObject(i));
+                mRequests.put(request.getIdempotencyKey(), request);
+            }
+        } catch (FileNotFoundException ex) {
+            FHLog.d(LOG_TAG, "No outbox file found, starting empty");
+        } catch (IOException e) {
+            FHLog.e(LOG_TAG, "Error reading file : " + STORAGE_FILE, e);
+        } catch (JSONException je) {
+            FHLog.e(LOG_TAG, "Failed to parse JSON file : " + STORAGE_FILE, je);
+        }
+    }
+
+    /**
+     * Saves the queue to a temporary file first, then renames it over the outbox file, so a crash while
+     * saving leaves the previous queue in place.
+     */
+    private synchronized void writeToFile() {
+        JSONArray requests = new JSONArray();
+        for (FHOutboxRequest request : mRequests.values()) {
+            requests.put(request.getJSON());
+        }
+        String content = new JSONObject().put(KEY_REQUESTS, requests).toString();
+        File file = new File(mContext.getFilesDir(), STORAGE_FILE);
+        File tempFile = new File(mContext.getFilesDir(), STORAGE_FILE + TEMP_FILE_EXT);
+        try {
+            FileOutputStream fos = new FileOutputStream(tempFile);
+            try {
+                fos.write(content.getBytes("UTF-8"));
+                fos.getFD().sync();
+            } finally {
+                fos.close();
+            }
+            if (!tempFile.renameTo(file)) {
+                throw new IOException("Could not rename " + tempFile + " to " + file);
+            }
+        } catch (IOException e) {
+            FHLog.e(LOG_TAG, "Error writing file: " + STORAGE_FILE, e);
+            tempFile.delete();
+        }
+    }
+}
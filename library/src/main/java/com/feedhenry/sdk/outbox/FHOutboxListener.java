@@ -0,0 +1,48 @@
+/**
+ * Copyright Red Hat, Inc, and individual contributors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.feedhenry.sdk.outbox;
+
+import com.feedhenry.sdk.FHResponse;
+
+/**
+ * Implement this interface to follow the requests going through {@link FHOutbox}.
+ */
+public interface FHOutboxListener {
+
+    /**
+     * Invoked when a request is added to the outbox because the device is offline.
+     *
+     * @param pRequest the queued request
+     */
+    void onRequestQueued(FHOutboxRequest pRequest);
+
+    /**
+     * Invoked when a queued request has been delivered.
+     *
+     * @param pRequest the delivered request
+     * @param pResponse the response from the cloud app
+     */
+    void onRequestSent(FHOutboxRequest pRequest, FHResponse pResponse);
+
+    /**
+     * Invoked when a queued request has been dropped from the outbox, either because it was
+     * rejected by the cloud app or because it ran out of attempts.
+     *
+     * @param pRequest the dropped request
+     * @param pResponse the last failure response
+     */
+    void onRequestFailed(FHOutboxRequest pRequest, FHResponse pResponse);
+}
@@ -0,0 +1,174 @@
+/**
+ * Copyright Red Hat, Inc, and individual contributors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.feedhenry.sdk.outbox;
+
+import cz.msebera.android.httpclient.Header;
+import cz.msebera.android.httpclient.message.BasicHeader;
+import org.json.fh.JSONArray;
+import org.json.fh.JSONObject;
+
+/**
+ * A mutating cloud request that was queued by {@link FHOutbox} while the device was offline.
+ */
+public class FHOutboxRequest {
+
+    private static final String KEY_IDEMPOTENCY_KEY = "idempotencyKey";
+    private static final String KEY_METHOD = "method";
+    private static final String KEY_URL = "url";
+    private static final String KEY_HEADERS = "headers";
+    private static final String KEY_PARAMS = "params";
+    private static final String KEY_TIMESTAMP = "timestamp";
+    private static final String KEY_ATTEMPTS = "attempts";
+    private static final String KEY_DEFAULT_PARAMS = "defaultParams";
+    private static final String KEY_NAME = "name";
+    private static final String KEY_VALUE = "value";
+
+    private String idempotencyKey;
+
+    private String method;
+
+    private String url;
+
+    private Header[] headers;
+
+    private JSONObject params;
+
+    private long timestamp;
+
+    private int attempts;
+
+    private boolean defaultParams;
+
+    FHOutboxRequest() {
+    }
+
+    FHOutboxRequest(
+        String pIdempotencyKey, String pMethod, String pUrl, Header[] pHeaders, JSONObject pParams,
+        boolean pDefaultParams) {
+        this.idempotencyKey = pIdempotencyKey;
+        this.method = pMethod;
+        this.url = pUrl;
+        this.headers = pHeaders;
+        this.params = pParams;
+        this.defaultParams = pDefaultParams;
+        this.timestamp = System.currentTimeMillis();
+    }
+
+    /**
+     * The key used to deduplicate this request, both in the outbox and on the server.
+     *
+     * @return the idempotency key
+     */
+    public String getIdempotencyKey() {
+        return idempotencyKey;
+    }
+
+    /**
+     * @return the HTTP method, one of POST, PUT or DELETE
+     */
+    public String getMethod() {
+        return method;
+    }
+
+    public String getUrl() {
+        return url;
+    }
+
+    /**
+     * @return the headers set by the caller. The headers built from the default params are added when the
+     * request is sent.
+     */
+    public Header[] getHeaders() {
+        return headers;
+    }
+
+    /**
+     * @return the body of the request, without the default params
+     */
+    public JSONObject getParams() {
+        return params;
+    }
+
+    /**
+     * @return whether the default params are added to the body when the request is sent, as act requests
+     * carry them
+     */
+    boolean hasDefaultParams() {
+        return defaultParams;
+    }
+
+    /**
+     * @return when the request was queued, in milliseconds since the epoch
+     */
+    public long getTimestamp() {
+        return timestamp;
+    }
+
+    /**
+     * @return how many times delivery of this request has been attempted
+     */
+    public int getAttempts() {
+        return attempts;
+    }
+
+    void incrementAttempts() {
+        attempts++;
+    }
+
+    void decrementAttempts() {
+        attempts--;
+    }
+
+    public JSONObject getJSON() {
+        JSONObject ret = new JSONObject();
+        ret.put(KEY_IDEMPOTENCY_KEY, idempotencyKey);
+        ret.put(KEY_METHOD, method);
+        ret.put(KEY_URL, url);
+        ret.put(KEY_TIMESTAMP, timestamp);
+        ret.put(KEY_ATTEMPTS, attempts);
+        ret.put(KEY_DEFAULT_PARAMS, defaultParams);
+        if (params != null) {
+            ret.put(KEY_PARAMS, params);
+        }
+        JSONArray headersJson = new JSONArray();
+        if (headers != null) {
+            for (Header header : headers) {
+                headersJson.put(new JSONObject().put(KEY_NAME, header.getName()).put(KEY_VALUE, header.getValue()));
+            }
+        }
+        ret.put(KEY_HEADERS, headersJson);
+        return ret;
+    }
+
+    public static FHOutboxRequest fromJSON(JSONObject pObj) {
+        FHOutboxRequest request = new FHOutboxRequest();
+        request.idempotencyKey = pObj.getString(KEY_IDEMPOTENCY_KEY);
+        request.method = pObj.getString(KEY_METHOD);
+        request.url = pObj.getString(KEY_URL);
+        request.timestamp = pObj.optLong(KEY_TIMESTAMP);
+        request.attempts = pObj.optInt(KEY_ATTEMPTS);
+        request.defaultParams = pObj.optBoolean(KEY_DEFAULT_PARAMS, false);
+        request.params = pObj.optJSONObject(KEY_PARAMS);
+        JSONArray headersJson = pObj.optJSONArray(KEY_HEADERS);
+        int length = (headersJson != null) ? headersJson.length() : 0;
+        request.headers = new Header[length];
+        for (int i = 0; i < length; i++) {
+            JSONObject header = headersJson.getJSONObject(i);
+            request.headers[i] = new BasicHeader(header.getString(KEY_NAME), header.getString(KEY_VALUE));
+        }
+        return request;
+    }
+}
@@ -0,0 +1,62 @@
+/**
+ * Copyright Red Hat, Inc, and individual contributors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.feedhenry.sdk.sync;
+
+import android.content.Context;
+import android.os.Bundle;
+import java.util.concurrent.CopyOnWriteArrayList;
+import org.jboss.aerogear.android.unifiedpush.MessageHandler;
+import org.jboss.aerogear.android.unifiedpush.RegistrarManager;
+
+/**
+ * Delivers the sync push messages received through the AeroGear push registration of
+ * {@link com.feedhenry.sdk.FH#pushRegister}. A sync push message carries the id of the changed dataset in
+ * its <code>fh_sync_dataset</code> entry and, optionally, the new dataset hash in its
+ * <code>fh_sync_hash</code> entry. Other push messages are left to the handlers of the app.
+ */
+public class FHSyncAeroGearPushDispatcher implements FHSyncPushDispatcher, MessageHandler {
+
+    public static final String KEY_DATASET_ID = "fh_sync_dataset";
+    public static final String KEY_DATASET_HASH = "fh_sync_hash";
+
+    private final CopyOnWriteArrayList<Receiver> mReceivers = new CopyOnWriteArrayList<>();
+
+    @Override
+    public synchronized void register(Receiver pReceiver) {
+        if (mReceivers.addIfAbsent(pReceiver) && mReceivers.size() == 1) {
+            RegistrarManager.registerBackgroundThreadHandler(this);
+        }
+    }
+
+    @Override
+    public synchronized void unregister(Receiver pReceiver) {
+        if (mReceivers.remove(pReceiver) && mReceivers.isEmpty()) {
+            RegistrarManager.unregisterBackgroundThreadHandler(this);
+        }
+    }
+
+    @Override
+    public void onMessage(Context pContext, Bundle pMessage) {
+        String dataId = pMessage.getString(KEY_DATASET_ID);
+        if (dataId == null) {
+            return;
+        }
+        String hash = pMessage.getString(KEY_DATASET_HASH);
+        for (Receiver receiver : mReceivers) {
+            receiver.onDatasetChanged(dataId, hash);
+        }
+    }
+}
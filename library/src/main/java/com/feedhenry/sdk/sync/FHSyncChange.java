@@ -0,0 +1,75 @@
+/**
+ * Copyright Red Hat, Inc, and individual contributors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.feedhenry.sdk.sync;
+
+/**
+ * A change to a record of a dataset, delivered to an {@link FHSyncChangeListener}.
+ *
+ * The record before and after the change are read only views. Several changes to a record within one batch
+ * are merged into one, from the record before the first change to the record after the last one.
+ */
+public class FHSyncChange {
+
+    public enum Type {
+        CREATED, UPDATED, DELETED
+    }
+
+    private final String mDatasetId;
+    private final String mUid;
+    private final FHSyncRecordView mBefore;
+    private final FHSyncRecordView mAfter;
+
+    FHSyncChange(String pDatasetId, String pUid, FHSyncRecordView pBefore, FHSyncRecordView pAfter) {
+        mDatasetId = pDatasetId;
+        mUid = pUid;
+        mBefore = pBefore;
+        mAfter = pAfter;
+    }
+
+    public String getDatasetId() {
+        return mDatasetId;
+    }
+
+    public String getUid() {
+        return mUid;
+    }
+
+    public Type getType() {
+        if (mBefore == null) {
+            return Type.CREATED;
+        }
+        return mAfter == null ? Type.DELETED : Type.UPDATED;
+    }
+
+    /**
+     * @return the record before the change, or null if the record was created
+     */
+    public FHSyncRecordView getBefore() {
+        return mBefore;
+    }
+
+    /**
+     * @return the record after the change, or null if the record was deleted
+     */
+    public FHSyncRecordView getAfter() {
+        return mAfter;
+    }
+
+    @Override
+    public String toString() {
+        return getType() + " " + mDatasetId + "/" + mUid;
+    }
+}
@@ -0,0 +1,125 @@
+/**
+ * Copyright Red Hat, Inc, and individual contributors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.feedhenry.sdk.sync;
+
+import com.feedhenry.sdk.utils.FHLog;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executor;
+
+/**
+ * Collects the changes to the records of a dataset and hands them to the subscriptions in batches.
+ *
+ * Changes are only recorded while there are subscriptions, and several changes to a record are merged until
+ * the batch is flushed at the end of a sync loop or of a local change.
+ */
+class FHSyncChangeFeed {
+
+    private static final String LOG_TAG = "com.feedhenry.sdk.sync.FHSyncChangeFeed";
+
+    private final String mDatasetId;
+    private final List<FHSyncSubscription> mSubscriptions = new CopyOnWriteArrayList<>();
+    private final Map<String, FHSyncChange> mBatch = new LinkedHashMap<>();
+
+    FHSyncChangeFeed(String pDatasetId) {
+        mDatasetId = pDatasetId;
+    }
+
+    FHSyncSubscription subscribe(String pUid, FHSyncQuery pQuery, Executor pExecutor, FHSyncChangeListener pListener) {
+        if (pExecutor == null || pListener == null) {
+            throw new IllegalArgumentException("An executor and a listener are needed to subscribe");
+        }
+        FHSyncSubscription subscription = new FHSyncSubscription(this, pUid, pQuery, pExecutor, pListener);
+        mSubscriptions.add(subscription);
+        return subscription;
+    }
+
+    void unsubscribe(FHSyncSubscription pSubscription) {
+        mSubscriptions.remove(pSubscription);
+    }
+
+    boolean isObserved() {
+        return !mSubscriptions.isEmpty();
+    }
+
+    /**
+     * Records a change to a record. A record without data counts as no record.
+     *
+     * @param pUid the uid of the record
+     * @param pBefore the record before the change, or null
+     * @param pAfter the record after the change, or null
+     */
+    synchronized void recordChange(String pUid, FHSyncDataRecord pBefore, FHSyncDataRecord pAfter) {
+        FHSyncRecordView after = view(pUid, pAfter);
+        FHSyncChange previous = mBatch.remove(pUid);
+        FHSyncRecordView before = previous != null ? previous.getBefore() : view(pUid, pBefore);
+        if (before == null && after == null) {
+            return;
+        }
+        if (before != null && after != null && before.getHashValue() != null
+            && before.getHashValue().equals(after.getHashValue())) {
+            return;
+        }
+        mBatch.put(pUid, new FHSyncChange(mDatasetId, pUid, before, after));
+    }
+
+    /**
+     * Hands the recorded changes to the subscriptions interested in them.
+     */
+    void flush() {
+        List<FHSyncChange> changes;
+        synchronized (this) {
+            if (mBatch.isEmpty()) {
+                return;
+            }
+            changes = new ArrayList<>(mBatch.values());
+            mBatch.clear();
+        }
+        for (final FHSyncSubscription subscription : mSubscriptions) {
+            final List<FHSyncChange> matching = new ArrayList<>();
+            for (FHSyncChange change : changes) {
+                if (subscription.matches(change)) {
+                    matching.add(change);
+                }
+            }
+            if (matching.isEmpty()) {
+                continue;
+            }
+            try {
+                subscription.getExecutor().execute(new Runnable() {
+                    @Override
+                    public void run() {
+                        if (!subscription.isCancelled()) {
+                            subscription.getListener().onChanges(matching);
+                        }
+                    }
+                });
+            } catch (Exception e) {
+                FHLog.e(LOG_TAG, "Failed to deliver changes of " + mDatasetId, e);
+            }
+        }
+    }
+
+    private static FHSyncRecordView view(String pUid, FHSyncDataRecord pRecord) {
+        if (pRecord == null || pRecord.getData() == null) {
+            return null;
+        }
+        return new FHSyncRecordView(pUid, pRecord);
+    }
+}
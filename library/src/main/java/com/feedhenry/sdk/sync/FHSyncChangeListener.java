@@ -0,0 +1,33 @@
+/**
+ * Copyright Red Hat, Inc, and individual contributors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.feedhenry.sdk.sync;
+
+import java.util.List;
+
+/**
+ * Receives the changes to the records of a dataset, see
+ * {@link FHSyncClient#subscribe(String, java.util.concurrent.Executor, FHSyncChangeListener)}.
+ */
+public interface FHSyncChangeListener {
+
+    /**
+     * Called with the changes of one sync loop, or of one local create, update or delete, on the executor
+     * given when subscribing.
+     *
+     * @param pChanges the changes the subscription is interested in, never empty
+     */
+    void onChanges(List<FHSyncChange> pChanges);
+}
@@ -17,19 +17,31 @@ package com.feedhenry.sdk.sync;
 
 import android.app.Activity;
 import android.content.Context;
-import android.os.Handler;
 import android.os.HandlerThread;
 import android.os.Looper;
-import android.util.Log;
 import com.feedhenry.sdk.FH;
 import com.feedhenry.sdk.FHActCallback;
 import com.feedhenry.sdk.api.FHActRequest;
 import com.feedhenry.sdk.exceptions.DataSetNotFound;
 import com.feedhenry.sdk.exceptions.FHNotReadyException;
 import com.feedhenry.sdk.utils.FHLog;
-import java.util.Date;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
 import org.json.fh.JSONObject;
 
 /**
@@ -45,17 +57,47 @@ public class FHSyncClient {
 
     protected static final String LOG_TAG = "com.feedhenry.sdk.sync.FHSyncClient";
 
-    private final Handler mHandler;
+    /**
+     * How far ahead a multiplexed sync looks for other datasets to take along.
+     */
+    private static final long MULTIPLEX_WINDOW_MILLIS = 2000;
+
+    /**
+     * The most threads reading and writing the files of the datasets.
+     */
+    private static final int MAX_STORAGE_THREADS = 4;
 
     private Context mContext;
-    private Map<String, FHSyncDataset> mDataSets = new HashMap<String, FHSyncDataset>();
+    private Map<String, FHSyncDataset> mDataSets = new ConcurrentHashMap<String, FHSyncDataset>();
     private FHSyncConfig mConfig = new FHSyncConfig();
     private FHSyncListener mSyncListener = null;
 
     private FHSyncNotificationHandler mNotificationHandler;
+    private final FHSyncListenerRegistry mListenerRegistry = new FHSyncListenerRegistry();
 
     private boolean mInitialised = false;
-    private MonitorTask mMonitorTask = null;
+    private volatile FHSyncScheduler mScheduler = null;
+    private volatile FHSyncExecutor mExecutor = null;
+    private volatile FHSyncMultiplexer mMultiplexer = null;
+    private volatile ExecutorService mStorageExecutor = null;
+    private final Map<String, Future<Void>> mLoads = new ConcurrentHashMap<String, Future<Void>>();
+    private final Map<String, FHSyncDataset> mWarmDataSets = new ConcurrentHashMap<String, FHSyncDataset>();
+    private FHSyncPushDispatcher mPushDispatcher = null;
+    private final Set<String> mPushDataIds = Collections.newSetFromMap(new ConcurrentHashMap<String, Boolean>());
+
+    private final FHSyncScheduler.Dispatcher mDispatcher = new FHSyncScheduler.Dispatcher() {
+        @Override
+        public void dispatch(String pDataId) {
+            startSync(pDataId);
+        }
+    };
+
+    private final FHSyncPushDispatcher.Receiver mPushReceiver = new FHSyncPushDispatcher.Receiver() {
+        @Override
+        public void onDatasetChanged(String pDataId, String pHash) {
+            onPush(pDataId, pHash);
+        }
+    };
 
     /**
      * Gets the singleton instance of the sync client.
@@ -70,9 +112,6 @@ public class FHSyncClient {
     }
 
     public FHSyncClient() {
-        HandlerThread thread = new HandlerThread("FHSyncClient");
-        thread.start();
-        mHandler = new Handler(thread.getLooper());
     }
 
     /**
@@ -89,15 +128,40 @@ public class FHSyncClient {
         mSyncListener = pListener;
         initHandlers();
         mInitialised = true;
-        if (null == mMonitorTask) {
-            HandlerThread thread = new HandlerThread("monitor task");
-            thread.start();
-            Handler handler = new Handler(thread.getLooper());
-            mMonitorTask = new MonitorTask();
-            handler.post(mMonitorTask);
+        if (null == mExecutor) {
+            mExecutor = new FHSyncExecutor(mConfig.getSyncWorkerThreads(), mConfig.getMaxConcurrentSyncs());
+        }
+        if (!mConfig.isMultiplexSync()) {
+            mMultiplexer = null;
+        } else if (null == mMultiplexer) {
+            mMultiplexer = new FHSyncMultiplexer(mExecutor, mConfig.getRequestContentEncoding());
+        }
+        if (null == mScheduler) {
+            mScheduler = new FHSyncScheduler(mDispatcher);
+        }
+        if (null == mStorageExecutor) {
+            mStorageExecutor = newStorageExecutor();
         }
     }
 
+    /**
+     * Creates the pool loading and saving the datasets, with a thread per core up to
+     * {@link #MAX_STORAGE_THREADS}.
+     */
+    private static ExecutorService newStorageExecutor() {
+        int threads = Math.max(1, Math.min(MAX_STORAGE_THREADS, Runtime.getRuntime().availableProcessors()));
+        return Executors.newFixedThreadPool(threads, new ThreadFactory() {
+            private final AtomicInteger mCount = new AtomicInteger();
+
+            @Override
+            public Thread newThread(Runnable pRunnable) {
+                Thread thread = new Thread(pRunnable, "FHSyncStorage-" + mCount.incrementAndGet());
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+    }
+
     /**
      * Initializes the notification handlers.
      */
@@ -123,6 +187,31 @@ public class FHSyncClient {
         }
     }
 
+    /**
+     * Adds a listener for some of the events of the datasets, next to the listener given to
+     * {@link #init(Context, FHSyncConfig, FHSyncListener)}. The events are chosen by the mask rather than by
+     * the notify flags of the sync configuration, and are only built when a listener wants them.
+     *
+     * @param pListener the listener
+     * @param pEventMask the events to receive, see {@link NotificationMessage#maskOf(int...)} and
+     * {@link NotificationMessage#ALL_EVENTS_MASK}
+     * @param pDataId the id of the only dataset to receive events of, or null for every dataset
+     * @param pExecutor the executor the listener is called on, or null to call it on the sync thread that
+     * raised the event
+     */
+    public void addListener(FHSyncListener pListener, int pEventMask, String pDataId, Executor pExecutor) {
+        mListenerRegistry.add(pListener, pEventMask, pDataId, pExecutor);
+    }
+
+    /**
+     * Removes a listener added with {@link #addListener}, for all the events it was added for.
+     *
+     * @param pListener the listener
+     */
+    public void removeListener(FHSyncListener pListener) {
+        mListenerRegistry.remove(pListener);
+    }
+
     /**
      * Uses the sync client to manage a dataset.
      *
@@ -139,6 +228,10 @@ public class FHSyncClient {
     /**
      * Uses the sync client to manage a dataset.
      *
+     * The dataset is loaded from its file on a storage thread and this returns straight away. Reads and
+     * writes of the dataset made before it is loaded wait for the load; {@link #whenLoaded} tells when it
+     * is done.
+     *
      * @param pDataId The id of the dataset.
      * @param pConfig The sync configuration for the dataset. If not specified,
      * the sync configuration passed in the initDev method will be used
@@ -156,20 +249,248 @@ public class FHSyncClient {
             syncConfig = pConfig;
         }
         if (null != dataset) {
-            dataset.setContext(mContext);
+            dataset.setStorage(new FHSyncContextStorage(mContext));
             dataset.setNotificationHandler(mNotificationHandler);
+            dataset.setListenerRegistry(mListenerRegistry);
+            dataset.setScheduler(mScheduler);
+            dataset.setExecutor(mExecutor);
         } else {
-            dataset
-                    = new FHSyncDataset(mContext, mNotificationHandler, pDataId, syncConfig, pQueryParams, pMetaData);
+            dataset = mWarmDataSets.remove(pDataId);
+            if (null != dataset) {
+                dataset.setNotificationHandler(mNotificationHandler);
+                dataset.setCustomMetaData(pMetaData);
+            } else {
+                dataset = new FHSyncDataset(
+                    new FHSyncContextStorage(mContext), mNotificationHandler, pDataId, syncConfig,
+                    pQueryParams, pMetaData, false);
+            }
+            dataset.setListenerRegistry(mListenerRegistry);
+            dataset.setScheduler(mScheduler);
+            dataset.setExecutor(mExecutor);
             mDataSets.put(pDataId, dataset);
-            dataset.setSyncRunning(false);
             dataset.setInitialised(true);
         }
 
-        dataset.setSyncConfig(syncConfig);
-        dataset.setSyncPending(true);
+        FutureTask<Void> load = new FutureTask<Void>(newLoadTask(pDataId, dataset, syncConfig, mLoads.get(pDataId)));
+        mLoads.put(pDataId, load);
+        mStorageExecutor.execute(load);
+    }
+
+    /**
+     * Loads a managed dataset, if it is not loaded yet, then applies its sync config, schedules its first
+     * sync and saves it. When the dataset is managed again before an earlier load is done, the later load
+     * waits for it, so the last config given wins.
+     */
+    private Callable<Void> newLoadTask(
+        final String pDataId, final FHSyncDataset pDataset, final FHSyncConfig pConfig, final Future<Void> pPrevious) {
+        return new Callable<Void>() {
+            @Override
+            public Void call() throws Exception {
+                if (pPrevious != null) {
+                    try {
+                        pPrevious.get();
+                    } catch (ExecutionException e) {
+                        FHLog.e(LOG_TAG, "Failed to load dataset " + pDataId, e.getCause());
+                    }
+                }
+                long start = System.currentTimeMillis();
+                pDataset.load(pConfig);
+                pDataset.setSyncConfig(pConfig);
+                pDataset.setSyncOnPush(mPushDataIds.contains(pDataId));
+                pDataset.setSyncPending(true);
+                pDataset.writeToFile();
+                FHLog.d(LOG_TAG, "Dataset " + pDataId + " loaded in " + (System.currentTimeMillis() - start) + "ms");
+                return null;
+            }
+        };
+    }
+
+    /**
+     * Loads the datasets saved on the device ahead of {@link #manage}, in parallel on the storage threads.
+     * Managing a warmed up dataset then reuses what has been loaded instead of reading its file again.
+     * Datasets that are already managed or warmed up, and datasets without a file, are skipped.
+     *
+     * @param pDataIds the ids of the datasets to load, or null for every dataset saved on the device
+     * @return the load time in milliseconds of each dataset being loaded, as futures done when it is loaded
+     * @throws IllegalStateException thrown if FHSyncClient isn't initialised.
+     */
+    public Map<String, Future<Long>> warmUp(Collection<String> pDataIds) {
+        if (!mInitialised) {
+            throw new IllegalStateException("FHSyncClient isn't initialised. Have you called the initDev function?");
+        }
+        List<String> stored = FHSyncDataset.listStoredDatasets(new FHSyncContextStorage(mContext));
+        if (null != pDataIds) {
+            stored.retainAll(pDataIds);
+        }
+        Map<String, Future<Long>> ret = new HashMap<String, Future<Long>>();
+        for (final String dataId : stored) {
+            if (mDataSets.containsKey(dataId) || mWarmDataSets.containsKey(dataId)) {
+                continue;
+            }
+            final FHSyncDataset dataset = new FHSyncDataset(
+                new FHSyncContextStorage(mContext), mNotificationHandler, dataId, mConfig,
+                new JSONObject(), new JSONObject(), false);
+            mWarmDataSets.put(dataId, dataset);
+            FutureTask<Long> load = new FutureTask<Long>(new Callable<Long>() {
+                @Override
+                public Long call() {
+                    long start = System.currentTimeMillis();
+                    dataset.load(null);
+                    long time = System.currentTimeMillis() - start;
+                    FHLog.d(LOG_TAG, "Dataset " + dataId + " warmed up in " + time + "ms");
+                    return time;
+                }
+            });
+            ret.put(dataId, load);
+            mStorageExecutor.execute(load);
+        }
+        return ret;
+    }
+
+    /**
+     * Gets the load of a managed dataset, done once the dataset has been read from its file and saved
+     * with its sync config.
+     *
+     * @param pDataId the id of the dataset
+     * @return a future done when the dataset is loaded
+     * @throws DataSetNotFound if the dataId is not known
+     */
+    public Future<Void> whenLoaded(String pDataId) throws DataSetNotFound {
+        Future<Void> load = mLoads.get(pDataId);
+        if (null == load) {
+            throw new DataSetNotFound("Unknown dataId : " + pDataId);
+        }
+        return load;
+    }
+
+    /**
+     * Starts the sync of a dataset that is due. With multiplexed syncs, the other datasets that are due
+     * shortly are taken off the schedule and synced along with it in one request.
+     *
+     * @param pDataId The id of the dataset
+     */
+    private void startSync(String pDataId) {
+        FHSyncMultiplexer multiplexer = mMultiplexer;
+        FHSyncScheduler scheduler = mScheduler;
+        if (null == multiplexer || null == scheduler || !multiplexer.isSupported()) {
+            startDatasetSync(pDataId);
+            return;
+        }
+        List<String> due = new ArrayList<String>();
+        due.add(pDataId);
+        due.addAll(scheduler.takeDue(MULTIPLEX_WINDOW_MILLIS));
+        List<FHSyncDataset> combined = new ArrayList<FHSyncDataset>();
+        for (String dataId : due) {
+            FHSyncDataset dataset = mDataSets.get(dataId);
+            if (null == dataset || dataset.isStopSync()) {
+                continue;
+            }
+            if (dataset.getSyncConfig().useCustomSync()) {
+                // custom syncs go through the act endpoint of the dataset
+                startDatasetSync(dataId);
+                continue;
+            }
+            scheduler.schedule(dataId, dataset.getEffectiveSyncFrequency() * 1000L);
+            if (!dataset.isSyncRunning()) {
+                combined.add(dataset);
+            }
+        }
+        if (combined.size() == 1) {
+            startDatasetSync(combined.get(0).getDatasetId());
+        } else if (combined.size() > 1) {
+            multiplexer.sync(combined);
+        }
+    }
+
+    /**
+     * Starts a sync of the dataset on its serial lane if it is not paused or already syncing. The dataset
+     * is looked up at this point, so a dataset replaced since it was scheduled is the one that syncs.
+     *
+     * @param pDataId The id of the dataset
+     */
+    private void startDatasetSync(final String pDataId) {
+        final FHSyncDataset dataset = mDataSets.get(pDataId);
+        FHSyncScheduler scheduler = mScheduler;
+        final FHSyncExecutor executor = mExecutor;
+        if (null == dataset || null == scheduler || null == executor || dataset.isStopSync()) {
+            return;
+        }
+        // keeps the dataset on the schedule even if this sync never completes,
+        // a completed sync replaces this with its own due time
+        scheduler.schedule(pDataId, dataset.getEffectiveSyncFrequency() * 1000L);
+        if (!dataset.isSyncRunning()) {
+            executor.submitSync(
+                pDataId,
+                new Runnable() {
+                    @Override
+                    public void run() {
+                        // a started sync loop frees the slot when it completes, this sync holds the slot on its
+                        // own as the executor does not run two syncs of a dataset at once
+                        if (dataset.isStopSync() || !dataset.startSyncLoop()) {
+                            executor.syncFinished(pDataId);
+                        }
+                    }
+                });
+        }
+    }
+
+    /**
+     * Sets where the push messages announcing dataset changes come from, for example a
+     * {@link FHSyncAeroGearPushDispatcher} once {@link FH#pushRegister} succeeded. Replaces the previous
+     * dispatcher, null stops listening to push messages.
+     *
+     * @param pDispatcher the push dispatcher
+     */
+    public synchronized void setPushDispatcher(FHSyncPushDispatcher pDispatcher) {
+        if (null != mPushDispatcher) {
+            mPushDispatcher.unregister(mPushReceiver);
+        }
+        mPushDispatcher = pDispatcher;
+        if (null != mPushDispatcher) {
+            mPushDispatcher.register(mPushReceiver);
+        }
+    }
+
+    /**
+     * Syncs a dataset when a push message announces a change of it. The dataset then only polls at the
+     * push safety sync frequency of its configuration, in case a push message is lost.
+     *
+     * @param pDataId The id of the dataset
+     */
+    public void registerPushSync(String pDataId) {
+        mPushDataIds.add(pDataId);
+        FHSyncDataset dataset = mDataSets.get(pDataId);
+        if (null != dataset) {
+            dataset.setSyncOnPush(true);
+        }
+    }
 
-        dataset.writeToFile();
+    /**
+     * Goes back to polling a dataset at its sync frequency.
+     *
+     * @param pDataId The id of the dataset
+     */
+    public void unregisterPushSync(String pDataId) {
+        mPushDataIds.remove(pDataId);
+        FHSyncDataset dataset = mDataSets.get(pDataId);
+        if (null != dataset) {
+            dataset.setSyncOnPush(false);
+        }
+    }
+
+    /**
+     * Forces a sync of a dataset registered for push sync, unless it already has the announced hash.
+     */
+    private void onPush(String pDataId, String pHash) {
+        if (!mPushDataIds.contains(pDataId)) {
+            return;
+        }
+        FHSyncDataset dataset = mDataSets.get(pDataId);
+        if (null == dataset || (null != pHash && pHash.equals(dataset.getHashValue()))) {
+            return;
+        }
+        FHLog.d(LOG_TAG, "Push message for dataset " + pDataId + ", forcing a sync");
+        forceSync(pDataId);
     }
 
     /**
@@ -185,6 +506,20 @@ public class FHSyncClient {
         }
     }
 
+    /**
+     * Gets the sync interval each managed dataset currently uses, which differs from the configured sync
+     * frequency when the sync frequency is adaptive.
+     *
+     * @return the sync interval in seconds of each dataset, keyed by dataset id
+     */
+    public Map<String, Integer> getEffectiveSyncFrequencies() {
+        Map<String, Integer> frequencies = new HashMap<String, Integer>();
+        for (FHSyncDataset dataset : mDataSets.values()) {
+            frequencies.put(dataset.getDatasetId(), dataset.getEffectiveSyncFrequency());
+        }
+        return frequencies;
+    }
+
     /**
      * Lists all the data in the dataset with pDataId.
      *
@@ -201,6 +536,24 @@ public class FHSyncClient {
         return data;
     }
 
+    /**
+     * Lists the data records in dataset with pDataId with only some of their fields. Only the given fields
+     * are copied, which is cheaper than {@link #list(String)} when the records have many more fields.
+     *
+     * @param pDataId the id of the dataset
+     * @param pFields the top level keys or JSON paths of the fields to return, nested fields separated by
+     * dots. Nested fields keep their nesting in the returned data.
+     * @return all data records, like {@link #list(String)}, holding only the given fields
+     */
+    public JSONObject list(String pDataId, Collection<String> pFields) {
+        FHSyncDataset dataset = mDataSets.get(pDataId);
+        JSONObject data = null;
+        if (null != dataset) {
+            data = dataset.listData(pFields);
+        }
+        return data;
+    }
+
     /**
      * Reads a data record with pUID in dataset with pDataId.
      *
@@ -218,6 +571,24 @@ public class FHSyncClient {
         return data;
     }
 
+    /**
+     * Reads a data record with pUID in dataset with pDataId with only some of its fields, see
+     * {@link #list(String, Collection)}.
+     *
+     * @param pDataId the id of the dataset
+     * @param pUID the id of the data record
+     * @param pFields the top level keys or JSON paths of the fields to return
+     * @return the data record, like {@link #read(String, String)}, holding only the given fields
+     */
+    public JSONObject read(String pDataId, String pUID, Collection<String> pFields) {
+        FHSyncDataset dataset = mDataSets.get(pDataId);
+        JSONObject data = null;
+        if (null != dataset) {
+            data = dataset.readData(pUID, pFields);
+        }
+        return data;
+    }
+
     /**
      * Creates a new data record in dataset with pDataId.
      *
@@ -273,6 +644,155 @@ public class FHSyncClient {
         }
     }
 
+    /**
+     * Creates many data records in dataset with pDataId at once. The dataset is written to disk once and
+     * a single local update notification is sent for all of them, with a null uid and a message holding
+     * the action and the uids of the records.
+     *
+     * @param pDataId the id of the dataset
+     * @param pData the data of the records
+     * @return the created data records, in the order of pData. Each record contains a key "uid" with the
+     * id value and a key "data" with the JSON data.
+     * @throws DataSetNotFound if the dataId is not known
+     */
+    public List<JSONObject> bulkCreate(String pDataId, List<JSONObject> pData) throws DataSetNotFound {
+        return getDataset(pDataId).bulkCreateData(pData);
+    }
+
+    /**
+     * Updates many existing data records in dataset with pDataId at once, see
+     * {@link #bulkCreate(String, List)}.
+     *
+     * @param pDataId the id of the dataset
+     * @param pData the new content of the data records, keyed by record id
+     * @return the updated data records, in the iteration order of pData. A record that does not exist
+     * gives an empty object.
+     * @throws DataSetNotFound if the dataId is not known
+     */
+    public List<JSONObject> bulkUpdate(String pDataId, Map<String, JSONObject> pData) throws DataSetNotFound {
+        return getDataset(pDataId).bulkUpdateData(pData);
+    }
+
+    /**
+     * Deletes many data records in dataset with pDataId at once, see {@link #bulkCreate(String, List)}.
+     *
+     * @param pDataId the id of the dataset
+     * @param pUIDs the ids of the data records
+     * @return the deleted data records, in the order of pUIDs. A record that does not exist gives an
+     * empty object.
+     * @throws DataSetNotFound if the dataId is not known
+     */
+    public List<JSONObject> bulkDelete(String pDataId, List<String> pUIDs) throws DataSetNotFound {
+        return getDataset(pDataId).bulkDeleteData(pUIDs);
+    }
+
+    /**
+     * Finds the data records in dataset with pDataId matching a query. Conditions and ordering on the fields
+     * set by {@link FHSyncConfig#setIndexedFields(List)} are answered from indexes kept with the dataset.
+     *
+     * @param pDataId the id of the dataset
+     * @param pQuery the query
+     * @return the matching data records. Each record contains a key "uid" with the id value and a key "data"
+     * with the JSON data.
+     * @throws DataSetNotFound if the dataId is not known
+     */
+    public List<JSONObject> query(String pDataId, FHSyncQuery pQuery) throws DataSetNotFound {
+        return getDataset(pDataId).query(pQuery);
+    }
+
+    /**
+     * Opens a cursor paging through the data records in dataset with pDataId, in ascending order. Unlike
+     * {@link #list(String)} the records are not copied: the cursor hands out read only views, one page at
+     * a time.
+     *
+     * @param pDataId the id of the dataset
+     * @param pPageSize the number of records per page
+     * @param pOrderBy the JSON path of the field ordering the records, null to order them by uid. The field
+     * must be set with {@link FHSyncConfig#setIndexedFields(List)}.
+     * @return the cursor
+     * @throws DataSetNotFound if the dataId is not known
+     * @throws IllegalArgumentException if pOrderBy is not an indexed field
+     */
+    public FHSyncCursor listCursor(String pDataId, int pPageSize, String pOrderBy) throws DataSetNotFound {
+        return listCursor(pDataId, pPageSize, pOrderBy, true);
+    }
+
+    /**
+     * Opens a cursor paging through the data records in dataset with pDataId, see
+     * {@link #listCursor(String, int, String)}.
+     *
+     * @param pDataId the id of the dataset
+     * @param pPageSize the number of records per page
+     * @param pOrderBy the JSON path of the field ordering the records, null to order them by uid
+     * @param pAscending whether the records are in ascending order
+     * @return the cursor
+     * @throws DataSetNotFound if the dataId is not known
+     * @throws IllegalArgumentException if pOrderBy is not an indexed field
+     */
+    public FHSyncCursor listCursor(String pDataId, int pPageSize, String pOrderBy, boolean pAscending)
+        throws DataSetNotFound {
+        return getDataset(pDataId).listCursor(pPageSize, pOrderBy, pAscending);
+    }
+
+    /**
+     * Subscribes to the changes of the data records in dataset with pDataId. Changes are delivered in
+     * batches, one per sync loop or local change, each change holding read only views of the record before
+     * and after it, so a UI can apply them without listing the dataset again.
+     *
+     * @param pDataId the id of the dataset
+     * @param pExecutor the executor the changes are delivered on
+     * @param pListener the listener receiving the changes
+     * @return the subscription, to cancel it
+     * @throws DataSetNotFound if the dataId is not known
+     */
+    public FHSyncSubscription subscribe(String pDataId, Executor pExecutor, FHSyncChangeListener pListener)
+        throws DataSetNotFound {
+        return getDataset(pDataId).subscribe(null, null, pExecutor, pListener);
+    }
+
+    /**
+     * Subscribes to the changes of one data record in dataset with pDataId, see
+     * {@link #subscribe(String, Executor, FHSyncChangeListener)}.
+     *
+     * @param pDataId the id of the dataset
+     * @param pUID the id of the data record
+     * @param pExecutor the executor the changes are delivered on
+     * @param pListener the listener receiving the changes
+     * @return the subscription, to cancel it
+     * @throws DataSetNotFound if the dataId is not known
+     */
+    public FHSyncSubscription subscribe(
+        String pDataId, String pUID, Executor pExecutor, FHSyncChangeListener pListener) throws DataSetNotFound {
+        return getDataset(pDataId).subscribe(pUID, null, pExecutor, pListener);
+    }
+
+    /**
+     * Subscribes to the changes of the data records in dataset with pDataId that match a query before or
+     * after the change, like the records within a range of an indexed field, see
+     * {@link #subscribe(String, Executor, FHSyncChangeListener)}. The order and limit of the query are not
+     * used.
+     *
+     * @param pDataId the id of the dataset
+     * @param pQuery the query
+     * @param pExecutor the executor the changes are delivered on
+     * @param pListener the listener receiving the changes
+     * @return the subscription, to cancel it
+     * @throws DataSetNotFound if the dataId is not known
+     */
+    public FHSyncSubscription subscribe(
+        String pDataId, FHSyncQuery pQuery, Executor pExecutor, FHSyncChangeListener pListener)
+        throws DataSetNotFound {
+        return getDataset(pDataId).subscribe(null, pQuery, pExecutor, pListener);
+    }
+
+    private FHSyncDataset getDataset(String pDataId) throws DataSetNotFound {
+        FHSyncDataset dataset = mDataSets.get(pDataId);
+        if (null == dataset) {
+            throw new DataSetNotFound("Unknown dataId : " + pDataId);
+        }
+        return dataset;
+    }
+
     /**
      * Lists sync collisions in dataset with id pDataId.
      *
@@ -351,76 +871,35 @@ public class FHSyncClient {
     }
 
     /**
-     * Stops all sync processes for all the datasets managed by the sync client.
+     * Stops all sync processes for all the datasets managed by the sync client and stops listening to push
+     * messages.
      */
     public void destroy() {
         if (mInitialised) {
-            if (null != mMonitorTask) {
-                mMonitorTask.stopRunning();
+            if (null != mScheduler) {
+                mScheduler.shutdown();
+                mScheduler = null;
+            }
+            if (null != mExecutor) {
+                mExecutor.shutdown();
+                mExecutor = null;
             }
+            mMultiplexer = null;
+            setPushDispatcher(null);
+            if (null != mStorageExecutor) {
+                mStorageExecutor.shutdown();
+                mStorageExecutor = null;
+            }
+            mLoads.clear();
+            mWarmDataSets.clear();
             for (String key : mDataSets.keySet()) {
                 stop(key);
             }
             mSyncListener = null;
             mNotificationHandler = null;
-            mDataSets = new HashMap<String, FHSyncDataset>();
+            mListenerRegistry.clear();
+            mDataSets = new ConcurrentHashMap<String, FHSyncDataset>();
             mInitialised = false;
         }
     }
-
-    private class MonitorTask implements Runnable {
-
-        private boolean mKeepRunning = true;
-
-        public void stopRunning() {
-            mKeepRunning = false;
-            Thread.currentThread().interrupt();
-        }
-
-        private void checkDatasets() {
-            if (null != mDataSets) {
-                for (Map.Entry<String, FHSyncDataset> entry : mDataSets.entrySet()) {
-                    final FHSyncDataset dataset = entry.getValue();
-                    boolean syncRunning = dataset.isSyncRunning();
-                    if (!syncRunning && !dataset.isStopSync()) {
-                        // sync isn't running for dataId at the moment, check if needs to start it
-                        Date lastSyncStart = dataset.getSyncStart();
-                        Date lastSyncEnd = dataset.getSyncEnd();
-                        if (null == lastSyncStart) {
-                            dataset.setSyncPending(true);
-                        } else if (null != lastSyncEnd) {
-                            long interval = new Date().getTime() - lastSyncEnd.getTime();
-                            if (interval > dataset.getSyncConfig().getSyncFrequency() * 1000) {
-                                Log.d(LOG_TAG, "Should start sync!!");
-                                dataset.setSyncPending(true);
-                            }
-                        }
-
-                        if (dataset.isSyncPending()) {
-                            mHandler.post(
-                                    new Runnable() {
-                                        @Override
-                                        public void run() {
-                                            dataset.startSyncLoop();
-                                        }
-                                    });
-                        }
-                    }
-                }
-            }
-        }
-
-        @Override
-        public void run() {
-            while (mKeepRunning && !Thread.currentThread().isInterrupted()) {
-                checkDatasets();
-                try {
-                    Thread.sleep(1000);
-                } catch (Exception e) {
-                    FHLog.e(LOG_TAG, "MonitorTask thread is interrupted", e);
-                    Thread.currentThread().interrupt();
-                }
-            }
-        }
-    }
 }
@@ -0,0 +1,64 @@
+/**
+ * Copyright Red Hat, Inc, and individual contributors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.feedhenry.sdk.sync;
+
+import com.feedhenry.sdk.FH;
+import com.feedhenry.sdk.FHActCallback;
+import com.feedhenry.sdk.FHRemote;
+import com.feedhenry.sdk.api.FHCloudRequest;
+import com.feedhenry.sdk.exceptions.FHNotReadyException;
+import org.json.fh.JSONObject;
+
+/**
+ * Sends the sync requests through the FH cloud and act requests, and uses the connectivity known by FH.
+ */
+class FHSyncCloud implements FHSyncTransport, FHSyncConnectivity {
+
+    static final FHSyncCloud INSTANCE = new FHSyncCloud();
+
+    static final String SYNC_PATH = "/mbaas/sync";
+
+    @Override
+    public void send(String pDatasetId, FHSyncConfig pConfig, JSONObject pParams, FHActCallback pCallback)
+        throws FHNotReadyException {
+        FHRemote request;
+        if (pConfig.useCustomSync()) {
+            request = FH.buildActRequest(pDatasetId, pParams);
+        } else {
+            FHCloudRequest cloudRequest = FH.buildCloudRequest(SYNC_PATH + '/' + pDatasetId, "POST", null, pParams);
+            cloudRequest.setRequestContentEncoding(pConfig.getRequestContentEncoding());
+            request = cloudRequest;
+        }
+        // the sync loop keeps its own pending changes while offline
+        request.setQueueWhenOffline(false);
+        request.executeAsync(pCallback);
+    }
+
+    @Override
+    public void sendCombined(JSONObject pParams, String pRequestContentEncoding, FHActCallback pCallback)
+        throws FHNotReadyException {
+        FHCloudRequest request = FH.buildCloudRequest(SYNC_PATH, "POST", null, pParams);
+        request.setRequestContentEncoding(pRequestContentEncoding);
+        // the sync loops keep their own pending changes while offline
+        request.setQueueWhenOffline(false);
+        request.executeAsync(pCallback);
+    }
+
+    @Override
+    public boolean isOnline() {
+        return FH.isOnline();
+    }
+}
@@ -15,6 +15,10 @@
  */
 package com.feedhenry.sdk.sync;
 
+import com.feedhenry.sdk2.FHHttpClient;
+import java.util.ArrayList;
+import java.util.List;
+import org.json.fh.JSONArray;
 import org.json.fh.JSONObject;
 
 /**
@@ -37,6 +41,19 @@ public class FHSyncConfig {
     private int mCrashCountWait = 10;
     private boolean mResendCrashedUpdates = true;
     private boolean mUseCustomSync = false;
+    private String mRequestContentEncoding = null;
+    private int mSyncWorkerThreads = 2;
+    private int mMaxConcurrentSyncs = 4;
+    private boolean mMultiplexSync = false;
+    private boolean mAdaptiveSyncFrequency = false;
+    private int mMinSyncFrequencySeconds = 10;
+    private int mMaxSyncFrequencySeconds = 300;
+    private int mPushSafetySyncFrequencySeconds = 600;
+    private int mMaxSyncBatchRecords = 100;
+    private int mMaxSyncBatchBytes = 512 * 1024;
+    private boolean mPatchUpdates = false;
+    private List<String> mIndexedFields = new ArrayList<>();
+    private boolean mCoalesceDeltaNotifications = false;
 
     private static final String KEY_SYNC_FREQUENCY = "syncFrequency";
     private static final String KEY_AUTO_SYNC_UPDATES = "autoSyncLocalUpdates";
@@ -52,6 +69,19 @@ public class FHSyncConfig {
     private static final String KEY_NOTIFY_SYNC_FAILED = "notifySyncFailed";
     private static final String KEY_CRASHCOUNT = "crashCountWait";
     private static final String KEY_RESEND_CRASH = "resendCrashdUpdates";
+    private static final String KEY_REQUEST_CONTENT_ENCODING = "requestContentEncoding";
+    private static final String KEY_SYNC_WORKER_THREADS = "syncWorkerThreads";
+    private static final String KEY_MAX_CONCURRENT_SYNCS = "maxConcurrentSyncs";
+    private static final String KEY_MULTIPLEX_SYNC = "multiplexSync";
+    private static final String KEY_ADAPTIVE_SYNC_FREQUENCY = "adaptiveSyncFrequency";
+    private static final String KEY_MIN_SYNC_FREQUENCY = "minSyncFrequency";
+    private static final String KEY_MAX_SYNC_FREQUENCY = "maxSyncFrequency";
+    private static final String KEY_PUSH_SAFETY_SYNC_FREQUENCY = "pushSafetySyncFrequency";
+    private static final String KEY_MAX_SYNC_BATCH_RECORDS = "maxSyncBatchRecords";
+    private static final String KEY_MAX_SYNC_BATCH_BYTES = "maxSyncBatchBytes";
+    private static final String KEY_PATCH_UPDATES = "patchUpdates";
+    private static final String KEY_INDEXED_FIELDS = "indexedFields";
+    private static final String KEY_COALESCE_DELTA_NOTIFICATIONS = "coalesceDeltaNotifications";
 
     /**
      * Sets the sync interval in seconds.
@@ -320,6 +350,235 @@ public class FHSyncConfig {
      */
     public boolean useCustomSync() { return this.mUseCustomSync; };
 
+    /**
+     * Gets the encoding used to compress sync request bodies.
+     *
+     * @return "gzip", "deflate" or null if requests are sent uncompressed
+     */
+    public String getRequestContentEncoding() {
+        return mRequestContentEncoding;
+    }
+
+    /**
+     * Sets the encoding used to compress sync request bodies.
+     * Only enable this if the cloud app is able to decode compressed request bodies.
+     * Responses are always requested with gzip compression.
+     *
+     * @param pRequestContentEncoding "gzip", "deflate" or null to send requests uncompressed
+     * @throws IllegalArgumentException if the encoding is not supported
+     */
+    public void setRequestContentEncoding(String pRequestContentEncoding) {
+        if (pRequestContentEncoding != null
+            && !FHHttpClient.CONTENT_ENCODING_GZIP.equals(pRequestContentEncoding)
+            && !FHHttpClient.CONTENT_ENCODING_DEFLATE.equals(pRequestContentEncoding)) {
+            throw new IllegalArgumentException("Unsupported content encoding: " + pRequestContentEncoding);
+        }
+        this.mRequestContentEncoding = pRequestContentEncoding;
+    }
+
+    /**
+     * Gets the number of worker threads the sync client uses to run syncs.
+     *
+     * @return the number of sync worker threads
+     */
+    public int getSyncWorkerThreads() {
+        return mSyncWorkerThreads;
+    }
+
+    /**
+     * Sets the number of worker threads the sync client uses to run syncs. Each dataset is processed by one
+     * thread at a time, different datasets are processed in parallel. Only read from the configuration
+     * passed to {@link FHSyncClient#init}.
+     *
+     * @param pSyncWorkerThreads the number of sync worker threads, at least 1
+     */
+    public void setSyncWorkerThreads(int pSyncWorkerThreads) {
+        this.mSyncWorkerThreads = pSyncWorkerThreads;
+    }
+
+    /**
+     * Gets the maximum number of datasets that sync with the cloud at the same time.
+     *
+     * @return the maximum number of concurrent syncs
+     */
+    public int getMaxConcurrentSyncs() {
+        return mMaxConcurrentSyncs;
+    }
+
+    /**
+     * Sets the maximum number of datasets that sync with the cloud at the same time. Datasets that are due
+     * while the limit is reached wait for a running sync to complete. Only read from the configuration
+     * passed to {@link FHSyncClient#init}.
+     *
+     * @param pMaxConcurrentSyncs the maximum number of concurrent syncs, at least 1
+     */
+    public void setMaxConcurrentSyncs(int pMaxConcurrentSyncs) {
+        this.mMaxConcurrentSyncs = pMaxConcurrentSyncs;
+    }
+
+    public boolean isMultiplexSync() {
+        return mMultiplexSync;
+    }
+
+    /**
+     * Sets whether the datasets that are due for a sync at about the same time share one request to the
+     * cloud instead of one request each. Datasets using a custom sync, and clouds without the combined
+     * sync endpoint, keep the per dataset requests. Only read from the configuration passed to
+     * {@link FHSyncClient#init}.
+     *
+     * @param pMultiplexSync true to combine the sync requests of the datasets
+     */
+    public void setMultiplexSync(boolean pMultiplexSync) {
+        this.mMultiplexSync = pMultiplexSync;
+    }
+
+    public boolean isAdaptiveSyncFrequency() {
+        return mAdaptiveSyncFrequency;
+    }
+
+    /**
+     * Sets whether each dataset adapts its sync interval to how often it changes. The interval starts at the
+     * sync frequency, doubles after every sync loop that finds the dataset up to date with no local
+     * changes, and drops back to the minimum sync frequency as soon as remote or local changes show up.
+     *
+     * @param pAdaptiveSyncFrequency true to adapt the sync interval of each dataset
+     */
+    public void setAdaptiveSyncFrequency(boolean pAdaptiveSyncFrequency) {
+        this.mAdaptiveSyncFrequency = pAdaptiveSyncFrequency;
+    }
+
+    public int getMinSyncFrequency() {
+        return mMinSyncFrequencySeconds;
+    }
+
+    /**
+     * Sets the shortest sync interval in seconds used by an adaptive sync frequency.
+     *
+     * @param pFrequencySeconds the shortest sync interval
+     */
+    public void setMinSyncFrequency(int pFrequencySeconds) {
+        this.mMinSyncFrequencySeconds = pFrequencySeconds;
+    }
+
+    public int getMaxSyncFrequency() {
+        return mMaxSyncFrequencySeconds;
+    }
+
+    /**
+     * Sets the longest sync interval in seconds used by an adaptive sync frequency.
+     *
+     * @param pFrequencySeconds the longest sync interval
+     */
+    public void setMaxSyncFrequency(int pFrequencySeconds) {
+        this.mMaxSyncFrequencySeconds = pFrequencySeconds;
+    }
+
+    public int getPushSafetySyncFrequency() {
+        return mPushSafetySyncFrequencySeconds;
+    }
+
+    /**
+     * Sets the sync interval in seconds of the datasets synced on push, see
+     * {@link FHSyncClient#registerPushSync}. Push messages trigger their syncs, so this interval only
+     * catches the changes whose push messages were lost.
+     *
+     * @param pFrequencySeconds the sync interval of the datasets synced on push
+     */
+    public void setPushSafetySyncFrequency(int pFrequencySeconds) {
+        this.mPushSafetySyncFrequencySeconds = pFrequencySeconds;
+    }
+
+    public int getMaxSyncBatchRecords() {
+        return mMaxSyncBatchRecords;
+    }
+
+    /**
+     * Sets the maximum number of pending records sent by one sync request. The remaining pending records are
+     * sent by the sync requests that follow straight away.
+     *
+     * @param pMaxSyncBatchRecords the maximum number of pending records per sync request, 0 for no limit
+     */
+    public void setMaxSyncBatchRecords(int pMaxSyncBatchRecords) {
+        this.mMaxSyncBatchRecords = pMaxSyncBatchRecords;
+    }
+
+    public int getMaxSyncBatchBytes() {
+        return mMaxSyncBatchBytes;
+    }
+
+    /**
+     * Sets the maximum size in bytes of the pending records sent by one sync request, counted as the UTF-8
+     * length of their JSON. A single pending record larger than this is still sent, on its own.
+     *
+     * @param pMaxSyncBatchBytes the maximum size of the pending records per sync request, 0 for no limit
+     */
+    public void setMaxSyncBatchBytes(int pMaxSyncBatchBytes) {
+        this.mMaxSyncBatchBytes = pMaxSyncBatchBytes;
+    }
+
+    public boolean isPatchUpdates() {
+        return mPatchUpdates;
+    }
+
+    /**
+     * Sets whether pending updates are sent as JSON merge patches of their pre data instead of full records.
+     * Full records are still sent until the server answers a sync loop saying it accepts patches.
+     *
+     * @param pPatchUpdates true to send pending updates as patches
+     */
+    public void setPatchUpdates(boolean pPatchUpdates) {
+        this.mPatchUpdates = pPatchUpdates;
+    }
+
+    public List<String> getIndexedFields() {
+        return new ArrayList<>(mIndexedFields);
+    }
+
+    /**
+     * Sets the fields of the records indexed by the local dataset, so {@link FHSyncClient#query} answers
+     * conditions and ordering on them without looking at every record. The indexes are kept up to date as
+     * local changes and remote updates are applied.
+     *
+     * @param pIndexedFields the JSON paths of the indexed fields, the names of the nested fields separated by
+     * dots
+     */
+    public void setIndexedFields(List<String> pIndexedFields) {
+        this.mIndexedFields = new ArrayList<>(pIndexedFields);
+    }
+
+    public boolean isCoalesceDeltaNotifications() {
+        return mCoalesceDeltaNotifications;
+    }
+
+    /**
+     * Sets whether the records received by a sync loop are notified with a single delta received event
+     * instead of one event per record. The single event has a null uid, and its message is a JSON object
+     * holding the uids of the records for each of the "create", "update" and "delete" actions.
+     *
+     * @param pCoalesceDeltaNotifications true to notify the records received by a sync loop at once
+     */
+    public void setCoalesceDeltaNotifications(boolean pCoalesceDeltaNotifications) {
+        this.mCoalesceDeltaNotifications = pCoalesceDeltaNotifications;
+    }
+
+    /**
+     * @return the events the notify flags turn on, as a mask of {@link NotificationMessage#maskOf(int...)}
+     */
+    int getNotificationMask() {
+        int mask = 0;
+        mask |= mNotifySyncStarted ? 1 << NotificationMessage.SYNC_STARTED_CODE : 0;
+        mask |= mNotifySyncComplete ? 1 << NotificationMessage.SYNC_COMPLETE_CODE : 0;
+        mask |= mNotifyOfflineUpdate ? 1 << NotificationMessage.OFFLINE_UPDATE_CODE : 0;
+        mask |= mNotifySyncCollisions ? 1 << NotificationMessage.COLLISION_DETECTED_CODE : 0;
+        mask |= mNotifyRemoteUpdateFailed ? 1 << NotificationMessage.REMOTE_UPDATE_FAILED_CODE : 0;
+        mask |= mNotifyRemoteUpdateApplied ? 1 << NotificationMessage.REMOTE_UPDATE_APPLIED_CODE : 0;
+        mask |= mNotifyLocalUpdateApplied ? 1 << NotificationMessage.LOCAL_UPDATE_APPLIED_CODE : 0;
+        mask |= mNotifyDeltaReceived ? 1 << NotificationMessage.DELTA_RECEIVED_CODE : 0;
+        mask |= mNotifySyncFailed ? 1 << NotificationMessage.SYNC_FAILED_CODE : 0;
+        mask |= mNotifyClientStorageFailed ? 1 << NotificationMessage.CLIENT_STORAGE_FAILED_CODE : 0;
+        return mask;
+    }
+
     /**
      * Gets a JSON representation of the configuration object.
      *
@@ -341,6 +600,19 @@ public class FHSyncConfig {
         ret.put(KEY_NOTIFY_SYNC_FAILED, this.mNotifySyncFailed);
         ret.put(KEY_CRASHCOUNT, this.mCrashCountWait);
         ret.put(KEY_RESEND_CRASH, this.mResendCrashedUpdates);
+        ret.put(KEY_REQUEST_CONTENT_ENCODING, this.mRequestContentEncoding);
+        ret.put(KEY_SYNC_WORKER_THREADS, this.mSyncWorkerThreads);
+        ret.put(KEY_MAX_CONCURRENT_SYNCS, this.mMaxConcurrentSyncs);
+        ret.put(KEY_MULTIPLEX_SYNC, this.mMultiplexSync);
+        ret.put(KEY_ADAPTIVE_SYNC_FREQUENCY, this.mAdaptiveSyncFrequency);
+        ret.put(KEY_MIN_SYNC_FREQUENCY, this.mMinSyncFrequencySeconds);
+        ret.put(KEY_MAX_SYNC_FREQUENCY, this.mMaxSyncFrequencySeconds);
+        ret.put(KEY_PUSH_SAFETY_SYNC_FREQUENCY, this.mPushSafetySyncFrequencySeconds);
+        ret.put(KEY_MAX_SYNC_BATCH_RECORDS, this.mMaxSyncBatchRecords);
+        ret.put(KEY_MAX_SYNC_BATCH_BYTES, this.mMaxSyncBatchBytes);
+        ret.put(KEY_PATCH_UPDATES, this.mPatchUpdates);
+        ret.put(KEY_INDEXED_FIELDS, new JSONArray(this.mIndexedFields));
+        ret.put(KEY_COALESCE_DELTA_NOTIFICATIONS, this.mCoalesceDeltaNotifications);
         return ret;
     }
 
@@ -366,6 +638,26 @@ public class FHSyncConfig {
         config.setNotifySyncFailed(pObj.optBoolean(KEY_NOTIFY_SYNC_FAILED));
         config.setCrashCountWait(pObj.optInt(KEY_CRASHCOUNT, 10));
         config.setResendCrashedUpdates(pObj.optBoolean(KEY_RESEND_CRASH));
+        config.setRequestContentEncoding(pObj.optString(KEY_REQUEST_CONTENT_ENCODING, null));
+        config.setSyncWorkerThreads(pObj.optInt(KEY_SYNC_WORKER_THREADS, 2));
+        config.setMaxConcurrentSyncs(pObj.optInt(KEY_MAX_CONCURRENT_SYNCS, 4));
+        config.setMultiplexSync(pObj.optBoolean(KEY_MULTIPLEX_SYNC, false));
+        config.setAdaptiveSyncFrequency(pObj.optBoolean(KEY_ADAPTIVE_SYNC_FREQUENCY, false));
+        config.setMinSyncFrequency(pObj.optInt(KEY_MIN_SYNC_FREQUENCY, 10));
+        config.setMaxSyncFrequency(pObj.optInt(KEY_MAX_SYNC_FREQUENCY, 300));
+        config.setPushSafetySyncFrequency(pObj.optInt(KEY_PUSH_SAFETY_SYNC_FREQUENCY, 600));
+        config.setMaxSyncBatchRecords(pObj.optInt(KEY_MAX_SYNC_BATCH_RECORDS, 100));
+        config.setMaxSyncBatchBytes(pObj.optInt(KEY_MAX_SYNC_BATCH_BYTES, 512 * 1024));
+        config.setPatchUpdates(pObj.optBoolean(KEY_PATCH_UPDATES, false));
+        JSONArray indexedFields = pObj.optJSONArray(KEY_INDEXED_FIELDS);
+        if (indexedFields != null) {
+            List<String> fields = new ArrayList<>(indexedFields.length());
+            for (int i = 0; i < indexedFields.length(); i++) {
+                fields.add(indexedFields.getString(i));
+            }
+            config.setIndexedFields(fields);
+        }
+        config.setCoalesceDeltaNotifications(pObj.optBoolean(KEY_COALESCE_DELTA_NOTIFICATIONS, false));
         return config;
     }
 
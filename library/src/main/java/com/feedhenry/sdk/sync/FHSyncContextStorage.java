@@ -0,0 +1,96 @@
+/**
+ * Copyright Red Hat, Inc, and individual contributors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.feedhenry.sdk.sync;
+
+import android.content.Context;
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import org.json.fh.JSONObject;
+
+/**
+ * Saves the datasets in the private files of the app.
+ */
+class FHSyncContextStorage implements FHSyncStorage {
+
+    private final Context mContext;
+
+    FHSyncContextStorage(Context pContext) {
+        mContext = pContext;
+    }
+
+    /**
+     * Creates a dataset saved in the private files of the app, and loads it.
+     *
+     * @param pContext the context of the app
+     * @param pHandler the handler of the sync listener, or null
+     * @return the dataset
+     */
+    static FHSyncDataset newDataset(
+        Context pContext, FHSyncNotificationHandler pHandler, String pDatasetId,
+        FHSyncConfig pConfig, JSONObject pQueryParams, JSONObject pMetaData) {
+        return new FHSyncDataset(
+            new FHSyncContextStorage(pContext), pHandler, pDatasetId, pConfig, pQueryParams, pMetaData, true);
+    }
+
+    @Override
+    public String read(String pName) throws IOException {
+        InputStream input;
+        try {
+            input = mContext.openFileInput(pName);
+        } catch (FileNotFoundException ex) {
+            return null;
+        }
+        ByteArrayOutputStream bos = new ByteArrayOutputStream();
+        writeStream(input, bos);
+        return bos.toString("UTF-8");
+    }
+
+    @Override
+    public void write(String pName, String pContent) throws IOException {
+        OutputStream output = mContext.openFileOutput(pName, Context.MODE_PRIVATE);
+        writeStream(new ByteArrayInputStream(pContent.getBytes("UTF-8")), output);
+    }
+
+    @Override
+    public List<String> list() {
+        String[] files = mContext.fileList();
+        return files == null ? new ArrayList<String>() : new ArrayList<>(Arrays.asList(files));
+    }
+
+    private static void writeStream(InputStream pInput, OutputStream pOutput) throws IOException {
+        BufferedInputStream bis = new BufferedInputStream(pInput);
+        BufferedOutputStream bos = new BufferedOutputStream(pOutput);
+        try {
+            byte[] buffer = new byte[1024];
+            int bytesRead;
+            while ((bytesRead = bis.read(buffer)) != -1) {
+                bos.write(buffer, 0, bytesRead);
+            }
+        } finally {
+            bos.close();
+            bis.close();
+        }
+    }
+}
@@ -0,0 +1,122 @@
+/**
+ * Copyright Red Hat, Inc, and individual contributors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.feedhenry.sdk.sync;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+
+/**
+ * Pages through the records of a dataset without copying them, see
+ * {@link FHSyncClient#listCursor(String, int, String)}.
+ *
+ * The cursor only holds the current page and the position of its last record. Each page is looked up from
+ * that position, so records created, changed or deleted while paging are seen when the cursor reaches them,
+ * and no record is returned twice unless its position in the order changes. The cursor is not thread safe.
+ */
+public class FHSyncCursor implements Iterator<FHSyncRecordView> {
+
+    private final FHSyncDataset mDataset;
+    private final FHSyncIndex mOrderIndex;
+    private final boolean mAscending;
+    private final int mPageSize;
+    private List<FHSyncRecordView> mPage = new ArrayList<>();
+    private int mPagePosition;
+    private String mLastUid;
+    private Object mLastValue;
+    private boolean mExhausted;
+
+    /**
+     * @param pOrderIndex the index giving the order of the records, or null for the order of their uids
+     */
+    FHSyncCursor(FHSyncDataset pDataset, FHSyncIndex pOrderIndex, boolean pAscending, int pPageSize) {
+        if (pPageSize <= 0) {
+            throw new IllegalArgumentException("pageSize must be positive : " + pPageSize);
+        }
+        mDataset = pDataset;
+        mOrderIndex = pOrderIndex;
+        mAscending = pAscending;
+        mPageSize = pPageSize;
+    }
+
+    /**
+     * @return the next records, at most the page size of the cursor, or an empty list once every record
+     * has been returned
+     */
+    public List<FHSyncRecordView> nextPage() {
+        List<FHSyncRecordView> page = new ArrayList<>(mPageSize);
+        while (mPagePosition < mPage.size()) {
+            page.add(mPage.get(mPagePosition++));
+        }
+        if (page.isEmpty()) {
+            page = fetchPage();
+        }
+        mPage = new ArrayList<>();
+        mPagePosition = 0;
+        return page;
+    }
+
+    @Override
+    public boolean hasNext() {
+        if (mPagePosition < mPage.size()) {
+            return true;
+        }
+        mPage = fetchPage();
+        mPagePosition = 0;
+        return !mPage.isEmpty();
+    }
+
+    @Override
+    public FHSyncRecordView next() {
+        if (!hasNext()) {
+            throw new NoSuchElementException();
+        }
+        return mPage.get(mPagePosition++);
+    }
+
+    @Override
+    public void remove() {
+        throw new UnsupportedOperationException("The records of a cursor are read only");
+    }
+
+    private List<FHSyncRecordView> fetchPage() {
+        List<FHSyncRecordView> page = new ArrayList<>(mPageSize);
+        // records deleted since their uid was listed are skipped, so look again until the page is full
+        while (!mExhausted && page.size() < mPageSize) {
+            int wanted = mPageSize - page.size();
+            List<Object> values = new ArrayList<>(wanted);
+            List<String> uids = mOrderIndex == null
+                ? mDataset.getUidsAfter(mLastUid, mAscending, wanted)
+                : mOrderIndex.getUidsAfter(mLastValue, mLastUid, mAscending, wanted, values);
+            if (uids.size() < wanted) {
+                mExhausted = true;
+            }
+            for (int i = 0; i < uids.size(); i++) {
+                String uid = uids.get(i);
+                if (mOrderIndex != null) {
+                    mLastValue = values.get(i);
+                }
+                mLastUid = uid;
+                FHSyncRecordView view = mDataset.getRecordView(uid);
+                if (view != null) {
+                    page.add(view);
+                }
+            }
+        }
+        return page;
+    }
+}
@@ -15,63 +15,68 @@
  */
 package com.feedhenry.sdk.sync;
 
-import android.content.Context;
-import android.os.Message;
-import android.util.Log;
-import com.feedhenry.sdk.FH;
 import com.feedhenry.sdk.FHActCallback;
-import com.feedhenry.sdk.FHRemote;
 import com.feedhenry.sdk.FHResponse;
-import com.feedhenry.sdk.exceptions.FHNotReadyException;
+import android.content.Context;
 import com.feedhenry.sdk.utils.FHLog;
-import java.io.BufferedInputStream;
-import java.io.BufferedOutputStream;
-import java.io.ByteArrayInputStream;
-import java.io.ByteArrayOutputStream;
-import java.io.FileInputStream;
-import java.io.FileNotFoundException;
-import java.io.FileOutputStream;
 import java.io.IOException;
-import java.io.InputStream;
-import java.io.OutputStream;
 import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
 import java.util.Date;
-import java.util.HashMap;
 import java.util.HashSet;
 import java.util.Iterator;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ConcurrentNavigableMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicBoolean;
 import org.json.fh.JSONArray;
 import org.json.fh.JSONException;
 import org.json.fh.JSONObject;
 
 public class FHSyncDataset {
 
-    private boolean mSyncRunning;
+    private final FHSyncState mState = new FHSyncState();
     private boolean mInitialised;
     private final String mDatasetId;
-    private Date mSyncStart;
-    private Date mSyncEnd;
-    private boolean mSyncPending;
+    private volatile Date mSyncStart;
+    private volatile Date mSyncEnd;
     private FHSyncConfig mSyncConfig = new FHSyncConfig();
-    private final ConcurrentMap<String, FHSyncPendingRecord> mPendingRecords =
-        new ConcurrentHashMap<>();
+    private final FHSyncPendingQueue mPendingRecords = new FHSyncPendingQueue();
     
     private final ConcurrentMap<String, String> mUidMappings = new ConcurrentHashMap<>();
-    private ConcurrentMap<String, FHSyncDataRecord> mDataRecords = new ConcurrentHashMap<>();
+    private final ConcurrentNavigableMap<String, FHSyncDataRecord> mDataRecords = new ConcurrentSkipListMap<>();
+    private volatile Map<String, FHSyncIndex> mIndexes = new LinkedHashMap<>();
+    private final FHSyncChangeFeed mChangeFeed;
+    private final AtomicBoolean mLoadStarted = new AtomicBoolean();
+    private final CountDownLatch mLoaded = new CountDownLatch(1);
     
     private JSONObject mQueryParams = new JSONObject();
     private JSONObject mMetaData = new JSONObject();
     private JSONObject mCustomMetaData = new JSONObject();
     private String mHashvalue;
     private JSONArray mAcknowledgements = new JSONArray();
-    private boolean mStopSync;
-
-    private Context mContext;
-    private FHSyncNotificationHandler mNotificationHandler;
+    private volatile int mEffectiveSyncFrequency = -1;
+    private volatile boolean mSyncOnPush;
+    private boolean mMorePendingToSend;
+    private boolean mServerAcceptsPatch;
+
+    private volatile FHSyncStorage mStorage;
+    private volatile FHSyncNotifier mNotifier;
+    private FHSyncClock mClock = FHSyncClock.SYSTEM;
+    private FHSyncTransport mTransport = FHSyncCloud.INSTANCE;
+    private FHSyncConnectivity mConnectivity = FHSyncCloud.INSTANCE;
+    private volatile FHSyncListenerRegistry mListenerRegistry;
+    private FHSyncScheduler mScheduler;
+    private FHSyncExecutor mExecutor;
 
     private static final String STORAGE_FILE_EXT = ".sync.json";
 
@@ -85,19 +90,118 @@ public class FHSyncDataset {
     private static final String KEY_ACKNOWLEDGEMENTS = "acknowledgements";
     private static final String KEY_QUERY_PARAMS = "queryParams";
     private static final String KEY_METADATA = "metaData";
+    private static final String KEY_SERVER_ACCEPTS_PATCH = "serverAcceptsPatch";
+
+    private static final String PENDING_PATCH = "pending_patch";
+    private static final String MERGE_PATCH = "merge";
 
     private static final String LOG_TAG = "com.feedhenry.sdk.sync.FHSyncDataset";
 
+    /**
+     * Creates a dataset saved in the private files of the app, and loads it.
+     *
+     * @deprecated the datasets are created by {@link FHSyncClient#manage}, this is only kept for existing
+     * callers and saves the dataset through an {@link FHSyncContextStorage}
+     */
+    @Deprecated
     public FHSyncDataset(
         Context pContext, FHSyncNotificationHandler pHandler, String pDatasetId,
         FHSyncConfig pConfig, JSONObject pQueryParams, JSONObject pMetaData) {
-        mContext = pContext;
-        mNotificationHandler = pHandler;
+        this(new FHSyncContextStorage(pContext), pHandler, pDatasetId, pConfig, pQueryParams, pMetaData, true);
+    }
+
+    /**
+     * Creates a dataset saved in a storage of its own and notifying through a notifier of its own, so that it
+     * can run outside of an Android device. {@link FHSyncContextStorage#newDataset} creates one saved on the
+     * device.
+     *
+     * @param pStorage where the dataset is saved
+     * @param pNotifier the notifier of the sync listener, or null
+     * @param pLoad whether to load the dataset from its file straight away. If not, {@link #load} has to be
+     * called, and the reads and writes of the dataset wait until it has.
+     */
+    FHSyncDataset(
+        FHSyncStorage pStorage, FHSyncNotifier pNotifier, String pDatasetId,
+        FHSyncConfig pConfig, JSONObject pQueryParams, JSONObject pMetaData, boolean pLoad) {
+        mStorage = pStorage;
+        mNotifier = pNotifier;
         mDatasetId = pDatasetId;
         mSyncConfig = pConfig;
         mQueryParams = pQueryParams;
         mCustomMetaData = pMetaData;
-        readFromFile();
+        mChangeFeed = new FHSyncChangeFeed(pDatasetId);
+        if (pLoad) {
+            load(null);
+        }
+    }
+
+    /**
+     * Loads the dataset from its file and builds its indexes, then releases the calls waiting for it. Only
+     * the first call loads the dataset, the others wait for it to be loaded.
+     *
+     * This does not take the lock of the dataset, so that synchronized methods can wait for the load while
+     * holding it.
+     *
+     * @param pConfig the sync config replacing the stored one, or null to keep the stored one
+     */
+    void load(FHSyncConfig pConfig) {
+        if (!mLoadStarted.compareAndSet(false, true)) {
+            awaitLoaded();
+            return;
+        }
+        try {
+            readFromFile();
+            if (pConfig != null) {
+                mSyncConfig = pConfig;
+            }
+            mIndexes = buildIndexes();
+        } finally {
+            mLoaded.countDown();
+        }
+    }
+
+    /**
+     * Finds the datasets saved in a storage.
+     *
+     * @param pStorage the storage
+     * @return the ids of the datasets having a file
+     */
+    static List<String> listStoredDatasets(FHSyncStorage pStorage) {
+        List<String> ret = new ArrayList<>();
+        for (String file : pStorage.list()) {
+            if (file.endsWith(STORAGE_FILE_EXT) && file.length() > STORAGE_FILE_EXT.length()) {
+                ret.add(file.substring(0, file.length() - STORAGE_FILE_EXT.length()));
+            }
+        }
+        return ret;
+    }
+
+    /**
+     * @return whether the dataset has been loaded from its file
+     */
+    public boolean isLoaded() {
+        return mLoaded.getCount() == 0;
+    }
+
+    /**
+     * Waits until the dataset has been loaded from its file.
+     */
+    private void awaitLoaded() {
+        if (isLoaded()) {
+            return;
+        }
+        boolean interrupted = false;
+        while (true) {
+            try {
+                mLoaded.await();
+                break;
+            } catch (InterruptedException e) {
+                interrupted = true;
+            }
+        }
+        if (interrupted) {
+            Thread.currentThread().interrupt();
+        }
     }
 
     public JSONObject getJSON() {
@@ -108,8 +212,8 @@ public class FHSyncDataset {
         ret.put(KEY_DATE_SET_ID, mDatasetId);
         ret.put(KEY_SYNC_CONFIG, mSyncConfig.getJSON());
         JSONObject pendingJson = new JSONObject();
-        for (String key : mPendingRecords.keySet()) {
-            pendingJson.put(key, mPendingRecords.get(key).getJSON());
+        for (Map.Entry<String, FHSyncPendingRecord> entry : mPendingRecords.snapshot().entrySet()) {
+            pendingJson.put(entry.getKey(), entry.getValue().getStorageJSON());
         }
         ret.put(KEY_PENDING_RECORDS, pendingJson);
         JSONObject dataJson = new JSONObject();
@@ -126,16 +230,28 @@ public class FHSyncDataset {
         ret.put(KEY_ACKNOWLEDGEMENTS, mAcknowledgements);
         ret.put(KEY_QUERY_PARAMS, mQueryParams);
         ret.put(KEY_METADATA, mMetaData);
+        ret.put(KEY_SERVER_ACCEPTS_PATCH, mServerAcceptsPatch);
         return ret;
     }
 
     public JSONObject listData() {
+        return listData(null);
+    }
+
+    /**
+     * Lists the records with only some of their fields, copying nothing else.
+     *
+     * @param pFields the JSON paths of the fields to return, null for every field
+     * @return the records keyed by uid, each like the result of {@link #readData(String, Collection)}
+     */
+    public JSONObject listData(Collection<String> pFields) {
+        awaitLoaded();
         JSONObject ret = new JSONObject();
         for (String key : this.mDataRecords.keySet()) {
             FHSyncDataRecord dataRecord = this.mDataRecords.get(key);
             JSONObject dataJson = new JSONObject();
             // return a copy of the data so that any changes made to the data will not affect the original data
-            dataJson.put("data", new JSONObject(dataRecord.getData().toString()));
+            dataJson.put("data", copyData(dataRecord.getData(), pFields));
             dataJson.put("uid", key);
             ret.put(key, dataJson);
         }
@@ -143,11 +259,23 @@ public class FHSyncDataset {
     }
 
     public JSONObject readData(String pUid) {
+        return readData(pUid, null);
+    }
+
+    /**
+     * Reads a record with only some of its fields, copying nothing else.
+     *
+     * @param pUid the uid of the record
+     * @param pFields the JSON paths of the fields to return, null for every field
+     * @return the record, with a key "uid" and a key "data" holding the fields, or null if there is no record
+     */
+    public JSONObject readData(String pUid, Collection<String> pFields) {
+        awaitLoaded();
         FHSyncDataRecord dataRecord = mDataRecords.get(pUid);
         if (dataRecord != null) {
             JSONObject ret = new JSONObject();
             // return a copy of the data so that any changes made to the data will not affect the original data
-            ret.put("data", new JSONObject(dataRecord.getData().toString()));
+            ret.put("data", copyData(dataRecord.getData(), pFields));
             ret.put("uid", pUid);
             return ret;
         } else {
@@ -155,111 +283,549 @@ public class FHSyncDataset {
         }
     }
 
+    private static JSONObject copyData(JSONObject pData, Collection<String> pFields) {
+        return pFields == null ? new JSONObject(pData.toString()) : FHSyncUtils.projectFields(pData, pFields);
+    }
+
     public JSONObject createData(JSONObject pData) {
+        awaitLoaded();
         FHSyncPendingRecord pendingRecord = addPendingObject(null, pData, "create");
-        FHSyncDataRecord dataRecord = mDataRecords.get(pendingRecord.getUid());
-        JSONObject ret = new JSONObject();
-        if (dataRecord != null) {
-            ret.put("data", new JSONObject(dataRecord.getData().toString()));
-            ret.put("uid", pendingRecord.getUid());
-        }
-        return ret;
+        return recordResult(pendingRecord.getUid(), mDataRecords.get(pendingRecord.getUid()));
     }
 
     public JSONObject updateData(String pUid, JSONObject pData) {
+        awaitLoaded();
         addPendingObject(pUid, pData, "update");
-        FHSyncDataRecord dataRecord = mDataRecords.get(pUid);
-        JSONObject ret = new JSONObject();
-        if (dataRecord != null) {
-            ret.put("data", new JSONObject(dataRecord.getData().toString()));
-            ret.put("uid", pUid);
-        }
-        return ret;
+        return recordResult(pUid, mDataRecords.get(pUid));
     }
 
     public JSONObject deleteData(String pUid) {
+        awaitLoaded();
         FHSyncPendingRecord pendingRecord = addPendingObject(pUid, null, "delete");
-        FHSyncDataRecord deleted = pendingRecord.getPreData();
+        return recordResult(pUid, pendingRecord.getPreData());
+    }
+
+    /**
+     * Creates many data records at once. The dataset is written to disk once, and a single local update
+     * notification is sent, with a null uid and a message holding the action and the uids of the records.
+     *
+     * @param pData the data of the records to create
+     * @return the created records, in the order of pData, each like the result of {@link #createData}
+     */
+    public synchronized List<JSONObject> bulkCreateData(List<JSONObject> pData) {
+        awaitLoaded();
+        List<JSONObject> results = new ArrayList<>(pData.size());
+        JSONArray uids = new JSONArray();
+        beforeLocalChanges(null, "create", pData.size());
+        for (JSONObject data : pData) {
+            FHSyncPendingRecord pendingRecord = newPendingObject(null, data, "create");
+            storePendingObj(pendingRecord);
+            uids.put(pendingRecord.getUid());
+            results.add(recordResult(pendingRecord.getUid(), mDataRecords.get(pendingRecord.getUid())));
+        }
+        afterLocalChanges(null, "create", uids);
+        return results;
+    }
+
+    /**
+     * Updates many data records at once, see {@link #bulkCreateData}.
+     *
+     * @param pData the new data of the records, keyed by uid
+     * @return the updated records, in the iteration order of pData, each like the result of
+     * {@link #updateData}
+     */
+    public synchronized List<JSONObject> bulkUpdateData(Map<String, JSONObject> pData) {
+        awaitLoaded();
+        List<JSONObject> results = new ArrayList<>(pData.size());
+        JSONArray uids = new JSONArray();
+        beforeLocalChanges(null, "update", pData.size());
+        for (Map.Entry<String, JSONObject> entry : pData.entrySet()) {
+            FHSyncPendingRecord pendingRecord = newPendingObject(entry.getKey(), entry.getValue(), "update");
+            if (pendingRecord.getUid() != null) {
+                storePendingObj(pendingRecord);
+                uids.put(entry.getKey());
+            }
+            results.add(recordResult(entry.getKey(), mDataRecords.get(entry.getKey())));
+        }
+        afterLocalChanges(null, "update", uids);
+        return results;
+    }
+
+    /**
+     * Deletes many data records at once, see {@link #bulkCreateData}.
+     *
+     * @param pUids the uids of the records to delete
+     * @return the deleted records, in the order of pUids, each like the result of {@link #deleteData}
+     */
+    public synchronized List<JSONObject> bulkDeleteData(List<String> pUids) {
+        awaitLoaded();
+        List<JSONObject> results = new ArrayList<>(pUids.size());
+        JSONArray uids = new JSONArray();
+        beforeLocalChanges(null, "delete", pUids.size());
+        for (String uid : pUids) {
+            FHSyncPendingRecord pendingRecord = newPendingObject(uid, null, "delete");
+            if (pendingRecord.getUid() != null) {
+                storePendingObj(pendingRecord);
+                uids.put(uid);
+            }
+            results.add(recordResult(uid, pendingRecord.getPreData()));
+        }
+        afterLocalChanges(null, "delete", uids);
+        return results;
+    }
+
+    /**
+     * Finds the records matching a query, using the indexes of the dataset for the conditions and ordering
+     * on indexed fields.
+     *
+     * @param pQuery the query
+     * @return copies of the matching records, each like the result of {@link #readData}
+     */
+    public List<JSONObject> query(FHSyncQuery pQuery) {
+        awaitLoaded();
+        Map<String, FHSyncIndex> indexes = mIndexes;
+        Set<String> candidates = null;
+        List<FHSyncQuery.Condition> unindexed = new ArrayList<>();
+        for (FHSyncQuery.Condition condition : pQuery.getConditions()) {
+            FHSyncIndex index = indexes.get(condition.mPath);
+            if (index == null) {
+                unindexed.add(condition);
+                continue;
+            }
+            Set<String> uids = condition.mEquality ? index.getEqual(condition.mFrom)
+                : index.getRange(condition.mFrom, condition.mTo);
+            if (candidates == null) {
+                candidates = uids;
+            } else {
+                candidates.retainAll(uids);
+            }
+        }
+
+        final String orderBy = pQuery.getOrderBy();
+        FHSyncIndex orderIndex = orderBy == null ? null : indexes.get(orderBy);
+        Iterable<String> uids;
+        if (orderIndex != null) {
+            uids = orderIndex.getOrderedUids(pQuery.isAscending());
+        } else if (candidates != null) {
+            uids = candidates;
+        } else {
+            uids = mDataRecords.keySet();
+        }
+        // without an index for the ordering every match has to be found before the limit applies
+        boolean sorted = orderBy == null || orderIndex != null;
+        int limit = pQuery.getLimit();
+        FHSyncQuery.Predicate predicate = pQuery.getPredicate();
+
+        final List<String> matchUids = new ArrayList<>();
+        final List<FHSyncDataRecord> matches = new ArrayList<>();
+        for (String uid : uids) {
+            if (sorted && limit > 0 && matches.size() >= limit) {
+                break;
+            }
+            if (candidates != null && !candidates.contains(uid)) {
+                continue;
+            }
+            FHSyncDataRecord record = mDataRecords.get(uid);
+            if (record == null || record.getData() == null) {
+                continue;
+            }
+            if (!matchesAll(unindexed, record.getData())) {
+                continue;
+            }
+            if (predicate != null && !predicate.matches(uid, record.getData())) {
+                continue;
+            }
+            matchUids.add(uid);
+            matches.add(record);
+        }
+
+        List<Integer> order = new ArrayList<>(matches.size());
+        for (int i = 0; i < matches.size(); i++) {
+            order.add(i);
+        }
+        if (!sorted) {
+            final boolean ascending = pQuery.isAscending();
+            Collections.sort(order, new Comparator<Integer>() {
+                @Override
+                public int compare(Integer pFirst, Integer pSecond) {
+                    int result = FHSyncIndex.VALUE_ORDER.compare(
+                        FHSyncIndex.valueAt(matches.get(pFirst).getData(), orderBy),
+                        FHSyncIndex.valueAt(matches.get(pSecond).getData(), orderBy));
+                    return ascending ? result : -result;
+                }
+            });
+        }
+        if (limit > 0 && order.size() > limit) {
+            order = order.subList(0, limit);
+        }
+        List<JSONObject> results = new ArrayList<>(order.size());
+        for (int i : order) {
+            results.add(recordResult(matchUids.get(i), matches.get(i)));
+        }
+        return results;
+    }
+
+    /**
+     * Opens a cursor over the records of the dataset. The records are not copied, only the current page of
+     * read only views is held by the cursor.
+     *
+     * @param pPageSize the number of records per page
+     * @param pOrderBy the JSON path of the field ordering the records, null to order them by uid. Records
+     * with the same value are ordered by uid. The field must be indexed with
+     * {@link FHSyncConfig#setIndexedFields(List)}, so the cursor follows the records changed while paging.
+     * @param pAscending whether the records are in ascending order
+     * @return the cursor
+     * @throws IllegalArgumentException if pOrderBy is not an indexed field
+     */
+    public FHSyncCursor listCursor(int pPageSize, String pOrderBy, boolean pAscending) {
+        awaitLoaded();
+        FHSyncIndex orderIndex = null;
+        if (pOrderBy != null) {
+            orderIndex = mIndexes.get(pOrderBy);
+            if (orderIndex == null) {
+                throw new IllegalArgumentException(
+                    "Cannot order by " + pOrderBy + ", add it to FHSyncConfig.setIndexedFields first");
+            }
+        }
+        return new FHSyncCursor(this, orderIndex, pAscending, pPageSize);
+    }
+
+    /**
+     * Subscribes to the changes made to the records of the dataset, by local changes and by sync loops. The
+     * changes are delivered in batches, one per sync loop or local change.
+     *
+     * @param pUid the uid of the only record to watch, or null
+     * @param pQuery a query the records to watch match before or after the change, or null. Its order and
+     * limit are not used.
+     * @param pExecutor the executor delivering the changes
+     * @param pListener the listener receiving the changes
+     * @return the subscription, to cancel it
+     */
+    public FHSyncSubscription subscribe(
+        String pUid, FHSyncQuery pQuery, Executor pExecutor, FHSyncChangeListener pListener) {
+        return mChangeFeed.subscribe(pUid, pQuery, pExecutor, pListener);
+    }
+
+    /**
+     * @param pUid the uid to start after, null to start from the first record
+     * @param pAscending whether to go in ascending order of uid
+     * @param pCount the maximum number of uids
+     * @return the uids of the records following pUid
+     */
+    List<String> getUidsAfter(String pUid, boolean pAscending, int pCount) {
+        ConcurrentNavigableMap<String, FHSyncDataRecord> records = pAscending ? mDataRecords : mDataRecords.descendingMap();
+        if (pUid != null) {
+            records = records.tailMap(pUid, false);
+        }
+        List<String> ret = new ArrayList<>(pCount);
+        for (String uid : records.keySet()) {
+            if (ret.size() == pCount) {
+                break;
+            }
+            ret.add(uid);
+        }
+        return ret;
+    }
+
+    /**
+     * @return a read only view of the record, or null if there is no record with data for pUid
+     */
+    FHSyncRecordView getRecordView(String pUid) {
+        FHSyncDataRecord record = mDataRecords.get(pUid);
+        if (record == null || record.getData() == null) {
+            return null;
+        }
+        return new FHSyncRecordView(pUid, record);
+    }
+
+    private static boolean matchesAll(List<FHSyncQuery.Condition> pConditions, JSONObject pData) {
+        for (FHSyncQuery.Condition condition : pConditions) {
+            if (!condition.matches(pData)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Stores a data record and updates the indexes. All changes to the data records go through here or
+     * {@link #removeDataRecord} so the indexes stay up to date.
+     */
+    private void putDataRecord(String pUid, FHSyncDataRecord pRecord) {
+        FHSyncDataRecord previous = mDataRecords.put(pUid, pRecord);
+        for (FHSyncIndex index : mIndexes.values()) {
+            index.put(pUid, pRecord.getData());
+        }
+        if (mChangeFeed.isObserved()) {
+            mChangeFeed.recordChange(pUid, previous, pRecord);
+        }
+    }
+
+    private void removeDataRecord(String pUid) {
+        FHSyncDataRecord previous = mDataRecords.remove(pUid);
+        for (FHSyncIndex index : mIndexes.values()) {
+            index.remove(pUid);
+        }
+        if (previous != null && mChangeFeed.isObserved()) {
+            mChangeFeed.recordChange(pUid, previous, null);
+        }
+    }
+
+    /**
+     * Builds the indexes of the fields set by {@link FHSyncConfig#setIndexedFields} from the data records.
+     */
+    private synchronized void rebuildIndexes() {
+        mIndexes = buildIndexes();
+    }
+
+    private Map<String, FHSyncIndex> buildIndexes() {
+        Map<String, FHSyncIndex> indexes = new LinkedHashMap<>();
+        for (String path : mSyncConfig.getIndexedFields()) {
+            indexes.put(path, new FHSyncIndex(path));
+        }
+        for (Map.Entry<String, FHSyncDataRecord> entry : mDataRecords.entrySet()) {
+            for (FHSyncIndex index : indexes.values()) {
+                index.put(entry.getKey(), entry.getValue().getData());
+            }
+        }
+        return indexes;
+    }
+
+    /**
+     * @return a copy of the record with its uid, so that changes made to it do not affect the dataset, or
+     * an empty object if there is no record
+     */
+    private static JSONObject recordResult(String pUid, FHSyncDataRecord pRecord) {
         JSONObject ret = new JSONObject();
-        if (deleted != null) {
-            ret.put("data", new JSONObject(deleted.getData().toString()));
+        if (pRecord != null) {
+            ret.put("data", new JSONObject(pRecord.getData().toString()));
             ret.put("uid", pUid);
         }
         return ret;
     }
 
-    public void startSyncLoop() {
-        mSyncPending = false;
-        mSyncRunning = true;
-        mSyncStart = new Date();
+    /**
+     * Starts a sync loop, unless one is already running or the dataset is stopped. A started sync loop frees
+     * the sync slot of the dataset when it completes.
+     *
+     * @return true if a sync loop was started, even if it completed straight away because the device is
+     * offline, false if the dataset could not be claimed
+     */
+    public synchronized boolean startSyncLoop() {
+        if (!claimSyncLoop()) {
+            return false;
+        }
+        JSONObject syncLoopParams = buildSyncLoop();
+        if (syncLoopParams != null) {
+            sendSyncLoop(syncLoopParams);
+        }
+        return true;
+    }
+
+    /**
+     * Marks the sync loop as started and builds its request: the dataset hash, the acknowledgements and the
+     * pending records that are not already in flight, which are marked in flight. Completes the sync loop
+     * straight away when the device is offline.
+     *
+     * @return the sync loop params, or null if the sync loop has already completed or could not be claimed
+     * because one is already running or the dataset is stopped
+     */
+    synchronized JSONObject prepareSyncLoop() {
+        return claimSyncLoop() ? buildSyncLoop() : null;
+    }
+
+    private boolean claimSyncLoop() {
+        awaitLoaded();
+        if (!mState.tryClaim()) {
+            FHLog.d(LOG_TAG, "Sync loop of " + mDatasetId + " not started, the dataset is " + mState);
+            return false;
+        }
+        return true;
+    }
+
+    /**
+     * Builds the request of a claimed sync loop, see {@link #prepareSyncLoop()}.
+     */
+    private JSONObject buildSyncLoop() {
+        mSyncStart = new Date(mClock.currentTimeMillis());
         doNotify(null, NotificationMessage.SYNC_STARTED_CODE, null);
-        if (!FH.isOnline()) {
+        if (!mConnectivity.isOnline()) {
             syncCompleteWithCode("offline");
-        } else {
-            JSONObject syncLoopParams = new JSONObject();
-            syncLoopParams.put("fn", "sync");
-            syncLoopParams.put("dataset_id", mDatasetId);
-            syncLoopParams.put("meta_data", mCustomMetaData);
-            syncLoopParams.put("query_params", mQueryParams);
-            if (mHashvalue != null) {
-                syncLoopParams.put("dataset_hash", mHashvalue);
+            return null;
+        }
+        JSONObject syncLoopParams = new JSONObject();
+        syncLoopParams.put("fn", "sync");
+        syncLoopParams.put("dataset_id", mDatasetId);
+        syncLoopParams.put("meta_data", mCustomMetaData);
+        syncLoopParams.put("query_params", mQueryParams);
+        if (mHashvalue != null) {
+            syncLoopParams.put("dataset_hash", mHashvalue);
+        }
+        syncLoopParams.put("acknowledgements", mAcknowledgements);
+        boolean patchUpdates = mSyncConfig.isPatchUpdates();
+        if (patchUpdates) {
+            // lets the server tell whether it accepts patches
+            syncLoopParams.put(PENDING_PATCH, MERGE_PATCH);
+        }
+        compactPendingRecords();
+        JSONArray pendings = new JSONArray();
+        int maxRecords = mSyncConfig.getMaxSyncBatchRecords();
+        int maxBytes = mSyncConfig.getMaxSyncBatchBytes();
+        int batchBytes = 0;
+        mMorePendingToSend = false;
+        for (String key : mPendingRecords.getReadyHashes()) {
+            FHSyncPendingRecord pendingRecord = mPendingRecords.get(key);
+            JSONObject pendingJSON = (patchUpdates && mServerAcceptsPatch)
+                ? pendingRecord.getPatchJSON()
+                : pendingRecord.getJSON();
+            if ("create".equals(pendingRecord.getAction())) {
+                pendingJSON.put("hash", pendingRecord.getUid());
+            } else {
+                pendingJSON.put("hash", pendingRecord.getHashValue());
             }
-            syncLoopParams.put("acknowledgements", mAcknowledgements);
-            JSONArray pendings = new JSONArray();
-            for (String key : mPendingRecords.keySet()) {
-                FHSyncPendingRecord pendingRecord = mPendingRecords.get(key);
-                if (!pendingRecord.isInFlight() && !pendingRecord.isCrashed() && !pendingRecord.isDelayed()) {
-                    pendingRecord.setInFlight(true);
-                    pendingRecord.setInFlightDate(new Date());
-                    JSONObject pendingJSON = pendingRecord.getJSON();
-                    if ("create".equals(pendingRecord.getAction())) {
-                        pendingJSON.put("hash", pendingRecord.getUid());
-                    } else {
-                        pendingJSON.put("hash", pendingRecord.getHashValue());
-                    }
-                    pendings.put(pendingJSON);
+            int pendingBytes = (maxBytes > 0) ? FHSyncUtils.utf8Length(pendingJSON.toString()) : 0;
+            if (pendings.length() > 0
+                && ((maxRecords > 0 && pendings.length() >= maxRecords)
+                    || (maxBytes > 0 && batchBytes + pendingBytes > maxBytes))) {
+                // the rest goes with the next round, straight after this one
+                mMorePendingToSend = true;
+                break;
+            }
+            mPendingRecords.setInFlight(key, true);
+            pendingRecord.setInFlightDate(new Date(mClock.currentTimeMillis()));
+            pendings.put(pendingJSON);
+            batchBytes += pendingBytes;
+        }
+
+        syncLoopParams.put("pending", pendings);
+        // the params are not logged, that would serialize the whole request once more
+        FHLog.d(LOG_TAG, "Starting sync loop -global hash = " + mHashvalue + " :: pending = " + pendings.length());
+        return syncLoopParams;
+    }
+
+    /**
+     * Merges the chains of pending records of the same data record, and points the local metadata of the
+     * data records at the pending records that replaced the merged ones.
+     */
+    private void compactPendingRecords() {
+        Map<String, String> removed = FHSyncPendingCompactor.compact(mPendingRecords);
+        if (removed.isEmpty()) {
+            return;
+        }
+        FHLog.d(LOG_TAG, "Compacted " + removed.size() + " pending records");
+        JSONArray uids = mMetaData.names();
+        for (int i = 0; uids != null && i < uids.length(); i++) {
+            String uid = uids.getString(i);
+            JSONObject metadata = mMetaData.optJSONObject(uid);
+            String pendingUid = (metadata != null) ? metadata.optString("pendingUid", null) : null;
+            if (pendingUid != null && removed.containsKey(pendingUid)) {
+                String replacement = removed.get(pendingUid);
+                if (replacement != null) {
+                    metadata.put("pendingUid", replacement);
+                } else {
+                    mMetaData.remove(uid);
                 }
             }
+        }
+    }
 
-            syncLoopParams.put("pending", pendings);
-            FHLog.d(LOG_TAG, "Starting sync loop -global hash = " + mHashvalue + " :: params = " + syncLoopParams);
+    /**
+     * Sends a prepared sync loop on its own to the sync endpoint of this dataset.
+     *
+     * @param pSyncLoopParams the params built by {@link #prepareSyncLoop()}
+     */
+    void sendSyncLoop(JSONObject pSyncLoopParams) {
+        try {
+            mTransport.send(
+                mDatasetId, mSyncConfig, pSyncLoopParams, new FHActCallback() {
 
-            try {
-                FHRemote actRequest = makeCloudRequest(syncLoopParams);
-                actRequest.executeAsync(
-                    new FHActCallback() {
-
-                        @Override
-                        public void success(FHResponse pResponse) {
-                            JSONObject responseData = pResponse.getJson();
-                            syncRequestSuccess(responseData);
-                        }
+                    @Override
+                    public void success(FHResponse pResponse) {
+                        handleSyncResponse(pResponse.getJson());
+                    }
 
-                        @Override
-                        public void fail(FHResponse pResponse) {
-                            /*
-                            The AJAX call failed to complete successfully, so the state of the current pending updates
-                            is unknown. Mark them as "crashed". The next time a syncLoop completes successfully, we
-                            will review the crashed records to see if we can determine their current state.
-                            */
-                            markInFlightAsCrashed();
-                            FHLog.e(
-                                LOG_TAG,
-                                "syncLoop failed : msg = " + pResponse.getErrorMessage(),
-                                pResponse.getError());
-                            doNotify(null, NotificationMessage.SYNC_FAILED_CODE, pResponse.getRawResponse());
-                            syncCompleteWithCode(pResponse.getRawResponse());
-                        }
-                    });
-            } catch (Exception e) {
-                FHLog.e(LOG_TAG, "Error performing sync", e);
-                doNotify(null, NotificationMessage.SYNC_FAILED_CODE, e.getMessage());
-                syncCompleteWithCode(e.getMessage());
+                    @Override
+                    public void fail(FHResponse pResponse) {
+                        handleSyncFailure(pResponse);
+                    }
+                });
+        } catch (Exception e) {
+            FHLog.e(LOG_TAG, "Error performing sync", e);
+            // the pending records were marked in flight, they are resent once known to be crashed
+            syncRequestFailed(new FHResponse(null, null, e, e.getMessage()));
+        }
+    }
+
+    /**
+     * Applies the response to a sync loop on the lane of this dataset.
+     *
+     * @param pData the sync loop response of this dataset
+     */
+    void handleSyncResponse(final JSONObject pData) {
+        runInLane(new Runnable() {
+            @Override
+            public void run() {
+                syncRequestSuccess(pData);
+            }
+        });
+    }
+
+    /**
+     * Applies the records received from a syncRecords request on the lane of this dataset.
+     *
+     * @param pData the syncRecords response of this dataset
+     */
+    void handleSyncRecordsResponse(final JSONObject pData) {
+        runInLane(new Runnable() {
+            @Override
+            public void run() {
+                syncRecordsSuccess(pData);
+            }
+        });
+    }
+
+    /**
+     * Fails the running sync loop on the lane of this dataset.
+     *
+     * @param pResponse the failed response
+     */
+    void handleSyncFailure(final FHResponse pResponse) {
+        runInLane(new Runnable() {
+            @Override
+            public void run() {
+                syncRequestFailed(pResponse);
             }
+        });
+    }
+
+    private synchronized void syncRequestFailed(FHResponse pResponse) {
+        if (!mState.beginApplying()) {
+            FHLog.w(LOG_TAG, "Ignoring a failed sync loop of " + mDatasetId + ", the dataset is " + mState);
+            return;
         }
+        /*
+        The AJAX call failed to complete successfully, so the state of the current pending updates
+        is unknown. Mark them as "crashed". The next time a syncLoop completes successfully, we
+        will review the crashed records to see if we can determine their current state.
+        */
+        markInFlightAsCrashed();
+        FHLog.e(
+            LOG_TAG,
+            "syncLoop failed : msg = " + pResponse.getErrorMessage(),
+            pResponse.getError());
+        doNotify(null, NotificationMessage.SYNC_FAILED_CODE, pResponse.getRawResponse());
+        syncCompleteWithCode(pResponse.getRawResponse());
     }
 
-    private void syncRequestSuccess(JSONObject pData) {
+    private synchronized void syncRequestSuccess(JSONObject pData) {
+        if (!mState.beginApplying()) {
+            FHLog.w(LOG_TAG, "Ignoring a sync response of " + mDatasetId + ", the dataset is " + mState);
+            return;
+        }
+        adaptSyncFrequency(hasChanges(pData));
+        if (mSyncConfig.isPatchUpdates()) {
+            mServerAcceptsPatch = MERGE_PATCH.equals(pData.optString(PENDING_PATCH, null));
+        }
         // Check to see if any previously crashed inflight records can now be resolved
         updateCrashedInFlightFromNewData(pData);
         updateDelayedFromNewData(pData);
@@ -277,18 +843,23 @@ public class FHSyncDataset {
             mAcknowledgements = ack;
         }
 
+        if (mMorePendingToSend) {
+            FHLog.d(LOG_TAG, "Sending the next round of pending records");
+            mMorePendingToSend = false;
+            mState.setPending(true);
+        }
+
         if (pData.has("hash") && !pData.getString("hash").equals(mHashvalue)) {
             String remoteHash = pData.getString("hash");
             FHLog.d(
                 LOG_TAG,
                 "Local dataset stale - syncing records :: local hash= " + mHashvalue + " - remoteHash =" + remoteHash);
-            // Different hash value returned - Sync individual records
+            // Different hash value returned - Sync individual records, which completes the sync loop
             syncRecords();
         } else {
             FHLog.i(LOG_TAG, "Local dataset up to date");
+            syncCompleteWithCode("online");
         }
-
-        syncCompleteWithCode("online");
     }
 
     private void syncRecords() {
@@ -307,22 +878,22 @@ public class FHSyncDataset {
         FHLog.d(LOG_TAG, "syncRecParams :: " + syncRecsParams);
 
         try {
-            FHRemote request = makeCloudRequest(syncRecsParams);
-            request.executeAsync(
-                new FHActCallback() {
+            mTransport.send(
+                mDatasetId, mSyncConfig, syncRecsParams, new FHActCallback() {
 
                     @Override
                     public void success(FHResponse pResponse) {
-                        syncRecordsSuccess(pResponse.getJson());
+                        handleSyncRecordsResponse(pResponse.getJson());
                     }
 
                     @Override
-                    public void fail(FHResponse pResponse) {
-                        FHLog.e(
-                            LOG_TAG, "syncRecords failed: " + pResponse.getRawResponse(),
-                            pResponse.getError());
-                        doNotify(null, NotificationMessage.SYNC_FAILED_CODE, pResponse.getRawResponse());
-                        syncCompleteWithCode(pResponse.getRawResponse());
+                    public void fail(final FHResponse pResponse) {
+                        runInLane(new Runnable() {
+                            @Override
+                            public void run() {
+                                syncRecordsFailed(pResponse);
+                            }
+                        });
                     }
                 });
         } catch (Exception e) {
@@ -332,11 +903,27 @@ public class FHSyncDataset {
         }
     }
 
-    private void syncRecordsSuccess(JSONObject pData) {
+    private synchronized void syncRecordsFailed(FHResponse pResponse) {
+        FHLog.e(
+            LOG_TAG, "syncRecords failed: " + pResponse.getRawResponse(),
+            pResponse.getError());
+        doNotify(null, NotificationMessage.SYNC_FAILED_CODE, pResponse.getRawResponse());
+        syncCompleteWithCode(pResponse.getRawResponse());
+    }
+
+    private synchronized void syncRecordsSuccess(JSONObject pData) {
         applyPendingChangesToRecords(pData);
-        handleCreated(pData);
-        handleUpdated(pData);
-        handleDeleted(pData);
+        // the uids of the received records by action, when they are notified at once
+        JSONObject delta = null;
+        if (mSyncConfig.isCoalesceDeltaNotifications() && isNotified(NotificationMessage.DELTA_RECEIVED_CODE)) {
+            delta = new JSONObject();
+        }
+        handleCreated(pData, delta);
+        handleUpdated(pData, delta);
+        handleDeleted(pData, delta);
+        if (delta != null && delta.length() > 0) {
+            doNotify(null, NotificationMessage.DELTA_RECEIVED_CODE, delta.toString());
+        }
 
         if (pData.has("hash")) {
             mHashvalue = pData.getString("hash");
@@ -345,46 +932,52 @@ public class FHSyncDataset {
         syncCompleteWithCode("online");
     }
 
-    private FHRemote makeCloudRequest(JSONObject pSyncLoopParams) throws FHNotReadyException {
-        FHRemote request = null;
-        if(this.getSyncConfig().useCustomSync()){
-            request = FH.buildActRequest(mDatasetId, pSyncLoopParams);
-        } else {
-            request = FH.buildCloudRequest("/mbaas/sync/" + mDatasetId, "POST", null, pSyncLoopParams);
+    /**
+     * Notifies about a received record, or adds its uid to the delta notified at the end of the sync loop.
+     */
+    private void notifyDelta(String pUid, String pAction, JSONObject pDelta) {
+        if (pDelta == null) {
+            doNotify(pUid, NotificationMessage.DELTA_RECEIVED_CODE, pAction);
+            return;
+        }
+        JSONArray uids = pDelta.optJSONArray(pAction);
+        if (uids == null) {
+            uids = new JSONArray();
+            pDelta.put(pAction, uids);
         }
-        return request;
+        uids.put(pUid);
     }
 
-    private void handleDeleted(JSONObject pData) {
+    private void handleDeleted(JSONObject pData, JSONObject pDelta) {
         JSONObject deleted = pData.optJSONObject("delete");
         if (deleted != null) {
             for (Iterator<String> it = deleted.keys(); it.hasNext(); ) {
                 String key = it.next();
-                mDataRecords.remove(key);
-                doNotify(key, NotificationMessage.DELTA_RECEIVED_CODE, "delete");
+                removeDataRecord(key);
+                notifyDelta(key, "delete", pDelta);
             }
         }
     }
 
-    private void handleUpdated(JSONObject pData) {
+    private void handleUpdated(JSONObject pData, JSONObject pDelta) {
         JSONObject dataUpdated = pData.optJSONObject("update");
         if (dataUpdated != null) {
             for (Iterator<String> it = dataUpdated.keys(); it.hasNext(); ) {
                 String key = it.next();
                 JSONObject obj = dataUpdated.getJSONObject(key);
-                FHSyncDataRecord rec = mDataRecords.get(key);
-                if (rec != null) {
-                    rec.setData(obj.getJSONObject("data"));
+                if (mDataRecords.containsKey(key)) {
+                    // replaced rather than changed, the change feed still holds the record as it was
+                    FHSyncDataRecord rec = new FHSyncDataRecord(obj.getJSONObject("data"));
                     rec.setHashValue(obj.getString("hash"));
-                    mDataRecords.put(key, rec);
-                    doNotify(key, NotificationMessage.DELTA_RECEIVED_CODE, "update");
+                    putDataRecord(key, rec);
+                    notifyDelta(key, "update", pDelta);
                 }
 
             }
         }
     }
 
-    private void handleCreated(JSONObject pData) {
+    private void handleCreated(JSONObject pData, JSONObject pDelta) {
         JSONObject created = pData.optJSONObject("create");
         if (created != null) {
             for (Iterator<String> it = created.keys(); it.hasNext(); ) {
@@ -393,8 +986,8 @@ public class FHSyncDataset {
                 JSONObject obj = created.getJSONObject(key);
                 FHSyncDataRecord record = new FHSyncDataRecord(obj.getJSONObject("data"));
                 record.setHashValue(obj.getString("hash"));
-                mDataRecords.put(key, record);
-                doNotify(key, NotificationMessage.DELTA_RECEIVED_CODE, "create");
+                putDataRecord(key, record);
+                notifyDelta(key, "create", pDelta);
 
             }
         }
@@ -416,135 +1009,222 @@ public class FHSyncDataset {
     }
     
     private void updateCrashedInFlightFromNewData(JSONObject remoteData) {
-        
         JSONObject resolvedCrashed = new JSONObject();
-        List<String> keysToRemove = new ArrayList<String>();
-
-        for ( Map.Entry<String, FHSyncPendingRecord> pendingRecordEntry : mPendingRecords.entrySet()) {
-            FHSyncPendingRecord pendingRecord = pendingRecordEntry.getValue();
-            String pendingHash = pendingRecordEntry.getKey();
-            if (pendingRecord.isInFlight() && pendingRecord.isCrashed()) {
-                Log.d(LOG_TAG, 
-                        String.format("updateCrashedInFlightFromNewData - Found crashed inFlight pending record uid= %s :: hash %s", pendingRecord.getUid(), pendingRecord.getHashValue()));
-                if (remoteData != null && remoteData.has("updates") && remoteData.getJSONObject("updates").has("hashes")) {
-                    JSONObject hashes = remoteData.getJSONObject("updates").getJSONObject("hashes");
-                    JSONObject crashedUpdate = hashes.optJSONObject(pendingHash);
-                    if (crashedUpdate != null) {
-                        resolvedCrashed.put(crashedUpdate.getString("uid"), crashedUpdate);
-                        Log.d(LOG_TAG, "updateCrashedInFlightFromNewData - Resolving status for crashed inflight pending record " + crashedUpdate.toString());
-                        String crashedType = crashedUpdate.optString("type");
-                        String crashedAction = crashedUpdate.optString("action");
-                        
-                        if (crashedType != null && crashedType.equals("failed")) {
-                            // Crashed updated failed - revert local dataset
-                            if (crashedAction != null && crashedAction.equals("create")) {
-                                Log.d(LOG_TAG,"updateCrashedInFlightFromNewData - Deleting failed create from dataset");
-                                this.mDataRecords.remove(crashedUpdate.get("uid"));
-                            } else if (crashedAction != null && (crashedAction.equals("update") ||
-                                                         crashedAction.equals("delete"))) {
-                                Log.d(LOG_TAG,"updateCrashedInFlightFromNewData - Reverting failed %@ in dataset" + crashedAction);
-                                this.mDataRecords.put(crashedUpdate.getString("uid"), pendingRecord.getPreData());
-                            }
-                        }
-                        
-                    keysToRemove.add(pendingHash);
-                    if ("applied".equals(crashedUpdate.opt("type"))) {
-                        doNotify(crashedUpdate.getString("uid"), NotificationMessage.REMOTE_UPDATE_APPLIED_CODE, crashedUpdate.toString());
-                    } else if ("failed".equals(crashedUpdate.opt("type"))) {
-                        doNotify(crashedUpdate.getString("uid"), NotificationMessage.REMOTE_UPDATE_FAILED_CODE, crashedUpdate.toString());
-                    } else if ("collisions".equals(crashedUpdate.opt("type"))) {
-                        doNotify(crashedUpdate.getString("uid"), NotificationMessage.COLLISION_DETECTED_CODE, crashedUpdate.toString());
-                    }
-                    
-                        
-                    } else {
-                        // No word on our crashed update - increment a counter to reflect another sync
-                        // that did not give us
-                        // any update on our crashed record.
-                        pendingRecord.incrementCrashCount();
-                    }
-                } else {
-                    // No word on our crashed update - increment a counter to reflect another sync that
-                    // did not give us
-                    // any update on our crashed record.
-                    pendingRecord.incrementCrashCount();
+        JSONObject updates = (remoteData != null) ? remoteData.optJSONObject("updates") : null;
+        JSONObject hashes = (updates != null) ? updates.optJSONObject("hashes") : null;
+
+        for (String pendingHash : mPendingRecords.getCrashedHashes()) {
+            FHSyncPendingRecord pendingRecord = mPendingRecords.get(pendingHash);
+            if (!pendingRecord.isInFlight()) {
+                continue;
+            }
+            FHLog.d(LOG_TAG, "updateCrashedInFlightFromNewData - Found crashed inFlight pending record uid= "
+                + pendingRecord.getUid() + " :: hash " + pendingHash);
+            JSONObject crashedUpdate = (hashes != null) ? hashes.optJSONObject(pendingHash) : null;
+            if (crashedUpdate == null) {
+                // No word on our crashed update - increment a counter to reflect another sync that
+                // did not give us
+                // any update on our crashed record.
+                pendingRecord.incrementCrashCount();
+                continue;
+            }
+            resolvedCrashed.put(crashedUpdate.getString("uid"), crashedUpdate);
+            FHLog.d(LOG_TAG, "updateCrashedInFlightFromNewData - Resolving status for crashed inflight pending record " + crashedUpdate);
+            String crashedType = crashedUpdate.optString("type");
+            String crashedAction = crashedUpdate.optString("action");
+
+            if ("failed".equals(crashedType)) {
+                // Crashed updated failed - revert local dataset
+                if ("create".equals(crashedAction)) {
+                    FHLog.d(LOG_TAG, "updateCrashedInFlightFromNewData - Deleting failed create from dataset");
+                    removeDataRecord(crashedUpdate.getString("uid"));
+                } else if ("update".equals(crashedAction) || "delete".equals(crashedAction)) {
+                    FHLog.d(LOG_TAG, "updateCrashedInFlightFromNewData - Reverting failed " + crashedAction + " in dataset");
+                    putDataRecord(crashedUpdate.getString("uid"), pendingRecord.getPreData());
                 }
-                
             }
-            
-        }
-        for (String keyToRemove : keysToRemove) {
-            this.mPendingRecords.remove(keyToRemove);
+
+            mPendingRecords.remove(pendingHash);
+            if ("applied".equals(crashedType)) {
+                doNotify(crashedUpdate.getString("uid"), NotificationMessage.REMOTE_UPDATE_APPLIED_CODE, crashedUpdate.toString());
+            } else if ("failed".equals(crashedType)) {
+                doNotify(crashedUpdate.getString("uid"), NotificationMessage.REMOTE_UPDATE_FAILED_CODE, crashedUpdate.toString());
+            } else if ("collisions".equals(crashedType)) {
+                doNotify(crashedUpdate.getString("uid"), NotificationMessage.COLLISION_DETECTED_CODE, crashedUpdate.toString());
+            }
         }
-        keysToRemove.clear();
-        
-        for ( Map.Entry<String, FHSyncPendingRecord> pendingRecordEntry : mPendingRecords.entrySet()) {
-            FHSyncPendingRecord pendingRecord = pendingRecordEntry.getValue();
-            String pendingHash = pendingRecordEntry.getKey();
-            
-            if (pendingRecord.isInFlight() && pendingRecord.isCrashed()) {
+
+        for (String pendingHash : mPendingRecords.getCrashedHashes()) {
+            FHSyncPendingRecord pendingRecord = mPendingRecords.get(pendingHash);
+            if (pendingRecord.isInFlight()) {
                 if (pendingRecord.getCrashedCount() > mSyncConfig.getCrashCountWait()) {
-                    Log.d(LOG_TAG, "updateCrashedInFlightFromNewData - Crashed inflight pending record has " +
-                          "reached crashed_count_wait limit : " + 
-                          pendingRecord);
+                    FHLog.d(LOG_TAG, "updateCrashedInFlightFromNewData - Crashed inflight pending record has " +
+                          "reached crashed_count_wait limit : " + pendingRecord);
                     if (mSyncConfig.isResendCrashedUpdates()) {
-                        Log.d(LOG_TAG, "updateCrashedInFlightFromNewData - Retryig crashed inflight pending record");
-                        pendingRecord.setCrashed(false);
-                        pendingRecord.setInFlight(false);
+                        FHLog.d(LOG_TAG, "updateCrashedInFlightFromNewData - Retryig crashed inflight pending record");
+                        mPendingRecords.setCrashed(pendingHash, false);
+                        mPendingRecords.setInFlight(pendingHash, false);
                     } else {
-                        Log.d(LOG_TAG, "updateCrashedInFlightFromNewData - Deleting crashed inflight pending record");
-                        keysToRemove.add(pendingHash);
+                        FHLog.d(LOG_TAG, "updateCrashedInFlightFromNewData - Deleting crashed inflight pending record");
+                        mPendingRecords.remove(pendingHash);
                     }
                 }
-            } else if (!pendingRecord.isInFlight() && pendingRecord.isCrashed()) {
-                Log.d(LOG_TAG, "updateCrashedInFlightFromNewData - Trying to resolve issues with crashed non in flight record - uid =" + pendingRecord.getUid());
+            } else if (resolvedCrashed.has(pendingRecord.getUid())) {
                 // Stalled pending record because a previous pending update on the same record crashed
-                JSONObject dict = resolvedCrashed.optJSONObject(pendingRecord.getUid());
-                if (null != dict) {
-                    Log.d(LOG_TAG, String.format("updateCrashedInFlightFromNewData - Found a stalled pending record backed " +
-                          "up behind a resolved crash uid=%s :: hash=%s",
-                          pendingRecord.getUid(), pendingRecord.getHashValue()));
-                    pendingRecord.setCrashed(false);
-                }
+                FHLog.d(LOG_TAG, "updateCrashedInFlightFromNewData - Found a stalled pending record backed "
+                    + "up behind a resolved crash uid=" + pendingRecord.getUid() + " :: hash=" + pendingHash);
+                mPendingRecords.setCrashed(pendingHash, false);
             }
-            
         }
-        
-        for (String keyToRemove : keysToRemove) {
-            this.mPendingRecords.remove(keyToRemove);
+    }
+
+    private void markInFlightAsCrashed() {
+        for (String pendingHash : mPendingRecords.getInFlightHashes()) {
+            FHLog.d(LOG_TAG, "Marking in flight pending record as crashed : " + pendingHash);
+            mPendingRecords.setCrashed(pendingHash, true);
         }
-        
-        keysToRemove.clear();
     }
 
+    public void syncCompleteWithCode(String pCode) {
+        if (!mState.complete()) {
+            FHLog.w(LOG_TAG, "Sync loop of " + mDatasetId + " not running, the dataset is " + mState);
+            return;
+        }
+        mSyncEnd = new Date(mClock.currentTimeMillis());
+        writeToFile();
+        mChangeFeed.flush();
+        doNotify(mHashvalue, NotificationMessage.SYNC_COMPLETE_CODE, pCode);
+        FHSyncExecutor executor = mExecutor;
+        if (executor != null) {
+            executor.syncFinished(mDatasetId);
+        }
+        scheduleNextSync();
+    }
 
+    /**
+     * Runs a task on the serial lane of this dataset, or straight away if the dataset is not managed by a
+     * sync client.
+     *
+     * @param pTask the task to run
+     */
+    private void runInLane(Runnable pTask) {
+        FHSyncExecutor executor = mExecutor;
+        if (executor != null) {
+            executor.getLane(mDatasetId).execute(pTask);
+        } else {
+            pTask.run();
+        }
+    }
 
+    /**
+     * Tells the scheduler when this dataset is next due: straight away if a sync is pending, otherwise one
+     * sync frequency after the last sync ended.
+     */
+    void scheduleNextSync() {
+        FHSyncScheduler scheduler = mScheduler;
+        if (scheduler == null || mState.isStopped()) {
+            return;
+        }
+        Date syncEnd = mSyncEnd;
+        if (mState.isPending() || syncEnd == null) {
+            scheduler.scheduleNow(mDatasetId);
+        } else {
+            long dueTime = syncEnd.getTime() + getEffectiveSyncFrequency() * 1000L;
+            scheduler.schedule(mDatasetId, dueTime - mClock.currentTimeMillis());
+        }
+    }
 
-    private void markInFlightAsCrashed() {
-        Map<String, FHSyncPendingRecord> crashedRecords = new HashMap<String, FHSyncPendingRecord>();
-        for (Map.Entry<String, FHSyncPendingRecord> entry : mPendingRecords.entrySet()) {
-            FHSyncPendingRecord pendingRecord = entry.getValue();
-            String pendingHash = entry.getKey();
-            if (pendingRecord.isInFlight()) {
-                FHLog.d(LOG_TAG, "Marking in flight pending record as crashed : " + pendingHash);
-                pendingRecord.setCrashed(true);
-                crashedRecords.put(pendingRecord.getUid(), pendingRecord);
+    /**
+     * Gets the sync interval currently used by this dataset. This is the sync frequency of its configuration
+     * unless the configuration has an adaptive sync frequency.
+     *
+     * @return the sync interval in seconds
+     */
+    public int getEffectiveSyncFrequency() {
+        FHSyncConfig config = mSyncConfig;
+        int frequency = config.getSyncFrequency();
+        if (config.isAdaptiveSyncFrequency()) {
+            if (mEffectiveSyncFrequency >= 0) {
+                frequency = mEffectiveSyncFrequency;
             }
+            frequency = Math.max(config.getMinSyncFrequency(), Math.min(config.getMaxSyncFrequency(), frequency));
         }
+        if (mSyncOnPush) {
+            frequency = Math.max(frequency, config.getPushSafetySyncFrequency());
+        }
+        return frequency;
+    }
 
+    /**
+     * Sets whether push messages trigger the syncs of this dataset, in which case it only polls at the push
+     * safety sync frequency.
+     *
+     * @param pSyncOnPush true if push messages trigger the syncs of this dataset
+     */
+    void setSyncOnPush(boolean pSyncOnPush) {
+        mSyncOnPush = pSyncOnPush;
+        if (!mState.isRunning()) {
+            scheduleNextSync();
+        }
     }
 
-    public void syncCompleteWithCode(String pCode) {
-        mSyncRunning = false;
-        mSyncEnd = new Date();
-        writeToFile();
-        doNotify(mHashvalue, NotificationMessage.SYNC_COMPLETE_CODE, pCode);
+    boolean isSyncOnPush() {
+        return mSyncOnPush;
     }
 
-    private FHSyncPendingRecord addPendingObject(String pUid, JSONObject pData, String pAction) {
-        if (!FH.isOnline()) {
-            doNotify(pUid, NotificationMessage.OFFLINE_UPDATE_CODE, pAction);
+    /**
+     * Shortens the adaptive sync interval to its minimum after a change, or doubles it after a quiet sync loop.
+     *
+     * @param pChanged whether the dataset changed locally or remotely
+     */
+    private void adaptSyncFrequency(boolean pChanged) {
+        if (!mSyncConfig.isAdaptiveSyncFrequency()) {
+            return;
+        }
+        int frequency = (mEffectiveSyncFrequency >= 0) ? mEffectiveSyncFrequency : mSyncConfig.getSyncFrequency();
+        mEffectiveSyncFrequency = pChanged
+            ? mSyncConfig.getMinSyncFrequency()
+            : Math.min(mSyncConfig.getMaxSyncFrequency(), Math.max(mSyncConfig.getMinSyncFrequency(), frequency) * 2);
+    }
+
+    /**
+     * @param pData the response to a sync loop
+     * @return whether the sync loop carried local changes or brought back remote ones
+     */
+    private boolean hasChanges(JSONObject pData) {
+        if (!mPendingRecords.isEmpty()) {
+            return true;
+        }
+        if (pData.has("hash") && !pData.getString("hash").equals(mHashvalue)) {
+            return true;
+        }
+        JSONObject updates = pData.optJSONObject("updates");
+        if (updates != null) {
+            for (String type : new String[] {"applied", "failed", "collisions"}) {
+                JSONObject entries = updates.optJSONObject(type);
+                if (entries != null && entries.length() > 0) {
+                    return true;
+                }
+            }
         }
+        return false;
+    }
+
+    private synchronized FHSyncPendingRecord addPendingObject(String pUid, JSONObject pData, String pAction) {
+        beforeLocalChanges(pUid, pAction, 1);
+        FHSyncPendingRecord pending = newPendingObject(pUid, pData, pAction);
+        if (pending.getUid() != null) {
+            storePendingObj(pending);
+            afterLocalChanges(pending.getUid(), pAction, null);
+        }
+        return pending;
+    }
+
+    /**
+     * Builds the pending record of a local change. Its uid is left unset if the record to change does not
+     * exist.
+     */
+    private FHSyncPendingRecord newPendingObject(String pUid, JSONObject pData, String pAction) {
         FHSyncPendingRecord pending = new FHSyncPendingRecord();
         pending.setInFlight(false);
         pending.setAction(pAction);
@@ -555,14 +1235,17 @@ public class FHSyncDataset {
         }
 
         if ("create".equalsIgnoreCase(pAction)) {
+            // identical records created within the same millisecond would otherwise share a hash
+            while (mPendingRecords.contains(pending.getHashValue())) {
+                pending.setTimestamp(pending.getTimestamp() + 1);
+                pending.setHashValue(null);
+            }
             pending.setUid(pending.getHashValue());
-            storePendingObj(pending);
         } else {
             FHSyncDataRecord existingData = mDataRecords.get(pUid);
             if (existingData != null) {
                 pending.setUid(pUid);
                 pending.setPreData(existingData.clone());
-                storePendingObj(pending);
             }
         }
         return pending;
@@ -571,14 +1254,44 @@ public class FHSyncDataset {
     private void storePendingObj(FHSyncPendingRecord pPendingObj) {
         mPendingRecords.put(pPendingObj.getHashValue(), pPendingObj);
         updateDatasetFromLocal(pPendingObj);
+    }
+
+    /**
+     * Brings the adaptive sync interval down and notifies about changes made while offline.
+     */
+    private void beforeLocalChanges(String pUid, String pAction, int pCount) {
+        if (mSyncConfig.isAdaptiveSyncFrequency() && mEffectiveSyncFrequency != mSyncConfig.getMinSyncFrequency()) {
+            adaptSyncFrequency(true);
+            if (!mState.isRunning()) {
+                scheduleNextSync();
+            }
+        }
+        if (!mConnectivity.isOnline() && pCount > 0) {
+            doNotify(pUid, NotificationMessage.OFFLINE_UPDATE_CODE, pAction);
+        }
+    }
+
+    /**
+     * Persists the dataset once the local changes are stored, and notifies about them.
+     *
+     * @param pUid the uid of the changed record, or null for bulk changes
+     * @param pAction the action of the changes
+     * @param pUids the uids of the changed records for bulk changes, or null
+     */
+    private void afterLocalChanges(String pUid, String pAction, JSONArray pUids) {
+        if (pUids != null && pUids.length() == 0) {
+            return;
+        }
         if (mSyncConfig.isAutoSyncLocalUpdates()) {
-            mSyncPending = true;
+            setSyncPending(true);
         }
         writeToFile();
-        doNotify(
-            pPendingObj.getUid(),
-            NotificationMessage.LOCAL_UPDATE_APPLIED_CODE,
-            pPendingObj.getAction());
+        mChangeFeed.flush();
+        String message = pAction;
+        if (pUids != null) {
+            message = new JSONObject().put("action", pAction).put("uids", pUids).toString();
+        }
+        doNotify(pUid, NotificationMessage.LOCAL_UPDATE_APPLIED_CODE, message);
     }
 
     private void updateDatasetFromLocal(FHSyncPendingRecord pPendingObj) {
@@ -609,7 +1322,7 @@ public class FHSyncDataset {
                     }
                 }
             }
-            mDataRecords.put(uid, new FHSyncDataRecord());
+            putDataRecord(uid, new FHSyncDataRecord());
         }
 
         if ("update".equalsIgnoreCase(pPendingObj.getAction())) {
@@ -633,8 +1346,7 @@ public class FHSyncDataset {
                                     uidToSave = previousPendingUid;
                                 } else if (!previousPendingObj.getHashValue().equals(pPendingObj.getHashValue())) {
                                     //Don't make a delayed update wait for itself, that is just rude
-                                    pPendingObj.setDelayed(true);
-                                    pPendingObj.setWaitingFor(previousPendingObj.getHashValue());
+                                    mPendingRecords.setWaitingFor(pPendingObj.getHashValue(), previousPendingObj.getHashValue());
                                 }
                             }
                         }
@@ -664,24 +1376,23 @@ public class FHSyncDataset {
                                 // Use the pre value from the pending update for the delete and
                                 // get rid of the pending update
                                 pPendingObj.setPreData(previousPendingObj.getPreData());
-                                pPendingObj.setInFlight(false);
+                                mPendingRecords.setInFlight(pPendingObj.getHashValue(), false);
                                 mPendingRecords.remove(previousPendingUid);
                             } else if (!previousPendingObj.getHashValue().equals(pPendingObj.getHashValue())) {
                                 //Don't make a delayed update wait for itself, that is just rude
-                                pPendingObj.setDelayed(true);
-                                pPendingObj.setWaitingFor(previousPendingObj.getHashValue());
+                                mPendingRecords.setWaitingFor(pPendingObj.getHashValue(), previousPendingObj.getHashValue());
                             }
                         }
                     }
                 }
                 
             }
-            mDataRecords.remove(uid);
+            removeDataRecord(uid);
         }
 
         if (mDataRecords.containsKey(uid)) {
             FHSyncDataRecord record = pPendingObj.getPostData();
-            mDataRecords.put(uid, record);
+            putDataRecord(uid, record);
             metadata.put("fromPending", true);
             metadata.put("pendingUid", uidToSave);
         }
@@ -691,6 +1402,7 @@ public class FHSyncDataset {
         JSONObject syncConfigJson = pObj.getJSONObject(KEY_SYNC_CONFIG);
         this.mSyncConfig = FHSyncConfig.fromJSON(syncConfigJson);
         this.mHashvalue = pObj.optString(KEY_HASHVALUE, null);
+        this.mServerAcceptsPatch = pObj.optBoolean(KEY_SERVER_ACCEPTS_PATCH, false);
         JSONObject pendingJSON = pObj.getJSONObject(KEY_PENDING_RECORDS);
         for (Iterator<String> it = pendingJSON.keys(); it.hasNext(); ) {
             String key = it.next();
@@ -725,15 +1437,14 @@ public class FHSyncDataset {
     private void readFromFile() {
         String filePath = mDatasetId + STORAGE_FILE_EXT;
         try {
-            FileInputStream fis = mContext.openFileInput(filePath);
-            ByteArrayOutputStream bos = new ByteArrayOutputStream();
-            writeStream(fis, bos);
-            String content = bos.toString("UTF-8");
+            String content = mStorage.read(filePath);
+            if (content == null) {
+                FHLog.w(LOG_TAG, "File not found for reading: " + filePath);
+                return;
+            }
             JSONObject json = new JSONObject(content);
             fromJSON(json);
             doNotify(null, NotificationMessage.LOCAL_UPDATE_APPLIED_CODE, "load");
-        } catch (FileNotFoundException ex) {
-            FHLog.w(LOG_TAG, "File not found for reading: " + filePath);
         } catch (IOException e) {
             FHLog.e(LOG_TAG, "Error reading file : " + filePath, e);
         } catch (JSONException je) {
@@ -742,95 +1453,42 @@ public class FHSyncDataset {
     }
 
     public synchronized void writeToFile() {
+        awaitLoaded();
         String filePath = mDatasetId + STORAGE_FILE_EXT;
         try {
-            FileOutputStream fos = mContext.openFileOutput(filePath, Context.MODE_PRIVATE);
-            String content = getJSON().toString();
-            ByteArrayInputStream bis = new ByteArrayInputStream(content.getBytes());
-            writeStream(bis, fos);
-        } catch (FileNotFoundException ex) {
-            FHLog.e(LOG_TAG, "File not found for writing: " + filePath, ex);
-            doNotify(null, NotificationMessage.CLIENT_STORAGE_FAILED_CODE, ex.getMessage());
+            mStorage.write(filePath, getJSON().toString());
         } catch (IOException e) {
             FHLog.e(LOG_TAG, "Error writing file: " + filePath, e);
             doNotify(null, NotificationMessage.CLIENT_STORAGE_FAILED_CODE, e.getMessage());
         }
     }
 
+    /**
+     * @return whether an event would be delivered, to the listener of the notification handler or to a
+     * listener of the registry
+     */
+    private boolean isNotified(int pCode) {
+        FHSyncListenerRegistry registry = mListenerRegistry;
+        return isHandlerNotified(pCode) || (registry != null && registry.wants(mDatasetId, pCode));
+    }
+
+    private boolean isHandlerNotified(int pCode) {
+        return mNotifier != null && (mSyncConfig.getNotificationMask() & (1 << pCode)) != 0;
+    }
+
     private void doNotify(String pUID, int pCode, String pMessage) {
-        boolean sendMessage = false;
-        switch (pCode) {
-            case NotificationMessage.SYNC_STARTED_CODE:
-                if (mSyncConfig.isNotifySyncStarted()) {
-                    sendMessage = true;
-                }
-                break;
-            case NotificationMessage.SYNC_COMPLETE_CODE:
-                if (mSyncConfig.isNotifySyncComplete()) {
-                    sendMessage = true;
-                }
-                break;
-            case NotificationMessage.OFFLINE_UPDATE_CODE:
-                if (mSyncConfig.isNotifyOfflineUpdate()) {
-                    sendMessage = true;
-                }
-                break;
-            case NotificationMessage.COLLISION_DETECTED_CODE:
-                if (mSyncConfig.isNotifySyncCollisions()) {
-                    sendMessage = true;
-                }
-                break;
-            case NotificationMessage.REMOTE_UPDATE_FAILED_CODE:
-                if (mSyncConfig.isNotifyUpdateFailed()) {
-                    sendMessage = true;
-                }
-                break;
-            case NotificationMessage.REMOTE_UPDATE_APPLIED_CODE:
-                if (mSyncConfig.isNotifyRemoteUpdateApplied()) {
-                    sendMessage = true;
-                }
-                break;
-            case NotificationMessage.LOCAL_UPDATE_APPLIED_CODE:
-                if (mSyncConfig.isNotifyLocalUpdateApplied()) {
-                    sendMessage = true;
-                }
-                break;
-            case NotificationMessage.DELTA_RECEIVED_CODE:
-                if (mSyncConfig.isNotifyDeltaReceived()) {
-                    sendMessage = true;
-                }
-                break;
-            case NotificationMessage.SYNC_FAILED_CODE:
-                if (mSyncConfig.isNotifySyncFailed()) {
-                    sendMessage = true;
-                }
-                break;
-            case NotificationMessage.CLIENT_STORAGE_FAILED_CODE:
-                if (mSyncConfig.isNotifyClientStorageFailed()) {
-                    sendMessage = true;
-                }
-            default:
-                break;
+        boolean toHandler = isHandlerNotified(pCode);
+        FHSyncListenerRegistry registry = mListenerRegistry;
+        boolean toRegistry = registry != null && registry.wants(mDatasetId, pCode);
+        if (!toHandler && !toRegistry) {
+            return;
         }
-        if (sendMessage) {
-            NotificationMessage notification =
-                NotificationMessage.getMessage(mDatasetId, pUID, pCode, pMessage);
-            Message message = mNotificationHandler.obtainMessage(pCode, notification);
-            mNotificationHandler.sendMessage(message);
+        NotificationMessage notification = NotificationMessage.getMessage(mDatasetId, pUID, pCode, pMessage);
+        if (toHandler) {
+            mNotifier.sendNotification(pCode, notification);
         }
-    }
-
-    private static void writeStream(InputStream pInput, OutputStream pOutput) throws IOException {
-        if (pInput != null && pOutput != null) {
-            BufferedInputStream bis = new BufferedInputStream(pInput);
-            BufferedOutputStream bos = new BufferedOutputStream(pOutput);
-            byte[] buffer = new byte[1024];
-            int bytesRead;
-            while ((bytesRead = bis.read(buffer)) != -1) {
-                bos.write(buffer, 0, bytesRead);
-            }
-            bos.close();
-            bis.close();
+        if (toRegistry) {
+            registry.dispatch(mDatasetId, pCode, notification);
         }
     }
 
@@ -841,72 +1499,60 @@ public class FHSyncDataset {
      * overridden (blinking disappear / reappear effect).
     */
     private void applyPendingChangesToRecords(JSONObject resData) {
-        Log.d(LOG_TAG, String.format("SyncRecords result = %s pending = %s", resData.toString(), mPendingRecords.toString()));
-        for (FHSyncPendingRecord pendingRecord : mPendingRecords.values()) {
-            JSONObject resRecord = null;
-            if (resData.has("create")) {
-                resRecord = resData.optJSONObject("create");
-                if (resRecord != null && resRecord.has(pendingRecord.getUid())) {
-                    resRecord.remove(pendingRecord.getUid());
-                }
-            }
-            
-            if (resData.has("update")) {
-                resRecord = resData.optJSONObject("update");
-                if (resRecord != null && resRecord.has(pendingRecord.getUid())) {
-                    resRecord.remove(pendingRecord.getUid());
-                }
+        if (mPendingRecords.isEmpty()) {
+            return;
+        }
+        int kept = 0;
+        for (String type : new String[] {"create", "update", "delete"}) {
+            JSONObject resRecords = resData.optJSONObject(type);
+            JSONArray uids = (resRecords != null) ? resRecords.names() : null;
+            if (uids == null) {
+                continue;
             }
-            
-            if (resData.has("delete")) {
-                resRecord = resData.optJSONObject("delete");
-                if (resRecord != null && resRecord.has(pendingRecord.getUid())) {
-                    resRecord.remove(pendingRecord.getUid());
+            for (int i = 0; i < uids.length(); i++) {
+                String uid = uids.getString(i);
+                if (mPendingRecords.hasUid(uid)) {
+                    resRecords.remove(uid);
+                    kept++;
                 }
             }
-            Log.d(LOG_TAG, String.format("SyncRecords result after pending removed = %s", resData.toString()));
         }
+        FHLog.d(LOG_TAG, "SyncRecords result - kept " + kept + " records with local pending changes");
     }
-    
+
+    /**
+     * Releases the delayed pending records whose pending record is done.
+     */
     private void updateDelayedFromNewData(JSONObject responseData) {
-        for (Map.Entry<String, FHSyncPendingRecord> record : this.mPendingRecords.entrySet()) {
-            
-            FHSyncPendingRecord pendingObject = record.getValue();
-            if (pendingObject.isDelayed() && pendingObject.getWaitingFor() != null) {
-                if( responseData.has("updates")) {
-                    JSONObject updatedHashes = responseData.getJSONObject("updates").optJSONObject("hashes");
-                    if (updatedHashes != null && updatedHashes.has(pendingObject.getWaitingFor())) {
-                        pendingObject.setDelayed(false);
-                        pendingObject.setWaitingFor(null);
-                    } if ( updatedHashes == null ) {
-                        boolean waitingForIsStillPending = false; 
-                        String waitingFor = pendingObject.getWaitingFor();
-                        if (pendingObject.getWaitingFor().equals(pendingObject.getHashValue())) {
-                            //Somehow a pending object is waiting on itself, lets not do that
-                            pendingObject.setDelayed(false);
-                            pendingObject.setWaitingFor(null);    
-                        } else {
-                            for (FHSyncPendingRecord pending : mPendingRecords.values()) {
-
-                                if (pending.getHashValue().equals(waitingFor) || pending.getUid().equals(waitingFor)) {
-
-                                    waitingForIsStillPending = true;
-                                    break;
-                                }
-                            }
-                            if (!waitingForIsStillPending) {
-                                pendingObject.setDelayed(false);
-                                pendingObject.setWaitingFor(null);    
-                            }
-                        }
-                    }
-                } 
-            } else if (pendingObject.isDelayed() && pendingObject.getWaitingFor() == null) {
-                pendingObject.setDelayed(false);
+        List<String> delayedHashes = mPendingRecords.getDelayedHashes();
+        for (String hash : delayedHashes) {
+            if (mPendingRecords.get(hash).getWaitingFor() == null) {
+                mPendingRecords.setWaitingFor(hash, null);
+            }
+        }
+        JSONObject updates = responseData.optJSONObject("updates");
+        if (updates == null) {
+            return;
+        }
+        JSONObject updatedHashes = updates.optJSONObject("hashes");
+        if (updatedHashes != null) {
+            for (Iterator<String> it = updatedHashes.keys(); it.hasNext(); ) {
+                for (String dependent : mPendingRecords.getDependentHashes(it.next())) {
+                    mPendingRecords.setWaitingFor(dependent, null);
+                }
+            }
+        } else {
+            for (String hash : delayedHashes) {
+                FHSyncPendingRecord pendingObject = mPendingRecords.get(hash);
+                String waitingFor = (pendingObject != null) ? pendingObject.getWaitingFor() : null;
+                //Somehow a pending object may be waiting on itself, lets not do that
+                if (waitingFor != null && (waitingFor.equals(hash) || !mPendingRecords.isPending(waitingFor))) {
+                    mPendingRecords.setWaitingFor(hash, null);
+                }
             }
         }
     }
-    
+
     private void updateMetaFromNewData(JSONObject responseData) {
         Iterator keysIter = this.mMetaData.keys();
         Set<String> keysToRemove = new HashSet<>(this.mMetaData.length());
@@ -933,55 +1579,59 @@ public class FHSyncDataset {
     
     private void checkUidChanges(JSONObject appliedUpdates) {
         if (appliedUpdates != null && appliedUpdates.length() > 0) {
-            Iterator keysIterator = appliedUpdates.keys();
-            Map<String, String> newUids = new HashMap<>();
-            List<String> keys = new ArrayList<>();
-            while (keysIterator.hasNext()) {
-                keys.add((String) keysIterator.next());
-            }
-            
-            for (String key : keys ) {
-                JSONObject obj = appliedUpdates.getJSONObject(key);
+            for (Iterator<String> it = appliedUpdates.keys(); it.hasNext(); ) {
+                JSONObject obj = appliedUpdates.getJSONObject(it.next());
                 String action = obj.getString("action");
                 if ("create".equalsIgnoreCase(action)) {
                     String newUid = obj.getString("uid");
                     String oldUid = obj.getString("hash");
                     //remember the mapping
                     this.mUidMappings.put(oldUid, newUid);
-                    newUids.put(oldUid, newUid);
                     //we should update the data records to make sure they are now using the new UID
                     FHSyncDataRecord dataRecord = this.mDataRecords.get(oldUid);
                     if (dataRecord != null) {
-                        this.mDataRecords.put(newUid, dataRecord);
-                        this.mDataRecords.remove(oldUid);
-                    }
-                    
-                }
-                
-                if (newUids.size() > 0) {
-                    //we need to check all existing pendingRecords and update their UIDs if they are still the old values
-                    for (Map.Entry<String, FHSyncPendingRecord> keyRecord : mPendingRecords.entrySet()) {
-                        FHSyncPendingRecord pendingRecord = keyRecord.getValue();
-                        String pendingRecordUid = pendingRecord.getUid();
-                        String newUID = newUids.get(pendingRecordUid);
-                        if (newUID != null) {
-                            pendingRecord.setUid(newUID);
-                        }    
+                        putDataRecord(newUid, dataRecord);
+                        removeDataRecord(oldUid);
                     }
-                    
+                    //pending records of the created record still using the old UID move to the new one
+                    mPendingRecords.changeUid(oldUid, newUid);
                 }
-                
             }
-            
         }
     }
-    
+
+    public String getDatasetId() {
+        return mDatasetId;
+    }
+
+    public String getHashValue() {
+        return mHashvalue;
+    }
+
+    /**
+     * Claims the dataset for a sync loop, or completes its running sync loop. {@link #startSyncLoop()}
+     * claims the dataset on its own.
+     *
+     * @param pSyncRunning true to claim the dataset if no sync loop is running and it is not stopped, false
+     * to complete the running sync loop
+     */
     public void setSyncRunning(boolean pSyncRunning) {
-        this.mSyncRunning = pSyncRunning;
+        if (pSyncRunning) {
+            mState.tryClaim();
+        } else {
+            mState.complete();
+        }
     }
 
     public boolean isSyncRunning() {
-        return mSyncRunning;
+        return mState.isRunning();
+    }
+
+    /**
+     * @return where the dataset is in its sync lifecycle
+     */
+    FHSyncState.State getSyncState() {
+        return mState.get();
     }
 
     public void setInitialised(boolean pInitialised) {
@@ -989,15 +1639,22 @@ public class FHSyncDataset {
     }
 
     public void setSyncPending(boolean pSyncPending) {
-        this.mSyncPending = pSyncPending;
+        mState.setPending(pSyncPending);
+        FHSyncScheduler scheduler = mScheduler;
+        if (pSyncPending && scheduler != null && !mState.isStopped()) {
+            scheduler.scheduleNow(mDatasetId);
+        }
     }
 
     public boolean isSyncPending() {
-        return mSyncPending;
+        return mState.isPending();
     }
 
     public void setSyncConfig(FHSyncConfig pSyncConfig) {
         this.mSyncConfig = pSyncConfig;
+        if (!pSyncConfig.getIndexedFields().equals(new ArrayList<>(mIndexes.keySet()))) {
+            rebuildIndexes();
+        }
     }
 
     public FHSyncConfig getSyncConfig() {
@@ -1008,12 +1665,24 @@ public class FHSyncDataset {
         this.mQueryParams = pQueryParams;
     }
 
+    void setCustomMetaData(JSONObject pMetaData) {
+        this.mCustomMetaData = pMetaData;
+    }
+
     public void stopSync(boolean pStopSync) {
-        this.mStopSync = pStopSync;
+        mState.setStopped(pStopSync);
+        FHSyncScheduler scheduler = mScheduler;
+        if (scheduler != null) {
+            if (pStopSync) {
+                scheduler.cancel(mDatasetId);
+            } else {
+                scheduleNextSync();
+            }
+        }
     }
 
     public boolean isStopSync() {
-        return mStopSync;
+        return mState.isStopped();
     }
 
     public Date getSyncStart() {
@@ -1024,12 +1693,44 @@ public class FHSyncDataset {
         return mSyncEnd;
     }
 
+    /**
+     * @deprecated the sync client sets where its datasets are saved, this is only kept for existing callers
+     */
+    @Deprecated
     public void setContext(Context pContext) {
-        mContext = pContext;
+        setStorage(new FHSyncContextStorage(pContext));
+    }
+
+    void setStorage(FHSyncStorage pStorage) {
+        mStorage = pStorage;
     }
 
     public void setNotificationHandler(FHSyncNotificationHandler pHandler) {
-        mNotificationHandler = pHandler;
+        mNotifier = pHandler;
+    }
+
+    void setClock(FHSyncClock pClock) {
+        mClock = pClock;
+    }
+
+    void setTransport(FHSyncTransport pTransport) {
+        mTransport = pTransport;
+    }
+
+    void setConnectivity(FHSyncConnectivity pConnectivity) {
+        mConnectivity = pConnectivity;
+    }
+
+    void setListenerRegistry(FHSyncListenerRegistry pRegistry) {
+        mListenerRegistry = pRegistry;
+    }
+
+    void setScheduler(FHSyncScheduler pScheduler) {
+        mScheduler = pScheduler;
+    }
+
+    void setExecutor(FHSyncExecutor pExecutor) {
+        mExecutor = pExecutor;
     }
 
 }
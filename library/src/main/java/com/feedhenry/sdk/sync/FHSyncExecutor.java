@@ -0,0 +1,194 @@
+/**
+ * Copyright Red Hat, Inc, and individual contributors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.feedhenry.sdk.sync;
+
+import com.feedhenry.sdk.utils.FHLog;
+import java.util.ArrayDeque;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Runs the sync work of the datasets on a shared pool of worker threads.
+ *
+ * Every dataset gets a serial lane: the tasks of one dataset run one after the other, in submission order,
+ * while the lanes of different datasets run in parallel on the pool. The number of datasets syncing with
+ * the cloud at the same time is capped. A sync holds its slot from {@link #submitSync} until the dataset
+ * calls {@link #syncFinished}; syncs submitted while all the slots are taken wait for one to be freed.
+ */
+class FHSyncExecutor {
+
+    private static final String LOG_TAG = "com.feedhenry.sdk.sync.FHSyncExecutor";
+
+    private final ExecutorService mWorkers;
+    private final ConcurrentMap<String, SerialLane> mLanes = new ConcurrentHashMap<>();
+    private final int mMaxConcurrentSyncs;
+    private final Set<String> mActiveSyncs = new HashSet<>();
+    private final LinkedHashMap<String, Runnable> mWaitingSyncs = new LinkedHashMap<>();
+    private final Set<String> mKeptSyncs = new HashSet<>();
+
+    FHSyncExecutor(int pWorkerThreads, int pMaxConcurrentSyncs) {
+        mMaxConcurrentSyncs = Math.max(1, pMaxConcurrentSyncs);
+        mWorkers = Executors.newFixedThreadPool(Math.max(1, pWorkerThreads), new ThreadFactory() {
+            private final AtomicInteger mCount = new AtomicInteger();
+
+            @Override
+            public Thread newThread(Runnable pRunnable) {
+                Thread thread = new Thread(pRunnable, "FHSyncWorker-" + mCount.incrementAndGet());
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+    }
+
+    /**
+     * Gets the serial lane of a dataset. Everything that touches the sync state of the dataset should run
+     * on it.
+     *
+     * @param pDataId the id of the dataset
+     * @return an executor running the tasks of the dataset one at a time
+     */
+    Executor getLane(String pDataId) {
+        SerialLane lane = mLanes.get(pDataId);
+        if (lane == null) {
+            SerialLane created = new SerialLane();
+            lane = mLanes.putIfAbsent(pDataId, created);
+            if (lane == null) {
+                lane = created;
+            }
+        }
+        return lane;
+    }
+
+    /**
+     * Runs a sync on the lane of the dataset as soon as a sync slot is free. A dataset holds one slot at a
+     * time: a sync submitted while the dataset holds one waits for it to be freed. A dataset waiting for a
+     * slot only keeps its latest sync.
+     *
+     * @param pDataId the id of the dataset
+     * @param pSync the sync to run
+     */
+    void submitSync(String pDataId, Runnable pSync) {
+        submitSync(pDataId, pSync, false);
+    }
+
+    /**
+     * Runs a sync on the lane of the dataset as soon as a sync slot is free, see {@link #submitSync}.
+     *
+     * @param pDataId the id of the dataset
+     * @param pSync the sync to run
+     * @param pKeep true if the sync must run even if another sync of the dataset is submitted while it
+     * waits, as when it sends a sync loop that is already prepared. The later syncs are then dropped.
+     */
+    synchronized void submitSync(String pDataId, Runnable pSync, boolean pKeep) {
+        if (!mActiveSyncs.contains(pDataId) && mActiveSyncs.size() < mMaxConcurrentSyncs) {
+            mActiveSyncs.add(pDataId);
+            getLane(pDataId).execute(pSync);
+        } else if (!mKeptSyncs.contains(pDataId)) {
+            FHLog.d(LOG_TAG, "Sync of " + pDataId + " waits for a free sync slot");
+            mWaitingSyncs.put(pDataId, pSync);
+            if (pKeep) {
+                mKeptSyncs.add(pDataId);
+            }
+        }
+    }
+
+    /**
+     * Frees the sync slot held by a dataset and starts the next waiting sync, if any.
+     *
+     * @param pDataId the id of the dataset
+     */
+    synchronized void syncFinished(String pDataId) {
+        mActiveSyncs.remove(pDataId);
+        Iterator<Map.Entry<String, Runnable>> waiting = mWaitingSyncs.entrySet().iterator();
+        while (mActiveSyncs.size() < mMaxConcurrentSyncs && waiting.hasNext()) {
+            Map.Entry<String, Runnable> next = waiting.next();
+            if (mActiveSyncs.contains(next.getKey())) {
+                // waits for the slot of the dataset to be freed
+                continue;
+            }
+            waiting.remove();
+            mKeptSyncs.remove(next.getKey());
+            mActiveSyncs.add(next.getKey());
+            getLane(next.getKey()).execute(next.getValue());
+        }
+    }
+
+    synchronized int getActiveSyncCount() {
+        return mActiveSyncs.size();
+    }
+
+    /**
+     * Stops the worker threads. Tasks that have not started are dropped.
+     */
+    synchronized void shutdown() {
+        mWaitingSyncs.clear();
+        mKeptSyncs.clear();
+        mActiveSyncs.clear();
+        mWorkers.shutdownNow();
+    }
+
+    /**
+     * Runs its tasks one at a time on the worker pool.
+     */
+    private class SerialLane implements Executor {
+
+        private final ArrayDeque<Runnable> mTasks = new ArrayDeque<>();
+        private Runnable mActive;
+
+        @Override
+        public synchronized void execute(final Runnable pTask) {
+            mTasks.offer(new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        pTask.run();
+                    } catch (RuntimeException e) {
+                        FHLog.e(LOG_TAG, "Sync task failed", e);
+                    } finally {
+                        scheduleNext();
+                    }
+                }
+            });
+            if (mActive == null) {
+                scheduleNext();
+            }
+        }
+
+        private synchronized void scheduleNext() {
+            mActive = mTasks.poll();
+            if (mActive != null) {
+                try {
+                    mWorkers.execute(mActive);
+                } catch (RejectedExecutionException e) {
+                    // the client was destroyed, drop whatever is left in the lane
+                    mTasks.clear();
+                    mActive = null;
+                }
+            }
+        }
+    }
+}
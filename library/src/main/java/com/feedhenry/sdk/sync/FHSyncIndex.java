@@ -0,0 +1,298 @@
+/**
+ * Copyright Red Hat, Inc, and individual contributors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.feedhenry.sdk.sync;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.NavigableSet;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.TreeSet;
+import org.json.fh.JSONArray;
+import org.json.fh.JSONObject;
+
+/**
+ * A secondary index over one field of the records of a dataset, keeping the uids of the records ordered by
+ * the value of the field, then by uid.
+ *
+ * The field is given as a JSON path, the names of the nested fields separated by dots, like
+ * "customer.address.city". A record without the field is indexed under {@link JSONObject#NULL}. Values are
+ * ordered null first, then booleans, numbers and strings; objects and arrays are indexed by their JSON text
+ * and come last.
+ */
+class FHSyncIndex {
+
+    /**
+     * The order of the indexed values, also used to compare the values of fields that are not indexed.
+     */
+    static final Comparator<Object> VALUE_ORDER = new Comparator<Object>() {
+        @Override
+        public int compare(Object pFirst, Object pSecond) {
+            Object first = normalise(pFirst);
+            Object second = normalise(pSecond);
+            int rank = rank(first) - rank(second);
+            if (rank != 0) {
+                return rank;
+            }
+            if (first instanceof Boolean) {
+                return ((Boolean) first).compareTo((Boolean) second);
+            }
+            if (first instanceof Number) {
+                Number firstNumber = (Number) first;
+                Number secondNumber = (Number) second;
+                if (isIntegral(firstNumber) && isIntegral(secondNumber)) {
+                    long firstLong = firstNumber.longValue();
+                    long secondLong = secondNumber.longValue();
+                    return firstLong < secondLong ? -1 : (firstLong == secondLong ? 0 : 1);
+                }
+                return Double.compare(firstNumber.doubleValue(), secondNumber.doubleValue());
+            }
+            if (first instanceof String) {
+                return ((String) first).compareTo((String) second);
+            }
+            if (first instanceof JSONText) {
+                return ((JSONText) first).compareTo((JSONText) second);
+            }
+            return 0;
+        }
+    };
+
+    private final String mPath;
+    private final String[] mFields;
+    private final TreeMap<Object, NavigableSet<String>> mUidsByValue = new TreeMap<>(VALUE_ORDER);
+    private final Map<String, Object> mValuesByUid = new HashMap<>();
+
+    /**
+     * @param pPath the JSON path of the indexed field
+     */
+    FHSyncIndex(String pPath) {
+        mPath = pPath;
+        mFields = pPath.split("\\.");
+    }
+
+    String getPath() {
+        return mPath;
+    }
+
+    /**
+     * Indexes a record, replacing what was indexed for its uid.
+     *
+     * @param pUid the uid of the record
+     * @param pData the data of the record, null to only remove the record
+     */
+    synchronized void put(String pUid, JSONObject pData) {
+        remove(pUid);
+        if (pData == null) {
+            return;
+        }
+        Object value = normalise(valueAt(pData, mFields));
+        NavigableSet<String> uids = mUidsByValue.get(value);
+        if (uids == null) {
+            uids = new TreeSet<>();
+            mUidsByValue.put(value, uids);
+        }
+        uids.add(pUid);
+        mValuesByUid.put(pUid, value);
+    }
+
+    /**
+     * Removes a record from the index.
+     *
+     * @param pUid the uid of the record
+     */
+    synchronized void remove(String pUid) {
+        Object value = mValuesByUid.remove(pUid);
+        if (value == null) {
+            return;
+        }
+        Set<String> uids = mUidsByValue.get(value);
+        uids.remove(pUid);
+        if (uids.isEmpty()) {
+            mUidsByValue.remove(value);
+        }
+    }
+
+    synchronized void clear() {
+        mUidsByValue.clear();
+        mValuesByUid.clear();
+    }
+
+    synchronized int size() {
+        return mValuesByUid.size();
+    }
+
+    /**
+     * @param pValue the value, null for the records without the field
+     * @return the uids of the records whose field equals pValue
+     */
+    synchronized Set<String> getEqual(Object pValue) {
+        Set<String> uids = mUidsByValue.get(normalise(pValue));
+        return uids == null ? new LinkedHashSet<String>() : new LinkedHashSet<>(uids);
+    }
+
+    /**
+     * @param pFrom the lowest value, inclusive, or null for no lower bound
+     * @param pTo the highest value, inclusive, or null for no upper bound
+     * @return the uids of the records whose field is within the range, in ascending order of the field.
+     * Records without the field are not in an open range.
+     */
+    synchronized Set<String> getRange(Object pFrom, Object pTo) {
+        NavigableMap<Object, NavigableSet<String>> range = mUidsByValue;
+        if (pFrom != null) {
+            range = range.tailMap(normalise(pFrom), true);
+        } else {
+            range = range.tailMap(JSONObject.NULL, false);
+        }
+        if (pTo != null) {
+            range = range.headMap(normalise(pTo), true);
+        }
+        Set<String> ret = new LinkedHashSet<>();
+        for (Set<String> uids : range.values()) {
+            ret.addAll(uids);
+        }
+        return ret;
+    }
+
+    /**
+     * @param pAscending whether to list the uids in ascending order of the field
+     * @return the uids of all the indexed records, ordered by the field
+     */
+    synchronized List<String> getOrderedUids(boolean pAscending) {
+        List<String> ret = new ArrayList<>(mValuesByUid.size());
+        for (Set<String> uids : (pAscending ? mUidsByValue : mUidsByValue.descendingMap()).values()) {
+            ret.addAll(uids);
+        }
+        return ret;
+    }
+
+    /**
+     * Lists the uids that come after a record in the order of the index, for paging through the records.
+     * The record does not need to be indexed any more.
+     *
+     * @param pValue the value the record was indexed under
+     * @param pUid the uid of the record, null to start from the first record
+     * @param pAscending whether to go in ascending order of the field
+     * @param pCount the maximum number of uids
+     * @param pValues receives the value each of the returned uids is indexed under
+     * @return the uids following the record
+     */
+    synchronized List<String> getUidsAfter(
+        Object pValue, String pUid, boolean pAscending, int pCount, List<Object> pValues) {
+        NavigableMap<Object, NavigableSet<String>> values = pAscending ? mUidsByValue : mUidsByValue.descendingMap();
+        Object from = normalise(pValue);
+        if (pUid != null) {
+            values = values.tailMap(from, true);
+        }
+        List<String> ret = new ArrayList<>(pCount);
+        for (Map.Entry<Object, NavigableSet<String>> entry : values.entrySet()) {
+            NavigableSet<String> uids = pAscending ? entry.getValue() : entry.getValue().descendingSet();
+            if (pUid != null && VALUE_ORDER.compare(entry.getKey(), from) == 0) {
+                uids = uids.tailSet(pUid, false);
+            }
+            for (String uid : uids) {
+                if (ret.size() == pCount) {
+                    return ret;
+                }
+                ret.add(uid);
+                pValues.add(entry.getKey());
+            }
+        }
+        return ret;
+    }
+
+    /**
+     * @param pData a JSON object
+     * @param pPath the JSON path of a field, the names of the nested fields separated by dots
+     * @return the value of the field, or null if pData does not have it
+     */
+    static Object valueAt(JSONObject pData, String pPath) {
+        return valueAt(pData, pPath.split("\\."));
+    }
+
+    private static Object valueAt(JSONObject pData, String[] pFields) {
+        Object value = pData;
+        for (String field : pFields) {
+            if (!(value instanceof JSONObject)) {
+                return null;
+            }
+            value = ((JSONObject) value).opt(field);
+        }
+        return value;
+    }
+
+    private static Object normalise(Object pValue) {
+        if (pValue == null) {
+            return JSONObject.NULL;
+        }
+        if (pValue instanceof JSONObject || pValue instanceof JSONArray) {
+            return new JSONText(pValue.toString());
+        }
+        return pValue;
+    }
+
+    private static int rank(Object pValue) {
+        if (JSONObject.NULL.equals(pValue)) {
+            return 0;
+        }
+        if (pValue instanceof Boolean) {
+            return 1;
+        }
+        if (pValue instanceof Number) {
+            return 2;
+        }
+        if (pValue instanceof String) {
+            return 3;
+        }
+        return 4;
+    }
+
+    private static boolean isIntegral(Number pNumber) {
+        return pNumber instanceof Integer || pNumber instanceof Long || pNumber instanceof Short
+            || pNumber instanceof Byte;
+    }
+
+    /**
+     * The JSON text of an object or array value, so it is not ordered with the strings.
+     */
+    private static final class JSONText implements Comparable<JSONText> {
+
+        private final String mText;
+
+        JSONText(String pText) {
+            mText = pText;
+        }
+
+        @Override
+        public int compareTo(JSONText pOther) {
+            return mText.compareTo(pOther.mText);
+        }
+
+        @Override
+        public boolean equals(Object pOther) {
+            return pOther instanceof JSONText && mText.equals(((JSONText) pOther).mText);
+        }
+
+        @Override
+        public int hashCode() {
+            return mText.hashCode();
+        }
+    }
+}
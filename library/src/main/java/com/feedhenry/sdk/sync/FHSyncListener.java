@@ -69,7 +69,9 @@ public interface FHSyncListener {
     void onLocalUpdateApplied(NotificationMessage pMessage);
 
     /**
-     * Invoked when a delta received event is emitted.
+     * Invoked when a delta received event is emitted. With
+     * {@link FHSyncConfig#setCoalesceDeltaNotifications(boolean)} there is one event per sync loop for all
+     * the received records.
      *
      * @param pMessage The message
      */
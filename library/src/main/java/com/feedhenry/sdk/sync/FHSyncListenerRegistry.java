@@ -0,0 +1,131 @@
+/**
+ * Copyright Red Hat, Inc, and individual contributors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.feedhenry.sdk.sync;
+
+import com.feedhenry.sdk.utils.FHLog;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executor;
+
+/**
+ * The listeners added to a sync client with {@link FHSyncClient#addListener}, each with the events it
+ * wants, the dataset it watches and the executor it is called on.
+ *
+ * {@link #wants(String, int)} is checked before a notification is built, so events no listener wants cost
+ * nothing.
+ */
+class FHSyncListenerRegistry {
+
+    private static final String LOG_TAG = "com.feedhenry.sdk.sync.FHSyncListenerRegistry";
+
+    private final List<Registration> mRegistrations = new CopyOnWriteArrayList<>();
+    // the events at least one listener wants, for any dataset
+    private volatile int mMask;
+
+    void add(FHSyncListener pListener, int pEventMask, String pDataId, Executor pExecutor) {
+        mRegistrations.add(new Registration(pListener, pEventMask, pDataId, pExecutor));
+        updateMask();
+    }
+
+    void remove(FHSyncListener pListener) {
+        for (Registration registration : mRegistrations) {
+            if (registration.mListener == pListener) {
+                mRegistrations.remove(registration);
+            }
+        }
+        updateMask();
+    }
+
+    void clear() {
+        mRegistrations.clear();
+        updateMask();
+    }
+
+    /**
+     * @param pDataId the id of the dataset of the event
+     * @param pCode the code of the event
+     * @return whether a listener wants the event
+     */
+    boolean wants(String pDataId, int pCode) {
+        int bit = 1 << pCode;
+        if ((mMask & bit) == 0) {
+            return false;
+        }
+        for (Registration registration : mRegistrations) {
+            if (registration.wants(pDataId, bit)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Calls the listeners that want an event, each on its own executor.
+     *
+     * @param pDataId the id of the dataset of the event
+     * @param pCode the code of the event
+     * @param pNotification the event
+     */
+    void dispatch(String pDataId, final int pCode, final NotificationMessage pNotification) {
+        int bit = 1 << pCode;
+        for (final Registration registration : mRegistrations) {
+            if (!registration.wants(pDataId, bit)) {
+                continue;
+            }
+            if (registration.mExecutor == null) {
+                FHSyncNotificationHandler.deliver(registration.mListener, pCode, pNotification);
+                continue;
+            }
+            try {
+                registration.mExecutor.execute(new Runnable() {
+                    @Override
+                    public void run() {
+                        FHSyncNotificationHandler.deliver(registration.mListener, pCode, pNotification);
+                    }
+                });
+            } catch (Exception e) {
+                FHLog.e(LOG_TAG, "Failed to deliver " + pNotification, e);
+            }
+        }
+    }
+
+    private void updateMask() {
+        int mask = 0;
+        for (Registration registration : mRegistrations) {
+            mask |= registration.mEventMask;
+        }
+        mMask = mask;
+    }
+
+    private static final class Registration {
+
+        final FHSyncListener mListener;
+        final int mEventMask;
+        final String mDataId;
+        final Executor mExecutor;
+
+        Registration(FHSyncListener pListener, int pEventMask, String pDataId, Executor pExecutor) {
+            mListener = pListener;
+            mEventMask = pEventMask;
+            mDataId = pDataId;
+            mExecutor = pExecutor;
+        }
+
+        boolean wants(String pDataId, int pBit) {
+            return (mEventMask & pBit) != 0 && (mDataId == null || mDataId.equals(pDataId));
+        }
+    }
+}
@@ -0,0 +1,49 @@
+/**
+ * Copyright Red Hat, Inc, and individual contributors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.feedhenry.sdk.sync;
+
+import java.util.concurrent.CopyOnWriteArrayList;
+
+/**
+ * Delivers dataset changes pushed from within the app, for tests or for apps receiving the change
+ * notifications through a channel of their own.
+ */
+public class FHSyncLocalPushDispatcher implements FHSyncPushDispatcher {
+
+    private final CopyOnWriteArrayList<Receiver> mReceivers = new CopyOnWriteArrayList<>();
+
+    @Override
+    public void register(Receiver pReceiver) {
+        mReceivers.addIfAbsent(pReceiver);
+    }
+
+    @Override
+    public void unregister(Receiver pReceiver) {
+        mReceivers.remove(pReceiver);
+    }
+
+    /**
+     * Announces a change of a dataset to the registered receivers, on the calling thread.
+     *
+     * @param pDataId the id of the dataset
+     * @param pHash the new hash of the dataset, or null if it is not known
+     */
+    public void push(String pDataId, String pHash) {
+        for (Receiver receiver : mReceivers) {
+            receiver.onDatasetChanged(pDataId, pHash);
+        }
+    }
+}
@@ -0,0 +1,213 @@
+/**
+ * Copyright Red Hat, Inc, and individual contributors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.feedhenry.sdk.sync;
+
+import com.feedhenry.sdk.FHActCallback;
+import com.feedhenry.sdk.FHResponse;
+import com.feedhenry.sdk.utils.FHLog;
+import cz.msebera.android.httpclient.client.HttpResponseException;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.json.fh.JSONObject;
+
+/**
+ * Syncs several datasets with a single request to the cloud.
+ *
+ * Each dataset prepares its sync loop on its own lane, exactly as for a request of its own. The prepared
+ * params are sent together to the combined sync endpoint as <code>{"datasets": {"&lt;id&gt;": params}}</code>,
+ * and the <code>{"datasets": {"&lt;id&gt;": response}}</code> answer is handed back to each dataset. A
+ * dataset missing from the answer sends its sync loop on its own. Clouds without the combined endpoint are
+ * remembered, and every dataset falls back to its own request from then on.
+ *
+ * The combined request takes a single sync slot of the executor, as it is a single request to the cloud.
+ * Once it is answered, that slot is freed and each dataset waits for a slot of its own to apply its
+ * response, fall back to a request of its own or sync its records, so the requests that follow keep to the
+ * cap on concurrent syncs.
+ */
+class FHSyncMultiplexer {
+
+    private static final String LANE_ID = "com.feedhenry.sdk.sync.multiplexed";
+    private static final String LOG_TAG = "com.feedhenry.sdk.sync.FHSyncMultiplexer";
+
+    private final FHSyncExecutor mExecutor;
+    private final FHSyncTransport mTransport;
+    private final String mRequestContentEncoding;
+    private volatile boolean mSupported = true;
+
+    FHSyncMultiplexer(FHSyncExecutor pExecutor, String pRequestContentEncoding) {
+        this(pExecutor, FHSyncCloud.INSTANCE, pRequestContentEncoding);
+    }
+
+    FHSyncMultiplexer(FHSyncExecutor pExecutor, FHSyncTransport pTransport, String pRequestContentEncoding) {
+        mExecutor = pExecutor;
+        mTransport = pTransport;
+        mRequestContentEncoding = pRequestContentEncoding;
+    }
+
+    /**
+     * @return false once the cloud has answered that it does not have the combined sync endpoint
+     */
+    boolean isSupported() {
+        return mSupported;
+    }
+
+    /**
+     * Syncs the datasets with one request as soon as a sync slot is free.
+     *
+     * @param pDatasets the datasets to sync
+     */
+    void sync(final List<FHSyncDataset> pDatasets) {
+        mExecutor.submitSync(LANE_ID, new Runnable() {
+            @Override
+            public void run() {
+                prepare(pDatasets);
+            }
+        });
+    }
+
+    /**
+     * Prepares the sync loop of each dataset on its lane. The last dataset to be ready sends the request.
+     */
+    private void prepare(final List<FHSyncDataset> pDatasets) {
+        final Map<FHSyncDataset, JSONObject> prepared = new ConcurrentHashMap<>();
+        final AtomicInteger remaining = new AtomicInteger(pDatasets.size());
+        for (final FHSyncDataset dataset : pDatasets) {
+            mExecutor.getLane(dataset.getDatasetId()).execute(new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        // only claims the dataset if it is not syncing already or stopped
+                        JSONObject params = dataset.prepareSyncLoop();
+                        if (params != null) {
+                            prepared.put(dataset, params);
+                        }
+                    } finally {
+                        if (remaining.decrementAndGet() == 0) {
+                            send(prepared);
+                        }
+                    }
+                }
+            });
+        }
+    }
+
+    private void send(final Map<FHSyncDataset, JSONObject> pPrepared) {
+        if (pPrepared.size() < 2) {
+            sendIndividually(pPrepared);
+            return;
+        }
+        JSONObject datasets = new JSONObject();
+        for (Map.Entry<FHSyncDataset, JSONObject> entry : pPrepared.entrySet()) {
+            datasets.put(entry.getKey().getDatasetId(), entry.getValue());
+        }
+        JSONObject body = new JSONObject();
+        body.put("fn", "sync");
+        body.put("datasets", datasets);
+        FHLog.d(LOG_TAG, "Starting multiplexed sync of " + pPrepared.size() + " datasets");
+        try {
+            mTransport.sendCombined(body, mRequestContentEncoding, new FHActCallback() {
+                @Override
+                public void success(FHResponse pResponse) {
+                    distribute(pPrepared, pResponse.getJson());
+                }
+
+                @Override
+                public void fail(final FHResponse pResponse) {
+                    if (isUnsupported(pResponse)) {
+                        FHLog.i(LOG_TAG, "Multiplexed sync is not supported by the cloud app, syncing datasets individually");
+                        mSupported = false;
+                        sendIndividually(pPrepared);
+                        return;
+                    }
+                    mExecutor.syncFinished(LANE_ID);
+                    for (final FHSyncDataset dataset : pPrepared.keySet()) {
+                        handOver(dataset, new Runnable() {
+                            @Override
+                            public void run() {
+                                dataset.handleSyncFailure(pResponse);
+                            }
+                        });
+                    }
+                }
+            });
+        } catch (Exception e) {
+            FHLog.e(LOG_TAG, "Error performing multiplexed sync", e);
+            sendIndividually(pPrepared);
+        }
+    }
+
+    /**
+     * Frees the slot of the combined request, then hands its response to each dataset once the dataset gets
+     * a sync slot, as applying it may send more requests. A dataset missing from the response sends its
+     * prepared sync loop on its own.
+     */
+    private void distribute(Map<FHSyncDataset, JSONObject> pPrepared, JSONObject pResponse) {
+        mExecutor.syncFinished(LANE_ID);
+        JSONObject responses = (pResponse != null) ? pResponse.optJSONObject("datasets") : null;
+        for (Map.Entry<FHSyncDataset, JSONObject> entry : pPrepared.entrySet()) {
+            final FHSyncDataset dataset = entry.getKey();
+            final JSONObject params = entry.getValue();
+            final JSONObject response = (responses != null) ? responses.optJSONObject(dataset.getDatasetId()) : null;
+            if (response == null) {
+                FHLog.w(LOG_TAG, "No multiplexed sync response for " + dataset.getDatasetId() + ", syncing it individually");
+            }
+            handOver(dataset, new Runnable() {
+                @Override
+                public void run() {
+                    if (response != null) {
+                        dataset.handleSyncResponse(response);
+                    } else {
+                        dataset.sendSyncLoop(params);
+                    }
+                }
+            });
+        }
+    }
+
+    /**
+     * Frees the slot of the combined request, then sends the prepared sync loop of each dataset on its own.
+     */
+    private void sendIndividually(Map<FHSyncDataset, JSONObject> pPrepared) {
+        mExecutor.syncFinished(LANE_ID);
+        for (final Map.Entry<FHSyncDataset, JSONObject> entry : pPrepared.entrySet()) {
+            handOver(entry.getKey(), new Runnable() {
+                @Override
+                public void run() {
+                    entry.getKey().sendSyncLoop(entry.getValue());
+                }
+            });
+        }
+    }
+
+    /**
+     * Runs the rest of the sync loop of a dataset once it gets a sync slot of its own, which it frees when
+     * its sync loop completes. The task is kept even if another sync of the dataset is submitted meanwhile,
+     * as the dataset is already claimed for this sync loop.
+     */
+    private void handOver(FHSyncDataset pDataset, Runnable pTask) {
+        mExecutor.submitSync(pDataset.getDatasetId(), pTask, true);
+    }
+
+    private static boolean isUnsupported(FHResponse pResponse) {
+        if (pResponse.getError() instanceof HttpResponseException) {
+            int status = ((HttpResponseException) pResponse.getError()).getStatusCode();
+            return status == 404 || status == 405 || status == 501;
+        }
+        return false;
+    }
+}
@@ -19,7 +19,7 @@ import android.os.Handler;
 import android.os.Looper;
 import android.os.Message;
 
-public class FHSyncNotificationHandler extends Handler {
+public class FHSyncNotificationHandler extends Handler implements FHSyncNotifier {
 
     private FHSyncListener mSyncListener;
 
@@ -37,39 +37,54 @@ public class FHSyncNotificationHandler extends Handler {
         mSyncListener = pListener;
     }
 
+    @Override
+    public void sendNotification(int pCode, NotificationMessage pNotification) {
+        sendMessage(obtainMessage(pCode, pNotification));
+    }
+
     public void handleMessage(Message pMsg) {
-        NotificationMessage notification = (NotificationMessage) pMsg.obj;
-        if (mSyncListener != null) {
-            switch (pMsg.what) {
+        deliver(mSyncListener, pMsg.what, (NotificationMessage) pMsg.obj);
+    }
+
+    /**
+     * Calls the method of a listener for an event.
+     *
+     * @param pListener the listener, or null
+     * @param pCode the code of the event
+     * @param pNotification the event
+     */
+    static void deliver(FHSyncListener pListener, int pCode, NotificationMessage pNotification) {
+        if (pListener != null) {
+            switch (pCode) {
                 case NotificationMessage.SYNC_STARTED_CODE:
-                    mSyncListener.onSyncStarted(notification);
+                    pListener.onSyncStarted(pNotification);
                     break;
                 case NotificationMessage.SYNC_COMPLETE_CODE:
-                    mSyncListener.onSyncCompleted(notification);
+                    pListener.onSyncCompleted(pNotification);
                     break;
                 case NotificationMessage.OFFLINE_UPDATE_CODE:
-                    mSyncListener.onUpdateOffline(notification);
+                    pListener.onUpdateOffline(pNotification);
                     break;
                 case NotificationMessage.COLLISION_DETECTED_CODE:
-                    mSyncListener.onCollisionDetected(notification);
+                    pListener.onCollisionDetected(pNotification);
                     break;
                 case NotificationMessage.REMOTE_UPDATE_FAILED_CODE:
-                    mSyncListener.onRemoteUpdateFailed(notification);
+                    pListener.onRemoteUpdateFailed(pNotification);
                     break;
                 case NotificationMessage.REMOTE_UPDATE_APPLIED_CODE:
-                    mSyncListener.onRemoteUpdateApplied(notification);
+                    pListener.onRemoteUpdateApplied(pNotification);
                     break;
                 case NotificationMessage.LOCAL_UPDATE_APPLIED_CODE:
-                    mSyncListener.onLocalUpdateApplied(notification);
+                    pListener.onLocalUpdateApplied(pNotification);
                     break;
                 case NotificationMessage.DELTA_RECEIVED_CODE:
-                    mSyncListener.onDeltaReceived(notification);
+                    pListener.onDeltaReceived(pNotification);
                     break;
                 case NotificationMessage.SYNC_FAILED_CODE:
-                    mSyncListener.onSyncFailed(notification);
+                    pListener.onSyncFailed(pNotification);
                     break;
                 case NotificationMessage.CLIENT_STORAGE_FAILED_CODE:
-                    mSyncListener.onClientStorageFailed(notification);
+                    pListener.onClientStorageFailed(pNotification);
                 default:
                     break;
             }
@@ -0,0 +1,133 @@
+/**
+ * Copyright Red Hat, Inc, and individual contributors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.feedhenry.sdk.sync;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Collapses the chains of pending records left by repeated edits of the same data record, so the server
+ * only gets the net change.
+ *
+ * Only consecutive pending records that are neither in flight nor crashed are merged, oldest first:
+ * <ul>
+ * <li>a create followed by updates becomes one create of the latest data</li>
+ * <li>consecutive updates become one update from the first pre data to the latest post data</li>
+ * <li>updates followed by a delete become one delete of the first pre data</li>
+ * <li>a create followed by a delete cancels out</li>
+ * </ul>
+ * The oldest pending record of a merged run is kept, so its hash stays valid for the records waiting for
+ * it.
+ */
+final class FHSyncPendingCompactor {
+
+    private static final String CREATE = "create";
+    private static final String UPDATE = "update";
+    private static final String DELETE = "delete";
+
+    private static final Comparator<FHSyncPendingRecord> OLDEST_FIRST = new Comparator<FHSyncPendingRecord>() {
+        @Override
+        public int compare(FHSyncPendingRecord pFirst, FHSyncPendingRecord pSecond) {
+            long first = pFirst.getTimestamp();
+            long second = pSecond.getTimestamp();
+            return (first < second) ? -1 : ((first == second) ? 0 : 1);
+        }
+    };
+
+    private FHSyncPendingCompactor() {
+    }
+
+    /**
+     * Compacts the pending records of the queue.
+     *
+     * @param pQueue the pending records of a dataset
+     * @return the hashes of the removed pending records, mapped to the hash of the pending record they were
+     * merged into, or to null if they cancelled out
+     */
+    static Map<String, String> compact(FHSyncPendingQueue pQueue) {
+        Map<String, String> removed = new HashMap<>();
+        for (String uid : pQueue.getChainedUids()) {
+            List<FHSyncPendingRecord> chain = new ArrayList<>();
+            Map<FHSyncPendingRecord, String> hashes = new HashMap<>();
+            for (String hash : pQueue.getHashesForUid(uid)) {
+                FHSyncPendingRecord record = pQueue.get(hash);
+                chain.add(record);
+                hashes.put(record, hash);
+            }
+            Collections.sort(chain, OLDEST_FIRST);
+            List<String> run = new ArrayList<>();
+            for (FHSyncPendingRecord record : chain) {
+                if (record.isInFlight() || record.isCrashed()) {
+                    compactRun(pQueue, run, removed);
+                    run.clear();
+                } else {
+                    run.add(hashes.get(record));
+                }
+            }
+            compactRun(pQueue, run, removed);
+        }
+        for (Map.Entry<String, String> entry : removed.entrySet()) {
+            String replacement = entry.getValue();
+            for (String dependent : pQueue.getDependentHashes(entry.getKey())) {
+                pQueue.setWaitingFor(dependent, dependent.equals(replacement) ? null : replacement);
+            }
+        }
+        return removed;
+    }
+
+    private static void compactRun(FHSyncPendingQueue pQueue, List<String> pRun, Map<String, String> pRemoved) {
+        int head = 0;
+        while (head < pRun.size()) {
+            String headHash = pRun.get(head);
+            FHSyncPendingRecord headRecord = pQueue.get(headHash);
+            int next = head + 1;
+            while (next < pRun.size()) {
+                String nextHash = pRun.get(next);
+                FHSyncPendingRecord nextRecord = pQueue.get(nextHash);
+                String headAction = headRecord.getAction();
+                String nextAction = nextRecord.getAction();
+                if ((CREATE.equals(headAction) || UPDATE.equals(headAction)) && UPDATE.equals(nextAction)) {
+                    headRecord.setPostData(nextRecord.getPostData());
+                } else if (UPDATE.equals(headAction) && DELETE.equals(nextAction)) {
+                    headRecord.setAction(DELETE);
+                    headRecord.setPostData(null);
+                } else if (CREATE.equals(headAction) && DELETE.equals(nextAction)) {
+                    pQueue.remove(nextHash);
+                    pQueue.remove(headHash);
+                    pRemoved.put(nextHash, null);
+                    pRemoved.put(headHash, null);
+                    for (Map.Entry<String, String> entry : pRemoved.entrySet()) {
+                        if (headHash.equals(entry.getValue())) {
+                            entry.setValue(null);
+                        }
+                    }
+                    next++;
+                    break;
+                } else {
+                    break;
+                }
+                pQueue.remove(nextHash);
+                pRemoved.put(nextHash, headHash);
+                next++;
+            }
+            head = next;
+        }
+    }
+}
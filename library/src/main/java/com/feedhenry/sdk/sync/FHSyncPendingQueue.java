@@ -0,0 +1,270 @@
+/**
+ * Copyright Red Hat, Inc, and individual contributors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.feedhenry.sdk.sync;
+
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * The pending records of a dataset, keyed by their hash and indexed by record uid, by the pending record
+ * they wait for, and by state.
+ *
+ * Every pending record gets a slot, and the in flight, crashed and delayed states are kept as bit sets
+ * over the slots, so the records in one state are found without looking at the others. The state of a
+ * queued record must be changed through the queue to keep the indexes up to date.
+ */
+class FHSyncPendingQueue {
+
+    private final Map<String, Integer> mSlotsByHash = new HashMap<>();
+    private final List<FHSyncPendingRecord> mSlots = new ArrayList<>();
+    private final List<String> mSlotHashes = new ArrayList<>();
+    private final BitSet mUsed = new BitSet();
+    private final BitSet mInFlight = new BitSet();
+    private final BitSet mCrashed = new BitSet();
+    private final BitSet mDelayed = new BitSet();
+    private final Map<String, Set<String>> mHashesByUid = new HashMap<>();
+    private final Map<String, Set<String>> mDependents = new HashMap<>();
+
+    /**
+     * Adds a pending record, replacing the one with the same hash.
+     *
+     * @param pHash the hash of the pending record
+     * @param pRecord the pending record
+     */
+    synchronized void put(String pHash, FHSyncPendingRecord pRecord) {
+        remove(pHash);
+        int slot = mUsed.nextClearBit(0);
+        mUsed.set(slot);
+        if (slot == mSlots.size()) {
+            mSlots.add(pRecord);
+            mSlotHashes.add(pHash);
+        } else {
+            mSlots.set(slot, pRecord);
+            mSlotHashes.set(slot, pHash);
+        }
+        mSlotsByHash.put(pHash, slot);
+        mInFlight.set(slot, pRecord.isInFlight());
+        mCrashed.set(slot, pRecord.isCrashed());
+        mDelayed.set(slot, pRecord.isDelayed());
+        index(mHashesByUid, pRecord.getUid(), pHash);
+        index(mDependents, pRecord.getWaitingFor(), pHash);
+    }
+
+    synchronized FHSyncPendingRecord get(String pHash) {
+        Integer slot = mSlotsByHash.get(pHash);
+        return (slot != null) ? mSlots.get(slot) : null;
+    }
+
+    synchronized boolean contains(String pHash) {
+        return mSlotsByHash.containsKey(pHash);
+    }
+
+    synchronized FHSyncPendingRecord remove(String pHash) {
+        Integer slot = mSlotsByHash.remove(pHash);
+        if (slot == null) {
+            return null;
+        }
+        FHSyncPendingRecord record = mSlots.get(slot);
+        mSlots.set(slot, null);
+        mSlotHashes.set(slot, null);
+        mUsed.clear(slot);
+        mInFlight.clear(slot);
+        mCrashed.clear(slot);
+        mDelayed.clear(slot);
+        unindex(mHashesByUid, record.getUid(), pHash);
+        unindex(mDependents, record.getWaitingFor(), pHash);
+        return record;
+    }
+
+    synchronized boolean isEmpty() {
+        return mSlotsByHash.isEmpty();
+    }
+
+    synchronized int size() {
+        return mSlotsByHash.size();
+    }
+
+    /**
+     * @return the pending records keyed by their hash, as a copy
+     */
+    synchronized Map<String, FHSyncPendingRecord> snapshot() {
+        Map<String, FHSyncPendingRecord> records = new HashMap<>();
+        for (int slot = mUsed.nextSetBit(0); slot >= 0; slot = mUsed.nextSetBit(slot + 1)) {
+            records.put(mSlotHashes.get(slot), mSlots.get(slot));
+        }
+        return records;
+    }
+
+    /**
+     * @return the hashes of the pending records that are neither in flight, crashed nor delayed
+     */
+    synchronized List<String> getReadyHashes() {
+        BitSet ready = (BitSet) mUsed.clone();
+        ready.andNot(mInFlight);
+        ready.andNot(mCrashed);
+        ready.andNot(mDelayed);
+        return hashesOf(ready);
+    }
+
+    synchronized List<String> getInFlightHashes() {
+        return hashesOf(mInFlight);
+    }
+
+    synchronized List<String> getCrashedHashes() {
+        return hashesOf(mCrashed);
+    }
+
+    synchronized List<String> getDelayedHashes() {
+        return hashesOf(mDelayed);
+    }
+
+    /**
+     * @param pUid the uid of a data record
+     * @return the hashes of the pending records of the data record
+     */
+    synchronized List<String> getHashesForUid(String pUid) {
+        Set<String> hashes = mHashesByUid.get(pUid);
+        return (hashes != null) ? new ArrayList<>(hashes) : Collections.<String>emptyList();
+    }
+
+    /**
+     * @param pHash the hash of a pending record
+     * @return the hashes of the pending records delayed until it is done
+     */
+    synchronized List<String> getDependentHashes(String pHash) {
+        Set<String> hashes = mDependents.get(pHash);
+        return (hashes != null) ? new ArrayList<>(hashes) : Collections.<String>emptyList();
+    }
+
+    /**
+     * @return the uids of the data records with more than one pending record
+     */
+    synchronized List<String> getChainedUids() {
+        List<String> uids = new ArrayList<>();
+        for (Map.Entry<String, Set<String>> entry : mHashesByUid.entrySet()) {
+            if (entry.getValue().size() > 1) {
+                uids.add(entry.getKey());
+            }
+        }
+        return uids;
+    }
+
+    /**
+     * @param pUid the uid of a data record
+     * @return whether the data record has pending records
+     */
+    synchronized boolean hasUid(String pUid) {
+        return mHashesByUid.containsKey(pUid);
+    }
+
+    /**
+     * @param pHashOrUid the hash of a pending record or the uid of a data record
+     * @return whether a pending record has that hash, or belongs to that data record
+     */
+    synchronized boolean isPending(String pHashOrUid) {
+        return mSlotsByHash.containsKey(pHashOrUid) || mHashesByUid.containsKey(pHashOrUid);
+    }
+
+    synchronized void setInFlight(String pHash, boolean pInFlight) {
+        Integer slot = mSlotsByHash.get(pHash);
+        if (slot != null) {
+            mSlots.get(slot).setInFlight(pInFlight);
+            mInFlight.set(slot, pInFlight);
+        }
+    }
+
+    synchronized void setCrashed(String pHash, boolean pCrashed) {
+        Integer slot = mSlotsByHash.get(pHash);
+        if (slot != null) {
+            mSlots.get(slot).setCrashed(pCrashed);
+            mCrashed.set(slot, pCrashed);
+        }
+    }
+
+    /**
+     * Delays a pending record until another one is done, or releases it when pWaitingFor is null.
+     *
+     * @param pHash the hash of the pending record
+     * @param pWaitingFor the hash of the pending record to wait for, or null
+     */
+    synchronized void setWaitingFor(String pHash, String pWaitingFor) {
+        Integer slot = mSlotsByHash.get(pHash);
+        if (slot != null) {
+            FHSyncPendingRecord record = mSlots.get(slot);
+            unindex(mDependents, record.getWaitingFor(), pHash);
+            record.setWaitingFor(pWaitingFor);
+            record.setDelayed(pWaitingFor != null);
+            mDelayed.set(slot, pWaitingFor != null);
+            index(mDependents, pWaitingFor, pHash);
+        }
+    }
+
+    /**
+     * Moves the pending records of a data record over to its new uid.
+     *
+     * @param pOldUid the uid the data record had
+     * @param pNewUid the uid the data record has now
+     */
+    synchronized void changeUid(String pOldUid, String pNewUid) {
+        Set<String> hashes = mHashesByUid.remove(pOldUid);
+        if (hashes == null) {
+            return;
+        }
+        for (String hash : hashes) {
+            mSlots.get(mSlotsByHash.get(hash)).setUid(pNewUid);
+            index(mHashesByUid, pNewUid, hash);
+        }
+    }
+
+    private List<String> hashesOf(BitSet pSlots) {
+        List<String> hashes = new ArrayList<>(pSlots.cardinality());
+        for (int slot = pSlots.nextSetBit(0); slot >= 0; slot = pSlots.nextSetBit(slot + 1)) {
+            hashes.add(mSlotHashes.get(slot));
+        }
+        return hashes;
+    }
+
+    private static void index(Map<String, Set<String>> pIndex, String pKey, String pHash) {
+        if (pKey == null) {
+            return;
+        }
+        Set<String> hashes = pIndex.get(pKey);
+        if (hashes == null) {
+            hashes = new LinkedHashSet<>();
+            pIndex.put(pKey, hashes);
+        }
+        hashes.add(pHash);
+    }
+
+    private static void unindex(Map<String, Set<String>> pIndex, String pKey, String pHash) {
+        if (pKey == null) {
+            return;
+        }
+        Set<String> hashes = pIndex.get(pKey);
+        if (hashes != null) {
+            hashes.remove(pHash);
+            if (hashes.isEmpty()) {
+                pIndex.remove(pKey);
+            }
+        }
+    }
+}
@@ -58,6 +58,10 @@ public class FHSyncPendingRecord {
 
     private static final String KEY_POST_HASH = "postHash";
 
+    private static final String KEY_POST_PATCH = "postPatch";
+
+    private static final String KEY_PATCH = "patch";
+
     private static final String KEY_INFLIGHT_DATE = "inFlightDate";
 
     private static final String KEY_CRASHED = "crashed";
@@ -103,6 +107,46 @@ public class FHSyncPendingRecord {
         return ret;
     }
 
+    /**
+     * Gets the JSON representation written to disk. The post data of an update is stored as a merge patch
+     * of its pre data.
+     *
+     * @return the JSON representation for storage
+     */
+    public JSONObject getStorageJSON() {
+        JSONObject ret = getJSON();
+        JSONObject patch = getMergePatch();
+        if (patch != null) {
+            ret.remove(KEY_POST);
+            ret.put(KEY_POST_PATCH, patch);
+        }
+        return ret;
+    }
+
+    /**
+     * Gets the JSON representation sent to a server that accepts patches. An update carries the merge patch
+     * of its pre data, along with the pre data hash, instead of the full post data.
+     *
+     * @return the JSON representation for a server accepting patches
+     */
+    public JSONObject getPatchJSON() {
+        JSONObject ret = getJSON();
+        JSONObject patch = getMergePatch();
+        if (patch != null) {
+            ret.remove(KEY_POST);
+            ret.put(KEY_PATCH, patch);
+        }
+        return ret;
+    }
+
+    private JSONObject getMergePatch() {
+        if (!"update".equals(this.action) || this.preData == null || this.postData == null
+            || this.preData.getData() == null || this.postData.getData() == null) {
+            return null;
+        }
+        return FHSyncUtils.createMergePatch(this.preData.getData(), this.postData.getData());
+    }
+
     public static FHSyncPendingRecord fromJSON(JSONObject pObj) {
         FHSyncPendingRecord record = new FHSyncPendingRecord();
         if (pObj.has(KEY_INFLIGHT)) {
@@ -134,6 +178,12 @@ public class FHSyncPendingRecord {
             postData.setData(pObj.getJSONObject(KEY_POST));
             postData.setHashValue(pObj.getString(KEY_POST_HASH));
             record.setPostData(postData);
+        } else if (pObj.has(KEY_POST_PATCH) && record.getPreData() != null) {
+            FHSyncDataRecord postData = new FHSyncDataRecord();
+            postData.setData(
+                FHSyncUtils.applyMergePatch(record.getPreData().getData(), pObj.getJSONObject(KEY_POST_PATCH)));
+            postData.setHashValue(pObj.getString(KEY_POST_HASH));
+            record.setPostData(postData);
         }
         
         if (pObj.has(KEY_DELAYED)) {
@@ -0,0 +1,51 @@
+/**
+ * Copyright Red Hat, Inc, and individual contributors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.feedhenry.sdk.sync;
+
+/**
+ * Delivers push messages telling that a dataset changed on the server. The sync client registers a
+ * {@link Receiver} with the dispatcher set through {@link FHSyncClient#setPushDispatcher}.
+ */
+public interface FHSyncPushDispatcher {
+
+    /**
+     * Receives the dataset changes announced by push messages.
+     */
+    interface Receiver {
+
+        /**
+         * Called when a push message announces a change of a dataset.
+         *
+         * @param pDataId the id of the dataset
+         * @param pHash the new hash of the dataset, or null if the message does not carry it
+         */
+        void onDatasetChanged(String pDataId, String pHash);
+    }
+
+    /**
+     * Starts delivering push messages to a receiver.
+     *
+     * @param pReceiver the receiver
+     */
+    void register(Receiver pReceiver);
+
+    /**
+     * Stops delivering push messages to a receiver.
+     *
+     * @param pReceiver the receiver
+     */
+    void unregister(Receiver pReceiver);
+}
@@ -0,0 +1,171 @@
+/**
+ * Copyright Red Hat, Inc, and individual contributors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.feedhenry.sdk.sync;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import org.json.fh.JSONObject;
+
+/**
+ * A query over the local records of a dataset, run by {@link FHSyncClient#query(String, FHSyncQuery)}.
+ *
+ * Conditions are given on JSON paths, the names of the nested fields separated by dots. Conditions on fields
+ * indexed with {@link FHSyncConfig#setIndexedFields(List)} are answered from the indexes, the others by
+ * looking at the records the indexed conditions left. Results are ordered by the indexed order of the
+ * orderBy field when it is indexed, and sorted otherwise.
+ *
+ * <pre>
+ * List&lt;JSONObject&gt; orders = syncClient.query("orders", new FHSyncQuery()
+ *     .whereEquals("status", "open")
+ *     .whereBetween("total", 10, null)
+ *     .orderBy("created", false)
+ *     .limit(20));
+ * </pre>
+ */
+public class FHSyncQuery {
+
+    /**
+     * A condition on the records that can not be given as equality or range conditions.
+     */
+    public interface Predicate {
+
+        /**
+         * @param pUid the uid of the record
+         * @param pData the data of the record, which must not be modified
+         * @return whether the record is in the results
+         */
+        boolean matches(String pUid, JSONObject pData);
+    }
+
+    private final List<Condition> mConditions = new ArrayList<>();
+    private Predicate mPredicate;
+    private String mOrderBy;
+    private boolean mAscending = true;
+    private int mLimit = 0;
+
+    /**
+     * Keeps the records whose field equals a value.
+     *
+     * @param pPath the JSON path of the field
+     * @param pValue the value, null for the records without the field
+     * @return this query
+     */
+    public FHSyncQuery whereEquals(String pPath, Object pValue) {
+        mConditions.add(new Condition(pPath, pValue, pValue, true));
+        return this;
+    }
+
+    /**
+     * Keeps the records whose field is within a range.
+     *
+     * @param pPath the JSON path of the field
+     * @param pFrom the lowest value, inclusive, or null for no lower bound
+     * @param pTo the highest value, inclusive, or null for no upper bound
+     * @return this query
+     */
+    public FHSyncQuery whereBetween(String pPath, Object pFrom, Object pTo) {
+        mConditions.add(new Condition(pPath, pFrom, pTo, false));
+        return this;
+    }
+
+    /**
+     * Keeps the records matched by a predicate, checked after the other conditions.
+     *
+     * @param pPredicate the predicate
+     * @return this query
+     */
+    public FHSyncQuery filter(Predicate pPredicate) {
+        mPredicate = pPredicate;
+        return this;
+    }
+
+    /**
+     * Orders the results by a field.
+     *
+     * @param pPath the JSON path of the field
+     * @param pAscending whether the results are in ascending order
+     * @return this query
+     */
+    public FHSyncQuery orderBy(String pPath, boolean pAscending) {
+        mOrderBy = pPath;
+        mAscending = pAscending;
+        return this;
+    }
+
+    /**
+     * @param pLimit the maximum number of results, 0 for no limit
+     * @return this query
+     */
+    public FHSyncQuery limit(int pLimit) {
+        mLimit = pLimit;
+        return this;
+    }
+
+    List<Condition> getConditions() {
+        return Collections.unmodifiableList(mConditions);
+    }
+
+    Predicate getPredicate() {
+        return mPredicate;
+    }
+
+    String getOrderBy() {
+        return mOrderBy;
+    }
+
+    boolean isAscending() {
+        return mAscending;
+    }
+
+    int getLimit() {
+        return mLimit;
+    }
+
+    /**
+     * An equality or range condition on a field.
+     */
+    static final class Condition {
+
+        final String mPath;
+        final Object mFrom;
+        final Object mTo;
+        final boolean mEquality;
+
+        Condition(String pPath, Object pFrom, Object pTo, boolean pEquality) {
+            mPath = pPath;
+            mFrom = pFrom;
+            mTo = pTo;
+            mEquality = pEquality;
+        }
+
+        /**
+         * @param pData the data of a record
+         * @return whether the record meets the condition
+         */
+        boolean matches(JSONObject pData) {
+            Object value = FHSyncIndex.valueAt(pData, mPath);
+            if (mEquality) {
+                return FHSyncIndex.VALUE_ORDER.compare(value, mFrom) == 0;
+            }
+            if (value == null || JSONObject.NULL.equals(value)) {
+                return false;
+            }
+            return (mFrom == null || FHSyncIndex.VALUE_ORDER.compare(value, mFrom) >= 0)
+                && (mTo == null || FHSyncIndex.VALUE_ORDER.compare(value, mTo) <= 0);
+        }
+    }
+}
@@ -0,0 +1,161 @@
+/**
+ * Copyright Red Hat, Inc, and individual contributors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.feedhenry.sdk.sync;
+
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.LinkedHashSet;
+import java.util.Set;
+import org.json.fh.JSONArray;
+import org.json.fh.JSONObject;
+
+/**
+ * A read only view of a data record, handed out by {@link FHSyncCursor} in place of a copy of the record.
+ *
+ * The view shares the data held by the dataset, which the dataset replaces rather than changes when the
+ * record is updated, so a view keeps showing the record as it was when the view was made. Fields are read by
+ * JSON path, the names of the nested fields separated by dots. Only objects and arrays, read with
+ * {@link #opt(String)}, {@link #getData()} or {@link #toJSON()}, are copied.
+ */
+public final class FHSyncRecordView {
+
+    private final String mUid;
+    private final String mHashValue;
+    private final JSONObject mData;
+
+    FHSyncRecordView(String pUid, FHSyncDataRecord pRecord) {
+        mUid = pUid;
+        mHashValue = pRecord.getHashValue();
+        mData = pRecord.getData();
+    }
+
+    public String getUid() {
+        return mUid;
+    }
+
+    public String getHashValue() {
+        return mHashValue;
+    }
+
+    /**
+     * @return the names of the top level fields of the record
+     */
+    public Set<String> keys() {
+        Set<String> keys = new LinkedHashSet<>();
+        for (Iterator<String> it = mData.keys(); it.hasNext(); ) {
+            keys.add(it.next());
+        }
+        return Collections.unmodifiableSet(keys);
+    }
+
+    public boolean has(String pPath) {
+        return FHSyncIndex.valueAt(mData, pPath) != null;
+    }
+
+    /**
+     * @param pPath the JSON path of a field
+     * @return the value of the field, a copy of it if it is an object or an array, or null if the record does
+     * not have the field
+     */
+    public Object opt(String pPath) {
+        Object value = FHSyncIndex.valueAt(mData, pPath);
+        if (value instanceof JSONObject) {
+            return new JSONObject(value.toString());
+        }
+        if (value instanceof JSONArray) {
+            return new JSONArray(value.toString());
+        }
+        return value;
+    }
+
+    public String optString(String pPath, String pDefault) {
+        JSONObject parent = parentOf(pPath);
+        return parent == null ? pDefault : parent.optString(lastField(pPath), pDefault);
+    }
+
+    public int optInt(String pPath, int pDefault) {
+        JSONObject parent = parentOf(pPath);
+        return parent == null ? pDefault : parent.optInt(lastField(pPath), pDefault);
+    }
+
+    public long optLong(String pPath, long pDefault) {
+        JSONObject parent = parentOf(pPath);
+        return parent == null ? pDefault : parent.optLong(lastField(pPath), pDefault);
+    }
+
+    public double optDouble(String pPath, double pDefault) {
+        JSONObject parent = parentOf(pPath);
+        return parent == null ? pDefault : parent.optDouble(lastField(pPath), pDefault);
+    }
+
+    public boolean optBoolean(String pPath, boolean pDefault) {
+        JSONObject parent = parentOf(pPath);
+        return parent == null ? pDefault : parent.optBoolean(lastField(pPath), pDefault);
+    }
+
+    /**
+     * @param pFields the JSON paths of the fields to copy
+     * @return a copy of only the given fields of the record, see
+     * {@link FHSyncUtils#projectFields(JSONObject, Collection)}
+     */
+    public JSONObject project(Collection<String> pFields) {
+        return FHSyncUtils.projectFields(mData, pFields);
+    }
+
+    /**
+     * @return a copy of the data of the record
+     */
+    public JSONObject getData() {
+        return new JSONObject(mData.toString());
+    }
+
+    /**
+     * @return a copy of the record like the one returned by {@link FHSyncClient#read(String, String)}, with
+     * a key "uid" with the id value and a key "data" with the JSON data
+     */
+    public JSONObject toJSON() {
+        JSONObject ret = new JSONObject();
+        ret.put("data", getData());
+        ret.put("uid", mUid);
+        return ret;
+    }
+
+    @Override
+    public String toString() {
+        return toJSON().toString();
+    }
+
+    /**
+     * @return the data shared with the dataset, which must not be modified
+     */
+    JSONObject data() {
+        return mData;
+    }
+
+    private JSONObject parentOf(String pPath) {
+        int dot = pPath.lastIndexOf('.');
+        if (dot < 0) {
+            return mData;
+        }
+        Object parent = FHSyncIndex.valueAt(mData, pPath.substring(0, dot));
+        return parent instanceof JSONObject ? (JSONObject) parent : null;
+    }
+
+    private static String lastField(String pPath) {
+        return pPath.substring(pPath.lastIndexOf('.') + 1);
+    }
+}
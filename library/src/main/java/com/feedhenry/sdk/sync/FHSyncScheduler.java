@@ -0,0 +1,196 @@
+/**
+ * Copyright Red Hat, Inc, and individual contributors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.feedhenry.sdk.sync;
+
+import com.feedhenry.sdk.utils.FHLog;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+
+/**
+ * Wakes up when the next dataset is due to sync, and only then.
+ *
+ * Each dataset has at most one due time. The scheduler thread waits on the earliest one and hands the
+ * dataset id to the {@link Dispatcher} once it is reached. Scheduling a dataset replaces its previous due
+ * time, and wakes the thread if the new time is earlier than the one it waits for. When nothing is
+ * scheduled the thread waits without a timeout.
+ */
+class FHSyncScheduler {
+
+    private static final String LOG_TAG = "com.feedhenry.sdk.sync.FHSyncScheduler";
+
+    /**
+     * Receives the ids of the datasets that are due. Invoked on the scheduler thread, so implementations
+     * should hand the actual work over to another thread.
+     */
+    interface Dispatcher {
+        void dispatch(String pDataId);
+    }
+
+    private final PriorityQueue<ScheduledSync> mQueue = new PriorityQueue<>();
+    private final Map<String, ScheduledSync> mScheduled = new HashMap<>();
+    private final Dispatcher mDispatcher;
+    private final Thread mThread;
+    private boolean mRunning = true;
+
+    FHSyncScheduler(Dispatcher pDispatcher) {
+        mDispatcher = pDispatcher;
+        mThread = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                runLoop();
+            }
+        }, "FHSyncScheduler");
+        mThread.setDaemon(true);
+        mThread.start();
+    }
+
+    /**
+     * Sets when a dataset is next due, replacing any earlier schedule for it.
+     *
+     * @param pDataId the id of the dataset
+     * @param pDelayMillis how long from now the dataset is due, negative values mean now
+     */
+    synchronized void schedule(String pDataId, long pDelayMillis) {
+        if (!mRunning) {
+            return;
+        }
+        ScheduledSync previous = mScheduled.remove(pDataId);
+        if (previous != null) {
+            mQueue.remove(previous);
+        }
+        ScheduledSync scheduled = new ScheduledSync(pDataId, now() + Math.max(0, pDelayMillis));
+        mScheduled.put(pDataId, scheduled);
+        mQueue.add(scheduled);
+        if (mQueue.peek() == scheduled) {
+            notifyAll();
+        }
+    }
+
+    /**
+     * Makes a dataset due straight away.
+     *
+     * @param pDataId the id of the dataset
+     */
+    void scheduleNow(String pDataId) {
+        schedule(pDataId, 0);
+    }
+
+    /**
+     * Removes a dataset from the schedule.
+     *
+     * @param pDataId the id of the dataset
+     */
+    synchronized void cancel(String pDataId) {
+        ScheduledSync previous = mScheduled.remove(pDataId);
+        if (previous != null) {
+            mQueue.remove(previous);
+        }
+    }
+
+    /**
+     * @param pDataId the id of the dataset
+     * @return whether the dataset has a due time
+     */
+    synchronized boolean isScheduled(String pDataId) {
+        return mScheduled.containsKey(pDataId);
+    }
+
+    /**
+     * Takes the datasets that are due within the given time off the schedule, so they can sync along with
+     * one that is being dispatched.
+     *
+     * @param pWithinMillis how far ahead to look
+     * @return the ids of the datasets taken off the schedule, soonest first
+     */
+    synchronized List<String> takeDue(long pWithinMillis) {
+        List<String> due = new ArrayList<>();
+        long limit = now() + pWithinMillis;
+        while (!mQueue.isEmpty() && mQueue.peek().mDueTime <= limit) {
+            ScheduledSync next = mQueue.poll();
+            mScheduled.remove(next.mDataId);
+            due.add(next.mDataId);
+        }
+        return due;
+    }
+
+    /**
+     * Stops the scheduler thread. Nothing is dispatched afterwards.
+     */
+    synchronized void shutdown() {
+        mRunning = false;
+        mQueue.clear();
+        mScheduled.clear();
+        notifyAll();
+    }
+
+    private void runLoop() {
+        while (true) {
+            String dataId;
+            synchronized (this) {
+                try {
+                    while (mRunning) {
+                        ScheduledSync next = mQueue.peek();
+                        if (next == null) {
+                            wait();
+                        } else {
+                            long delay = next.mDueTime - now();
+                            if (delay <= 0) {
+                                break;
+                            }
+                            wait(delay);
+                        }
+                    }
+                } catch (InterruptedException e) {
+                    FHLog.w(LOG_TAG, "Sync scheduler interrupted");
+                    return;
+                }
+                if (!mRunning) {
+                    return;
+                }
+                ScheduledSync due = mQueue.poll();
+                mScheduled.remove(due.mDataId);
+                dataId = due.mDataId;
+            }
+            try {
+                mDispatcher.dispatch(dataId);
+            } catch (RuntimeException e) {
+                FHLog.e(LOG_TAG, "Failed to dispatch sync for dataset " + dataId, e);
+            }
+        }
+    }
+
+    private static long now() {
+        return System.nanoTime() / 1000000L;
+    }
+
+    private static class ScheduledSync implements Comparable<ScheduledSync> {
+        private final String mDataId;
+        private final long mDueTime;
+
+        ScheduledSync(String pDataId, long pDueTime) {
+            mDataId = pDataId;
+            mDueTime = pDueTime;
+        }
+
+        @Override
+        public int compareTo(ScheduledSync pOther) {
+            return (mDueTime < pOther.mDueTime) ? -1 : ((mDueTime == pOther.mDueTime) ? 0 : 1);
+        }
+    }
+}
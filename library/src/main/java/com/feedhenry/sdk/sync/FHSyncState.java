@@ -0,0 +1,165 @@
+/**
+ * Copyright Red Hat, Inc, and individual contributors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.feedhenry.sdk.sync;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * The sync lifecycle of a dataset, changed by compare and set so the scheduler, the sync lanes and the
+ * callers of the sync client agree on it without locks.
+ *
+ * A sync loop goes IDLE, PENDING once a sync is asked for, RUNNING once it is claimed, APPLYING while the
+ * response is applied, and back to IDLE, or to PENDING if a sync was asked for meanwhile. A stopped dataset
+ * is STOPPED once its running sync loop, if any, completes, and can not be claimed until it is resumed.
+ *
+ * The state is kept in one int: the phase of the sync loop in the low bits, and whether a sync is pending
+ * and whether the dataset is stopped as flags.
+ */
+class FHSyncState {
+
+    enum State {
+        IDLE, PENDING, RUNNING, APPLYING, STOPPED
+    }
+
+    private static final int PHASE_MASK = 0x3;
+    private static final int PHASE_IDLE = 0;
+    private static final int PHASE_RUNNING = 1;
+    private static final int PHASE_APPLYING = 2;
+    private static final int PENDING = 1 << 2;
+    private static final int STOPPED = 1 << 3;
+
+    private final AtomicInteger mBits = new AtomicInteger(PHASE_IDLE);
+
+    State get() {
+        int bits = mBits.get();
+        switch (bits & PHASE_MASK) {
+            case PHASE_RUNNING:
+                return State.RUNNING;
+            case PHASE_APPLYING:
+                return State.APPLYING;
+            default:
+                if ((bits & STOPPED) != 0) {
+                    return State.STOPPED;
+                }
+                return (bits & PENDING) != 0 ? State.PENDING : State.IDLE;
+        }
+    }
+
+    /**
+     * Claims the dataset for a sync loop: IDLE or PENDING to RUNNING. The pending flag is cleared, as the
+     * sync loop covers it.
+     *
+     * @return whether the sync loop was claimed, false if one is already running or the dataset is stopped
+     */
+    boolean tryClaim() {
+        while (true) {
+            int bits = mBits.get();
+            if ((bits & PHASE_MASK) != PHASE_IDLE || (bits & STOPPED) != 0) {
+                return false;
+            }
+            if (mBits.compareAndSet(bits, (bits & ~PENDING & ~PHASE_MASK) | PHASE_RUNNING)) {
+                return true;
+            }
+        }
+    }
+
+    /**
+     * RUNNING to APPLYING, once the response of the sync loop arrived.
+     *
+     * @return whether the sync loop was running
+     */
+    boolean beginApplying() {
+        return setPhase(PHASE_RUNNING, PHASE_APPLYING);
+    }
+
+    /**
+     * Completes the sync loop: RUNNING or APPLYING to IDLE, PENDING or STOPPED depending on the flags.
+     *
+     * @return whether a sync loop was running
+     */
+    boolean complete() {
+        while (true) {
+            int bits = mBits.get();
+            int phase = bits & PHASE_MASK;
+            if (phase != PHASE_RUNNING && phase != PHASE_APPLYING) {
+                return false;
+            }
+            if (mBits.compareAndSet(bits, bits & ~PHASE_MASK)) {
+                return true;
+            }
+        }
+    }
+
+    /**
+     * Sets or clears the pending flag.
+     *
+     * @param pPending whether a sync is pending
+     */
+    void setPending(boolean pPending) {
+        setFlag(PENDING, pPending);
+    }
+
+    /**
+     * Sets or clears the stopped flag. A running sync loop is left to complete.
+     *
+     * @param pStopped whether the dataset is stopped
+     */
+    void setStopped(boolean pStopped) {
+        setFlag(STOPPED, pStopped);
+    }
+
+    /**
+     * @return whether a sync loop is running or applying its response
+     */
+    boolean isRunning() {
+        return (mBits.get() & PHASE_MASK) != PHASE_IDLE;
+    }
+
+    boolean isPending() {
+        return (mBits.get() & PENDING) != 0;
+    }
+
+    boolean isStopped() {
+        return (mBits.get() & STOPPED) != 0;
+    }
+
+    private boolean setPhase(int pFrom, int pTo) {
+        while (true) {
+            int bits = mBits.get();
+            if ((bits & PHASE_MASK) != pFrom) {
+                return false;
+            }
+            if (mBits.compareAndSet(bits, (bits & ~PHASE_MASK) | pTo)) {
+                return true;
+            }
+        }
+    }
+
+    private void setFlag(int pFlag, boolean pSet) {
+        while (true) {
+            int bits = mBits.get();
+            int updated = pSet ? bits | pFlag : bits & ~pFlag;
+            if (bits == updated || mBits.compareAndSet(bits, updated)) {
+                return;
+            }
+        }
+    }
+
+    @Override
+    public String toString() {
+        return get().name();
+    }
+}
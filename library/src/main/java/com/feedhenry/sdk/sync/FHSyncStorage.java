@@ -0,0 +1,46 @@
+/**
+ * Copyright Red Hat, Inc, and individual contributors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.feedhenry.sdk.sync;
+
+import java.io.IOException;
+import java.util.List;
+
+/**
+ * Where the datasets are saved, as named text files.
+ */
+interface FHSyncStorage {
+
+    /**
+     * @param pName the name of the file
+     * @return the content of the file, or null if there is no such file
+     * @throws IOException if the file could not be read
+     */
+    String read(String pName) throws IOException;
+
+    /**
+     * Replaces the content of a file, creating it if needed.
+     *
+     * @param pName the name of the file
+     * @param pContent the new content of the file
+     * @throws IOException if the file could not be written
+     */
+    void write(String pName, String pContent) throws IOException;
+
+    /**
+     * @return the names of the files
+     */
+    List<String> list();
+}
@@ -0,0 +1,92 @@
+/**
+ * Copyright Red Hat, Inc, and individual contributors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.feedhenry.sdk.sync;
+
+import java.util.concurrent.Executor;
+
+/**
+ * A subscription to the changes of a dataset, to a single record or to the records matching a query.
+ */
+public final class FHSyncSubscription {
+
+    private final FHSyncChangeFeed mFeed;
+    private final String mUid;
+    private final FHSyncQuery mQuery;
+    private final Executor mExecutor;
+    private final FHSyncChangeListener mListener;
+    private volatile boolean mCancelled;
+
+    FHSyncSubscription(
+        FHSyncChangeFeed pFeed, String pUid, FHSyncQuery pQuery, Executor pExecutor,
+        FHSyncChangeListener pListener) {
+        mFeed = pFeed;
+        mUid = pUid;
+        mQuery = pQuery;
+        mExecutor = pExecutor;
+        mListener = pListener;
+    }
+
+    /**
+     * Stops the delivery of changes. Changes already handed to the executor are still delivered.
+     */
+    public void cancel() {
+        mCancelled = true;
+        mFeed.unsubscribe(this);
+    }
+
+    public boolean isCancelled() {
+        return mCancelled;
+    }
+
+    Executor getExecutor() {
+        return mExecutor;
+    }
+
+    FHSyncChangeListener getListener() {
+        return mListener;
+    }
+
+    /**
+     * A change matches a query when the record matches it before or after the change, so a record moving
+     * out of a range is seen as well.
+     *
+     * @param pChange a change to the dataset
+     * @return whether the subscription is interested in the change
+     */
+    boolean matches(FHSyncChange pChange) {
+        if (mUid != null) {
+            return mUid.equals(pChange.getUid());
+        }
+        if (mQuery != null) {
+            return matchesQuery(pChange.getUid(), pChange.getBefore())
+                || matchesQuery(pChange.getUid(), pChange.getAfter());
+        }
+        return true;
+    }
+
+    private boolean matchesQuery(String pUid, FHSyncRecordView pRecord) {
+        if (pRecord == null) {
+            return false;
+        }
+        for (FHSyncQuery.Condition condition : mQuery.getConditions()) {
+            if (!condition.matches(pRecord.data())) {
+                return false;
+            }
+        }
+        FHSyncQuery.Predicate predicate = mQuery.getPredicate();
+        return predicate == null || predicate.matches(pUid, pRecord.data());
+    }
+}
@@ -0,0 +1,49 @@
+/**
+ * Copyright Red Hat, Inc, and individual contributors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.feedhenry.sdk.sync;
+
+import com.feedhenry.sdk.FHActCallback;
+import com.feedhenry.sdk.exceptions.FHNotReadyException;
+import org.json.fh.JSONObject;
+
+/**
+ * Sends the requests of a dataset to the sync endpoint.
+ */
+interface FHSyncTransport {
+
+    /**
+     * Sends a request asynchronously.
+     *
+     * @param pDatasetId the id of the dataset
+     * @param pConfig the sync config of the dataset
+     * @param pParams the body of the request
+     * @param pCallback the callback receiving the response
+     * @throws FHNotReadyException if the request cannot be sent yet
+     */
+    void send(String pDatasetId, FHSyncConfig pConfig, JSONObject pParams, FHActCallback pCallback)
+        throws FHNotReadyException;
+
+    /**
+     * Sends the sync loops of several datasets asynchronously in one request, see {@link FHSyncMultiplexer}.
+     *
+     * @param pParams the body of the request, holding the params of each dataset
+     * @param pRequestContentEncoding the encoding of the request body, or null
+     * @param pCallback the callback receiving the response
+     * @throws FHNotReadyException if the request cannot be sent yet
+     */
+    void sendCombined(JSONObject pParams, String pRequestContentEncoding, FHActCallback pCallback)
+        throws FHNotReadyException;
+}
@@ -15,11 +15,12 @@
  */
 package com.feedhenry.sdk.sync;
 
-import android.util.Log;
+import com.feedhenry.sdk.utils.FHLog;
 import java.io.UnsupportedEncodingException;
 import java.security.MessageDigest;
 import java.security.NoSuchAlgorithmException;
 import java.util.ArrayList;
+import java.util.Collection;
 import java.util.Collections;
 import java.util.List;
 import org.json.fh.JSONArray;
@@ -98,7 +99,7 @@ public class FHSyncUtils {
             hashValue = encodeHex(md.digest());
             return hashValue;
         } catch (NoSuchAlgorithmException | UnsupportedEncodingException ex) {
-            Log.e(TAG, ex.getMessage(), ex);
+            FHLog.e(TAG, ex.getMessage(), ex);
             throw new RuntimeException(ex);
         }
     }
@@ -141,5 +142,156 @@ public class FHSyncUtils {
         return names;
     }
 
-    
+    /**
+     * Builds a JSON merge patch (RFC 7386) that turns one object into another.
+     *
+     * @param pSource the object to patch
+     * @param pTarget the object the patch should produce
+     * @return the merge patch, or null if the target holds null values, which a merge patch cannot express
+     */
+    public static JSONObject createMergePatch(JSONObject pSource, JSONObject pTarget) {
+        JSONObject patch = new JSONObject();
+        JSONArray sourceKeys = pSource.names();
+        for (int i = 0; sourceKeys != null && i < sourceKeys.length(); i++) {
+            String key = sourceKeys.getString(i);
+            if (!pTarget.has(key)) {
+                patch.put(key, JSONObject.NULL);
+            }
+        }
+        JSONArray targetKeys = pTarget.names();
+        for (int i = 0; targetKeys != null && i < targetKeys.length(); i++) {
+            String key = targetKeys.getString(i);
+            Object target = pTarget.get(key);
+            Object source = pSource.opt(key);
+            if (JSONObject.NULL.equals(target)) {
+                return null;
+            }
+            if (source instanceof JSONObject && target instanceof JSONObject) {
+                JSONObject nested = createMergePatch((JSONObject) source, (JSONObject) target);
+                if (nested == null) {
+                    return null;
+                }
+                if (nested.length() > 0) {
+                    patch.put(key, nested);
+                }
+            } else if (source == null || !sameValue(source, target)) {
+                if (target instanceof JSONObject && containsNull((JSONObject) target)) {
+                    return null;
+                }
+                patch.put(key, target);
+            }
+        }
+        return patch;
+    }
+
+    /**
+     * Applies a JSON merge patch (RFC 7386) to a copy of an object.
+     *
+     * @param pSource the object to patch, left unchanged
+     * @param pPatch the merge patch
+     * @return the patched copy
+     */
+    public static JSONObject applyMergePatch(JSONObject pSource, JSONObject pPatch) {
+        JSONObject result = new JSONObject(pSource.toString());
+        JSONArray keys = pPatch.names();
+        for (int i = 0; keys != null && i < keys.length(); i++) {
+            String key = keys.getString(i);
+            Object value = pPatch.get(key);
+            if (JSONObject.NULL.equals(value)) {
+                result.remove(key);
+            } else if (value instanceof JSONObject) {
+                JSONObject existing = result.optJSONObject(key);
+                result.put(key, applyMergePatch((existing != null) ? existing : new JSONObject(), (JSONObject) value));
+            } else {
+                result.put(key, value);
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Copies only some fields of an object. Nested fields keep their nesting, so the path "customer.city"
+     * gives {"customer":{"city":...}}. Fields the object does not have are left out.
+     *
+     * @param pSource the object to copy from, left unchanged
+     * @param pPaths the JSON paths of the fields to copy, the names of the nested fields separated by dots
+     * @return a new object holding copies of the fields
+     */
+    public static JSONObject projectFields(JSONObject pSource, Collection<String> pPaths) {
+        JSONObject result = new JSONObject();
+        for (String path : pPaths) {
+            Object value = FHSyncIndex.valueAt(pSource, path);
+            if (value == null) {
+                continue;
+            }
+            if (value instanceof JSONObject) {
+                value = new JSONObject(value.toString());
+            } else if (value instanceof JSONArray) {
+                value = new JSONArray(value.toString());
+            }
+            String[] fields = path.split("\\.");
+            JSONObject parent = result;
+            for (int i = 0; i < fields.length - 1; i++) {
+                JSONObject nested = parent.optJSONObject(fields[i]);
+                if (nested == null) {
+                    nested = new JSONObject();
+                    parent.put(fields[i], nested);
+                }
+                parent = nested;
+            }
+            parent.put(fields[fields.length - 1], value);
+        }
+        return result;
+    }
+
+    /**
+     * Counts the bytes of a string encoded in UTF-8, without encoding it.
+     *
+     * @param pText the string
+     * @return its length in bytes once encoded
+     */
+    static int utf8Length(String pText) {
+        int length = 0;
+        for (int i = 0; i < pText.length(); i++) {
+            char c = pText.charAt(i);
+            if (c < 0x80) {
+                length++;
+            } else if (c < 0x800) {
+                length += 2;
+            } else if (Character.isHighSurrogate(c) && i + 1 < pText.length()
+                && Character.isLowSurrogate(pText.charAt(i + 1))) {
+                // a supplementary character, four bytes for the pair
+                length += 4;
+                i++;
+            } else if (Character.isSurrogate(c)) {
+                // an unpaired surrogate is encoded as '?'
+                length++;
+            } else {
+                length += 3;
+            }
+        }
+        return length;
+    }
+
+    private static boolean sameValue(Object pFirst, Object pSecond) {
+        if (pFirst instanceof JSONObject || pFirst instanceof JSONArray) {
+            return pFirst.getClass() == pSecond.getClass()
+                && sortObj(pFirst).toString().equals(sortObj(pSecond).toString());
+        }
+        if (pFirst instanceof Number && pSecond instanceof Number) {
+            return pFirst.toString().equals(pSecond.toString());
+        }
+        return pFirst.equals(pSecond);
+    }
+
+    private static boolean containsNull(JSONObject pObject) {
+        JSONArray keys = pObject.names();
+        for (int i = 0; keys != null && i < keys.length(); i++) {
+            Object value = pObject.get(keys.getString(i));
+            if (JSONObject.NULL.equals(value) || (value instanceof JSONObject && containsNull((JSONObject) value))) {
+                return true;
+            }
+        }
+        return false;
+    }
 }
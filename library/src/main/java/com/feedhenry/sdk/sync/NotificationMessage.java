@@ -34,6 +34,11 @@ public class NotificationMessage {
     public static final int SYNC_FAILED_CODE = 8;
     public static final int LOCAL_UPDATE_APPLIED_CODE = 9;
 
+    /**
+     * The event mask of every event, see {@link #maskOf(int...)}.
+     */
+    public static final int ALL_EVENTS_MASK = (1 << 10) - 1;
+
     public static final String SYNC_STARTED_MESSAGE = "SYNC_STARTED";
     public static final String SYNC_COMPLETE_MESSAGE = "SYNC_COMPLETE";
     public static final String OFFLINE_UPDATE_MESSAGE = "OFFLINE_UPDATE";
@@ -119,6 +124,20 @@ public class NotificationMessage {
             + mExtraMessage;
     }
 
+    /**
+     * Builds an event mask, as used by {@link FHSyncClient#addListener}.
+     *
+     * @param pCodes the codes of the events, like {@link #SYNC_COMPLETE_CODE}
+     * @return the mask holding the events
+     */
+    public static int maskOf(int... pCodes) {
+        int mask = 0;
+        for (int code : pCodes) {
+            mask |= 1 << code;
+        }
+        return mask;
+    }
+
     public static NotificationMessage getMessage(String pDatasetId, String pUid, int pCode, String pMessage) {
         return new NotificationMessage(pDatasetId, pUid, mMessageMap.get(pCode), pMessage);
     }
@@ -18,11 +18,19 @@ package com.feedhenry.sdk.utils;
 import android.util.Log;
 import com.feedhenry.sdk.FH;
 
+/**
+ * Logs the messages at or above the level set with {@link FH#setLogLevel}. On Android they go to logcat,
+ * elsewhere, such as in unit tests on the JVM, they go to the standard error stream.
+ */
 public class FHLog {
 
+    private static final boolean ON_ANDROID = "Dalvik".equals(System.getProperty("java.vm.name"));
+
     private static void log(int pLogLevel, String pTag, String pMessage, Throwable pThrowable) {
         if (pLogLevel >= FH.getLogLevel()) {
-            if (pLogLevel == FH.LOG_LEVEL_VERBOSE) {
+            if (!ON_ANDROID) {
+                logToStream(pLogLevel, pTag, pMessage, pThrowable);
+            } else if (pLogLevel == FH.LOG_LEVEL_VERBOSE) {
                 Log.v(pTag, pMessage);
             } else if (pLogLevel == FH.LOG_LEVEL_DEBUG) {
                 Log.d(pTag, pMessage);
@@ -40,6 +48,25 @@ public class FHLog {
         }
     }
 
+    private static void logToStream(int pLogLevel, String pTag, String pMessage, Throwable pThrowable) {
+        String level;
+        if (pLogLevel == FH.LOG_LEVEL_VERBOSE) {
+            level = "V";
+        } else if (pLogLevel == FH.LOG_LEVEL_DEBUG) {
+            level = "D";
+        } else if (pLogLevel == FH.LOG_LEVEL_INFO) {
+            level = "I";
+        } else if (pLogLevel == FH.LOG_LEVEL_WARNING) {
+            level = "W";
+        } else {
+            level = "E";
+        }
+        System.err.println(level + "/" + pTag + ": " + pMessage);
+        if (null != pThrowable) {
+            pThrowable.printStackTrace();
+        }
+    }
+
     public static void v(String pTag, String pMessage) {
         log(FH.LOG_LEVEL_VERBOSE, pTag, pMessage, null);
     }
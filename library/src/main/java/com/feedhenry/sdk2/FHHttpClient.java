@@ -18,15 +18,28 @@ package com.feedhenry.sdk2;
 import com.feedhenry.sdk.*;
 import com.feedhenry.sdk.utils.FHLog;
 import com.loopj.android.http.AsyncHttpClient;
+import com.loopj.android.http.AsyncHttpResponseHandler;
 import com.loopj.android.http.JsonHttpResponseHandler;
 import com.loopj.android.http.RequestParams;
 import com.loopj.android.http.SyncHttpClient;
 import cz.msebera.android.httpclient.Consts;
 import cz.msebera.android.httpclient.Header;
+import cz.msebera.android.httpclient.HttpEntity;
 import cz.msebera.android.httpclient.HttpHost;
+import cz.msebera.android.httpclient.HttpResponse;
+import cz.msebera.android.httpclient.StatusLine;
+import cz.msebera.android.httpclient.client.HttpResponseException;
 import cz.msebera.android.httpclient.conn.params.ConnRoutePNames;
+import cz.msebera.android.httpclient.entity.ByteArrayEntity;
 import cz.msebera.android.httpclient.entity.StringEntity;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UnsupportedEncodingException;
 import java.util.Iterator;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.GZIPOutputStream;
 import org.json.fh.JSONArray;
 import org.json.fh.JSONObject;
 
@@ -37,17 +50,55 @@ public class FHHttpClient {
 
     private static final String LOG_TAG = "com.feedhenry.sdk.FHHttpClient";
 
+    /**
+     * Content encoding for gzip compressed request bodies.
+     */
+    public static final String CONTENT_ENCODING_GZIP = "gzip";
+
+    /**
+     * Content encoding for deflate (zlib) compressed request bodies.
+     */
+    public static final String CONTENT_ENCODING_DEFLATE = "deflate";
+
+    /**
+     * Bodies smaller than this are sent as-is, compressing them costs more than it saves.
+     */
+    private static final int MIN_COMPRESSED_BODY_SIZE = 1024;
+
     public void put(
         String pUrl,
         Header[] pHeaders,
         JSONObject pParams,
         FHActCallback pCallback,
         boolean pUseSync) {
+        put(pUrl, pHeaders, pParams, pCallback, pUseSync, null);
+    }
+
+    /**
+     * Executes an HTTP PUT, optionally compressing the request body.
+     *
+     * Only use a content encoding if the server is known to accept compressed
+     * request bodies. Responses are always negotiated with
+     * "Accept-Encoding: gzip" and inflated while they are read.
+     *
+     * @param pUrl url to PUT to
+     * @param pHeaders HTTP headers for the request
+     * @param pParams The Body of the Request
+     * @param pCallback A callback to be handed the responses of the call
+     * @param pUseSync whether or not to make the call synchronously
+     * @param pContentEncoding {@link #CONTENT_ENCODING_GZIP}, {@link #CONTENT_ENCODING_DEFLATE} or null to
+     * send the body uncompressed
+     * @throws IllegalArgumentException if pContentEncoding is not supported
+     */
+    public void put(
+        String pUrl,
+        Header[] pHeaders,
+        JSONObject pParams,
+        FHActCallback pCallback,
+        boolean pUseSync,
+        String pContentEncoding) {
         if (FH.isOnline()) {
-            StringEntity entity = new StringEntity(new JSONObject().toString(), Consts.UTF_8);
-            if (pParams != null) {
-                entity = new StringEntity(pParams.toString(), Consts.UTF_8);
-            }
+            HttpEntity entity = buildEntity(pParams, pContentEncoding);
             if (pUseSync) {
                 mSyncClient.setUserAgent(FH.getUserAgent());
                 mSyncClient.put(
@@ -109,12 +160,34 @@ public class FHHttpClient {
         JSONObject pParams,
         FHActCallback pCallback,
         boolean pUseSync) {
-        if (FH.isOnline()) {
+        post(pUrl, pHeaders, pParams, pCallback, pUseSync, null);
+    }
 
-            StringEntity entity = new StringEntity(new JSONObject().toString(), Consts.UTF_8);
-            if (pParams != null) {
-                entity = new StringEntity(pParams.toString(), Consts.UTF_8);
-            }
+    /**
+     * Executes an HTTP POST, optionally compressing the request body.
+     *
+     * Only use a content encoding if the server is known to accept compressed
+     * request bodies. Responses are always negotiated with
+     * "Accept-Encoding: gzip" and inflated while they are read.
+     *
+     * @param pUrl url to POST to
+     * @param pHeaders HTTP headers for the request
+     * @param pParams The Body of the Request
+     * @param pCallback A callback to be handed the responses of the call
+     * @param pUseSync whether or not to make the call synchronously
+     * @param pContentEncoding {@link #CONTENT_ENCODING_GZIP}, {@link #CONTENT_ENCODING_DEFLATE} or null to
+     * send the body uncompressed
+     * @throws IllegalArgumentException if pContentEncoding is not supported
+     */
+    public void post(
+        String pUrl,
+        Header[] pHeaders,
+        JSONObject pParams,
+        FHActCallback pCallback,
+        boolean pUseSync,
+        String pContentEncoding) {
+        if (FH.isOnline()) {
+            HttpEntity entity = buildEntity(pParams, pContentEncoding);
             if (pUseSync) {
                 mSyncClient.setUserAgent(FH.getUserAgent());
                 mSyncClient.post(
@@ -170,6 +243,80 @@ public class FHHttpClient {
         }
     }
 
+    /**
+     * Executes an HTTP request and hands the response body to the callback as a stream, without buffering
+     * or parsing it.
+     *
+     * @param pMethod GET, POST, PUT or DELETE
+     * @param pUrl url of the request
+     * @param pHeaders HTTP headers for the request
+     * @param pParams the body of POST and PUT requests, the query string of GET and DELETE requests
+     * @param pCallback A callback to be handed the response stream
+     * @param pUseSync whether or not to make the call synchronously
+     * @throws IllegalArgumentException if pMethod is not supported
+     */
+    public void stream(
+        String pMethod,
+        String pUrl,
+        Header[] pHeaders,
+        JSONObject pParams,
+        FHStreamCallback pCallback,
+        boolean pUseSync) {
+        if (!FH.isOnline()) {
+            FHResponse res = new FHResponse(null, null, new Exception("offline"), "offline");
+            pCallback.fail(res);
+            return;
+        }
+        AsyncHttpClient client = pUseSync ? mSyncClient : mClient;
+        client.setUserAgent(FH.getUserAgent());
+        FHStreamHttpResponseHandler handler = new FHStreamHttpResponseHandler(pCallback);
+        String method = pMethod.toUpperCase();
+        if ("GET".equals(method)) {
+            client.get(null, pUrl, pHeaders, convertToRequestParams(pParams), handler);
+        } else if ("DELETE".equals(method)) {
+            client.delete(null, pUrl, pHeaders, convertToRequestParams(pParams), handler);
+        } else if ("POST".equals(method)) {
+            client.post(null, pUrl, pHeaders, buildEntity(pParams, null), "application/json", handler);
+        } else if ("PUT".equals(method)) {
+            client.put(null, pUrl, pHeaders, buildEntity(pParams, null), "application/json", handler);
+        } else {
+            throw new IllegalArgumentException("Unsupported HTTP method: " + pMethod);
+        }
+    }
+
+    private HttpEntity buildEntity(JSONObject pParams, String pContentEncoding) {
+        if (pContentEncoding != null
+            && !CONTENT_ENCODING_GZIP.equalsIgnoreCase(pContentEncoding)
+            && !CONTENT_ENCODING_DEFLATE.equalsIgnoreCase(pContentEncoding)) {
+            throw new IllegalArgumentException("Unsupported content encoding: " + pContentEncoding);
+        }
+        String body = (pParams != null) ? pParams.toString() : new JSONObject().toString();
+        if (pContentEncoding == null || body.length() < MIN_COMPRESSED_BODY_SIZE) {
+            return new StringEntity(body, Consts.UTF_8);
+        }
+        try {
+            ByteArrayEntity entity = new ByteArrayEntity(compress(body.getBytes(Consts.UTF_8), pContentEncoding));
+            entity.setContentEncoding(pContentEncoding);
+            return entity;
+        } catch (IOException e) {
+            FHLog.w(LOG_TAG, "Failed to compress request body, sending it uncompressed : " + e.getMessage());
+            return new StringEntity(body, Consts.UTF_8);
+        }
+    }
+
+    private static byte[] compress(byte[] pData, String pContentEncoding) throws IOException {
+        ByteArrayOutputStream bos = new ByteArrayOutputStream(pData.length / 4);
+        DeflaterOutputStream out;
+        if (CONTENT_ENCODING_GZIP.equalsIgnoreCase(pContentEncoding)) {
+            out = new GZIPOutputStream(bos);
+        } else {
+            out = new DeflaterOutputStream(bos);
+        }
+        out.write(pData);
+        out.close();
+        return bos.toByteArray();
+    }
+
     private RequestParams convertToRequestParams(JSONObject pIn) {
         RequestParams rp = null;
         if (pIn != null) {
@@ -250,6 +397,69 @@ public class FHHttpClient {
         }
     }
     
+    private static class FHStreamHttpResponseHandler extends AsyncHttpResponseHandler {
+
+        private FHStreamCallback callback = null;
+
+        public FHStreamHttpResponseHandler(FHStreamCallback pCallback) {
+            super();
+            callback = pCallback;
+        }
+
+        @Override
+        public void sendResponseMessage(HttpResponse pResponse) throws IOException {
+            if (Thread.currentThread().isInterrupted()) {
+                return;
+            }
+            StatusLine status = pResponse.getStatusLine();
+            Header[] headers = pResponse.getAllHeaders();
+            if (status.getStatusCode() >= 300) {
+                byte[] body = getResponseData(pResponse.getEntity());
+                sendFailureMessage(
+                    status.getStatusCode(),
+                    headers,
+                    body,
+                    new HttpResponseException(status.getStatusCode(), status.getReasonPhrase()));
+                return;
+            }
+            HttpEntity entity = pResponse.getEntity();
+            InputStream body = (entity != null) ? entity.getContent() : new ByteArrayInputStream(new byte[0]);
+            try {
+                callback.onResponse(status.getStatusCode(), headers, body);
+            } catch (IOException e) {
+                // reported rather than rethrown, a partly consumed response must not be retried
+                sendFailureMessage(status.getStatusCode(), headers, null, e);
+                return;
+            } finally {
+                try {
+                    body.close();
+                } catch (IOException e) {
+                    FHLog.w(LOG_TAG, "Failed to close response stream : " + e.getMessage());
+                }
+            }
+            sendSuccessMessage(status.getStatusCode(), headers, null);
+        }
+
+        @Override
+        public void onSuccess(int pStatusCode, Header[] pHeaders, byte[] pBody) {
+            FHLog.v(LOG_TAG, "Streamed response with status " + pStatusCode);
+        }
+
+        @Override
+        public void onFailure(int pStatusCode, Header[] pHeaders, byte[] pBody, Throwable pError) {
+            FHLog.e(LOG_TAG, pError.getMessage(), pError);
+            String content = null;
+            if (pBody != null) {
+                try {
+                    content = new String(pBody, "UTF-8");
+                } catch (UnsupportedEncodingException e) {
+                    content = new String(pBody);
+                }
+            }
+            callback.fail(new FHResponse(null, null, pError, content));
+        }
+    }
+
     /**
      * Set both the connection and socket timeouts. By default, both are set to
      * 10 seconds.
@@ -0,0 +1,116 @@
+/**
+ * Copyright Red Hat, Inc, and individual contributors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.feedhenry.sdk.sync;
+
+import com.feedhenry.sdk.FH;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import org.json.fh.JSONObject;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * Benchmarks the sync algorithm of a dataset on the JVM, against a fake environment: recording local
+ * changes, applying the records received by a sync loop and resolving crashed pending changes.
+ *
+ * Run it with the main method, from the unit test classpath.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Fork(1)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+public class FHSyncDatasetBenchmark {
+
+    @Param({"100", "1000"})
+    public int records;
+
+    private FHSyncFakeEnvironment env;
+    private FHSyncDataset dataset;
+    private List<JSONObject> data;
+    private JSONObject delta;
+
+    @Setup(Level.Trial)
+    public void setUpData() {
+        FH.setLogLevel(FH.LOG_LEVEL_NONE);
+        data = new ArrayList<>(records);
+        JSONObject created = new JSONObject();
+        for (int i = 0; i < records; i++) {
+            JSONObject record = new JSONObject().put("name", "record " + i).put("index", i);
+            data.add(record);
+            created.put("uid" + i, new JSONObject().put("data", record).put("hash", "hash" + i));
+        }
+        delta = new JSONObject().put("hash", "remoteHash").put("create", created);
+    }
+
+    @Setup(Level.Invocation)
+    public void setUpDataset() {
+        FHSyncConfig config = new FHSyncConfig();
+        // every pending change goes with the first sync loop
+        config.setMaxSyncBatchRecords(0);
+        env = new FHSyncFakeEnvironment();
+        dataset = env.newDataset("benchmarkDataSet", config);
+    }
+
+    @Benchmark
+    public List<JSONObject> bulkCreate() {
+        return dataset.bulkCreateData(data);
+    }
+
+    @Benchmark
+    public FHSyncDataset applyDelta() {
+        dataset.startSyncLoop();
+        env.respond(new JSONObject().put("hash", "remoteHash"));
+        env.respond(delta);
+        return dataset;
+    }
+
+    @Benchmark
+    public FHSyncDataset resolveCrashedChanges() {
+        List<JSONObject> created = dataset.bulkCreateData(data);
+        dataset.startSyncLoop();
+        env.fail("timeout");
+        JSONObject hashes = new JSONObject();
+        for (JSONObject record : created) {
+            String uid = record.getString("uid");
+            JSONObject applied = new JSONObject()
+                .put("uid", uid).put("hash", uid).put("action", "create").put("type", "applied");
+            hashes.put(uid, applied);
+        }
+        dataset.startSyncLoop();
+        env.respond(new JSONObject().put("updates", new JSONObject().put("hashes", hashes)));
+        return dataset;
+    }
+
+    public static void main(String[] pArgs) throws RunnerException {
+        new Runner(new OptionsBuilder().include(FHSyncDatasetBenchmark.class.getSimpleName()).build()).run();
+    }
+}
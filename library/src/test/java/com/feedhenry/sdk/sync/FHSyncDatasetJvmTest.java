@@ -0,0 +1,171 @@
+/**
+ * Copyright Red Hat, Inc, and individual contributors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.feedhenry.sdk.sync;
+
+import org.json.fh.JSONArray;
+import org.json.fh.JSONObject;
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/**
+ * Runs the sync algorithm of a dataset on the JVM, against a fake environment.
+ */
+public class FHSyncDatasetJvmTest {
+
+    private static final String DATASET_ID = "jvmDataSet";
+
+    private FHSyncFakeEnvironment env;
+    private FHSyncDataset dataset;
+
+    @Before
+    public void setUp() throws Exception {
+        env = new FHSyncFakeEnvironment();
+        dataset = env.newDataset(DATASET_ID, new FHSyncConfig());
+    }
+
+    @Test
+    public void testOfflineChangesStayPendingAndAreSaved() throws Exception {
+        env.online = false;
+        String uid = dataset.createData(new JSONObject().put("name", "offline")).getString("uid");
+
+        dataset.startSyncLoop();
+
+        assertTrue(env.requests.isEmpty());
+        assertEquals(FHSyncState.State.IDLE, dataset.getSyncState());
+        assertEquals(1, pendingCount());
+        assertEquals(env.now, dataset.getSyncEnd().getTime());
+
+        FHSyncDataset reloaded = env.newDataset(DATASET_ID, new FHSyncConfig());
+        assertEquals("offline", reloaded.readData(uid).getJSONObject("data").getString("name"));
+    }
+
+    @Test
+    public void testSyncLoopSendsPendingChangesAndAppliesTheDelta() throws Exception {
+        String uid = dataset.createData(new JSONObject().put("name", "local")).getString("uid");
+
+        dataset.startSyncLoop();
+        JSONObject request = env.lastRequest();
+        assertEquals("sync", request.getString("fn"));
+        JSONArray pending = request.getJSONArray("pending");
+        assertEquals(1, pending.length());
+        assertEquals(uid, pending.getJSONObject(0).getString("hash"));
+
+        JSONObject applied = new JSONObject()
+            .put("uid", "serverUid").put("hash", uid).put("action", "create").put("type", "applied");
+        env.respond(new JSONObject()
+            .put("hash", "remoteHash")
+            .put("updates", new JSONObject().put("applied", new JSONObject().put(uid, applied))));
+
+        assertNull(dataset.readData(uid));
+        assertEquals("local", dataset.readData("serverUid").getJSONObject("data").getString("name"));
+        assertEquals(0, pendingCount());
+        // the hash changed, so the records are synced before the loop completes
+        assertEquals("syncRecords", env.lastRequest().getString("fn"));
+        assertEquals(FHSyncState.State.APPLYING, dataset.getSyncState());
+
+        JSONObject created = new JSONObject()
+            .put("data", new JSONObject().put("name", "remote")).put("hash", "otherHash");
+        env.respond(new JSONObject()
+            .put("hash", "remoteHash")
+            .put("create", new JSONObject().put("otherUid", created)));
+
+        assertEquals("remote", dataset.readData("otherUid").getJSONObject("data").getString("name"));
+        assertEquals("remoteHash", dataset.getHashValue());
+        assertEquals(FHSyncState.State.IDLE, dataset.getSyncState());
+    }
+
+    @Test
+    public void testCrashedCreateIsRevertedWhenTheServerReportsItFailed() throws Exception {
+        String uid = dataset.createData(new JSONObject().put("name", "crashed")).getString("uid");
+        dataset.startSyncLoop();
+        env.fail("timeout");
+
+        assertEquals(1, pendingCount());
+        assertFalse(dataset.readData(uid) == null);
+
+        dataset.startSyncLoop();
+        assertEquals(0, env.lastRequest().getJSONArray("pending").length());
+        JSONObject failed = new JSONObject()
+            .put("uid", uid).put("hash", uid).put("action", "create").put("type", "failed");
+        env.respond(new JSONObject()
+            .put("updates", new JSONObject().put("hashes", new JSONObject().put(uid, failed))));
+
+        assertNull(dataset.readData(uid));
+        assertEquals(0, pendingCount());
+    }
+
+    @Test
+    public void testRequestThatCannotBeSentMarksThePendingRecordsCrashed() throws Exception {
+        dataset.createData(new JSONObject().put("name", "unsent"));
+        env.sendError = new IllegalArgumentException("Unsupported content encoding: gzip2");
+
+        dataset.startSyncLoop();
+
+        JSONObject pending = dataset.getJSON().getJSONObject("pendingDataRecords");
+        JSONObject record = pending.getJSONObject(pending.names().getString(0));
+        assertTrue(record.getBoolean("inFlight"));
+        assertTrue(record.getBoolean("crashed"));
+        assertEquals(FHSyncState.State.IDLE, dataset.getSyncState());
+    }
+
+    @Test
+    public void testUnsupportedContentEncodingIsRejected() throws Exception {
+        FHSyncConfig config = new FHSyncConfig();
+        config.setRequestContentEncoding("deflate");
+        config.setRequestContentEncoding(null);
+        try {
+            config.setRequestContentEncoding("gzip2");
+            fail("gzip2 is not a content encoding");
+        } catch (IllegalArgumentException e) {
+            assertNull(config.getRequestContentEncoding());
+        }
+    }
+
+    @Test
+    public void testSyncLoopTimesComeFromTheClock() throws Exception {
+        env.now = 5000L;
+        dataset.startSyncLoop();
+        assertEquals(5000L, dataset.getSyncStart().getTime());
+
+        env.now = 7000L;
+        env.respond(new JSONObject());
+        assertEquals(7000L, dataset.getSyncEnd().getTime());
+    }
+
+    @Test
+    public void testResponseWithoutARunningSyncLoopIsIgnored() throws Exception {
+        dataset.handleSyncResponse(new JSONObject()
+            .put("hash", "remoteHash")
+            .put("create", new JSONObject().put("otherUid", new JSONObject().put("data", new JSONObject()))));
+
+        assertNull(dataset.readData("otherUid"));
+        assertNull(dataset.getSyncEnd());
+        assertEquals(FHSyncState.State.IDLE, dataset.getSyncState());
+
+        dataset.syncCompleteWithCode("online");
+        assertNull(dataset.getSyncEnd());
+    }
+
+    private int pendingCount() {
+        return dataset.getJSON().getJSONObject("pendingDataRecords").length();
+    }
+}
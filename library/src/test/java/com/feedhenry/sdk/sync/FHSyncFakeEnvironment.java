@@ -0,0 +1,142 @@
+/**
+ * Copyright Red Hat, Inc, and individual contributors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.feedhenry.sdk.sync;
+
+import com.feedhenry.sdk.FHActCallback;
+import com.feedhenry.sdk.FHResponse;
+import cz.msebera.android.httpclient.client.HttpResponseException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import org.json.fh.JSONObject;
+
+/**
+ * Runs datasets on the JVM: the files are kept in memory, the clock only moves when told to, and the
+ * requests wait for the test to answer them. The requests may be sent from the threads of an executor.
+ */
+class FHSyncFakeEnvironment implements FHSyncStorage, FHSyncClock, FHSyncTransport, FHSyncConnectivity, FHSyncNotifier {
+
+    final Map<String, String> files = new ConcurrentHashMap<>();
+    final List<JSONObject> requests = Collections.synchronizedList(new ArrayList<JSONObject>());
+    final List<NotificationMessage> notifications = Collections.synchronizedList(new ArrayList<NotificationMessage>());
+    private final List<FHActCallback> mCallbacks = new ArrayList<>();
+    long now = 1000000L;
+    boolean online = true;
+    RuntimeException sendError;
+
+    FHSyncDataset newDataset(String pDataId, FHSyncConfig pConfig) {
+        FHSyncDataset dataset =
+            new FHSyncDataset(this, this, pDataId, pConfig, new JSONObject(), new JSONObject(), false);
+        dataset.setClock(this);
+        dataset.setTransport(this);
+        dataset.setConnectivity(this);
+        dataset.load(null);
+        return dataset;
+    }
+
+    /**
+     * Answers the oldest request not answered yet.
+     */
+    void respond(JSONObject pResponse) {
+        nextCallback().success(new FHResponse(pResponse, null, null, null));
+    }
+
+    /**
+     * Fails the oldest request not answered yet.
+     */
+    void fail(String pError) {
+        nextCallback().fail(new FHResponse(null, null, new Exception(pError), pError));
+    }
+
+    /**
+     * Fails the oldest request not answered yet with an HTTP status.
+     */
+    void fail(int pStatus) {
+        String error = "HTTP " + pStatus;
+        nextCallback().fail(new FHResponse(null, null, new HttpResponseException(pStatus, error), error));
+    }
+
+    /**
+     * Waits for a number of requests to have been sent in total.
+     */
+    synchronized void awaitRequests(int pCount) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + 5000;
+        while (requests.size() < pCount && System.currentTimeMillis() < deadline) {
+            wait(deadline - System.currentTimeMillis());
+        }
+        if (requests.size() < pCount) {
+            throw new AssertionError("Only " + requests.size() + " of " + pCount + " requests were sent");
+        }
+    }
+
+    private synchronized FHActCallback nextCallback() {
+        return mCallbacks.remove(0);
+    }
+
+    JSONObject lastRequest() {
+        synchronized (requests) {
+            return requests.get(requests.size() - 1);
+        }
+    }
+
+    @Override
+    public String read(String pName) {
+        return files.get(pName);
+    }
+
+    @Override
+    public void write(String pName, String pContent) {
+        files.put(pName, pContent);
+    }
+
+    @Override
+    public List<String> list() {
+        return new ArrayList<>(files.keySet());
+    }
+
+    @Override
+    public long currentTimeMillis() {
+        return now;
+    }
+
+    @Override
+    public synchronized void send(
+        String pDatasetId, FHSyncConfig pConfig, JSONObject pParams, FHActCallback pCallback) {
+        if (sendError != null) {
+            throw sendError;
+        }
+        requests.add(new JSONObject(pParams.toString()));
+        mCallbacks.add(pCallback);
+        notifyAll();
+    }
+
+    @Override
+    public void sendCombined(JSONObject pParams, String pRequestContentEncoding, FHActCallback pCallback) {
+        send(null, null, pParams, pCallback);
+    }
+
+    @Override
+    public boolean isOnline() {
+        return online;
+    }
+
+    @Override
+    public void sendNotification(int pCode, NotificationMessage pNotification) {
+        notifications.add(pNotification);
+    }
+}
@@ -0,0 +1,164 @@
+/**
+ * Copyright Red Hat, Inc, and individual contributors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.feedhenry.sdk.sync;
+
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Set;
+import org.json.fh.JSONObject;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Runs the multiplexed sync of several datasets on the JVM, against a fake environment.
+ */
+public class FHSyncMultiplexerJvmTest {
+
+    private FHSyncFakeEnvironment env;
+    private FHSyncExecutor executor;
+    private FHSyncDataset datasetA;
+    private FHSyncDataset datasetB;
+    private FHSyncMultiplexer multiplexer;
+
+    @Before
+    public void setUp() throws Exception {
+        env = new FHSyncFakeEnvironment();
+        executor = new FHSyncExecutor(2, 4);
+        datasetA = createDataset("jvmDataSetA");
+        datasetB = createDataset("jvmDataSetB");
+        multiplexer = new FHSyncMultiplexer(executor, env, null);
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        executor.shutdown();
+    }
+
+    @Test
+    public void testDueDatasetsShareOneRequest() throws Exception {
+        String uid = datasetA.createData(new JSONObject().put("name", "local")).getString("uid");
+
+        multiplexer.sync(Arrays.asList(datasetA, datasetB));
+
+        env.awaitRequests(1);
+        JSONObject datasets = env.lastRequest().getJSONObject("datasets");
+        assertEquals(2, datasets.length());
+        JSONObject pending = datasets.getJSONObject("jvmDataSetA").getJSONArray("pending").getJSONObject(0);
+        assertEquals(uid, pending.getString("hash"));
+        assertEquals(0, datasets.getJSONObject("jvmDataSetB").getJSONArray("pending").length());
+
+        env.respond(new JSONObject().put("datasets", new JSONObject()
+            .put("jvmDataSetA", new JSONObject())
+            .put("jvmDataSetB", new JSONObject())));
+
+        awaitIdle();
+        assertEquals(1, env.requests.size());
+        assertTrue(multiplexer.isSupported());
+    }
+
+    @Test
+    public void testUnsupportedCloudFallsBackToRequestsPerDataset() throws Exception {
+        multiplexer.sync(Arrays.asList(datasetA, datasetB));
+        env.awaitRequests(1);
+
+        env.fail(404);
+
+        env.awaitRequests(3);
+        Set<String> ids = new HashSet<String>();
+        ids.add(env.requests.get(1).getString("dataset_id"));
+        ids.add(env.requests.get(2).getString("dataset_id"));
+        assertEquals(new HashSet<String>(Arrays.asList("jvmDataSetA", "jvmDataSetB")), ids);
+        env.respond(new JSONObject());
+        env.respond(new JSONObject());
+
+        awaitIdle();
+        assertFalse(multiplexer.isSupported());
+    }
+
+    @Test
+    public void testDatasetMissingFromTheResponseSyncsOnItsOwn() throws Exception {
+        multiplexer.sync(Arrays.asList(datasetA, datasetB));
+        env.awaitRequests(1);
+
+        env.respond(new JSONObject().put("datasets", new JSONObject().put("jvmDataSetA", new JSONObject())));
+
+        env.awaitRequests(2);
+        assertEquals("jvmDataSetB", env.lastRequest().getString("dataset_id"));
+        env.respond(new JSONObject());
+
+        awaitIdle();
+        assertTrue(multiplexer.isSupported());
+    }
+
+    @Test
+    public void testStaleDatasetsSyncTheirRecordsWithinTheCap() throws Exception {
+        executor.shutdown();
+        executor = new FHSyncExecutor(2, 1);
+        datasetA.setExecutor(executor);
+        datasetB.setExecutor(executor);
+        multiplexer = new FHSyncMultiplexer(executor, env, null);
+        multiplexer.sync(Arrays.asList(datasetA, datasetB));
+        env.awaitRequests(1);
+
+        env.respond(new JSONObject().put("datasets", new JSONObject()
+            .put("jvmDataSetA", new JSONObject().put("hash", "remoteHashA"))
+            .put("jvmDataSetB", new JSONObject().put("hash", "remoteHashB"))));
+
+        env.awaitRequests(2);
+        Thread.sleep(200);
+        assertEquals(2, env.requests.size());
+        assertEquals("syncRecords", env.lastRequest().getString("fn"));
+        assertTrue(executor.getActiveSyncCount() <= 1);
+        String first = env.lastRequest().getString("dataset_id");
+        env.respond(new JSONObject().put("hash", "remoteHash"));
+
+        env.awaitRequests(3);
+        assertEquals("syncRecords", env.lastRequest().getString("fn"));
+        assertFalse(first.equals(env.lastRequest().getString("dataset_id")));
+        assertTrue(executor.getActiveSyncCount() <= 1);
+        env.respond(new JSONObject().put("hash", "remoteHash"));
+
+        awaitIdle();
+    }
+
+    private FHSyncDataset createDataset(String pDataId) {
+        FHSyncConfig config = new FHSyncConfig();
+        config.setNotifySyncStarted(false);
+        config.setNotifySyncComplete(false);
+        FHSyncDataset dataset = env.newDataset(pDataId, config);
+        dataset.setExecutor(executor);
+        return dataset;
+    }
+
+    /**
+     * Waits for both sync loops to complete and free their sync slots.
+     */
+    private void awaitIdle() throws InterruptedException {
+        long deadline = System.currentTimeMillis() + 5000;
+        while ((datasetA.getSyncEnd() == null || datasetB.getSyncEnd() == null || executor.getActiveSyncCount() > 0)
+            && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+        }
+        assertEquals(FHSyncState.State.IDLE, datasetA.getSyncState());
+        assertEquals(FHSyncState.State.IDLE, datasetB.getSyncState());
+        assertEquals(0, executor.getActiveSyncCount());
+    }
+}